@@ -0,0 +1,54 @@
+#!/bin/bash
+
+set -e
+
+echo "========================================"
+echo "   MiniPython Startup-Optimized Build"
+echo "========================================"
+echo ""
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+cd "$ROOT"
+
+# Ensure compiled
+if [ ! -d "build" ]; then
+    echo "Build not found. Running compilation..."
+    ./scripts/compile.sh
+fi
+
+# The parser and lexer tables are read as resources, next to their classes
+for f in $(cd src && find minipython -name "*.dat" 2>/dev/null); do
+    mkdir -p "build/$(dirname "$f")"
+    cp "src/$f" "build/$f"
+done
+
+# AppCDS only archives classes loaded from jar files
+echo "Packaging build/minipython.jar..."
+rm -f build/minipython.jar build/minipython.jsa
+(cd build && jar cf minipython.jar $(find . -name "*.class" -o -name "*.dat"))
+
+echo "Training over tests/..."
+java -XX:ArchiveClassesAtExit="$ROOT/build/minipython.jsa" -cp "$ROOT/build/minipython.jar" \
+    StartupTraining $(find tests -name "*.py" | sort) 2>&1 | grep -v "^\[" || true
+
+if [ ! -f build/minipython.jsa ]; then
+    echo "Error: the JVM did not write the archive (JDK 13+ is needed)."
+    exit 1
+fi
+
+# Time to first diagnostic: a one-shot check of a file with errors
+SAMPLE=tests/test_1.py
+median() {
+    for i in 1 2 3 4 5; do
+        start=$(date +%s%N)
+        "$@" > /dev/null 2>&1 || true
+        echo $(( ($(date +%s%N) - start) / 1000000 ))
+    done | sort -n | sed -n 3p
+}
+echo ""
+echo "Time to first diagnostic on $SAMPLE (median of 5):"
+echo "  before: $(median java -cp build ParserTest $SAMPLE) ms"
+echo "  after:  $(median ./scripts/minipython.sh check $SAMPLE) ms"
+echo ""
+echo "Startup build completed. Use scripts/minipython.sh to run it."
+echo ""
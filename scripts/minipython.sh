@@ -0,0 +1,43 @@
+#!/bin/bash
+
+# Launcher for the startup-optimized build (scripts/build_startup.sh).
+#
+#   minipython.sh check <file.py>    semantic analysis, as ParserTest
+#   minipython.sh run <file.py> ...  runs it, as Interpreter
+#
+# Uses the AppCDS archive when it is there. A check is short, so it also
+# stays on the first JIT tier and the serial collector, which start fastest.
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$ROOT/build/minipython.jar"
+ARCHIVE="$ROOT/build/minipython.jsa"
+
+if [ $# -lt 2 ]; then
+    echo "Usage: minipython.sh check|run <file.py> [options]"
+    exit 1
+fi
+
+if [ ! -f "$JAR" ]; then
+    echo "Error: $JAR not found. Run scripts/build_startup.sh first."
+    exit 1
+fi
+
+OPTS=(-XX:+UseSerialGC -Xshare:auto)
+if [ -f "$ARCHIVE" ]; then
+    OPTS+=(-XX:SharedArchiveFile="$ARCHIVE")
+fi
+
+COMMAND=$1
+shift
+case "$COMMAND" in
+    check)
+        exec java "${OPTS[@]}" -XX:TieredStopAtLevel=1 -cp "$JAR" ParserTest "$@"
+        ;;
+    run)
+        exec java "${OPTS[@]}" -cp "$JAR" Interpreter "$@"
+        ;;
+    *)
+        echo "Error: unknown command $COMMAND"
+        exit 1
+        ;;
+esac
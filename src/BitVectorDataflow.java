@@ -0,0 +1,123 @@
+import java.util.*;
+
+/*
+ * Forward dataflow over the blocks of one ControlFlowGraph scope, with the
+ * facts of a block kept as a BitSet.
+ *
+ * A "may" analysis joins predecessors with union (a fact holds if it holds on
+ * some path), a "must" analysis with intersection (it holds on every path).
+ * Blocks are visited in reverse postorder and requeued only when an input
+ * changed, so straight-line code is done in one pass and every loop needs
+ * one more pass per nesting level.
+ *
+ * Example, definite assignment of "x" (bit 0):
+ *     x = 1          in {}   out {0}
+ *     while c:       in {0}
+ *         y = x      in {0}
+ */
+public class BitVectorDataflow
+{
+    public interface Transfer {
+        // Must not change "in". May return it when the block changes nothing.
+        BitSet apply(ControlFlowGraph.Block block, BitSet in);
+    }
+
+    // Fills in[block.index] with the facts on entry to every block and returns them.
+    // Unreachable blocks get every fact (must) or none (may).
+    public static BitSet[] forward(ControlFlowGraph.Scope scope, int width, BitSet entry,
+                                   boolean must, Transfer transfer, BitSet[] in)
+    {
+        List<ControlFlowGraph.Block> blocks = scope.blocks;
+        BitSet[] out = new BitSet[blocks.size()];
+        BitSet all = new BitSet(width);
+        all.set(0, width);
+
+        int[] order = reversePostorder(scope);
+        int[] rank = new int[blocks.size()];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < order.length; i++) {
+            rank[order[i]] = i;
+        }
+        for (ControlFlowGraph.Block block : blocks) {
+            if (rank[block.index] < 0) {
+                in[block.index] = must ? (BitSet) all.clone() : new BitSet(width);
+            }
+        }
+
+        // Pending blocks by rank, so the lowest rank is taken first
+        BitSet pending = new BitSet(order.length);
+        pending.set(0, order.length);
+        while (!pending.isEmpty()) {
+            int r = pending.nextSetBit(0);
+            pending.clear(r);
+            ControlFlowGraph.Block block = blocks.get(order[r]);
+
+            BitSet facts;
+            if (block == scope.entry) {
+                facts = (BitSet) entry.clone();
+            } else {
+                facts = null;
+                for (ControlFlowGraph.Block pred : block.predecessors) {
+                    BitSet predOut = out[pred.index];
+                    if (rank[pred.index] < 0 || (predOut == null && must)) {
+                        continue;   // unreachable, or not computed yet: the top of a must analysis
+                    }
+                    if (facts == null) {
+                        facts = predOut == null ? new BitSet(width) : (BitSet) predOut.clone();
+                    } else if (must) {
+                        facts.and(predOut);
+                    } else if (predOut != null) {
+                        facts.or(predOut);
+                    }
+                }
+                if (facts == null) {
+                    facts = must ? (BitSet) all.clone() : new BitSet(width);
+                }
+            }
+            in[block.index] = facts;
+
+            BitSet result = transfer.apply(block, facts);
+            if (!result.equals(out[block.index])) {
+                out[block.index] = result;
+                for (ControlFlowGraph.Block succ : block.successors) {
+                    if (rank[succ.index] >= 0) {
+                        pending.set(rank[succ.index]);
+                    }
+                }
+            }
+        }
+        return in;
+    }
+
+    // Indices of the reachable blocks, entry first
+    static int[] reversePostorder(ControlFlowGraph.Scope scope)
+    {
+        int n = scope.blocks.size();
+        int[] post = new int[n];
+        int count = 0;
+        boolean[] seen = new boolean[n];
+        int[] next = new int[n];            // next successor to look at, per block on the stack
+        int[] stack = new int[n];
+        int sp = 0;
+        stack[sp++] = scope.entry.index;
+        seen[scope.entry.index] = true;
+        while (sp > 0) {
+            ControlFlowGraph.Block block = scope.blocks.get(stack[sp - 1]);
+            if (next[block.index] < block.successors.size()) {
+                ControlFlowGraph.Block succ = block.successors.get(next[block.index]++);
+                if (!seen[succ.index]) {
+                    seen[succ.index] = true;
+                    stack[sp++] = succ.index;
+                }
+            } else {
+                post[count++] = block.index;
+                sp--;
+            }
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = post[count - 1 - i];
+        }
+        return order;
+    }
+}
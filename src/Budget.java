@@ -0,0 +1,244 @@
+/*
+ * Limits on what one run of the Interpreter may use, so a worker can run
+ * scripts it does not trust:
+ *
+ *   steps      steps executed (one per CFG block: a statement run, or a
+ *              branch taken)
+ *   elements   list elements allocated, in total over the run
+ *   bytes      bytes of lists, strings and ints past 64 bits allocated,
+ *              estimated as below
+ *   depth      calls in progress (RecursionError past it)
+ *   time       wall time since the run started
+ *   output     characters printed, for hosts that keep output in memory
+ *
+ * A run that goes over a limit stops with a MiniPythonError: TimeoutError
+ * for steps and time, MemoryError for elements, bytes and output,
+ * RecursionError for depth. getExceeded() names the limit, for hosts that tell budget
+ * errors apart from the script's own.
+ *
+ * Checks are amortized. The interpreter counts steps in a local and
+ * charges them at loop back edges and returns, which every loop iteration
+ * and every call passes through; the clock is read only every
+ * CHECK_INTERVAL steps. Allocations are charged before they happen, so
+ * "a = a * 100000000" fails without the JVM running out of memory first.
+ *
+ * Example: allow 10 million steps and 2 seconds
+ *     Budget budget = new Budget();
+ *     budget.setMaxSteps(10_000_000);
+ *     budget.setTimeoutMillis(2000);
+ *     interpreter.setBudget(budget);
+ */
+public class Budget
+{
+    // Steps between reads of the clock
+    static final long CHECK_INTERVAL = 1 << 14;
+
+    // Estimated sizes: an object header, and the bytes per element or character
+    private static final long OBJECT_BYTES = 16;
+    private static final long ELEMENT_BYTES = 8;
+    private static final long STRING_BYTES = 40;
+
+    private long maxSteps = Long.MAX_VALUE;
+    private long maxElements = Long.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private int maxDepth = Interpreter.MAX_DEPTH;
+    private long timeoutNanos;
+    private long maxOutput = Long.MAX_VALUE;
+
+    private long steps;
+    private long elements;
+    private long bytes;
+    private long output;
+    private long nextCheck;
+    private long deadline;
+    private boolean started;
+    private String exceeded;
+
+    public void setMaxSteps(long maxSteps)
+    {
+        this.maxSteps = maxSteps;
+    }
+
+    public void setMaxElements(long maxElements)
+    {
+        this.maxElements = maxElements;
+    }
+
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    // 0: no limit
+    public void setTimeoutMillis(long millis)
+    {
+        this.timeoutNanos = millis * 1_000_000;
+    }
+
+    public void setMaxOutput(long maxOutput)
+    {
+        this.maxOutput = maxOutput;
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    public long getElements()
+    {
+        return elements;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    // "steps", "elements", "bytes", "depth", "time" or "output"; null while within budget
+    public String getExceeded()
+    {
+        return exceeded;
+    }
+
+    // Starts the clock. Only the first call counts, so a module imported
+    // during the run does not restart it.
+    void start()
+    {
+        if (started) {
+            return;
+        }
+        started = true;
+        deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+        nextCheck = 0;
+    }
+
+    // ========== CHARGES ==========
+
+    void charge(int ran)
+    {
+        steps += ran;
+        if (steps >= nextCheck) {
+            check();
+        }
+    }
+
+    private void check()
+    {
+        if (steps > maxSteps) {
+            throw exceed("steps", "TimeoutError", "the budget of " + maxSteps + " steps is used up");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw exceed("time", "TimeoutError", "the budget of " + timeoutNanos / 1_000_000 + " ms is used up");
+        }
+        long left = maxSteps - steps;
+        nextCheck = steps + (left < CHECK_INTERVAL ? left + 1 : CHECK_INTERVAL);
+    }
+
+    // The error for a call past maxDepth, which the interpreter checks itself
+    MiniPythonError tooDeep()
+    {
+        return exceed("depth", "RecursionError", "maximum recursion depth exceeded");
+    }
+
+    // Before "a op b" builds a string, a list or a BigInteger
+    void beforeArithmetic(char op, Object a, Object b)
+    {
+        if (Ints.isInt(a) && Ints.isInt(b)) {
+            if (op == '*' || op == '^' || !(a instanceof Long) || !(b instanceof Long)) {
+                long bits = Ints.bitLengthBound(op, a, b);
+                if (bits >= 64) {
+                    allocateBytes(saturatedSum(OBJECT_BYTES, bits / 8 + 1));
+                }
+            }
+        } else if (op == '+') {
+            if (a instanceof ListValue && b instanceof ListValue) {
+                allocateList((long) ((ListValue) a).size() + ((ListValue) b).size());
+            } else if (Values.isString(a) && Values.isString(b)) {
+                long x = ((CharSequence) a).length();
+                long y = ((CharSequence) b).length();
+                // A Rope copies nothing now, but is copied whole when flattened. Charging
+                // the shorter side of every join adds up to about its length by then,
+                // both for a loop of appends and for "s = s + s" repeated.
+                allocateString(x + y < Rope.MIN_LENGTH ? x + y : Math.min(x, y));
+            }
+        } else if (op == '*') {
+            if (Ints.isInt(a)) {
+                Object t = a;
+                a = b;
+                b = t;
+            }
+            if (Ints.isInt(b) && Ints.signum(b) > 0) {
+                long count = b instanceof Long ? (Long) b : Long.MAX_VALUE;
+                if (a instanceof ListValue) {
+                    allocateList(saturatedProduct(((ListValue) a).size(), count));
+                } else if (Values.isString(a)) {
+                    allocateString(saturatedProduct(((CharSequence) a).length(), count));
+                }
+            }
+        }
+    }
+
+    void allocateList(long size)
+    {
+        if (size > maxElements - elements) {
+            throw exceed("elements", "MemoryError", "a list of " + size + " elements goes over the budget of "
+                         + maxElements + " list elements");
+        }
+        elements += size;
+        allocateBytes(saturatedSum(OBJECT_BYTES, saturatedProduct(size, ELEMENT_BYTES)));
+    }
+
+    void allocateString(long length)
+    {
+        allocateBytes(saturatedSum(STRING_BYTES, length));
+    }
+
+    private void allocateBytes(long size)
+    {
+        if (size > maxBytes - bytes) {
+            throw exceed("bytes", "MemoryError", "allocating " + size + " bytes goes over the budget of "
+                         + maxBytes + " bytes");
+        }
+        bytes += size;
+    }
+
+    // Before a print writes a line of this many characters, newline included
+    void print(long length)
+    {
+        if (length > maxOutput - output) {
+            throw exceed("output", "MemoryError", "printing goes over the budget of " + maxOutput + " characters of output");
+        }
+        output += length;
+    }
+
+    private MiniPythonError exceed(String budget, String kind, String message)
+    {
+        exceeded = budget;
+        return new MiniPythonError(kind, message);
+    }
+
+    // Sizes are never negative; past Long.MAX_VALUE they stay there
+    private static long saturatedSum(long a, long b)
+    {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedProduct(long a, long b)
+    {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        return high != 0 || low < 0 ? Long.MAX_VALUE : low;
+    }
+}
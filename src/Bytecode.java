@@ -0,0 +1,495 @@
+import java.io.*;
+import java.util.*;
+
+/*
+ * Writes a class file: constant pool, fields and methods, with labels for
+ * jumps. Just as much of the JVM class format as TierCompiler's classes
+ * need, and no more: no interfaces, no wide locals, no long jumps.
+ *
+ * Every instruction is written through a method that knows its effect on
+ * the operand stack, so max_stack comes out of the writing. Every label,
+ * and every instruction that follows a goto, return or throw, gets a full
+ * StackMapTable frame. They all have the same locals, given when the
+ * method begins, and an empty stack, except an exception handler's, which
+ * holds the exception: code written for it keeps nothing on the stack
+ * across a jump.
+ *
+ * Example: a method returning its int argument plus one
+ *     Bytecode c = new Bytecode("Adder", "java/lang/Object");
+ *     c.beginMethod(Bytecode.ACC_STATIC, "add", "(I)I", new Object[] {Bytecode.INT});
+ *     c.local(Bytecode.ILOAD, 0, 1);
+ *     c.push(1);
+ *     c.op(Bytecode.IADD, -1);
+ *     c.op(Bytecode.IRETURN, -1);
+ *     c.endMethod(1);
+ *     byte[] bytes = c.toByteArray();
+ */
+final class Bytecode
+{
+    static final int ACC_STATIC = 0x0008;
+
+    static final int ICONST_0 = 3, BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19;
+    static final int ILOAD = 21, ALOAD = 25, ISTORE = 54, ASTORE = 58, AALOAD = 50, AASTORE = 83;
+    static final int POP = 87, DUP = 89, SWAP = 95, IADD = 96, IINC = 132;
+    static final int IFEQ = 153, IFNE = 154, IF_ICMPNE = 160, GOTO = 167, TABLESWITCH = 170;
+    static final int IRETURN = 172, ARETURN = 176, RETURN = 177;
+    static final int GETFIELD = 180, PUTFIELD = 181;
+    static final int INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184, INVOKEINTERFACE = 185;
+    static final int NEW = 187, ATHROW = 191, CHECKCAST = 192, IFNULL = 198;
+
+    // A local of type int in a frame; any other local is named by its class
+    static final Object INT = 1;
+
+    // A place in the code, bound once; jumps to it are patched then
+    static final class Label {
+        int offset = -1;
+        final List<int[]> jumps = new ArrayList<>();   // {instruction, operand, operand size}
+    }
+
+    private final String name;
+    private final Map<String, Integer> pool = new HashMap<>();
+    private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+    private int constantCount = 1;
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private int fieldCount;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount;
+    private final int superClass;
+
+    // The method being written
+    private int access;
+    private String methodName;
+    private String descriptor;
+    private Object[] frameLocals;
+    private ByteArrayOutputStream code;
+    private final List<Label> labels = new ArrayList<>();
+    private final List<int[]> handlers = new ArrayList<>();          // {start, end, handler, type}
+    private final TreeMap<Integer, String> frames = new TreeMap<>(); // offset → the type on the stack, or ""
+    private int stack;
+    private int maxStack;
+    private boolean reachable;
+
+    Bytecode(String name, String superName)
+    {
+        this.name = name;
+        this.superClass = classConstant(superName);
+    }
+
+    // ========== CONSTANTS ==========
+
+    private int utf8(String text)
+    {
+        return constant("U" + text, out -> {
+            out.writeByte(1);
+            out.writeUTF(text);
+        });
+    }
+
+    int classConstant(String internalName)
+    {
+        int index = utf8(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(index);
+        });
+    }
+
+    private int stringConstant(String text)
+    {
+        int index = utf8(text);
+        return constant("S" + text, out -> {
+            out.writeByte(8);
+            out.writeShort(index);
+        });
+    }
+
+    private int intConstant(int value)
+    {
+        return constant("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    // A Fieldref (9), Methodref (10) or InterfaceMethodref (11)
+    private int memberConstant(int tag, String owner, String member, String type)
+    {
+        int owning = classConstant(owner);
+        int memberName = utf8(member);
+        int memberType = utf8(type);
+        int nameAndType = constant("N" + member + ":" + type, out -> {
+            out.writeByte(12);
+            out.writeShort(memberName);
+            out.writeShort(memberType);
+        });
+        return constant(tag + owner + "." + member + ":" + type, out -> {
+            out.writeByte(tag);
+            out.writeShort(owning);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int constant(String key, Entry entry)
+    {
+        Integer index = pool.get(key);
+        if (index == null) {
+            try {
+                entry.write(new DataOutputStream(constants));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = constantCount++;
+            pool.put(key, index);
+        }
+        return index;
+    }
+
+    // ========== FIELDS AND METHODS ==========
+
+    // A private final field
+    void declareField(String fieldName, String type)
+    {
+        DataOutputStream out = new DataOutputStream(fields);
+        try {
+            out.writeShort(0x0012);
+            out.writeShort(utf8(fieldName));
+            out.writeShort(utf8(type));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    // frameLocals: the type of each local in every frame, INT or a class's
+    // internal name; the arguments' come first
+    void beginMethod(int access, String methodName, String descriptor, Object[] frameLocals)
+    {
+        this.access = access;
+        this.methodName = methodName;
+        this.descriptor = descriptor;
+        this.frameLocals = frameLocals;
+        code = new ByteArrayOutputStream();
+        labels.clear();
+        handlers.clear();
+        frames.clear();
+        stack = 0;
+        maxStack = 0;
+        reachable = true;
+    }
+
+    // Patches the jumps and adds the method
+    void endMethod(int maxLocals)
+    {
+        byte[] bytes = code.toByteArray();
+        for (Label label : labels) {
+            if (label.offset < 0) {
+                throw new IllegalStateException(methodName + ": a label never placed");
+            }
+            for (int[] jump : label.jumps) {
+                int delta = label.offset - jump[0];
+                if (jump[2] == 2 && (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE)) {
+                    throw new IllegalStateException(methodName + ": a jump too far");
+                }
+                for (int i = 0; i < jump[2]; i++) {
+                    bytes[jump[1] + i] = (byte) (delta >> (8 * (jump[2] - 1 - i)));
+                }
+            }
+        }
+        try {
+            ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(attribute);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(handlers.size());
+            for (int[] handler : handlers) {
+                for (int value : handler) {
+                    out.writeShort(value);
+                }
+            }
+            if (frames.isEmpty()) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(utf8("StackMapTable"));
+                byte[] table = stackMapTable();
+                out.writeInt(table.length);
+                out.write(table);
+            }
+
+            DataOutputStream method = new DataOutputStream(methods);
+            method.writeShort(access);
+            method.writeShort(utf8(methodName));
+            method.writeShort(utf8(descriptor));
+            method.writeShort(1);
+            method.writeShort(utf8("Code"));
+            method.writeInt(attribute.size());
+            attribute.writeTo(method);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+        code = null;
+    }
+
+    // One full_frame per offset
+    private byte[] stackMapTable() throws IOException
+    {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(table);
+        out.writeShort(frames.size());
+        int previous = -1;
+        for (Map.Entry<Integer, String> frame : frames.entrySet()) {
+            out.writeByte(255);
+            out.writeShort(frame.getKey() - previous - 1);
+            previous = frame.getKey();
+            out.writeShort(frameLocals.length);
+            for (Object local : frameLocals) {
+                verificationType(out, local);
+            }
+            if (frame.getValue().isEmpty()) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                verificationType(out, frame.getValue());
+            }
+        }
+        return table.toByteArray();
+    }
+
+    private void verificationType(DataOutputStream out, Object type) throws IOException
+    {
+        if (type == INT) {
+            out.writeByte(1);
+        } else {
+            out.writeByte(7);
+            out.writeShort(classConstant((String) type));
+        }
+    }
+
+    // The code written so far in this method, in bytes
+    int size()
+    {
+        return code.size();
+    }
+
+    byte[] toByteArray()
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);                 // Java 8: frames checked, not inferred
+            int thisClass = classConstant(name);
+            out.writeShort(constantCount);
+            constants.writeTo(out);
+            out.writeShort(0x0030);             // final, super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fieldCount);
+            fields.writeTo(out);
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ========== INSTRUCTIONS ==========
+
+    // stack: what the instruction does to the stack's depth
+    void op(int opcode, int stack)
+    {
+        begin(opcode, stack);
+        if (opcode == ATHROW || opcode == GOTO || (opcode >= IRETURN && opcode <= RETURN)) {
+            reachable = false;
+        }
+    }
+
+    void local(int opcode, int index, int stack)
+    {
+        begin(opcode, stack);
+        code.write(index);
+    }
+
+    void iinc(int index, int by)
+    {
+        begin(IINC, 0);
+        code.write(index);
+        code.write(by);
+    }
+
+    void push(int value)
+    {
+        if (value >= -1 && value <= 5) {
+            begin(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            begin(BIPUSH, 1);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            begin(SIPUSH, 1);
+            u2(value);
+        } else {
+            constantOp(intConstant(value));
+        }
+    }
+
+    void push(String value)
+    {
+        constantOp(stringConstant(value));
+    }
+
+    private void constantOp(int index)
+    {
+        if (index < 256) {
+            begin(LDC, 1);
+            code.write(index);
+        } else {
+            begin(LDC_W, 1);
+            u2(index);
+        }
+    }
+
+    // new or checkcast
+    void type(int opcode, String internalName)
+    {
+        begin(opcode, opcode == NEW ? 1 : 0);
+        u2(classConstant(internalName));
+    }
+
+    void field(int opcode, String owner, String fieldName, String type)
+    {
+        int size = type.equals("J") || type.equals("D") ? 2 : 1;
+        begin(opcode, opcode == GETFIELD ? size - 1 : -1 - size);
+        u2(memberConstant(9, owner, fieldName, type));
+    }
+
+    void invoke(int opcode, String owner, String method, String type)
+    {
+        int stack = returnSize(type) - argumentSize(type) - (opcode == INVOKESTATIC ? 0 : 1);
+        begin(opcode, stack);
+        u2(memberConstant(opcode == INVOKEINTERFACE ? 11 : 10, owner, method, type));
+        if (opcode == INVOKEINTERFACE) {
+            code.write(argumentSize(type) + 1);
+            code.write(0);
+        }
+    }
+
+    Label label()
+    {
+        Label label = new Label();
+        labels.add(label);
+        return label;
+    }
+
+    // Binds the label here, with an empty stack
+    void place(Label label)
+    {
+        place(label, "");
+    }
+
+    // onStack: the internal name of an exception caught here, or ""
+    void place(Label label, String onStack)
+    {
+        label.offset = code.size();
+        frames.put(label.offset, onStack);
+        stack = onStack.isEmpty() ? 0 : 1;
+        maxStack = Math.max(maxStack, stack);
+        reachable = true;
+    }
+
+    void jump(int opcode, Label target)
+    {
+        int at = code.size();
+        begin(opcode, opcode == GOTO ? 0 : opcode == IF_ICMPNE ? -2 : -1);
+        target.jumps.add(new int[] {at, code.size(), 2});
+        u2(0);
+        if (opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    // Pops an int and jumps to targets[it], or to otherwise
+    void tableswitch(Label otherwise, Label[] targets)
+    {
+        int at = code.size();
+        begin(TABLESWITCH, -1);
+        while (code.size() % 4 != 0) {
+            code.write(0);
+        }
+        otherwise.jumps.add(new int[] {at, code.size(), 4});
+        u4(0);
+        u4(0);
+        u4(targets.length - 1);
+        for (Label target : targets) {
+            target.jumps.add(new int[] {at, code.size(), 4});
+            u4(0);
+        }
+        reachable = false;
+    }
+
+    // Exceptions of the type thrown by the code in [start, end), offsets
+    // from size(), go to the handler, which must be placed by then
+    void handler(int start, int end, Label handler, String type)
+    {
+        handlers.add(new int[] {start, end, handler.offset, classConstant(type)});
+    }
+
+    private void begin(int opcode, int effect)
+    {
+        if (!reachable) {
+            frames.put(code.size(), "");        // code after a jump needs a frame of its own
+            stack = 0;
+            reachable = true;
+        }
+        code.write(opcode);
+        stack += effect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void u2(int value)
+    {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private void u4(int value)
+    {
+        u2(value >> 16);
+        u2(value);
+    }
+
+    // ========== DESCRIPTORS ==========
+
+    // Example: "(Ljava/lang/Object;JI)V" → 4
+    private static int argumentSize(String descriptor)
+    {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            size += c == 'J' || c == 'D' ? 2 : 1;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+        }
+        return size;
+    }
+
+    private static int returnSize(String descriptor)
+    {
+        char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        return c == 'V' ? 0 : c == 'J' || c == 'D' ? 2 : 1;
+    }
+}
@@ -0,0 +1,654 @@
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Lowered, memory-compact form of the MiniPython AST.
+ *
+ * The SableCC tree keeps one object per grammar level, so the literal "5"
+ * is stored as AIntegerLiteralValuenode -> AValueSubsetValue -> AValuePow ->
+ * ABasePowMultiplication -> ABaseMultExpression. Here the chain productions
+ * are collapsed and every node is one slot in a few parallel int arrays:
+ *
+ *   kind[n]        what the node is (ADD, CALL, IF, ...)
+ *   token[n]       index of the node's main token, or -1
+ *   childStart[n]  offset of the node's first child in children[]
+ *
+ * Nodes are stored in post-order (children before parents), so the children
+ * of node n are children[childStart[n] .. childStart[n + 1]) and the root is
+ * always the last node. Tokens are stored the same way (line, pos and an
+ * index into a pool of interned texts).
+ */
+public class CompactAST
+{
+    // ========== NODE KINDS ==========
+
+    public static final int PROGRAM = 0;
+    public static final int FUNCTION = 1;     // token: name, children: PARAM*, body
+    public static final int PARAM = 2;        // token: name, children: [default]
+    public static final int IF = 3;           // children: condition, body
+    public static final int WHILE = 4;        // children: condition, body
+    public static final int FOR = 5;          // children: NAME var, NAME iterable, body
+    public static final int PRINT = 6;        // children: expression+
+    public static final int RETURN = 7;
+    public static final int ASSIGN = 8;       // token: variable, children: expression
+    public static final int MINUS_ASSIGN = 9;
+    public static final int PLUS_ASSIGN = 10;
+    public static final int MULT_ASSIGN = 11;
+    public static final int DIV_ASSIGN = 12;
+    public static final int ARRAY_ASSIGN = 13; // token: variable, children: index, value
+    public static final int ASSERT = 14;      // children: expression, [message]
+    public static final int IMPORT = 15;      // children: IMPORT_SPEC+
+    public static final int IMPORT_SPEC = 16; // token: alias or -1, children: NAME+ (module path)
+    public static final int OR = 17;
+    public static final int AND = 18;
+    public static final int NOT = 19;
+    public static final int TRUE = 20;
+    public static final int FALSE = 21;
+    public static final int LESS_EQUAL = 22;
+    public static final int GREATER_EQUAL = 23;
+    public static final int NOT_EQUAL = 24;
+    public static final int EQUAL = 25;
+    public static final int LESS = 26;
+    public static final int GREATER = 27;
+    public static final int ADD = 28;         // token: operator, children: left, right
+    public static final int SUB = 29;
+    public static final int MUL = 30;
+    public static final int DIV = 31;
+    public static final int MOD = 32;
+    public static final int POW = 33;
+    public static final int MAX = 34;         // children: value+
+    public static final int MIN = 35;
+    public static final int INT = 36;
+    public static final int DECIMAL = 37;
+    public static final int STRING = 38;
+    public static final int NONE = 39;
+    public static final int NAME = 40;
+    public static final int INDEX = 41;       // token: array name, children: index
+    public static final int CALL = 42;        // token: function name, children: arguments
+    public static final int METHOD_CALL = 43; // token: object name, children: CALL
+    public static final int LEN = 44;
+    public static final int TYPE = 45;
+    public static final int OPEN = 46;
+    public static final int ASCII = 47;
+    public static final int LIST = 48;        // children: expression*
+
+    public static final String[] KIND_NAMES = {
+        "PROGRAM", "FUNCTION", "PARAM", "IF", "WHILE", "FOR", "PRINT", "RETURN",
+        "ASSIGN", "MINUS_ASSIGN", "PLUS_ASSIGN", "MULT_ASSIGN", "DIV_ASSIGN", "ARRAY_ASSIGN",
+        "ASSERT", "IMPORT", "IMPORT_SPEC", "OR", "AND", "NOT", "TRUE", "FALSE",
+        "LESS_EQUAL", "GREATER_EQUAL", "NOT_EQUAL", "EQUAL", "LESS", "GREATER",
+        "ADD", "SUB", "MUL", "DIV", "MOD", "POW", "MAX", "MIN",
+        "INT", "DECIMAL", "STRING", "NONE", "NAME", "INDEX", "CALL", "METHOD_CALL",
+        "LEN", "TYPE", "OPEN", "ASCII", "LIST"
+    };
+
+    // ========== STORAGE ==========
+
+    private int[] kind = new int[64];
+    private int[] token = new int[64];
+    private int[] childStart = new int[65];
+    private int nodeCount = 0;
+
+    private int[] children = new int[64];
+    private int childCount = 0;
+
+    private int[] tokenLine = new int[64];
+    private int[] tokenPos = new int[64];
+    private int[] tokenText = new int[64];
+    private int tokenCount = 0;
+
+    // Interned token texts. Example: every "x" in the file shares one pool slot
+    private String[] pool = new String[32];
+    private int poolSize = 0;
+    private HashMap<String, Integer> poolIndex = new HashMap<>();
+
+    // ========== BUILDING ==========
+
+    // Adds a token and returns its index
+    // Example: addToken(tIdentifier) for "x" on line 3 → 17
+    public int addToken(Token tok)
+    {
+        if (tok == null) {
+            return -1;
+        }
+        if (tokenCount == tokenLine.length) {
+            int capacity = Math.max(16, tokenCount * 2);
+            tokenLine = Arrays.copyOf(tokenLine, capacity);
+            tokenPos = Arrays.copyOf(tokenPos, capacity);
+            tokenText = Arrays.copyOf(tokenText, capacity);
+        }
+        tokenLine[tokenCount] = tok.getLine();
+        tokenPos[tokenCount] = tok.getPos();
+        tokenText[tokenCount] = intern(tok.getText().trim());
+        return tokenCount++;
+    }
+
+    private int intern(String text)
+    {
+        if (poolIndex == null) {
+            // rebuilt lazily if tokens are added after trim()
+            poolIndex = new HashMap<>();
+            for (int i = 0; i < poolSize; i++) {
+                poolIndex.put(pool[i], i);
+            }
+        }
+        Integer index = poolIndex.get(text);
+        if (index != null) {
+            return index;
+        }
+        if (poolSize == pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(16, poolSize * 2));
+        }
+        pool[poolSize] = text;
+        poolIndex.put(text, poolSize);
+        return poolSize++;
+    }
+
+    // Appends a node whose children are kids[from .. to) and returns its index.
+    // All children must already be in the tree (post-order construction).
+    public int addNode(int nodeKind, int tokenIndex, int[] kids, int from, int to)
+    {
+        if (nodeCount == kind.length) {
+            int capacity = Math.max(16, nodeCount * 2);
+            kind = Arrays.copyOf(kind, capacity);
+            token = Arrays.copyOf(token, capacity);
+            childStart = Arrays.copyOf(childStart, capacity + 1);
+        }
+        int count = to - from;
+        if (childCount + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+        }
+        System.arraycopy(kids, from, children, childCount, count);
+        kind[nodeCount] = nodeKind;
+        token[nodeCount] = tokenIndex;
+        childStart[nodeCount] = childCount;
+        childCount += count;
+        childStart[nodeCount + 1] = childCount;
+        return nodeCount++;
+    }
+
+    // Releases the spare capacity left over from building
+    public void trim()
+    {
+        kind = Arrays.copyOf(kind, nodeCount);
+        token = Arrays.copyOf(token, nodeCount);
+        childStart = Arrays.copyOf(childStart, nodeCount + 1);
+        children = Arrays.copyOf(children, childCount);
+        tokenLine = Arrays.copyOf(tokenLine, tokenCount);
+        tokenPos = Arrays.copyOf(tokenPos, tokenCount);
+        tokenText = Arrays.copyOf(tokenText, tokenCount);
+        pool = Arrays.copyOf(pool, poolSize);
+        poolIndex = null;
+    }
+
+    // ========== ACCESSORS ==========
+
+    public int size() { return nodeCount; }
+
+    public int root() { return nodeCount - 1; }
+
+    public int kind(int node) { return kind[node]; }
+
+    public int token(int node) { return token[node]; }
+
+    public int childCount(int node) { return childStart[node + 1] - childStart[node]; }
+
+    public int child(int node, int i) { return children[childStart[node] + i]; }
+
+    public int lastChild(int node) { return children[childStart[node + 1] - 1]; }
+
+    // Text of the node's main token. Example: NAME node for "x" → "x"
+    public String text(int node)
+    {
+        int t = token[node];
+        return t < 0 ? null : pool[tokenText[t]];
+    }
+
+    // Line of the node's main token, or -1 if it has none
+    public int line(int node)
+    {
+        int t = token[node];
+        return t < 0 ? -1 : tokenLine[t];
+    }
+
+    public int pos(int node)
+    {
+        int t = token[node];
+        return t < 0 ? -1 : tokenPos[t];
+    }
+
+    // Approximate heap footprint in bytes (array headers + payload + pooled strings)
+    public long estimatedBytes()
+    {
+        long bytes = 16 * 8;
+        bytes += 16 + 4L * kind.length;
+        bytes += 16 + 4L * token.length;
+        bytes += 16 + 4L * childStart.length;
+        bytes += 16 + 4L * children.length;
+        bytes += 3 * (16 + 4L * tokenLine.length);
+        bytes += 16 + 4L * pool.length;
+        for (int i = 0; i < poolSize; i++) {
+            bytes += 40 + pool[i].length();
+        }
+        return bytes;
+    }
+
+    // ========== TRAVERSAL ==========
+
+    // Callbacks for walk(). enter() returns false to skip the node's children.
+    public interface Visitor
+    {
+        boolean enter(CompactAST ast, int node);
+
+        void exit(CompactAST ast, int node);
+    }
+
+    // Depth-first walk with an explicit stack, so deep trees cannot overflow
+    // the Java stack. Order of callbacks matches DepthFirstAdapter's in/out.
+    public void walk(Visitor visitor)
+    {
+        if (nodeCount == 0) {
+            return;
+        }
+        int[] nodes = new int[32];
+        int[] next = new int[32];
+        int sp = 0;
+        nodes[0] = root();
+        next[0] = visitor.enter(this, root()) ? 0 : Integer.MAX_VALUE;
+        sp = 1;
+        while (sp > 0) {
+            int node = nodes[sp - 1];
+            int i = next[sp - 1];
+            if (i < childCount(node)) {
+                next[sp - 1] = i + 1;
+                int c = child(node, i);
+                if (sp == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, sp * 2);
+                    next = Arrays.copyOf(next, sp * 2);
+                }
+                nodes[sp] = c;
+                next[sp] = visitor.enter(this, c) ? 0 : Integer.MAX_VALUE;
+                sp++;
+            } else {
+                visitor.exit(this, node);
+                sp--;
+            }
+        }
+    }
+
+    // Text dump, one node per line
+    // Example:
+    //   PROGRAM
+    //     ASSIGN x [1:1]
+    //       INT 5 [1:5]
+    public String dump()
+    {
+        StringBuilder out = new StringBuilder();
+        walk(new Visitor() {
+            int depth = 0;
+
+            public boolean enter(CompactAST ast, int node)
+            {
+                for (int i = 0; i < depth; i++) {
+                    out.append("  ");
+                }
+                out.append(KIND_NAMES[ast.kind(node)]);
+                if (ast.token(node) >= 0) {
+                    out.append(' ').append(ast.text(node))
+                       .append(" [").append(ast.line(node)).append(':').append(ast.pos(node)).append(']');
+                }
+                out.append('\n');
+                depth++;
+                return true;
+            }
+
+            public void exit(CompactAST ast, int node)
+            {
+                depth--;
+            }
+        });
+        return out.toString();
+    }
+
+    // ========== ADAPTER BACK TO SABLECC NODES ==========
+
+    // Rebuilds an equivalent minipython.node tree so the existing visitors
+    // (DeclarationVisitor, VariableDeclarationVisitor, TypeCheckerVisitor,
+    // ASTPrinter) can run on a compact AST. Parentheses that were collapsed
+    // are re-inserted only where the grammar needs them.
+    // Because nodes are in post-order, one forward pass is enough.
+    public Start toStart()
+    {
+        Node[] built = new Node[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            built[n] = inflate(n, built);
+        }
+        return new Start((PProgramme) built[root()], new EOF());
+    }
+
+    private Node inflate(int n, Node[] built)
+    {
+        int count = childCount(n);
+        switch (kind[n]) {
+            case PROGRAM: {
+                List<PCommands> commands = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    int c = child(n, i);
+                    if (kind[c] == FUNCTION) {
+                        commands.add(new AFuncCommands((PFunction) built[c]));
+                    } else {
+                        commands.add(new AStatCommands(asStatement(c, built)));
+                    }
+                }
+                return new AProgramme(commands);
+            }
+            case FUNCTION: {
+                PArgumentOpt args = new ANoArgsArgumentOpt();
+                if (count > 1) {
+                    PArgumentTail tail = new AEndArgumentTail();
+                    for (int i = count - 2; i >= 1; i--) {
+                        int p = child(n, i);
+                        tail = new AContinueArgumentTail(new TComma(line(p), pos(p)),
+                            identifier(p), defaultValue(p, built), tail);
+                    }
+                    int first = child(n, 0);
+                    args = new AHasArgsArgumentOpt(
+                        new AArgumentArgument(identifier(first), defaultValue(first, built), tail));
+                }
+                return new ADefFuncFunction(identifier(n), args, asStatement(lastChild(n), built));
+            }
+            case PARAM:
+                return null; // assembled by the enclosing FUNCTION
+            case IF:
+                return new AIfStatementStatement(new TIf(line(n), pos(n)),
+                    asComparison(child(n, 0), built), asStatement(child(n, 1), built));
+            case WHILE:
+                return new AWhileStatementStatement(new TWhile(line(n), pos(n)),
+                    asComparison(child(n, 0), built), asStatement(child(n, 1), built));
+            case FOR:
+                return new AForStatementStatement(new TFor(line(n), pos(n)),
+                    identifier(child(n, 0)), new TIn(line(n), pos(n)),
+                    identifier(child(n, 1)), asStatement(child(n, 2), built));
+            case PRINT: {
+                PPrintTail tail = new AEndPrintTail();
+                for (int i = count - 1; i >= 1; i--) {
+                    tail = new AContinuePrintTail(new TComma(line(n), pos(n)),
+                        asExpression(child(n, i), built), tail);
+                }
+                return new APrintStatementStatement(new TPrint(line(n), pos(n)),
+                    new AItemsPrintItems(asExpression(child(n, 0), built), tail));
+            }
+            case RETURN:
+                return new AReturnStatementStatement(new TReturn(line(n), pos(n)),
+                    asExpression(child(n, 0), built));
+            case ASSIGN:
+                return new AAssignStatementStatement(identifier(n),
+                    new TAssignment(line(n), pos(n)), asExpression(child(n, 0), built));
+            case MINUS_ASSIGN:
+                return new AMineqStatementStatement(identifier(n),
+                    new TMinequal(line(n), pos(n)), asExpression(child(n, 0), built));
+            case PLUS_ASSIGN:
+                return new APluseqStatementStatement(identifier(n),
+                    new TPlusequal(line(n), pos(n)), asExpression(child(n, 0), built));
+            case MULT_ASSIGN:
+                return new AMulteqStatementStatement(identifier(n),
+                    new TMultequal(line(n), pos(n)), asExpression(child(n, 0), built));
+            case DIV_ASSIGN:
+                return new ADiveqStatementStatement(identifier(n),
+                    new TDivequal(line(n), pos(n)), asExpression(child(n, 0), built));
+            case ARRAY_ASSIGN:
+                return new AArrayStatementStatement(identifier(n), asExpression(child(n, 0), built),
+                    new TAssignment(line(n), pos(n)), asExpression(child(n, 1), built));
+            case ASSERT: {
+                PCommaExpressionOpt message = new ANoneCommaExpressionOpt();
+                if (count > 1) {
+                    message = new APresentCommaExpressionOpt(new TComma(line(n), pos(n)),
+                        asExpression(child(n, 1), built));
+                }
+                return new AAssertionStatementStatement(new TAssert(line(n), pos(n)),
+                    asExpression(child(n, 0), built), message);
+            }
+            case IMPORT: {
+                PImportListTail tail = new AEmptyImportListTail();
+                for (int i = count - 1; i >= 1; i--) {
+                    tail = new AContinueImportListTail(new TComma(line(n), pos(n)),
+                        (PImportSpec) built[child(n, i)], tail);
+                }
+                return new AImportStatementStatement(new TImport(line(n), pos(n)),
+                    new AImportsImportList((PImportSpec) built[child(n, 0)], tail));
+            }
+            case IMPORT_SPEC: {
+                PModulePathTail tail = new AEmptyModulePathTail();
+                for (int i = count - 1; i >= 1; i--) {
+                    int part = child(n, i);
+                    tail = new AContinueModulePathTail(new TDot(line(part), pos(part)), identifier(part), tail);
+                }
+                PModulePath path = new APathModulePath(identifier(child(n, 0)), tail);
+                if (token[n] < 0) {
+                    return new ASimpleImportImportSpec(path);
+                }
+                return new AImportAsImportSpec(path, new TAs(line(n), pos(n)), identifier(n));
+            }
+            case OR:
+                return new AComp2Comparison(asComparison(child(n, 0), built),
+                    new TLogicOr(line(n), pos(n)), asAfteror(child(n, 1), built));
+            case AND:
+                return new AAftorandAfteror(asAfteror(child(n, 0), built),
+                    new TLogicAnd(line(n), pos(n)), asAfterand(child(n, 1), built));
+            case NOT:
+                return new AAftnotAfterand(new TNot(line(n), pos(n)), (PAfternot) built[child(n, 0)]);
+            case TRUE:
+                return new ATrueAfternot(new TTrue(line(n), pos(n)));
+            case FALSE:
+                return new AFalseAfternot(new TFalse(line(n), pos(n)));
+            case LESS_EQUAL:
+                return new ALessequalAfternot(asExpression(child(n, 0), built),
+                    new TLessequal(line(n), pos(n)), asExpression(child(n, 1), built));
+            case GREATER_EQUAL:
+                return new AGreaterequalAfternot(asExpression(child(n, 0), built),
+                    new TGreaterequal(line(n), pos(n)), asExpression(child(n, 1), built));
+            case NOT_EQUAL:
+                return new ADifferentAfternot(asExpression(child(n, 0), built),
+                    new TNotEqual(line(n), pos(n)), asExpression(child(n, 1), built));
+            case EQUAL:
+                return new AEqualAfternot(asExpression(child(n, 0), built),
+                    new TEqualequal(line(n), pos(n)), asExpression(child(n, 1), built));
+            case LESS:
+                return new ALessAfternot(asExpression(child(n, 0), built),
+                    new TLess(line(n), pos(n)), asExpression(child(n, 1), built));
+            case GREATER:
+                return new AGreaterAfternot(asExpression(child(n, 0), built),
+                    new TGreater(line(n), pos(n)), asExpression(child(n, 1), built));
+            case ADD:
+            case SUB:
+                return inflateAdditive(n, built);
+            case MUL:
+                return new AMultMultiplication(asMultiplication(child(n, 0), built),
+                    new TMult(line(n), pos(n)), asPow(child(n, 1), built));
+            case DIV:
+                return new ADivMultiplication(asMultiplication(child(n, 0), built),
+                    new TDiv(line(n), pos(n)), asPow(child(n, 1), built));
+            case MOD:
+                return new AModMultiplication(asMultiplication(child(n, 0), built),
+                    new TMod(line(n), pos(n)), asPow(child(n, 1), built));
+            case POW:
+                return new APowPow(asPow(child(n, 0), built),
+                    new TPower(line(n), pos(n)), asValue(child(n, 1), built));
+            case MAX:
+                return new AMaxOnlyExpression(new TMax(line(n), pos(n)), maxArgs(n, built));
+            case MIN:
+                return new AMinOnlyExpression(new TMin(line(n), pos(n)), minArgs(n, built));
+            case INT:
+                return new AIntegerLiteralValuenode(new TInteger(text(n), line(n), pos(n)));
+            case DECIMAL:
+                return new ADecimalLiteralValuenode(new TDecimal(text(n), line(n), pos(n)));
+            case STRING:
+                if (text(n).startsWith("'")) {
+                    return new ASingleQuotesValuenode(new TStringSingleQuotes(text(n), line(n), pos(n)));
+                }
+                return new ADoubleQuotesValuenode(new TStringDoubleQuotes(text(n), line(n), pos(n)));
+            case NONE:
+                return new ANoneValueValuenode(new TNone(line(n), pos(n)));
+            case NAME:
+                return new AIdentifierValuenode(identifier(n));
+            case INDEX:
+                return new APinakasExpressionValue(identifier(n), asExpression(child(n, 0), built));
+            case CALL: {
+                if (count == 0) {
+                    return new ANoArgsFunctionCall(identifier(n),
+                        new TLparen(line(n), pos(n)), new TRparen(line(n), pos(n)));
+                }
+                PCallArgsTail tail = new AEndCallArgsTail();
+                for (int i = count - 1; i >= 1; i--) {
+                    tail = new AContinueCallArgsTail(new TComma(line(n), pos(n)),
+                        asExpression(child(n, i), built), tail);
+                }
+                return new AWithArgsFunctionCall(identifier(n), new TLparen(line(n), pos(n)),
+                    new AArgsCallArgs(asExpression(child(n, 0), built), tail), new TRparen(line(n), pos(n)));
+            }
+            case METHOD_CALL:
+                return new AIdDotFuncValuenode(identifier(n), (PFunctionCall) built[child(n, 0)]);
+            case LEN:
+                return new ALengthExpessionValue(new TLength(line(n), pos(n)), asExpression(child(n, 0), built));
+            case TYPE:
+                return new ATypeExpressionValue(new TType(line(n), pos(n)), asExpression(child(n, 0), built));
+            case OPEN:
+                return new AOpenExpressionValue(new TOpen(line(n), pos(n)), asExpression(child(n, 0), built));
+            case ASCII:
+                return new AAsciiExpressionValue(new TAscii(line(n), pos(n)), asExpression(child(n, 0), built));
+            case LIST: {
+                if (count == 0) {
+                    return new ABracketsExpressionValue(new AEmptyExpressionListOpt());
+                }
+                PExprListTail tail = new AEndExprListTail();
+                for (int i = count - 1; i >= 1; i--) {
+                    tail = new AContinueExprListTail(new TComma(line(n), pos(n)),
+                        asExpression(child(n, i), built), tail);
+                }
+                return new ABracketsExpressionValue(new AHasItemsExpressionListOpt(
+                    new AExprListExpressionList(asExpression(child(n, 0), built), tail)));
+            }
+            default:
+                throw new IllegalStateException("Unknown compact node kind " + kind[n]);
+        }
+    }
+
+    // ADD/SUB whose right side is max(...)/min(...) map to the dedicated
+    // add_max/sub_min/... alternatives of the grammar
+    private Node inflateAdditive(int n, Node[] built)
+    {
+        boolean add = kind[n] == ADD;
+        int right = child(n, 1);
+        PExpression left = asExpression(child(n, 0), built);
+        if (kind[right] == MAX) {
+            TMax max = new TMax(line(right), pos(right));
+            return add ? new AAddMaxExpression(left, new TPlus(line(n), pos(n)), max, maxArgs(right, built))
+                       : new ASubMaxExpression(left, new TMinus(line(n), pos(n)), max, maxArgs(right, built));
+        }
+        if (kind[right] == MIN) {
+            TMin min = new TMin(line(right), pos(right));
+            return add ? new AAddMinExpression(left, new TPlus(line(n), pos(n)), min, minArgs(right, built))
+                       : new ASubMinExpression(left, new TMinus(line(n), pos(n)), min, minArgs(right, built));
+        }
+        return add ? new AAddMultExpression(left, new TPlus(line(n), pos(n)), asMultiplication(right, built))
+                   : new ASubMultExpression(left, new TMinus(line(n), pos(n)), asMultiplication(right, built));
+    }
+
+    private PMaxArgs maxArgs(int n, Node[] built)
+    {
+        PMaxArgsTail tail = new AEndMaxArgsTail();
+        for (int i = childCount(n) - 1; i >= 1; i--) {
+            tail = new AContinueMaxArgsTail(new TComma(line(n), pos(n)), asValue(child(n, i), built), tail);
+        }
+        return new AMaxArgsMaxArgs(asValue(child(n, 0), built), tail);
+    }
+
+    private PMinArgs minArgs(int n, Node[] built)
+    {
+        PMinArgsTail tail = new AEndMinArgsTail();
+        for (int i = childCount(n) - 1; i >= 1; i--) {
+            tail = new AContinueMinArgsTail(new TComma(line(n), pos(n)), asValue(child(n, i), built), tail);
+        }
+        return new AMinArgsMinArgs(asValue(child(n, 0), built), tail);
+    }
+
+    private TIdentifier identifier(int n)
+    {
+        return new TIdentifier(text(n), line(n), pos(n));
+    }
+
+    private PAssignValueOpt defaultValue(int param, Node[] built)
+    {
+        if (childCount(param) == 0) {
+            return new ANoValueAssignValueOpt();
+        }
+        return new AHasValueAssignValueOpt(new TAssignment(line(param), pos(param)),
+            (PValuenode) built[child(param, 0)]);
+    }
+
+    // ---- coercions between grammar levels (re-adding the chain wrappers) ----
+
+    private PStatement asStatement(int n, Node[] built)
+    {
+        Node node = built[n];
+        if (node instanceof PFunctionCall) {
+            return new AFunctionCallStatementStatement((PFunctionCall) node);
+        }
+        return (PStatement) node;
+    }
+
+    private PComparison asComparison(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PComparison ? (PComparison) node : new ACompComparison(asAfteror(n, built));
+    }
+
+    private PAfteror asAfteror(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PAfteror ? (PAfteror) node : new AAftorAfteror(asAfterand(n, built));
+    }
+
+    private PAfterand asAfterand(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PAfterand ? (PAfterand) node : new AAftandAfterand((PAfternot) node);
+    }
+
+    private PExpression asExpression(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PExpression ? (PExpression) node : new ABaseMultExpression(asMultiplication(n, built));
+    }
+
+    private PMultiplication asMultiplication(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PMultiplication ? (PMultiplication) node : new ABasePowMultiplication(asPow(n, built));
+    }
+
+    private PPow asPow(int n, Node[] built)
+    {
+        Node node = built[n];
+        return node instanceof PPow ? (PPow) node : new AValuePow(asValue(n, built));
+    }
+
+    private PValue asValue(int n, Node[] built)
+    {
+        Node node = built[n];
+        if (node instanceof PValue) {
+            return (PValue) node;
+        }
+        if (node instanceof PValuenode) {
+            return new AValueSubsetValue((PValuenode) node);
+        }
+        if (node instanceof PFunctionCall) {
+            return new AFuncCallExpressionValue((PFunctionCall) node);
+        }
+        // A lower-precedence expression in a value position was parenthesized in the source
+        PExpression inner = node instanceof PExpression ? (PExpression) node
+            : new ABaseMultExpression(node instanceof PMultiplication ? (PMultiplication) node
+                : new ABasePowMultiplication((PPow) node));
+        return new AParenthesisExpressionValue(new TLparen(line(n), pos(n)), inner, new TRparen(line(n), pos(n)));
+    }
+}
@@ -0,0 +1,372 @@
+import java.util.*;
+import minipython.analysis.*;
+import minipython.node.*;
+
+/*
+ * Converts a SableCC tree (Start) into a CompactAST.
+ *
+ * Nodes are emitted on the way out of each SableCC node, so children are
+ * always added before their parent. Completed node indices wait on an int
+ * stack; entering a node that becomes a compact node pushes a mark, and on
+ * the way out everything above the mark becomes its children.
+ *
+ * Chain productions (AValueSubsetValue, AValuePow, ABasePowMultiplication,
+ * ABaseMultExpression, ACompComparison, ...) and list tails have no in/out
+ * handlers here, so they simply disappear.
+ *
+ * Example:
+ *   CompactAST compact = CompactASTBuilder.build(ast);
+ */
+public class CompactASTBuilder extends IterativeDepthFirstAdapter
+{
+    private CompactAST compact = new CompactAST();
+
+    // Finished compact nodes waiting for their parent
+    private int[] stack = new int[64];
+    private int sp = 0;
+
+    // Stack heights at the time each open node was entered
+    private int[] marks = new int[64];
+    private int mp = 0;
+
+    public static CompactAST build(Start ast)
+    {
+        CompactASTBuilder builder = new CompactASTBuilder();
+        ast.apply(builder);
+        builder.compact.trim();
+        return builder.compact;
+    }
+
+    public CompactAST getResult()
+    {
+        return compact;
+    }
+
+    // ========== STACK HELPERS ==========
+
+    private void push(int node)
+    {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = node;
+    }
+
+    private int pop()
+    {
+        return stack[--sp];
+    }
+
+    private void open()
+    {
+        if (mp == marks.length) {
+            marks = Arrays.copyOf(marks, mp * 2);
+        }
+        marks[mp++] = sp;
+    }
+
+    // Closes the innermost open node: its children are everything pushed since open()
+    private void close(int kind, Token tok)
+    {
+        int mark = marks[--mp];
+        int node = compact.addNode(kind, compact.addToken(tok), stack, mark, sp);
+        sp = mark;
+        push(node);
+    }
+
+    // Adds a node without children
+    private void leaf(int kind, Token tok)
+    {
+        push(compact.addNode(kind, compact.addToken(tok), stack, 0, 0));
+    }
+
+    // ========== PROGRAM AND FUNCTIONS ==========
+
+    public void inAProgramme(AProgramme node) { open(); }
+
+    public void outAProgramme(AProgramme node) { close(CompactAST.PROGRAM, null); }
+
+    public void inADefFuncFunction(ADefFuncFunction node) { open(); }
+
+    // Stack above the mark holds [default values..., body]. The defaults are
+    // regrouped under one PARAM node per parameter.
+    // Example: "def f(a, b=5): return a" → FUNCTION f (PARAM a, PARAM b (INT 5), RETURN ...)
+    public void outADefFuncFunction(ADefFuncFunction node)
+    {
+        int mark = marks[mp - 1];
+        int body = pop();
+        int[] defaults = Arrays.copyOfRange(stack, mark, sp);
+        sp = mark;
+
+        int nextDefault = 0;
+        if (node.getArgs() instanceof AHasArgsArgumentOpt) {
+            AArgumentArgument first = (AArgumentArgument) ((AHasArgsArgumentOpt) node.getArgs()).getArg();
+            nextDefault = param(first.getParam(), first.getDefault(), defaults, nextDefault);
+            PArgumentTail tail = first.getRest();
+            while (tail instanceof AContinueArgumentTail) {
+                AContinueArgumentTail cont = (AContinueArgumentTail) tail;
+                nextDefault = param(cont.getNextParam(), cont.getNextDefault(), defaults, nextDefault);
+                tail = cont.getMore();
+            }
+        }
+        push(body);
+        close(CompactAST.FUNCTION, node.getName());
+    }
+
+    private int param(TIdentifier name, PAssignValueOpt value, int[] defaults, int nextDefault)
+    {
+        if (value instanceof AHasValueAssignValueOpt) {
+            push(compact.addNode(CompactAST.PARAM, compact.addToken(name), defaults, nextDefault, nextDefault + 1));
+            return nextDefault + 1;
+        }
+        leaf(CompactAST.PARAM, name);
+        return nextDefault;
+    }
+
+    // ========== STATEMENTS ==========
+
+    public void inAIfStatementStatement(AIfStatementStatement node) { open(); }
+
+    public void outAIfStatementStatement(AIfStatementStatement node) { close(CompactAST.IF, node.getIfTok()); }
+
+    public void inAWhileStatementStatement(AWhileStatementStatement node) { open(); }
+
+    public void outAWhileStatementStatement(AWhileStatementStatement node) { close(CompactAST.WHILE, node.getWhileTok()); }
+
+    public void inAForStatementStatement(AForStatementStatement node) { open(); }
+
+    // The loop variables are tokens, not subtrees, so they are added as NAME nodes in front of the body
+    public void outAForStatementStatement(AForStatementStatement node)
+    {
+        int body = pop();
+        leaf(CompactAST.NAME, node.getVar());
+        leaf(CompactAST.NAME, node.getIter());
+        push(body);
+        close(CompactAST.FOR, node.getForTok());
+    }
+
+    public void inAPrintStatementStatement(APrintStatementStatement node) { open(); }
+
+    public void outAPrintStatementStatement(APrintStatementStatement node) { close(CompactAST.PRINT, node.getPrintTok()); }
+
+    public void inAReturnStatementStatement(AReturnStatementStatement node) { open(); }
+
+    public void outAReturnStatementStatement(AReturnStatementStatement node) { close(CompactAST.RETURN, node.getReturnTok()); }
+
+    public void inAAssignStatementStatement(AAssignStatementStatement node) { open(); }
+
+    public void outAAssignStatementStatement(AAssignStatementStatement node) { close(CompactAST.ASSIGN, node.getId()); }
+
+    public void inAMineqStatementStatement(AMineqStatementStatement node) { open(); }
+
+    public void outAMineqStatementStatement(AMineqStatementStatement node) { close(CompactAST.MINUS_ASSIGN, node.getId()); }
+
+    public void inAPluseqStatementStatement(APluseqStatementStatement node) { open(); }
+
+    public void outAPluseqStatementStatement(APluseqStatementStatement node) { close(CompactAST.PLUS_ASSIGN, node.getId()); }
+
+    public void inAMulteqStatementStatement(AMulteqStatementStatement node) { open(); }
+
+    public void outAMulteqStatementStatement(AMulteqStatementStatement node) { close(CompactAST.MULT_ASSIGN, node.getId()); }
+
+    public void inADiveqStatementStatement(ADiveqStatementStatement node) { open(); }
+
+    public void outADiveqStatementStatement(ADiveqStatementStatement node) { close(CompactAST.DIV_ASSIGN, node.getId()); }
+
+    public void inAArrayStatementStatement(AArrayStatementStatement node) { open(); }
+
+    public void outAArrayStatementStatement(AArrayStatementStatement node) { close(CompactAST.ARRAY_ASSIGN, node.getId()); }
+
+    public void inAAssertionStatementStatement(AAssertionStatementStatement node) { open(); }
+
+    public void outAAssertionStatementStatement(AAssertionStatementStatement node) { close(CompactAST.ASSERT, node.getAssertTok()); }
+
+    public void inAImportStatementStatement(AImportStatementStatement node) { open(); }
+
+    public void outAImportStatementStatement(AImportStatementStatement node) { close(CompactAST.IMPORT, node.getImportTok()); }
+
+    public void inASimpleImportImportSpec(ASimpleImportImportSpec node) { open(); }
+
+    public void outASimpleImportImportSpec(ASimpleImportImportSpec node) { close(CompactAST.IMPORT_SPEC, null); }
+
+    public void inAImportAsImportSpec(AImportAsImportSpec node) { open(); }
+
+    public void outAImportAsImportSpec(AImportAsImportSpec node) { close(CompactAST.IMPORT_SPEC, node.getAlias()); }
+
+    // Example: "math.div" → NAME math, NAME div
+    public void outAPathModulePath(APathModulePath node)
+    {
+        leaf(CompactAST.NAME, node.getFirst());
+        PModulePathTail tail = node.getRest();
+        while (tail instanceof AContinueModulePathTail) {
+            AContinueModulePathTail cont = (AContinueModulePathTail) tail;
+            leaf(CompactAST.NAME, cont.getNext());
+            tail = cont.getMore();
+        }
+    }
+
+    // ========== CONDITIONS ==========
+
+    public void inAComp2Comparison(AComp2Comparison node) { open(); }
+
+    public void outAComp2Comparison(AComp2Comparison node) { close(CompactAST.OR, node.getOp()); }
+
+    public void inAAftorandAfteror(AAftorandAfteror node) { open(); }
+
+    public void outAAftorandAfteror(AAftorandAfteror node) { close(CompactAST.AND, node.getOp()); }
+
+    public void inAAftnotAfterand(AAftnotAfterand node) { open(); }
+
+    public void outAAftnotAfterand(AAftnotAfterand node) { close(CompactAST.NOT, node.getOp()); }
+
+    public void outATrueAfternot(ATrueAfternot node) { leaf(CompactAST.TRUE, node.getVal()); }
+
+    public void outAFalseAfternot(AFalseAfternot node) { leaf(CompactAST.FALSE, node.getVal()); }
+
+    public void inALessequalAfternot(ALessequalAfternot node) { open(); }
+
+    public void outALessequalAfternot(ALessequalAfternot node) { close(CompactAST.LESS_EQUAL, node.getOp()); }
+
+    public void inAGreaterequalAfternot(AGreaterequalAfternot node) { open(); }
+
+    public void outAGreaterequalAfternot(AGreaterequalAfternot node) { close(CompactAST.GREATER_EQUAL, node.getOp()); }
+
+    public void inADifferentAfternot(ADifferentAfternot node) { open(); }
+
+    public void outADifferentAfternot(ADifferentAfternot node) { close(CompactAST.NOT_EQUAL, node.getOp()); }
+
+    public void inAEqualAfternot(AEqualAfternot node) { open(); }
+
+    public void outAEqualAfternot(AEqualAfternot node) { close(CompactAST.EQUAL, node.getOp()); }
+
+    public void inALessAfternot(ALessAfternot node) { open(); }
+
+    public void outALessAfternot(ALessAfternot node) { close(CompactAST.LESS, node.getOp()); }
+
+    public void inAGreaterAfternot(AGreaterAfternot node) { open(); }
+
+    public void outAGreaterAfternot(AGreaterAfternot node) { close(CompactAST.GREATER, node.getOp()); }
+
+    // ========== EXPRESSIONS ==========
+
+    public void inAAddMultExpression(AAddMultExpression node) { open(); }
+
+    public void outAAddMultExpression(AAddMultExpression node) { close(CompactAST.ADD, node.getOp()); }
+
+    public void inASubMultExpression(ASubMultExpression node) { open(); }
+
+    public void outASubMultExpression(ASubMultExpression node) { close(CompactAST.SUB, node.getOp()); }
+
+    // "a + max(x, y)": stack above the mark is [a, x, y] → ADD(a, MAX(x, y))
+    public void inAAddMaxExpression(AAddMaxExpression node) { open(); }
+
+    public void outAAddMaxExpression(AAddMaxExpression node) { closeWithBuiltin(CompactAST.ADD, node.getOp(), CompactAST.MAX, node.getMaxTok()); }
+
+    public void inASubMaxExpression(ASubMaxExpression node) { open(); }
+
+    public void outASubMaxExpression(ASubMaxExpression node) { closeWithBuiltin(CompactAST.SUB, node.getOp(), CompactAST.MAX, node.getMaxTok()); }
+
+    public void inAAddMinExpression(AAddMinExpression node) { open(); }
+
+    public void outAAddMinExpression(AAddMinExpression node) { closeWithBuiltin(CompactAST.ADD, node.getOp(), CompactAST.MIN, node.getMinTok()); }
+
+    public void inASubMinExpression(ASubMinExpression node) { open(); }
+
+    public void outASubMinExpression(ASubMinExpression node) { closeWithBuiltin(CompactAST.SUB, node.getOp(), CompactAST.MIN, node.getMinTok()); }
+
+    private void closeWithBuiltin(int kind, Token op, int builtinKind, Token builtinTok)
+    {
+        int mark = marks[mp - 1];
+        // everything after the left operand belongs to max(...)/min(...)
+        marks[mp - 1] = mark + 1;
+        close(builtinKind, builtinTok);
+        open();
+        marks[mp - 1] = mark;
+        close(kind, op);
+    }
+
+    public void inAMaxOnlyExpression(AMaxOnlyExpression node) { open(); }
+
+    public void outAMaxOnlyExpression(AMaxOnlyExpression node) { close(CompactAST.MAX, node.getMaxTok()); }
+
+    public void inAMinOnlyExpression(AMinOnlyExpression node) { open(); }
+
+    public void outAMinOnlyExpression(AMinOnlyExpression node) { close(CompactAST.MIN, node.getMinTok()); }
+
+    public void inAMultMultiplication(AMultMultiplication node) { open(); }
+
+    public void outAMultMultiplication(AMultMultiplication node) { close(CompactAST.MUL, node.getOp()); }
+
+    public void inADivMultiplication(ADivMultiplication node) { open(); }
+
+    public void outADivMultiplication(ADivMultiplication node) { close(CompactAST.DIV, node.getOp()); }
+
+    public void inAModMultiplication(AModMultiplication node) { open(); }
+
+    public void outAModMultiplication(AModMultiplication node) { close(CompactAST.MOD, node.getOp()); }
+
+    public void inAPowPow(APowPow node) { open(); }
+
+    public void outAPowPow(APowPow node) { close(CompactAST.POW, node.getOp()); }
+
+    // ========== VALUES ==========
+
+    public void inAPinakasExpressionValue(APinakasExpressionValue node) { open(); }
+
+    public void outAPinakasExpressionValue(APinakasExpressionValue node) { close(CompactAST.INDEX, node.getId()); }
+
+    public void inALengthExpessionValue(ALengthExpessionValue node) { open(); }
+
+    public void outALengthExpessionValue(ALengthExpessionValue node) { close(CompactAST.LEN, node.getLenTok()); }
+
+    public void inATypeExpressionValue(ATypeExpressionValue node) { open(); }
+
+    public void outATypeExpressionValue(ATypeExpressionValue node) { close(CompactAST.TYPE, node.getTypeTok()); }
+
+    public void inAOpenExpressionValue(AOpenExpressionValue node) { open(); }
+
+    public void outAOpenExpressionValue(AOpenExpressionValue node) { close(CompactAST.OPEN, node.getOpenTok()); }
+
+    public void inAAsciiExpressionValue(AAsciiExpressionValue node) { open(); }
+
+    public void outAAsciiExpressionValue(AAsciiExpressionValue node) { close(CompactAST.ASCII, node.getAsciiTok()); }
+
+    public void inABracketsExpressionValue(ABracketsExpressionValue node) { open(); }
+
+    public void outABracketsExpressionValue(ABracketsExpressionValue node) { close(CompactAST.LIST, null); }
+
+    public void inANoArgsFunctionCall(ANoArgsFunctionCall node) { open(); }
+
+    public void outANoArgsFunctionCall(ANoArgsFunctionCall node) { close(CompactAST.CALL, node.getName()); }
+
+    public void inAWithArgsFunctionCall(AWithArgsFunctionCall node) { open(); }
+
+    public void outAWithArgsFunctionCall(AWithArgsFunctionCall node) { close(CompactAST.CALL, node.getName()); }
+
+    public void inAIdDotFuncValuenode(AIdDotFuncValuenode node) { open(); }
+
+    public void outAIdDotFuncValuenode(AIdDotFuncValuenode node) { close(CompactAST.METHOD_CALL, node.getObj()); }
+
+    public void outAIdentifierValuenode(AIdentifierValuenode node) { leaf(CompactAST.NAME, node.getName()); }
+
+    public void outADoubleQuotesValuenode(ADoubleQuotesValuenode node) { leaf(CompactAST.STRING, node.getVal()); }
+
+    public void outASingleQuotesValuenode(ASingleQuotesValuenode node) { leaf(CompactAST.STRING, node.getVal()); }
+
+    public void outAIntegerLiteralValuenode(AIntegerLiteralValuenode node) { leaf(CompactAST.INT, node.getVal()); }
+
+    public void outADecimalLiteralValuenode(ADecimalLiteralValuenode node) { leaf(CompactAST.DECIMAL, node.getVal()); }
+
+    public void outANoneValueValuenode(ANoneValueValuenode node) { leaf(CompactAST.NONE, node.getVal()); }
+
+    // The primary production is not reachable from the parser, but map it anyway
+    public void outAIntPrimary(AIntPrimary node) { leaf(CompactAST.INT, node.getVal()); }
+
+    public void outADecPrimary(ADecPrimary node) { leaf(CompactAST.DECIMAL, node.getVal()); }
+
+    public void outAIdPrimary(AIdPrimary node) { leaf(CompactAST.NAME, node.getName()); }
+
+    public void outAStrPrimary(AStrPrimary node) { leaf(CompactAST.STRING, node.getVal()); }
+
+    public void outAStrSPrimary(AStrSPrimary node) { leaf(CompactAST.STRING, node.getVal()); }
+}
@@ -0,0 +1,69 @@
+import java.io.*;
+import java.util.*;
+import java.nio.file.*;
+import minipython.analysis.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+import minipython.parser.Parser;
+
+/*
+ * Builds the compact AST for a file, prints it and compares its size with
+ * the SableCC tree. With -check the three semantic passes are run on the
+ * tree rebuilt from the compact form.
+ *
+ * Usage: java CompactASTTest <filename.py> [-check]
+ */
+public class CompactASTTest
+{
+  public static void main(String[] args)
+  {
+    try
+    {
+      Parser parser =
+        new Parser(
+        new Lexer(
+        new PushbackReader(
+        new FileReader(args[0].toString()), 1024)));
+
+      Start ast = parser.parse();
+      CompactAST compact = CompactASTBuilder.build(ast);
+
+      System.out.print(compact.dump());
+
+      // Count objects in the SableCC tree
+      final int[] counts = new int[2];
+      final long[] textBytes = new long[1];
+      ast.apply(new DepthFirstAdapter() {
+        public void defaultIn(Node node) { counts[0]++; }
+        public void defaultCase(Node node) {
+          counts[1]++;
+          textBytes[0] += 40 + ((Token) node).getText().length();
+        }
+      });
+      // ~24 bytes per node object, ~32 per token object plus its text
+      long sableBytes = counts[0] * 24L + counts[1] * 32L + textBytes[0];
+      int lines = Files.readAllLines(Paths.get(args[0])).size();
+
+      System.out.println();
+      System.out.println("SableCC tree : " + counts[0] + " nodes, " + counts[1] + " tokens, ~"
+                         + sableBytes + " bytes (" + sableBytes / Math.max(1, lines) + " per line)");
+      System.out.println("Compact AST  : " + compact.size() + " nodes, ~"
+                         + compact.estimatedBytes() + " bytes ("
+                         + compact.estimatedBytes() / Math.max(1, lines) + " per line)");
+
+      if (args.length > 1 && args[1].equals("-check"))
+      {
+        Start rebuilt = compact.toStart();
+        List<String> sourceLines = Files.readAllLines(Paths.get(args[0]));
+        Hashtable<String, Object> symtable = new Hashtable<>();
+        rebuilt.apply(new DeclarationVisitor(symtable));
+        rebuilt.apply(new VariableDeclarationVisitor(symtable));
+        rebuilt.apply(new TypeCheckerVisitor(symtable, sourceLines));
+      }
+    }
+    catch (Exception e)
+    {
+      System.err.println(e);
+    }
+  }
+}
@@ -0,0 +1,394 @@
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Control-flow graphs of a program: one for the top-level code and one for
+ * every function.
+ *
+ * The grammar does not see indentation: a def, if, while or for takes a
+ * single statement as its body, and the lines indented below it become
+ * top-level commands of their own. The real blocks are recovered here from
+ * the column of each statement's first token, as Python reads them:
+ *
+ *     def fib(n):            the def's AST body is "a = 0"; "b = 1" and the
+ *         a = 0              while loop are top-level commands, but they are
+ *         b = 1              indented under the def, so they belong to fib
+ *         while a < n:
+ *             print a        AST body of the while
+ *             a = b          indented under the while: second statement of its body
+ *
+ * Every statement becomes a block. An if, while or for is a header block
+ * whose condition is evaluated there; a for loop also gets a BIND block at
+ * the start of its body, where the loop variable is assigned. A def is a
+ * block of the enclosing scope (its default values are evaluated there) and
+ * opens a scope of its own.
+ *
+ * Built once per program and shared through the symbol table, see of().
+ */
+public class ControlFlowGraph
+{
+    public enum Kind { ENTRY, EXIT, STATEMENT, BIND, DEF }
+
+    public static class Block {
+        public final Kind kind;
+        public final Scope scope;
+        public final Node node;             // the PStatement or ADefFuncFunction, null for ENTRY/EXIT
+        public final int index;             // position in scope.blocks
+        public String defines;              // variable assigned here. Example: "x = 5" → "x", BIND of "for a in b" → "a"
+        public boolean reachable;
+        public final List<Block> successors = new ArrayList<>();
+        public final List<Block> predecessors = new ArrayList<>();
+
+        Block(Kind kind, Scope scope, Node node) {
+            this.kind = kind;
+            this.scope = scope;
+            this.node = node;
+            this.index = scope.blocks.size();
+            scope.blocks.add(this);
+        }
+    }
+
+    public static class Scope {
+        public final ADefFuncFunction function;   // null for the top-level code
+        public final Scope parent;
+        public final Block defBlock;               // the def in the parent scope, null for the top-level code
+        public final List<Scope> children = new ArrayList<>();
+        public final List<Block> blocks = new ArrayList<>();
+        public Block entry;
+        public Block exit;
+        public boolean fallsThrough;               // the end of the body is reachable without a return
+
+        // Parameters first, then assigned variables in order of appearance. Example: def f(a, b): c = a → [a, b, c]
+        public final List<String> variables = new ArrayList<>();
+        private final Map<String, Integer> variableIndex = new HashMap<>();
+        public int parameterCount;
+
+        Scope(ADefFuncFunction function, Scope parent, Block defBlock) {
+            this.function = function;
+            this.parent = parent;
+            this.defBlock = defBlock;
+        }
+
+        public String getName() {
+            return function == null ? "global" : function.getName().getText().trim();
+        }
+
+        // -1 when the variable is never assigned in this scope
+        public int indexOf(String variable) {
+            return variableIndex.getOrDefault(variable, -1);
+        }
+
+        void declare(String variable) {
+            if (!variableIndex.containsKey(variable)) {
+                variableIndex.put(variable, variables.size());
+                variables.add(variable);
+            }
+        }
+    }
+
+    // A statement or def with the statements of its block, as indentation nests them
+    private static class Item {
+        final Node node;
+        int indent;
+        final List<Item> body = new ArrayList<>();
+
+        Item(Node node, int indent) {
+            this.node = node;
+            this.indent = indent;
+        }
+    }
+
+    private final Start ast;
+    private final List<Scope> scopes = new ArrayList<>();
+    private final Map<ADefFuncFunction, Scope> functionScopes = new IdentityHashMap<>();
+    private final Map<Node, Block> blocks = new IdentityHashMap<>();
+    private Scope topLevel;
+
+    // The graph of a program, built on first use and kept in the symbol table
+    public static ControlFlowGraph of(Start ast, Hashtable<String, Object> symtable)
+    {
+        ControlFlowGraph cfg = (ControlFlowGraph) symtable.get("cfg");
+        if (cfg == null || cfg.ast != ast) {
+            cfg = build(ast);
+            symtable.put("cfg", cfg);
+        }
+        return cfg;
+    }
+
+    private ControlFlowGraph(Start ast)
+    {
+        this.ast = ast;
+    }
+
+    public static ControlFlowGraph build(Start ast)
+    {
+        ControlFlowGraph cfg = new ControlFlowGraph(ast);
+        cfg.topLevel = cfg.buildScope(null, null, null, nest(((AProgramme) ast.getPProgramme()).getCommands()));
+        return cfg;
+    }
+
+    // ========== QUERIES ==========
+
+    public Scope getTopLevel()
+    {
+        return topLevel;
+    }
+
+    // Parents before children
+    public List<Scope> getScopes()
+    {
+        return scopes;
+    }
+
+    public Scope getScope(ADefFuncFunction function)
+    {
+        return functionScopes.get(function);
+    }
+
+    // The block a node is evaluated in. Example: the "x" of "print x + 1" → the print statement's block
+    public Block blockOf(Node node)
+    {
+        for (Node n = node; n != null; n = n.parent()) {
+            Block block = blocks.get(n);
+            if (block != null) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    // ========== BLOCK STRUCTURE ==========
+
+    // Nests the commands by indentation. AST bodies always stay inside their header.
+    private static List<Item> nest(List<PCommands> commands)
+    {
+        Item root = new Item(null, 0);
+        Stack<Item> open = new Stack<>();
+        open.push(root);
+        for (PCommands command : commands) {
+            Node node;
+            if (command instanceof AFuncCommands) {
+                node = ((AFuncCommands) command).getFunc();
+            } else if (command instanceof AStatCommands) {
+                node = ((AStatCommands) command).getStmt();
+            } else {
+                continue;       // skipped by RecoveringParser
+            }
+
+            Item header = null;
+            while (node != null) {
+                Item item = new Item(node, indentOf(node));
+                if (header != null) {
+                    item.indent = Math.max(item.indent, header.indent + 1);
+                }
+                while (open.size() > 1 && open.peek().indent >= item.indent) {
+                    open.pop();
+                }
+                open.peek().body.add(item);
+
+                node = astBody(node);
+                if (node != null) {
+                    open.push(item);
+                    header = item;
+                }
+            }
+        }
+        return root.body;
+    }
+
+    private static Node astBody(Node node)
+    {
+        if (node instanceof ADefFuncFunction) {
+            return ((ADefFuncFunction) node).getBody();
+        } else if (node instanceof AIfStatementStatement) {
+            return ((AIfStatementStatement) node).getThen();
+        } else if (node instanceof AWhileStatementStatement) {
+            return ((AWhileStatementStatement) node).getBody();
+        } else if (node instanceof AForStatementStatement) {
+            return ((AForStatementStatement) node).getBody();
+        }
+        return null;
+    }
+
+    // Column of the first token. The def keyword is not in the AST: "def " comes right before the name.
+    private static int indentOf(Node node)
+    {
+        if (node instanceof ADefFuncFunction) {
+            return Math.max(1, ((ADefFuncFunction) node).getName().getPos() - 4);
+        }
+        Token first = firstToken(node);
+        return first == null ? 1 : first.getPos();
+    }
+
+    // The first token of a statement, or the name of a def. Example: "x = 5" → x
+    static Token firstToken(Node node)
+    {
+        Token first = null;
+        if (node instanceof ADefFuncFunction) {
+            first = ((ADefFuncFunction) node).getName();
+        } else if (node instanceof AIfStatementStatement) {
+            first = ((AIfStatementStatement) node).getIfTok();
+        } else if (node instanceof AWhileStatementStatement) {
+            first = ((AWhileStatementStatement) node).getWhileTok();
+        } else if (node instanceof AForStatementStatement) {
+            first = ((AForStatementStatement) node).getForTok();
+        } else if (node instanceof APrintStatementStatement) {
+            first = ((APrintStatementStatement) node).getPrintTok();
+        } else if (node instanceof AReturnStatementStatement) {
+            first = ((AReturnStatementStatement) node).getReturnTok();
+        } else if (node instanceof AAssignStatementStatement) {
+            first = ((AAssignStatementStatement) node).getId();
+        } else if (node instanceof AMineqStatementStatement) {
+            first = ((AMineqStatementStatement) node).getId();
+        } else if (node instanceof APluseqStatementStatement) {
+            first = ((APluseqStatementStatement) node).getId();
+        } else if (node instanceof AMulteqStatementStatement) {
+            first = ((AMulteqStatementStatement) node).getId();
+        } else if (node instanceof ADiveqStatementStatement) {
+            first = ((ADiveqStatementStatement) node).getId();
+        } else if (node instanceof AArrayStatementStatement) {
+            first = ((AArrayStatementStatement) node).getId();
+        } else if (node instanceof AAssertionStatementStatement) {
+            first = ((AAssertionStatementStatement) node).getAssertTok();
+        } else if (node instanceof AImportStatementStatement) {
+            first = ((AImportStatementStatement) node).getImportTok();
+        } else if (node instanceof AFunctionCallStatementStatement) {
+            PFunctionCall call = ((AFunctionCallStatementStatement) node).getCall();
+            first = call instanceof ANoArgsFunctionCall ? ((ANoArgsFunctionCall) call).getName()
+                                                        : ((AWithArgsFunctionCall) call).getName();
+        }
+        return first;
+    }
+
+    // ========== GRAPH ==========
+
+    private Scope buildScope(ADefFuncFunction function, Scope parent, Block defBlock, List<Item> body)
+    {
+        Scope scope = new Scope(function, parent, defBlock);
+        scopes.add(scope);
+        if (parent != null) {
+            parent.children.add(scope);
+        }
+        if (function != null) {
+            functionScopes.put(function, scope);
+            for (String param : parameters(function)) {
+                scope.declare(param);
+            }
+            scope.parameterCount = scope.variables.size();
+        }
+
+        scope.entry = new Block(Kind.ENTRY, scope, null);
+        scope.exit = new Block(Kind.EXIT, scope, null);
+        List<Block> pending = new ArrayList<>();
+        pending.add(scope.entry);
+        pending = buildBody(scope, body, pending);
+        link(pending, scope.exit);
+
+        markReachable(scope.entry);
+        for (Block block : pending) {
+            scope.fallsThrough |= block.reachable;
+        }
+        return scope;
+    }
+
+    // Adds the blocks of a statement list. pending: the blocks that continue with the
+    // next statement; returns the ones that continue after the list.
+    private List<Block> buildBody(Scope scope, List<Item> body, List<Block> pending)
+    {
+        for (Item item : body) {
+            Node node = item.node;
+            if (node instanceof ADefFuncFunction) {
+                Block def = block(Kind.DEF, scope, node);
+                link(pending, def);
+                buildScope((ADefFuncFunction) node, scope, def, item.body);
+                pending = single(def);
+            } else if (node instanceof AIfStatementStatement) {
+                Block header = block(Kind.STATEMENT, scope, node);
+                link(pending, header);
+                pending = new ArrayList<>(buildBody(scope, item.body, single(header)));
+                pending.add(header);
+            } else if (node instanceof AWhileStatementStatement) {
+                Block header = block(Kind.STATEMENT, scope, node);
+                link(pending, header);
+                link(buildBody(scope, item.body, single(header)), header);
+                pending = single(header);
+            } else if (node instanceof AForStatementStatement) {
+                Block header = block(Kind.STATEMENT, scope, node);
+                link(pending, header);
+                Block bind = new Block(Kind.BIND, scope, node);
+                bind.defines = ((AForStatementStatement) node).getVar().getText().trim();
+                scope.declare(bind.defines);
+                link(single(header), bind);
+                link(buildBody(scope, item.body, single(bind)), header);
+                pending = single(header);
+            } else if (node instanceof AReturnStatementStatement) {
+                Block ret = block(Kind.STATEMENT, scope, node);
+                link(pending, ret);
+                link(single(ret), scope.exit);
+                pending = new ArrayList<>();
+            } else {
+                Block statement = block(Kind.STATEMENT, scope, node);
+                if (node instanceof AAssignStatementStatement) {
+                    statement.defines = ((AAssignStatementStatement) node).getId().getText().trim();
+                    scope.declare(statement.defines);
+                }
+                link(pending, statement);
+                pending = single(statement);
+            }
+        }
+        return pending;
+    }
+
+    private Block block(Kind kind, Scope scope, Node node)
+    {
+        Block block = new Block(kind, scope, node);
+        blocks.put(node, block);
+        return block;
+    }
+
+    private static List<Block> single(Block block)
+    {
+        List<Block> list = new ArrayList<>();
+        list.add(block);
+        return list;
+    }
+
+    private static void link(List<Block> from, Block to)
+    {
+        for (Block block : from) {
+            block.successors.add(to);
+            to.predecessors.add(block);
+        }
+    }
+
+    private static void markReachable(Block entry)
+    {
+        Stack<Block> work = new Stack<>();
+        entry.reachable = true;
+        work.push(entry);
+        while (!work.isEmpty()) {
+            for (Block next : work.pop().successors) {
+                if (!next.reachable) {
+                    next.reachable = true;
+                    work.push(next);
+                }
+            }
+        }
+    }
+
+    // Example: "def foo(a, b = 2):" → [a, b]
+    private static List<String> parameters(ADefFuncFunction function)
+    {
+        List<String> names = new ArrayList<>();
+        if (function.getArgs() instanceof AHasArgsArgumentOpt) {
+            AArgumentArgument arg = (AArgumentArgument) ((AHasArgsArgumentOpt) function.getArgs()).getArg();
+            names.add(arg.getParam().getText().trim());
+            PArgumentTail tail = arg.getRest();
+            while (tail instanceof AContinueArgumentTail) {
+                names.add(((AContinueArgumentTail) tail).getNextParam().getText().trim());
+                tail = ((AContinueArgumentTail) tail).getMore();
+            }
+        }
+        return names;
+    }
+}
@@ -1,8 +1,9 @@
+import java.io.*;
 import java.util.*;
 import minipython.analysis.*;
 import minipython.node.*;
 
-public class DeclarationVisitor extends DepthFirstAdapter 
+public class DeclarationVisitor extends IterativeDepthFirstAdapter
 {
     // Class to store information about a function
     // Example: For "def calculate(a, b=5):"
@@ -24,6 +25,10 @@ public class DeclarationVisitor extends DepthFirstAdapter
     private Stack<String> currentScope;
     private String currentFunction;
     private List<FunctionCallCheck> pendingChecks;
+    private List<CallSite> calls;
+    
+    // Where errors are printed. Example: a per-module buffer when modules are checked in parallel
+    private PrintStream out = System.out;
     
     // Class to store function calls that we check later
     // Example: For "result = calculate(x, y)" at line 25
@@ -38,6 +43,24 @@ public class DeclarationVisitor extends DepthFirstAdapter
         }
     }
     
+    // Class to store every call in the program, for analyses that need the call graph
+    // Example: For "return fib(n - 1)" at line 12
+    // name = "fib", module = null, line = 12, call = the function_call node
+    // For "sh.area(2)": name = "area", module = "sh"
+    public static class CallSite {
+        public final String name;
+        public final String module;
+        public final int line;
+        public final PFunctionCall call;
+        
+        CallSite(String name, String module, int line, PFunctionCall call) {
+            this.name = name;
+            this.module = module;
+            this.line = line;
+            this.call = call;
+        }
+    }
+    
     public DeclarationVisitor(Hashtable<String, Object> symtable) 
     {
         this.symtable = symtable;
@@ -50,12 +73,21 @@ public class DeclarationVisitor extends DepthFirstAdapter
         // Example: symtable will contain:
         // "functions" → Hashtable with FunctionInfo objects
         // "variables" → Hashtable for variable information
+        // "calls" → List with a CallSite per call, in source order
         if (!symtable.containsKey("functions")) {
             symtable.put("functions", new Hashtable<String, FunctionInfo>());
         }
         if (!symtable.containsKey("variables")) {
             symtable.put("variables", new Hashtable<String, Object>());
         }
+        if (!symtable.containsKey("calls")) {
+            symtable.put("calls", new ArrayList<CallSite>());
+        }
+        this.calls = (List<CallSite>) symtable.get("calls");
+    }
+    
+    public void setOut(PrintStream out) {
+        this.out = out;
     }
     
     // ========== RULE 7: FUNCTION REDECLARATION ==========
@@ -101,9 +133,11 @@ public class DeclarationVisitor extends DepthFirstAdapter
             if (isDuplicateFunction(existing, paramCount, requiredParams, paramHasDefault)) {
                 // Example: If we have both "def calculate(a):" and "def calculate(a, b=5):"
                 // This might be considered ambiguous
-                System.out.println("Line " + (line/2+1) + " [Rule 7]: Function '" + funcName + 
+                out.println("Line " + (line/2+1) + " [Rule 7]: Function '" + funcName + 
                                  "' already defined with " + existing.paramCount + 
                                  " parameters (considering default values)");
+                Diagnostic.report(symtable, line, "Rule 7", "Function '" + funcName + "' already defined with " +
+                                  existing.paramCount + " parameters (considering default values)");
             }
         } else {
             // First time seeing this function
@@ -208,6 +242,7 @@ public class DeclarationVisitor extends DepthFirstAdapter
     public void inAFunctionCallStatementStatement(AFunctionCallStatementStatement node)
     {
         PFunctionCall functionCall = node.getCall();
+        recordCall(functionCall, null);
         checkFunctionCall(functionCall, false);
     }
 
@@ -216,6 +251,7 @@ public class DeclarationVisitor extends DepthFirstAdapter
     public void inAFuncCallPrimary(AFuncCallPrimary node)
     {
         PFunctionCall functionCall = node.getCall();
+        recordCall(functionCall, null);
         checkFunctionCall(functionCall, false);
     }
 
@@ -224,16 +260,58 @@ public class DeclarationVisitor extends DepthFirstAdapter
     public void inAFuncCallExpressionValue(AFuncCallExpressionValue node)
     {
         PFunctionCall functionCall = node.getCall();
+        recordCall(functionCall, null);
         checkFunctionCall(functionCall, false);
     }
     
     // Checks function calls with dot notation
     // Example: "obj.method()"
+    // If "obj" is an imported module alias, the function must be exported by that module
+    // Example: "import geometry.shapes as sh" then "sh.area(2)"
     public void inAIdDotFuncValuenode(AIdDotFuncValuenode node)
     {
         PFunctionCall functionCall = node.getCall();
+        recordCall(functionCall, node.getObj().getText().trim());
+        ModuleInterface module = getImportedModule(node.getObj().getText().trim());
+        if (module != null) {
+            checkImportedCall(module, functionCall);
+            return;
+        }
         checkFunctionCall(functionCall, false);
     }
+    
+    // Adds a call to the symbol table's list of calls
+    // Example: "sh.area(2)" → CallSite("area", "sh", line, call)
+    private void recordCall(PFunctionCall functionCall, String module) {
+        Token funcNameToken = functionCall instanceof AWithArgsFunctionCall ?
+            ((AWithArgsFunctionCall) functionCall).getName() :
+            ((ANoArgsFunctionCall) functionCall).getName();
+        calls.add(new CallSite(funcNameToken.getText().trim(), module, funcNameToken.getLine(), functionCall));
+    }
+    
+    // Returns the module bound to an import alias, or null if the name is not an import
+    private ModuleInterface getImportedModule(String alias) {
+        Hashtable<String, ModuleInterface> imports = 
+            (Hashtable<String, ModuleInterface>) symtable.get("imports");
+        return imports != null ? imports.get(alias) : null;
+    }
+    
+    // Checks a call into an imported module against the functions it exports
+    // Unresolved modules were already reported at the import, so their calls are not checked
+    private void checkImportedCall(ModuleInterface module, PFunctionCall functionCall) {
+        Token funcNameToken = functionCall instanceof AWithArgsFunctionCall ?
+            ((AWithArgsFunctionCall) functionCall).getName() :
+            ((ANoArgsFunctionCall) functionCall).getName();
+        String funcName = funcNameToken.getText().trim();
+        int line = funcNameToken.getLine();
+        
+        if (module.isResolved() && !module.getFunctions().containsKey(funcName)) {
+            out.println("Line " + (line/2+1) + "[Rule 2] : Function '" + funcName + 
+                        "' is not declared in module '" + module.getName() + "'");
+            Diagnostic.report(symtable, line, "Rule 2", "Function '" + funcName +
+                              "' is not declared in module '" + module.getName() + "'");
+        }
+    }
 
     // Main method for checking function calls
     // Example: Processes "calculate(x, y)"
@@ -280,7 +358,8 @@ public class DeclarationVisitor extends DepthFirstAdapter
         // Function must exist AND be marked as declared
         // Example: If only referenced but never defined
         if (!functions.containsKey(funcName) || !functions.get(funcName).isDeclared) {
-            System.out.println("Line " + (line/2+1) + "[Rule 2] : Function '" + funcName + "' is not declared");
+            out.println("Line " + (line/2+1) + "[Rule 2] : Function '" + funcName + "' is not declared");
+            Diagnostic.report(symtable, line, "Rule 2", "Function '" + funcName + "' is not declared");
         }
     }
     
@@ -317,7 +396,8 @@ public class DeclarationVisitor extends DepthFirstAdapter
         return 0;
     }
 
-    // Recursively counts arguments in a chain
+    // Counts arguments in a chain, walking the tail with a loop
+    // Example: "a, b, c" → 3 (no recursion, so long parameter lists are safe)
     private int countArgumentChain(PArgument arg, int count) {
         if (arg instanceof AArgumentArgument) {
             AArgumentArgument argument = (AArgumentArgument) arg;
@@ -331,12 +411,12 @@ public class DeclarationVisitor extends DepthFirstAdapter
         return count;
     }
 
-    // Recursively counts continuation arguments
+    // Counts continuation arguments
     private int countContinueChain(AContinueArgumentTail cont, int count) {
-        count++;
-        PArgumentTail more = cont.getMore();
-        if (more instanceof AContinueArgumentTail) {
-            return countContinueChain((AContinueArgumentTail) more, count);
+        PArgumentTail tail = cont;
+        while (tail instanceof AContinueArgumentTail) {
+            count++;
+            tail = ((AContinueArgumentTail) tail).getMore();
         }
         return count;
     }
@@ -353,7 +433,7 @@ public class DeclarationVisitor extends DepthFirstAdapter
         return paramNames;
     }
 
-    // Extracts parameter names recursively
+    // Extracts parameter names
     private void extractParamNames(PArgument arg, List<String> paramNames) {
         if (arg instanceof AArgumentArgument) {
             AArgumentArgument argument = (AArgumentArgument) arg;
@@ -368,11 +448,11 @@ public class DeclarationVisitor extends DepthFirstAdapter
 
     // Extracts parameter names from tail arguments
     private void extractParamNamesFromTail(AContinueArgumentTail cont, List<String> paramNames) {
-        paramNames.add(cont.getNextParam().getText().trim());
-        
-        PArgumentTail more = cont.getMore();
-        if (more instanceof AContinueArgumentTail) {
-            extractParamNamesFromTail((AContinueArgumentTail) more, paramNames);
+        PArgumentTail tail = cont;
+        while (tail instanceof AContinueArgumentTail) {
+            AContinueArgumentTail next = (AContinueArgumentTail) tail;
+            paramNames.add(next.getNextParam().getText().trim());
+            tail = next.getMore();
         }
     }
 
@@ -388,7 +468,7 @@ public class DeclarationVisitor extends DepthFirstAdapter
         return paramDefaults;
     }
 
-    // Extracts default value information recursively
+    // Extracts default value information
     private void extractParamDefaults(PArgument arg, List<Boolean> paramDefaults) {
         if (arg instanceof AArgumentArgument) {
             AArgumentArgument argument = (AArgumentArgument) arg;
@@ -405,12 +485,12 @@ public class DeclarationVisitor extends DepthFirstAdapter
 
     // Extracts default value information from tail arguments
     private void extractParamDefaultsFromTail(AContinueArgumentTail cont, List<Boolean> paramDefaults) {
-        boolean hasDefault = !(cont.getNextDefault() instanceof ANoValueAssignValueOpt);
-        paramDefaults.add(hasDefault);
-        
-        PArgumentTail more = cont.getMore();
-        if (more instanceof AContinueArgumentTail) {
-            extractParamDefaultsFromTail((AContinueArgumentTail) more, paramDefaults);
+        PArgumentTail tail = cont;
+        while (tail instanceof AContinueArgumentTail) {
+            AContinueArgumentTail next = (AContinueArgumentTail) tail;
+            boolean hasDefault = !(next.getNextDefault() instanceof ANoValueAssignValueOpt);
+            paramDefaults.add(hasDefault);
+            tail = next.getMore();
         }
     }
 }
\ No newline at end of file
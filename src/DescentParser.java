@@ -0,0 +1,664 @@
+import java.io.*;
+import java.util.*;
+import minipython.lexer.Lexer;
+import minipython.lexer.LexerException;
+import minipython.node.*;
+import minipython.parser.ParserException;
+
+/*
+ * Hand-written parser for grammar/minipython.grammar, a drop-in for the
+ * generated LALR Parser: it reads the same Lexer, builds the same
+ * minipython.node tree from the same token objects, and throws a
+ * ParserException at the same token.
+ *
+ * Statements and comparisons are parsed by recursive descent, choosing
+ * between alternatives on at most two tokens of lookahead (an identifier
+ * starts an assignment, an op-assignment, an array store or a call,
+ * depending on the token after it).
+ *
+ * Arithmetic uses precedence climbing over one table instead of one
+ * production per level:
+ *
+ *     +  -        1     expression       left associative
+ *     *  /  %     2     multiplication   left associative
+ *     **          3     pow              left associative, as in the grammar
+ *
+ * Each operator builds its node from operands lifted to the level it
+ * takes: in "a + b * c" the left operand a is a value, wrapped as
+ * ABaseMultExpression(ABasePowMultiplication(AValuePow(a))), exactly the
+ * wrappers the LALR reductions leave. max(...) and min(...) are expressions
+ * of their own in the grammar: they may start an expression or follow + or
+ * -, and nothing binding tighter may follow them.
+ *
+ * Right-recursive lists (print items, call arguments, parameters, ...) are
+ * read in a loop onto one stack and folded into their tail nodes from the
+ * end, so long lists neither recurse nor allocate more than their nodes.
+ *
+ * Error messages name what was expected in the Parser's style, but the
+ * lists are the ones this parser knows at that point, not the LALR
+ * tables': only the token is guaranteed to be the same. ParserConformance
+ * checks both against the generated Parser.
+ *
+ * Example: new DescentParser(new Lexer(new PushbackReader(reader, 1024))).parse()
+ */
+public class DescentParser
+{
+    // Operator precedence; 0 for a token that is not a binary operator
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+    private static final int POWER = 3;
+
+    private final Lexer lexer;
+
+    // Lookahead, without ignored tokens: a ring of up to 4 tokens
+    private final Token[] ahead = new Token[4];
+    private int head;
+    private int count;
+    private EOF eof;
+
+    // Items of the lists being read, folded into their tail nodes at the end
+    // of each list. Lists nest, so each one pops only what it pushed.
+    private Node[] stack = new Node[32];
+    private int sp;
+
+    public DescentParser(Lexer lexer)
+    {
+        this.lexer = lexer;
+    }
+
+    public Start parse() throws ParserException, LexerException, IOException
+    {
+        List<PCommands> commands = new ArrayList<>();
+        while (!(peek(0) instanceof EOF)) {
+            commands.add(commands());
+        }
+        return new Start(new AProgramme(commands), (EOF) next());
+    }
+
+    // ========== TOKENS ==========
+
+    private Token peek(int k) throws LexerException, IOException
+    {
+        if (k < count) {
+            return ahead[(head + k) & 3];
+        }
+        while (count <= k) {
+            Token token;
+            if (eof != null) {
+                token = eof;
+            } else {
+                token = lexer.next();
+                if (token instanceof TWhitespace || token instanceof TComment) {
+                    continue;
+                }
+                if (token instanceof EOF) {
+                    eof = (EOF) token;
+                }
+            }
+            ahead[(head + count) & 3] = token;
+            count++;
+        }
+        return ahead[(head + k) & 3];
+    }
+
+    private Token next() throws LexerException, IOException
+    {
+        Token token = peek(0);
+        head = (head + 1) & 3;
+        count--;
+        return token;
+    }
+
+    private void push(Node node)
+    {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = node;
+    }
+
+    private Node pop()
+    {
+        Node node = stack[--sp];
+        stack[sp] = null;
+        return node;
+    }
+
+    // Consumes the next token if it is of the given type, else fails on it
+    private <T extends Token> T expect(Class<T> type, String expecting) throws ParserException, LexerException, IOException
+    {
+        Token token = peek(0);
+        if (!type.isInstance(token)) {
+            throw error(token, expecting);
+        }
+        return type.cast(next());
+    }
+
+    // Example: "[3,9] expecting: ':'", as the generated Parser words it
+    private static ParserException error(Token token, String expecting)
+    {
+        return new ParserException(token, "[" + token.getLine() + "," + token.getPos() + "] expecting: " + expecting);
+    }
+
+    // ========== COMMANDS ==========
+
+    private PCommands commands() throws ParserException, LexerException, IOException
+    {
+        skipTabs();
+        if (peek(0) instanceof TDef) {
+            return new AFuncCommands(function());
+        }
+        return new AStatCommands(statement());
+    }
+
+    // Indentation: tab tokens before a def or a statement, left out of the tree
+    private void skipTabs() throws LexerException, IOException
+    {
+        while (peek(0) instanceof TTab) {
+            next();
+        }
+    }
+
+    private PFunction function() throws ParserException, LexerException, IOException
+    {
+        skipTabs();
+        expect(TDef.class, "'def'");
+        TIdentifier name = expect(TIdentifier.class, "identifier");
+        expect(TLparen.class, "'('");
+        PArgumentOpt arguments;
+        if (peek(0) instanceof TRparen) {
+            arguments = new ANoArgsArgumentOpt();
+        } else {
+            TIdentifier first = expect(TIdentifier.class, "identifier, ')'");
+            PAssignValueOpt value = assignValueOpt();
+            int base = sp;
+            while (peek(0) instanceof TComma) {
+                push(next());
+                push(expect(TIdentifier.class, "identifier"));
+                push(assignValueOpt());
+            }
+            PArgumentTail tail = new AEndArgumentTail();
+            while (sp > base) {
+                PAssignValueOpt defaultValue = (PAssignValueOpt) pop();
+                TIdentifier parameter = (TIdentifier) pop();
+                tail = new AContinueArgumentTail((TComma) pop(), parameter, defaultValue, tail);
+            }
+            arguments = new AHasArgsArgumentOpt(new AArgumentArgument(first, value, tail));
+        }
+        expect(TRparen.class, arguments instanceof ANoArgsArgumentOpt ? "identifier, ')'" : "'=', ',', ')'");
+        expect(TColon.class, "':'");
+        return new ADefFuncFunction(name, arguments, statement());
+    }
+
+    // Example: "= 5" in "def f(x = 5):"
+    private PAssignValueOpt assignValueOpt() throws ParserException, LexerException, IOException
+    {
+        if (!(peek(0) instanceof TAssignment)) {
+            return new ANoValueAssignValueOpt();
+        }
+        TAssignment assign = (TAssignment) next();
+        return new AHasValueAssignValueOpt(assign, valuenode());
+    }
+
+    // ========== STATEMENTS ==========
+
+    private PStatement statement() throws ParserException, LexerException, IOException
+    {
+        skipTabs();
+        Token token = peek(0);
+        if (token instanceof TIf) {
+            next();
+            PComparison condition = comparison();
+            expect(TColon.class, "':'");
+            return new AIfStatementStatement((TIf) token, condition, statement());
+        }
+        if (token instanceof TWhile) {
+            next();
+            PComparison condition = comparison();
+            expect(TColon.class, "':'");
+            return new AWhileStatementStatement((TWhile) token, condition, statement());
+        }
+        if (token instanceof TFor) {
+            next();
+            TIdentifier variable = expect(TIdentifier.class, "identifier");
+            TIn in = expect(TIn.class, "'in'");
+            TIdentifier iterable = expect(TIdentifier.class, "identifier");
+            expect(TColon.class, "':'");
+            return new AForStatementStatement((TFor) token, variable, in, iterable, statement());
+        }
+        if (token instanceof TPrint) {
+            next();
+            PExpression first = expression();
+            int base = sp;
+            while (peek(0) instanceof TComma) {
+                push(next());
+                push(expression());
+            }
+            PPrintTail tail = new AEndPrintTail();
+            while (sp > base) {
+                PExpression item = (PExpression) pop();
+                tail = new AContinuePrintTail((TComma) pop(), item, tail);
+            }
+            return new APrintStatementStatement((TPrint) token, new AItemsPrintItems(first, tail));
+        }
+        if (token instanceof TReturn) {
+            next();
+            return new AReturnStatementStatement((TReturn) token, expression());
+        }
+        if (token instanceof TAssert) {
+            next();
+            PExpression condition = expression();
+            PCommaExpressionOpt message = new ANoneCommaExpressionOpt();
+            if (peek(0) instanceof TComma) {
+                TComma comma = (TComma) next();
+                message = new APresentCommaExpressionOpt(comma, expression());
+            }
+            return new AAssertionStatementStatement((TAssert) token, condition, message);
+        }
+        if (token instanceof TImport) {
+            next();
+            return new AImportStatementStatement((TImport) token, importList());
+        }
+        if (token instanceof TIdentifier) {
+            return identifierStatement();
+        }
+        throw error(token, "'def', 'if', 'while', 'for', 'print', 'return', 'assert', 'import', tab, identifier, EOF");
+    }
+
+    // An assignment, an op-assignment, an array store or a call, told apart
+    // by the token after the identifier
+    private PStatement identifierStatement() throws ParserException, LexerException, IOException
+    {
+        Token after = peek(1);
+        if (after instanceof TLparen) {
+            return new AFunctionCallStatementStatement(functionCall());
+        }
+        TIdentifier id = (TIdentifier) next();
+        if (after instanceof TAssignment) {
+            next();
+            return new AAssignStatementStatement(id, (TAssignment) after, expression());
+        }
+        if (after instanceof TMinequal) {
+            next();
+            return new AMineqStatementStatement(id, (TMinequal) after, expression());
+        }
+        if (after instanceof TPlusequal) {
+            next();
+            return new APluseqStatementStatement(id, (TPlusequal) after, expression());
+        }
+        if (after instanceof TMultequal) {
+            next();
+            return new AMulteqStatementStatement(id, (TMultequal) after, expression());
+        }
+        if (after instanceof TDivequal) {
+            next();
+            return new ADiveqStatementStatement(id, (TDivequal) after, expression());
+        }
+        if (after instanceof TLbracket) {
+            next();
+            PExpression index = expression();
+            expect(TRbracket.class, "']'");
+            TAssignment assign = expect(TAssignment.class, "'='");
+            return new AArrayStatementStatement(id, index, assign, expression());
+        }
+        throw error(after, "'=', '-=', '+=', '*=', '/=', '(', '['");
+    }
+
+    // Example: "geometry.shapes as sh, util"
+    private PImportList importList() throws ParserException, LexerException, IOException
+    {
+        PImportSpec first = importSpec();
+        int base = sp;
+        while (peek(0) instanceof TComma) {
+            push(next());
+            push(importSpec());
+        }
+        PImportListTail tail = new AEmptyImportListTail();
+        while (sp > base) {
+            PImportSpec spec = (PImportSpec) pop();
+            tail = new AContinueImportListTail((TComma) pop(), spec, tail);
+        }
+        return new AImportsImportList(first, tail);
+    }
+
+    private PImportSpec importSpec() throws ParserException, LexerException, IOException
+    {
+        TIdentifier first = expect(TIdentifier.class, "identifier");
+        int base = sp;
+        while (peek(0) instanceof TDot) {
+            push(next());
+            push(expect(TIdentifier.class, "identifier"));
+        }
+        PModulePathTail tail = new AEmptyModulePathTail();
+        while (sp > base) {
+            TIdentifier name = (TIdentifier) pop();
+            tail = new AContinueModulePathTail((TDot) pop(), name, tail);
+        }
+        PModulePath path = new APathModulePath(first, tail);
+        if (!(peek(0) instanceof TAs)) {
+            return new ASimpleImportImportSpec(path);
+        }
+        TAs as = (TAs) next();
+        return new AImportAsImportSpec(path, as, expect(TIdentifier.class, "identifier"));
+    }
+
+    // ========== COMPARISONS ==========
+
+    // or binds loosest, then and, then not
+    private PComparison comparison() throws ParserException, LexerException, IOException
+    {
+        PComparison left = new ACompComparison(afteror());
+        while (peek(0) instanceof TLogicOr) {
+            TLogicOr op = (TLogicOr) next();
+            left = new AComp2Comparison(left, op, afteror());
+        }
+        return left;
+    }
+
+    private PAfteror afteror() throws ParserException, LexerException, IOException
+    {
+        PAfteror left = new AAftorAfteror(afterand());
+        while (peek(0) instanceof TLogicAnd) {
+            TLogicAnd op = (TLogicAnd) next();
+            left = new AAftorandAfteror(left, op, afterand());
+        }
+        return left;
+    }
+
+    private PAfterand afterand() throws ParserException, LexerException, IOException
+    {
+        if (peek(0) instanceof TNot) {
+            TNot not = (TNot) next();
+            return new AAftnotAfterand(not, afternot());
+        }
+        return new AAftandAfterand(afternot());
+    }
+
+    // true, false, or one comparison of two expressions: they do not chain
+    private PAfternot afternot() throws ParserException, LexerException, IOException
+    {
+        Token token = peek(0);
+        if (token instanceof TTrue) {
+            return new ATrueAfternot((TTrue) next());
+        }
+        if (token instanceof TFalse) {
+            return new AFalseAfternot((TFalse) next());
+        }
+        PExpression left = expression();
+        Token op = peek(0);
+        if (op instanceof TLess) {
+            next();
+            return new ALessAfternot(left, (TLess) op, expression());
+        }
+        if (op instanceof TGreater) {
+            next();
+            return new AGreaterAfternot(left, (TGreater) op, expression());
+        }
+        if (op instanceof TLessequal) {
+            next();
+            return new ALessequalAfternot(left, (TLessequal) op, expression());
+        }
+        if (op instanceof TGreaterequal) {
+            next();
+            return new AGreaterequalAfternot(left, (TGreaterequal) op, expression());
+        }
+        if (op instanceof TEqualequal) {
+            next();
+            return new AEqualAfternot(left, (TEqualequal) op, expression());
+        }
+        if (op instanceof TNotEqual) {
+            next();
+            return new ADifferentAfternot(left, (TNotEqual) op, expression());
+        }
+        throw error(op, "'+', '-', '*', '/', '%', '**', '<', '>', '<=', '>=', '==', '!='");
+    }
+
+    // ========== EXPRESSIONS ==========
+
+    private PExpression expression() throws ParserException, LexerException, IOException
+    {
+        return asExpression(binary(ADDITIVE));
+    }
+
+    // Precedence climbing: operands and operators binding at least as
+    // tightly as minimum. Returns a PValue, PPow, PMultiplication or
+    // PExpression, whichever the last operator built.
+    private Node binary(int minimum) throws ParserException, LexerException, IOException
+    {
+        Node left = minimum == ADDITIVE && isExtreme(peek(0)) ? extreme(null, null) : value();
+        while (true) {
+            Token op = peek(0);
+            int precedence = precedence(op);
+            if (precedence < minimum || precedence == 0) {
+                return left;
+            }
+            // Only + and - may follow max(...) and min(...)
+            if (precedence > ADDITIVE && left instanceof PExpression) {
+                throw error(op, "'+', '-'");
+            }
+            next();
+            if (precedence == ADDITIVE && isExtreme(peek(0))) {
+                left = extreme(asExpression(left), op);
+                continue;
+            }
+            left = combine(left, op, binary(precedence + 1));
+        }
+    }
+
+    private static int precedence(Token token)
+    {
+        if (token instanceof TPlus || token instanceof TMinus) {
+            return ADDITIVE;
+        }
+        if (token instanceof TMult || token instanceof TDiv || token instanceof TMod) {
+            return MULTIPLICATIVE;
+        }
+        return token instanceof TPower ? POWER : 0;
+    }
+
+    // Operands are lifted to the levels the operator's production takes.
+    // left binds at least as loosely as op, right more tightly.
+    private static Node combine(Node left, Token op, Node right)
+    {
+        if (op instanceof TPlus) {
+            return new AAddMultExpression(asExpression(left), (TPlus) op, asMultiplication(right));
+        }
+        if (op instanceof TMinus) {
+            return new ASubMultExpression(asExpression(left), (TMinus) op, asMultiplication(right));
+        }
+        if (op instanceof TMult) {
+            return new AMultMultiplication(asMultiplication(left), (TMult) op, asPow(right));
+        }
+        if (op instanceof TDiv) {
+            return new ADivMultiplication(asMultiplication(left), (TDiv) op, asPow(right));
+        }
+        if (op instanceof TMod) {
+            return new AModMultiplication(asMultiplication(left), (TMod) op, asPow(right));
+        }
+        return new APowPow(asPow(left), (TPower) op, (PValue) right);
+    }
+
+    private static PPow asPow(Node node)
+    {
+        return node instanceof PPow ? (PPow) node : new AValuePow((PValue) node);
+    }
+
+    private static PMultiplication asMultiplication(Node node)
+    {
+        return node instanceof PMultiplication ? (PMultiplication) node : new ABasePowMultiplication(asPow(node));
+    }
+
+    private static PExpression asExpression(Node node)
+    {
+        return node instanceof PExpression ? (PExpression) node : new ABaseMultExpression(asMultiplication(node));
+    }
+
+    private static boolean isExtreme(Token token)
+    {
+        return token instanceof TMax || token instanceof TMin;
+    }
+
+    // "max(a, b)" alone (left == null), or after "left +" / "left -"
+    private PExpression extreme(PExpression left, Token op) throws ParserException, LexerException, IOException
+    {
+        Token name = next();
+        expect(TLparen.class, "'('");
+        PValue first = value();
+        int base = sp;
+        while (peek(0) instanceof TComma) {
+            push(next());
+            push(value());
+        }
+        expect(TRparen.class, "',', ')'");
+
+        if (name instanceof TMax) {
+            PMaxArgsTail tail = new AEndMaxArgsTail();
+            while (sp > base) {
+                PValue item = (PValue) pop();
+                tail = new AContinueMaxArgsTail((TComma) pop(), item, tail);
+            }
+            PMaxArgs args = new AMaxArgsMaxArgs(first, tail);
+            if (left == null) {
+                return new AMaxOnlyExpression((TMax) name, args);
+            }
+            return op instanceof TPlus ? new AAddMaxExpression(left, (TPlus) op, (TMax) name, args)
+                                       : new ASubMaxExpression(left, (TMinus) op, (TMax) name, args);
+        }
+        PMinArgsTail tail = new AEndMinArgsTail();
+        while (sp > base) {
+            PValue item = (PValue) pop();
+            tail = new AContinueMinArgsTail((TComma) pop(), item, tail);
+        }
+        PMinArgs args = new AMinArgsMinArgs(first, tail);
+        if (left == null) {
+            return new AMinOnlyExpression((TMin) name, args);
+        }
+        return op instanceof TPlus ? new AAddMinExpression(left, (TPlus) op, (TMin) name, args)
+                                   : new ASubMinExpression(left, (TMinus) op, (TMin) name, args);
+    }
+
+    // ========== VALUES ==========
+
+    private PValue value() throws ParserException, LexerException, IOException
+    {
+        Token token = peek(0);
+        if (token instanceof TIdentifier) {
+            Token after = peek(1);
+            if (after instanceof TLparen) {
+                return new AFuncCallExpressionValue(functionCall());
+            }
+            if (after instanceof TLbracket) {
+                next();
+                next();
+                PExpression index = expression();
+                expect(TRbracket.class, "']'");
+                return new APinakasExpressionValue((TIdentifier) token, index);
+            }
+            return new AValueSubsetValue(valuenode());
+        }
+        if (token instanceof TLength) {
+            next();
+            return new ALengthExpessionValue((TLength) token, parenthesized());
+        }
+        if (token instanceof TType) {
+            next();
+            return new ATypeExpressionValue((TType) token, parenthesized());
+        }
+        if (token instanceof TOpen) {
+            next();
+            return new AOpenExpressionValue((TOpen) token, parenthesized());
+        }
+        if (token instanceof TAscii) {
+            next();
+            return new AAsciiExpressionValue((TAscii) token, parenthesized());
+        }
+        if (token instanceof TLparen) {
+            next();
+            PExpression expression = expression();
+            TRparen rparen = expect(TRparen.class, "')'");
+            return new AParenthesisExpressionValue((TLparen) token, expression, rparen);
+        }
+        if (token instanceof TLbracket) {
+            next();
+            PExpressionListOpt items = new AEmptyExpressionListOpt();
+            if (!(peek(0) instanceof TRbracket)) {
+                PExpression first = expression();
+                int base = sp;
+                while (peek(0) instanceof TComma) {
+                    push(next());
+                    push(expression());
+                }
+                PExprListTail tail = new AEndExprListTail();
+                while (sp > base) {
+                    PExpression item = (PExpression) pop();
+                    tail = new AContinueExprListTail((TComma) pop(), item, tail);
+                }
+                items = new AHasItemsExpressionListOpt(new AExprListExpressionList(first, tail));
+            }
+            expect(TRbracket.class, "',', ']'");
+            return new ABracketsExpressionValue(items);
+        }
+        return new AValueSubsetValue(valuenode());
+    }
+
+    // "(expression)" after len, type, open and ascii; the parentheses are left out of the tree
+    private PExpression parenthesized() throws ParserException, LexerException, IOException
+    {
+        expect(TLparen.class, "'('");
+        PExpression expression = expression();
+        expect(TRparen.class, "')'");
+        return expression;
+    }
+
+    private PValuenode valuenode() throws ParserException, LexerException, IOException
+    {
+        Token token = peek(0);
+        if (token instanceof TIdentifier) {
+            if (peek(1) instanceof TDot) {
+                next();
+                next();
+                return new AIdDotFuncValuenode((TIdentifier) token, functionCall());
+            }
+            return new AIdentifierValuenode((TIdentifier) next());
+        }
+        if (token instanceof TStringDoubleQuotes) {
+            return new ADoubleQuotesValuenode((TStringDoubleQuotes) next());
+        }
+        if (token instanceof TStringSingleQuotes) {
+            return new ASingleQuotesValuenode((TStringSingleQuotes) next());
+        }
+        if (token instanceof TInteger) {
+            return new AIntegerLiteralValuenode((TInteger) next());
+        }
+        if (token instanceof TDecimal) {
+            return new ADecimalLiteralValuenode((TDecimal) next());
+        }
+        if (token instanceof TNone) {
+            return new ANoneValueValuenode((TNone) next());
+        }
+        throw error(token, "identifier, integer, decimal, string, 'None', 'len', 'type', 'open', 'ascii', '(', '['");
+    }
+
+    // Example: "f()" or "f(a, b + 1)"
+    private PFunctionCall functionCall() throws ParserException, LexerException, IOException
+    {
+        TIdentifier name = expect(TIdentifier.class, "identifier");
+        TLparen lparen = expect(TLparen.class, "'('");
+        if (peek(0) instanceof TRparen) {
+            return new ANoArgsFunctionCall(name, lparen, (TRparen) next());
+        }
+        PExpression first = expression();
+        int base = sp;
+        while (peek(0) instanceof TComma) {
+            push(next());
+            push(expression());
+        }
+        TRparen rparen = expect(TRparen.class, "',', ')'");
+        PCallArgsTail tail = new AEndCallArgsTail();
+        while (sp > base) {
+            PExpression item = (PExpression) pop();
+            tail = new AContinueCallArgsTail((TComma) pop(), item, tail);
+        }
+        return new AWithArgsFunctionCall(name, lparen, new AArgsCallArgs(first, tail), rparen);
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.*;
+
+/*
+ * One error found by a semantic pass, for tools that need more than the
+ * printed text (the language server, for example).
+ *
+ * Besides printing, the visitors add their errors to the symbol table:
+ *   symtable "diagnostics" → List<Diagnostic>
+ *
+ * Example: Diagnostic(12, "Rule 2", "Function 'calc' is not declared")
+ */
+public class Diagnostic
+{
+    public final int line;          // token line, as the lexer numbered it
+    public final String rule;       // "Rule 1" .. "Rule 7"
+    public final String message;
+
+    public Diagnostic(int line, String rule, String message)
+    {
+        this.line = line;
+        this.rule = rule;
+        this.message = message;
+    }
+
+    // Adds a diagnostic to the symbol table list, creating the list on first use
+    public static void report(Hashtable<String, Object> symtable, int line, String rule, String message)
+    {
+        List<Diagnostic> diagnostics = (List<Diagnostic>) symtable.get("diagnostics");
+        if (diagnostics == null) {
+            diagnostics = new ArrayList<>();
+            symtable.put("diagnostics", diagnostics);
+        }
+        diagnostics.add(new Diagnostic(line, rule, message));
+    }
+
+    public String toString()
+    {
+        return "Line " + line + " [" + rule + "]: " + message;
+    }
+}
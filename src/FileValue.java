@@ -0,0 +1,230 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * A file opened by "open(path)", for reading. Its methods are called as
+ * f.read(), f.readline(), f.readlines() and f.close(), and "for line in f"
+ * walks its lines, each ending in "\n" except perhaps the last, as in
+ * Python.
+ *
+ * The file is read through a FileChannel. One smaller than MAP_THRESHOLD
+ * is read whole, in one call; a larger one is memory-mapped, a window of
+ * up to WINDOW bytes at a time, so the kernel pages it in without copies
+ * through a user buffer and a file of any size can be walked. Lines are
+ * found by scanning the bytes for '\n' and become Strings directly, one
+ * byte per character (Latin-1, so every byte of the file survives).
+ *
+ * Every string made is charged to the run's Budget, if it has one.
+ *
+ * Example: for "for line in f" over a 10 MB file of short lines, the
+ * channel is mapped once and no read() system call is made per line.
+ */
+public final class FileValue implements Iterable<Object>
+{
+    static final int MAP_THRESHOLD = 1 << 20;
+    static final int WINDOW = 1 << 26;
+
+    private final String name;
+    private final Budget budget;
+    private FileChannel channel;
+    private final long size;
+    private ByteBuffer window;          // bytes [windowStart, windowStart + window.limit()) of the file
+    private long windowStart;
+    private long position;              // the next byte to read
+
+    // Raises IOError as Python does when the file cannot be opened
+    public FileValue(String name, Budget budget)
+    {
+        this.name = name;
+        this.budget = budget;
+        try {
+            channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ);
+            size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer all = ByteBuffer.allocate((int) size);
+                while (all.hasRemaining() && channel.read(all) >= 0) {
+                }
+                all.flip();
+                window = all;
+            } else {
+                map(0, (int) Math.min(size, WINDOW));
+            }
+        } catch (NoSuchFileException | InvalidPathException e) {
+            close();
+            throw new MiniPythonError("IOError", "[Errno 2] No such file or directory: '" + name + "'");
+        } catch (AccessDeniedException e) {
+            close();
+            throw new MiniPythonError("IOError", "[Errno 13] Permission denied: '" + name + "'");
+        } catch (IOException e) {
+            close();
+            throw new MiniPythonError("IOError", "cannot open '" + name + "': " + e.getMessage());
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    // ========== METHODS ==========
+
+    // f.name(...): the method of that name
+    public Object call(String method, Object[] arguments)
+    {
+        if (arguments.length > 0) {
+            throw new MiniPythonError("TypeError", method + "() takes no arguments (" + arguments.length + " given)");
+        }
+        switch (method) {
+            case "read":
+                return read();
+            case "readline":
+                String line = readline();
+                return line != null ? line : "";
+            case "readlines":
+                ListValue lines = new ListValue();
+                for (String next = readline(); next != null; next = readline()) {
+                    lines.append(next);
+                }
+                if (budget != null) {
+                    budget.allocateList(lines.size());
+                }
+                return lines;
+            case "close":
+                close();
+                return null;
+            default:
+                throw new MiniPythonError("AttributeError", "'file' object has no attribute '" + method + "'");
+        }
+    }
+
+    // The rest of the file
+    public String read()
+    {
+        long left = size - position;
+        if (left > Integer.MAX_VALUE - 8) {
+            throw new MiniPythonError("MemoryError", "cannot read " + left + " bytes into a string");
+        }
+        return take((int) left);
+    }
+
+    // The next line, with its "\n"; null at the end of the file
+    public String readline()
+    {
+        checkOpen();
+        if (position >= size) {
+            return null;
+        }
+        long end = position;
+        while (true) {
+            long windowEnd = windowStart + window.limit();
+            int i = (int) (end - windowStart);
+            int limit = window.limit();
+            while (i < limit && window.get(i) != '\n') {
+                i++;
+            }
+            if (i < limit) {
+                return take((int) (windowStart + i + 1 - position));
+            }
+            if (windowEnd >= size) {
+                return take((int) (size - position));
+            }
+            // The line runs past the window: map again from its start, wider if need be
+            end = windowEnd;
+            long length = end - position;
+            if (length > Integer.MAX_VALUE - 8 - WINDOW) {
+                throw new MiniPythonError("MemoryError", "a line of " + name + " is too long for a string");
+            }
+            remap(position, (int) Math.min(size - position, length + WINDOW));
+        }
+    }
+
+    public void close()
+    {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // closing a file opened for reading loses nothing
+            }
+            channel = null;
+            window = null;
+        }
+    }
+
+    @Override
+    public Iterator<Object> iterator()
+    {
+        return new Iterator<Object>() {
+            private String next = readline();
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public Object next()
+            {
+                String line = next;
+                next = readline();
+                return line;
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return "<" + (channel == null ? "closed" : "open") + " file '" + name + "', mode 'r'>";
+    }
+
+    // ========== BYTES ==========
+
+    // The next length bytes as a string
+    private String take(int length)
+    {
+        checkOpen();
+        if (budget != null) {
+            budget.allocateString(length);
+        }
+        if (position + length > windowStart + window.limit()) {
+            remap(position, length);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer from = window.duplicate();   // the absolute bulk get is JDK 13+
+        from.position((int) (position - windowStart));
+        from.get(bytes, 0, length);
+        position += length;
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private void remap(long start, int length)
+    {
+        if (size < MAP_THRESHOLD) {
+            return;                 // read whole: the window is the file
+        }
+        try {
+            map(start, length);
+        } catch (IOException e) {
+            throw new MiniPythonError("IOError", e.getMessage() != null ? e.getMessage() : "cannot read " + name);
+        }
+    }
+
+    private void map(long start, int length) throws IOException
+    {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+    }
+
+    private void checkOpen()
+    {
+        if (channel == null) {
+            throw new MiniPythonError("ValueError", "I/O operation on closed file");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.*;
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Flow-sensitive variable types: the types a variable may have when a block
+ * of the ControlFlowGraph starts, computed with BitVectorDataflow.
+ *
+ * Every variable of a scope owns five bits, one per type it may have there:
+ * int, string, none, unknown, and bottom for a call whose return type is not
+ * inferred yet (see ReturnTypeInference). An assignment clears the
+ * variable's bits and sets the bit of its expression's type; paths are
+ * joined by union. A use gets a concrete type only when exactly one bit is
+ * set (bottom aside):
+ *
+ *     x = 1              x: {int}
+ *     if c > 0:
+ *         x = "a"        x: {string}
+ *     print x + 1        x: {int, string} → unknown, no false error
+ *
+ * A variable not assigned on any path to the use is looked up in the
+ * enclosing scope at the def, like the globals a function reads.
+ *
+ * Expression types come from a silent TypeCheckerVisitor that reads variable
+ * types from here, so checking and the analysis always agree.
+ */
+public class FlowTypes
+{
+    private static final String[] TYPES = {"int", "string", "none", "unknown", ReturnTypeInference.BOTTOM};
+    private static final int UNKNOWN = 3;
+    private static final int BOTTOM = 4;
+    private static final int BITS = TYPES.length;
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final ControlFlowGraph cfg;
+    private final Map<ControlFlowGraph.Scope, BitSet[]> states = new HashMap<>();
+    private final TypeCheckerVisitor evaluator;
+
+    public FlowTypes(ControlFlowGraph cfg, Hashtable<String, String> returnTypes, Hashtable<String, Object> symtable)
+    {
+        this.cfg = cfg;
+        Hashtable<String, Object> scratch = new Hashtable<>(symtable);
+        scratch.remove("diagnostics");
+        this.evaluator = new TypeCheckerVisitor(scratch, null);
+        evaluator.setOut(DISCARD);
+        evaluator.setReturnTypes(returnTypes);
+        evaluator.setFlowTypes(this);
+    }
+
+    public void solveAll()
+    {
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            solve(scope);
+        }
+    }
+
+    // The enclosing scope must be solved first
+    public void solve(ControlFlowGraph.Scope scope)
+    {
+        int width = BITS * scope.variables.size();
+        BitSet entry = new BitSet(width);
+        for (int v = 0; v < scope.parameterCount; v++) {
+            entry.set(BITS * v + UNKNOWN);
+        }
+        BitSet[] in = new BitSet[scope.blocks.size()];
+        states.put(scope, in);
+        BitVectorDataflow.forward(scope, width, entry, false, this::transfer, in);
+    }
+
+    private BitSet transfer(ControlFlowGraph.Block block, BitSet in)
+    {
+        if (block.defines == null) {
+            return in;
+        }
+        int v = block.scope.indexOf(block.defines);
+        String type = "unknown";
+        if (block.node instanceof AAssignStatementStatement) {
+            type = typeOf(((AAssignStatementStatement) block.node).getExpr());
+        }
+
+        BitSet out = (BitSet) in.clone();
+        out.clear(BITS * v, BITS * v + BITS);
+        out.set(BITS * v + bitOf(type));
+        return out;
+    }
+
+    // ========== QUERIES ==========
+
+    // Type of an expression, with the variable types of the block it is in
+    public String typeOf(PExpression expr)
+    {
+        return evaluator.typeOf(expr);
+    }
+
+    // Types of an expression and of every node inside it. Example: typesIn(<x + 1>) → {x: int, 1: int, x + 1: int, ...}
+    public Map<Node, String> typesIn(Node expr)
+    {
+        return evaluator.typesOf(expr);
+    }
+
+    // Type of a variable where a node is evaluated. Example: typeAt(<x in "print x">, "x") → "int"
+    public String typeAt(Node at, String variable)
+    {
+        ControlFlowGraph.Block block = cfg.blockOf(at);
+        return block == null ? "unknown" : typeIn(block, variable);
+    }
+
+    private String typeIn(ControlFlowGraph.Block block, String variable)
+    {
+        ControlFlowGraph.Scope scope = block.scope;
+        int v = scope.indexOf(variable);
+        BitSet[] in = states.get(scope);
+        if (v >= 0 && in != null && in[block.index] != null) {
+            BitSet bits = in[block.index].get(BITS * v, BITS * v + BITS);
+            if (bits.get(BOTTOM) && bits.cardinality() > 1) {
+                bits.clear(BOTTOM);
+            }
+            if (bits.cardinality() == 1) {
+                return TYPES[bits.nextSetBit(0)];
+            }
+            if (!bits.isEmpty()) {
+                return "unknown";
+            }
+        }
+        if (scope.parent != null) {
+            return typeIn(scope.defBlock, variable);
+        }
+        return "unknown";
+    }
+
+    // The type bits of some variables where a block starts, to tell whether a re-solve changed them
+    public BitSet stateAt(ControlFlowGraph.Block block, Collection<String> variables)
+    {
+        BitSet state = new BitSet();
+        BitSet[] in = states.get(block.scope);
+        if (in == null || in[block.index] == null) {
+            return state;
+        }
+        int i = 0;
+        for (String variable : variables) {
+            int v = block.scope.indexOf(variable);
+            for (int bit = 0; v >= 0 && bit < BITS; bit++) {
+                if (in[block.index].get(BITS * v + bit)) {
+                    state.set(BITS * i + bit);
+                }
+            }
+            i++;
+        }
+        return state;
+    }
+
+    private static int bitOf(String type)
+    {
+        for (int i = 0; i < BITS; i++) {
+            if (TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return UNKNOWN;     // error
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.*;
+import java.util.*;
+import minipython.lexer.*;
+import minipython.node.*;
+
+/*
+ * An open source file that is kept lexed and parsed while it is edited.
+ *
+ * No MiniPython token spans a line (strings and comments end at the end of
+ * the line), so the lexer state is reset at every line start and each line
+ * is lexed on its own. An edit relexes only the lines it touches.
+ *
+ * The lines are grouped into top-level commands: a command starts at every
+ * line whose first token is in column 1 (a def or a statement), and takes
+ * the indented, blank and comment lines after it. Each command is parsed on
+ * its own (with RecoveringParser) and the parse is reused for as long as
+ * its lines are unchanged, so an edit reparses only the commands it touches.
+ *
+ * Example: typing inside the body of f reparses "def f(...)" and its body;
+ * every other command keeps its AST.
+ *
+ * Lines and characters are 0-based here, as in the language server protocol.
+ * Tokens in the ASTs carry 1-based lines, as the lexer numbers them.
+ */
+public class IncrementalDocument
+{
+    // One source line and its tokens (whitespace and comments dropped)
+    private static class Line {
+        final String text;
+        final Token[] tokens;       // templates: getPos() is the column, getLine() is not used
+        final String lexError;      // Example: "Unknown token: $", or null
+
+        Line(String text, Token[] tokens, String lexError) {
+            this.text = text;
+            this.tokens = tokens;
+            this.lexError = lexError;
+        }
+
+        boolean startsCommand() {
+            return tokens.length > 0 && tokens[0].getPos() == 1 && !(tokens[0] instanceof TTab);
+        }
+    }
+
+    // The lines of one top-level command and their parse
+    private static class Segment {
+        Line[] lines;
+        int firstLine;              // index of lines[0] the tokens are numbered for
+        List<Token> tokens;         // the parsed copies of the line tokens
+        List<PCommands> commands;
+        List<RecoveringParser.SyntaxError> errors;
+
+        // The command moved because lines were inserted or removed above it
+        void renumber(int newFirstLine) {
+            int delta = newFirstLine - firstLine;
+            for (Token token : tokens) {
+                token.setLine(token.getLine() + delta);
+            }
+            for (RecoveringParser.SyntaxError error : errors) {
+                error.line += delta;
+                error.firstLine += delta;
+                error.lastLine += delta;
+            }
+            firstLine = newFirstLine;
+        }
+    }
+
+    private final ArrayList<Line> lines = new ArrayList<>();
+    private List<Segment> segments = new ArrayList<>();
+    private int reparsed;           // commands parsed by the last update
+
+    public IncrementalDocument(String text)
+    {
+        setText(text);
+    }
+
+    // ========== EDITING ==========
+
+    public void setText(String text)
+    {
+        lines.clear();
+        for (String line : splitLines(text)) {
+            lines.add(lex(line));
+        }
+        resegment();
+    }
+
+    // Replaces the text between two positions, like an LSP incremental change
+    // Example: replace(3, 4, 3, 4, "x") types "x" at line 3, column 4
+    public void replace(int startLine, int startChar, int endLine, int endChar, String text)
+    {
+        startLine = Math.min(startLine, lines.size() - 1);
+        endLine = Math.min(endLine, lines.size() - 1);
+        String first = lines.get(startLine).text;
+        String last = lines.get(endLine).text;
+        String replaced = first.substring(0, Math.min(startChar, first.length())) + text +
+                          last.substring(Math.min(endChar, last.length()));
+
+        List<Line> relexed = new ArrayList<>();
+        for (String line : splitLines(replaced)) {
+            relexed.add(lex(line));
+        }
+        List<Line> range = lines.subList(startLine, endLine + 1);
+        range.clear();
+        range.addAll(relexed);
+        resegment();
+    }
+
+    // Regroups the lines into commands, reusing the parse of every command whose lines did not change
+    private void resegment()
+    {
+        IdentityHashMap<Line, Segment> previous = new IdentityHashMap<>();
+        for (Segment segment : segments) {
+            previous.put(segment.lines[0], segment);
+        }
+
+        List<Segment> result = new ArrayList<>();
+        reparsed = 0;
+        int start = 0;
+        for (int i = 1; i <= lines.size(); i++) {
+            if (i == lines.size() || lines.get(i).startsCommand()) {
+                Segment segment = previous.get(lines.get(start));
+                if (segment == null || !sameLines(segment, start, i)) {
+                    segment = parse(start, i);
+                    reparsed++;
+                } else if (segment.firstLine != start) {
+                    segment.renumber(start);
+                }
+                result.add(segment);
+                start = i;
+            }
+        }
+        segments = result;
+    }
+
+    private boolean sameLines(Segment segment, int from, int to)
+    {
+        if (segment.lines.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < segment.lines.length; i++) {
+            if (segment.lines[i] != lines.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ========== LEXING AND PARSING ==========
+
+    private static Line lex(String text)
+    {
+        List<Token> tokens = new ArrayList<>();
+        String error = null;
+        try {
+            // The newline ends a comment token
+            Lexer lexer = new Lexer(new PushbackReader(new StringReader(text + "\n"), 1024));
+            for (Token token = lexer.next(); !(token instanceof EOF); token = lexer.next()) {
+                if (!(token instanceof TWhitespace) && !(token instanceof TComment)) {
+                    tokens.add(token);
+                }
+            }
+        } catch (LexerException e) {
+            // Example: "[1,5] Unknown token: $" → "Unknown token: $"
+            String message = e.getMessage();
+            error = message.startsWith("[") ? message.substring(message.indexOf(']') + 1).trim() : message;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Line(text, tokens.toArray(new Token[0]), error);
+    }
+
+    private Segment parse(int from, int to)
+    {
+        Segment segment = new Segment();
+        segment.lines = lines.subList(from, to).toArray(new Line[0]);
+        segment.firstLine = from;
+
+        // Copies, so that the ASTs never share tokens with the lines or with each other
+        segment.tokens = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            for (Token template : lines.get(i).tokens) {
+                Token token = (Token) template.clone();
+                token.setLine(i + 1);
+                segment.tokens.add(token);
+            }
+        }
+        List<Token> input = new ArrayList<>(segment.tokens);
+        input.add(new EOF(to, 1));
+
+        RecoveringParser parser = new RecoveringParser(new TokenListLexer(input));
+        try {
+            Start start = parser.parse();
+            segment.commands = new ArrayList<>(((AProgramme) start.getPProgramme()).getCommands());
+        } catch (LexerException | IOException e) {
+            throw new IllegalStateException(e);     // TokenListLexer does not lex
+        }
+        segment.errors = parser.getErrors();
+        return segment;
+    }
+
+    // Splits on \n, \r\n and \r, as the language server protocol counts lines
+    private static List<String> splitLines(String text)
+    {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                result.add(text.substring(start, i));
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        result.add(text.substring(start));
+        return result;
+    }
+
+    // ========== QUERIES ==========
+
+    public int getLineCount()
+    {
+        return lines.size();
+    }
+
+    public String getLine(int line)
+    {
+        return lines.get(line).text;
+    }
+
+    // How many commands the last edit had to parse again
+    public int getReparsedCount()
+    {
+        return reparsed;
+    }
+
+    // Copies of all top-level commands in order, skipped ones as AInvalidCommands.
+    // Copies, because renumber() changes the kept tokens on the next edit while
+    // the caller may still be walking (and re-parenting) what it was given.
+    public List<PCommands> getCommands()
+    {
+        List<PCommands> commands = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (PCommands command : segment.commands) {
+                commands.add((PCommands) command.clone());
+            }
+        }
+        return commands;
+    }
+
+    public List<RecoveringParser.SyntaxError> getSyntaxErrors()
+    {
+        List<RecoveringParser.SyntaxError> errors = new ArrayList<>();
+        for (Segment segment : segments) {
+            errors.addAll(segment.errors);
+        }
+        return errors;
+    }
+
+    // Lexer errors by line. Example: {4 → "Unknown token: $"}
+    public Map<Integer, String> getLexErrors()
+    {
+        Map<Integer, String> errors = new TreeMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).lexError != null) {
+                errors.put(i, lines.get(i).lexError);
+            }
+        }
+        return errors;
+    }
+
+    // The token under the cursor, or null. A cursor right after a token also counts.
+    public Token tokenAt(int line, int character)
+    {
+        if (line < 0 || line >= lines.size()) {
+            return null;
+        }
+        for (Token token : lines.get(line).tokens) {
+            int start = token.getPos() - 1;
+            if (character >= start && character <= start + token.getText().length()) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    // Column of the identifier "name" on a line, or -1
+    // Example: findIdentifier(7, "area") on "def area(side):" → 4
+    public int findIdentifier(int line, String name)
+    {
+        if (line < 0 || line >= lines.size()) {
+            return -1;
+        }
+        for (Token token : lines.get(line).tokens) {
+            if (token instanceof TIdentifier && token.getText().equals(name)) {
+                return token.getPos() - 1;
+            }
+        }
+        return -1;
+    }
+}
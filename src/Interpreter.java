@@ -0,0 +1,2537 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+
+/*
+ * Runs MiniPython programs.
+ *
+ * Every scope of the control flow graph (the module and each def) is
+ * compiled once into a Code object: an array of steps, one per CFG block,
+ * each returning the index of the next one. Expressions become trees of
+ * nodes. Names are resolved at compile time, as Python does: a name assigned
+ * anywhere in a scope (by =, +=, for or def) is a slot of that scope's
+ * frame; any other name is read from the nearest enclosing scope that
+ * assigns it, through the frame the def ran in.
+ *
+ *     def fib(n):               Code fib: slots [n]
+ *         if n < 2:             step 2: branch n < 2 → 3, 4
+ *             return n          step 3: return n
+ *         return fib(n - 1) + fib(n - 2)
+ *                               "fib" is the module's slot 0, one frame up
+ *
+ * Calls use monomorphic inline caches: a call site remembers the Code it
+ * last called and whether the argument count fits it, so a hit only copies
+ * the function's frame template (defaults already in place) and stores the
+ * arguments. A later def of the same name binds a new function with a new
+ * Code, which misses and relinks the site. Sites that see many Codes stop
+ * caching.
+ *
+ * Arithmetic and comparison nodes specialize themselves on the operands
+ * they see, since the checker often cannot type them (parameters, results
+ * of calls). A node starts uninitialized; its first run picks the case for
+ * its operands (two ints, two strings, two lists) and later runs test for
+ * exactly that case before taking a short path straight to the operation.
+ * The first mismatch deoptimizes it to the generic path, Values, for good.
+ *
+ *     def add(a, b):            "a + b" sees 1, 2: LONGS
+ *         return a + b          add(1, 2), add(3, 4): the int path
+ *                               add("x", "y"): mismatch, GENERIC from then on
+ *
+ * Semantics follow Python 2, as "print x" does: ints divide with floor
+ * division, and a def binds its name when it runs.
+ *
+ * print writes to an Output buffer, flushed to the PrintStream when it
+ * fills and when a run ends. open(path) gives a FileValue, read through
+ * NIO; setFileAccess(false) makes it an IOError, for untrusted scripts.
+ *
+ * Hot functions are compiled to JVM classes by a TierCompiler, in the
+ * background, and run as such from then on; the rest stay interpreted.
+ *
+ * With setMemoization, calls to the functions Purity finds pure look
+ * their arguments up in the function's MemoTable first, and run only on a
+ * miss: fib(n) then runs once per n instead of an exponential number of
+ * times.
+ *
+ * A for loop whose iterations LoopDependence finds independent runs on
+ * the ForkJoin common pool, in chunks (see ParallelLoop), when its list is
+ * long enough; what it stores and accumulates is applied in the loop's
+ * order after the chunks finish, so the output is the same either way.
+ *
+ * Loops are optimized as they are compiled, over the LoopNest of each
+ * scope and what LoopInvariants finds about each loop: an operation or
+ * len() of values a loop does not change is computed once per entry to
+ * the loop and kept in a slot; "x ** 2" to "x ** 4" multiply; and "a[i]",
+ * where the loop's test keeps i in range, skips the bounds check.
+ *
+ *     i = 0
+ *     while i < len(a):         len(a): once, when the loop is entered
+ *         s += a[i] * k ** 2    a[i]: no bounds check; k ** 2: k * k, once
+ *         i += 1
+ *
+ * Usage: java Interpreter <filename.py> [-nocache] [-nospecialize] [-notier] [-tier-threshold n] [-tier-log]
+ *                         [-memo] [-memo-size n] [-memo-log] [-noparallel] [-parallel-threshold n] [-parallel-log]
+ *                         [-noloopopt]
+ *                         [-profile flat|tree|collapsed] [-interval micros]
+ *                         [-max-steps n] [-max-elements n] [-max-bytes n] [-max-depth n] [-timeout ms]
+ *
+ * -nospecialize leaves every node generic. -notier keeps every function
+ * interpreted; -tier-threshold sets the calls that make one hot (0:
+ * compile each on its first call) and -tier-log writes each transition,
+ * and a summary, to stderr. -memo memoizes pure functions, keeping up to
+ * MemoTable.SIZE results each unless -memo-size says otherwise, and
+ * -memo-log writes each table's hits and misses to stderr after the run.
+ * -noparallel runs every loop in order; -parallel-threshold sets the
+ * elements a loop's list needs to run in parallel (ParallelLoop.THRESHOLD,
+ * or never on one processor, unless given; 0: every independent loop),
+ * and -parallel-log writes how many loops ran in parallel to stderr.
+ * -noloopopt compiles without the loop optimizations.
+ * -profile writes a Profiler
+ * report to stderr after the run, sampling every 1000 microseconds unless
+ * -interval says otherwise, and counts specializations. The -max options
+ * and -timeout run it within a Budget.
+ */
+public class Interpreter
+{
+    // A slot that has not been assigned yet
+    static final Object UNSET = new Object() {
+        public String toString() {
+            return "<unset>";
+        }
+    };
+
+    // Python's default is 1000; frames here are cheaper
+    public static final int MAX_DEPTH = 10000;
+
+    private final PrintStream out;
+    private final Output output;
+    private final ModuleResolver resolver;
+    private final Map<Path, ModuleValue> modules = new HashMap<>();
+    private boolean inlineCaches = true;
+    private boolean specialize = true;
+    private int specializations;
+    private int memoSize;
+    private List<MemoTable> memoTables = new ArrayList<>();
+    private int parallelThreshold = ParallelLoop.defaultThreshold();
+    private int parallelLoops;
+    private int parallelIterations;
+    private int parallelChunks;
+    private int sequentialLoops;
+    private boolean loopOptimizations = true;
+    private int deoptimizations;
+    private TierCompiler tierCompiler = TierCompiler.shared();
+    TierCompiler tiers = tierCompiler;          // null when off, or with inline caches off
+    private Profiler profiler;
+    private Budget budget;
+    private int maxDepth = MAX_DEPTH;
+    private boolean fileAccess = true;
+    private final List<FileValue> files = new ArrayList<>();
+    int depth;
+
+    public Interpreter(PrintStream out, ModuleResolver resolver)
+    {
+        this.out = out;
+        this.output = new Output(out, Output.THRESHOLD);
+        this.resolver = resolver;
+    }
+
+    // An interpreter for a thread running part of a parallel loop: the same
+    // output, settings and memo tables, and a call depth of its own that
+    // starts at the loop's
+    private Interpreter(Interpreter parent)
+    {
+        this.out = parent.out;
+        this.output = parent.output;
+        this.resolver = parent.resolver;
+        this.inlineCaches = parent.inlineCaches;
+        this.specialize = parent.specialize;
+        this.memoSize = parent.memoSize;
+        this.memoTables = parent.memoTables;
+        this.parallelThreshold = parent.parallelThreshold;
+        this.loopOptimizations = parent.loopOptimizations;
+        this.tierCompiler = parent.tierCompiler;
+        this.tiers = parent.tiers;
+        this.maxDepth = parent.maxDepth;
+        this.fileAccess = parent.fileAccess;
+        this.depth = parent.depth;
+    }
+
+    Interpreter worker()
+    {
+        return new Interpreter(this);
+    }
+
+    // Off: open() raises IOError instead of reading the file system
+    public void setFileAccess(boolean enabled)
+    {
+        fileAccess = enabled;
+    }
+
+    // Off: every call looks its callee up by name and maps its arguments
+    // from scratch, as an engine without inline caches would
+    public void setInlineCaches(boolean enabled)
+    {
+        inlineCaches = enabled;
+        tiers = enabled ? tierCompiler : null;
+    }
+
+    // Compiles hot functions with the given TierCompiler; null keeps every
+    // function interpreted. Compiled code relies on the inline caches, so
+    // it only runs while they are on.
+    public void setTierCompiler(TierCompiler tierCompiler)
+    {
+        this.tierCompiler = tierCompiler;
+        this.tiers = inlineCaches ? tierCompiler : null;
+    }
+
+    // Keeps up to size results of each pure function from now on; 0 turns
+    // it off. A function's table is made by the first interpreter to call
+    // it, with that interpreter's size.
+    public void setMemoization(int size)
+    {
+        memoSize = size;
+    }
+
+    // The tables this interpreter has made, in the order of their first calls
+    public List<MemoTable> getMemoTables()
+    {
+        return memoTables;
+    }
+
+    // Runs the for loops that LoopDependence finds independent on the
+    // ForkJoin common pool when their list has at least threshold elements;
+    // -1 runs every loop in order. The default is ParallelLoop's.
+    public void setParallelThreshold(int threshold)
+    {
+        parallelThreshold = threshold;
+    }
+
+    // Whether a parallel loop over size elements may leave the calling thread
+    boolean runsParallel(int size)
+    {
+        return parallelThreshold >= 0 && size >= parallelThreshold && size > 0 && budget == null && profiler == null;
+    }
+
+    void ranParallel(int iterations, int chunks)
+    {
+        parallelLoops++;
+        parallelIterations += iterations;
+        parallelChunks += chunks;
+    }
+
+    void ranSequential()
+    {
+        sequentialLoops++;
+    }
+
+    // Example: "3 loops in parallel (30000 iterations in 48 chunks), 1 fell back to running in order"
+    public String getParallelSummary()
+    {
+        return parallelLoops + (parallelLoops == 1 ? " loop" : " loops") + " in parallel (" + parallelIterations + " iterations in " + parallelChunks
+               + " chunks), " + sequentialLoops + " fell back to running in order";
+    }
+
+    // Off: the modules this interpreter imports are compiled without loop
+    // optimizations (see compile)
+    public void setLoopOptimizations(boolean enabled)
+    {
+        loopOptimizations = enabled;
+    }
+
+    // Off: nodes that have not run yet stay generic
+    public void setSpecialization(boolean enabled)
+    {
+        specialize = enabled;
+    }
+
+    // Nodes this interpreter has specialized, and how many of them it then
+    // deoptimized
+    public int getSpecializations()
+    {
+        return specializations;
+    }
+
+    public int getDeoptimizations()
+    {
+        return deoptimizations;
+    }
+
+    // Counts and samples every Code run from now on; null turns it off
+    public void setProfiler(Profiler profiler)
+    {
+        this.profiler = profiler;
+    }
+
+    // Limits steps, allocation, call depth and time from now on; null lifts them
+    public void setBudget(Budget budget)
+    {
+        this.budget = budget;
+        this.maxDepth = budget != null ? budget.getMaxDepth() : MAX_DEPTH;
+    }
+
+    public PrintStream getOut()
+    {
+        return out;
+    }
+
+    // Runs the main module and returns its globals. Only this outermost run
+    // flushes output and closes files; imports run through execute()
+    public Frame run(Code module)
+    {
+        if (budget != null) {
+            budget.start();
+        }
+        try {
+            return execute(module);
+        } finally {
+            output.flush();
+            for (FileValue file : files) {
+                file.close();
+            }
+            files.clear();
+        }
+    }
+
+    // Runs a module's code in a fresh frame and returns its globals
+    private Frame execute(Code module)
+    {
+        Frame frame = new Frame(module, module.newSlots(), null, this);
+        module.execute(frame);
+        return frame;
+    }
+
+    // ========== RUNTIME OBJECTS ==========
+
+    // The slots of one activation of a Code. parent: the frame the def ran in.
+    public static final class Frame {
+        public final Code code;
+        public final Object[] slots;
+        public final Frame parent;
+        public final Interpreter interpreter;
+        Object result;
+        int pc;                 // the step running, kept up to date only while profiling
+        ParallelLoop.Chunk chunk;   // set in the frames of a parallel loop's chunks
+
+        Frame(Code code, Object[] slots, Frame parent, Interpreter interpreter) {
+            this.code = code;
+            this.slots = slots;
+            this.parent = parent;
+            this.interpreter = interpreter;
+        }
+    }
+
+    // A compiled scope
+    public static final class Code {
+        private static final java.util.concurrent.atomic.AtomicInteger ids = new java.util.concurrent.atomic.AtomicInteger();
+
+        public final int id = ids.getAndIncrement();    // dense, for tables indexed by Code
+        public final String name;               // "<module>" or the def's name
+        public final int line;
+        final int parameterCount;
+        final int minArguments;                 // up to the last parameter without a default
+        final String[] slotNames;               // parameters first; for loop iterators are "<for>", Invariants' "<invariant>"
+        final boolean pure;                     // by Purity: its result depends on its arguments alone
+        final Map<String, Integer> slotIndex = new HashMap<>();
+        Step[] steps;
+        int entry;
+        int invocations;                        // counted for TierCompiler while interpreted; advisory,
+        int backEdges;                          // runs sharing the Code can lose increments
+        int tier;                               // TierCompiler.INTERPRETED, QUEUED, COMPILED or FAILED
+        volatile Compiled compiled;             // installed once, by TierCompiler
+        volatile MemoTable memo;                // made on the first memoized call
+
+        Code(String name, int line, int parameterCount, int minArguments, List<String> slots, boolean pure) {
+            this.name = name;
+            this.line = line;
+            this.parameterCount = parameterCount;
+            this.minArguments = minArguments;
+            this.pure = pure;
+            this.slotNames = slots.toArray(new String[0]);
+            for (int i = 0; i < slotNames.length; i++) {
+                slotIndex.putIfAbsent(slotNames[i], i);
+            }
+        }
+
+        Object[] newSlots() {
+            Object[] slots = new Object[slotNames.length];
+            Arrays.fill(slots, UNSET);
+            return slots;
+        }
+
+        // Runs the steps to a return or the end of the code: in compiled
+        // code if it has some, else here, counting calls and back edges
+        Object execute(Frame frame) {
+            Interpreter interpreter = frame.interpreter;
+            TierCompiler tiers = interpreter.tiers;
+            if (tiers != null && interpreter.profiler == null) {
+                Compiled compiled = this.compiled;
+                if (compiled == null && ++invocations >= tiers.threshold) {
+                    compiled = tiers.hot(this);
+                }
+                if (compiled != null) {
+                    return compiled.execute(frame, entry, interpreter.budget);
+                }
+            }
+            if (interpreter.profiler != null || interpreter.budget != null) {
+                return executeInstrumented(frame, interpreter.profiler, interpreter.budget);
+            }
+            Step[] steps = this.steps;
+            int next = entry;
+            try {
+                while (next >= 0) {
+                    int at = next;
+                    next = steps[at].execute(frame);
+                    if (next <= at && next >= 0 && tiers != null) {
+                        Compiled compiled = backEdge(tiers, next);
+                        if (compiled != null) {
+                            return compiled.execute(frame, next, null);
+                        }
+                    }
+                }
+            } catch (MiniPythonError e) {
+                e.setLine(steps[next].line);
+                throw e;
+            }
+            return frame.result;
+        }
+
+        // The same, counting for the profiler and the budget, either of which
+        // may be null. Steps are charged to the budget at edges that do not
+        // go forward: every loop has one, since its steps cannot all come
+        // after each other, and a return goes to -1.
+        private Object executeInstrumented(Frame frame, Profiler profiler, Budget budget) {
+            Step[] steps = this.steps;
+            long[] hits = profiler != null ? profiler.enter(frame) : null;
+            int next = entry;
+            int at = next;
+            int ran = 0;
+            try {
+                while (next >= 0) {
+                    at = next;
+                    if (hits != null) {
+                        frame.pc = at;
+                        hits[at]++;
+                    }
+                    next = steps[at].execute(frame);
+                    ran++;
+                    if (next <= at && budget != null) {
+                        budget.charge(ran);
+                        ran = 0;
+                        if (next >= 0 && hits == null && frame.interpreter.tiers != null) {
+                            Compiled compiled = backEdge(frame.interpreter.tiers, next);
+                            if (compiled != null) {
+                                return compiled.execute(frame, next, budget);
+                            }
+                        }
+                    }
+                }
+            } catch (MiniPythonError e) {
+                e.setLine(steps[at].line);
+                throw e;
+            } finally {
+                if (hits != null) {
+                    profiler.exit();
+                }
+            }
+            return frame.result;
+        }
+
+        // A loop went round once more. The compiled code, once there is
+        // some, takes over this very call at the loop's head, pc: it keeps
+        // its state in the same frame and numbers its steps the same way.
+        private Compiled backEdge(TierCompiler tiers, int pc) {
+            Compiled compiled = this.compiled;
+            if (compiled == null && ++backEdges >= tiers.backEdgeThreshold) {
+                compiled = tiers.hot(this);
+            }
+            if (compiled != null) {
+                tiers.enteredAtLoop(this, pc);
+            }
+            return compiled;
+        }
+
+        public String toString() {
+            return "<function " + name + ">";
+        }
+    }
+
+    // A Code compiled to a JVM class by TierCompiler. Runs the code from
+    // step pc, as Code.execute does, charging the budget if there is one.
+    abstract static class Compiled {
+        abstract Object execute(Frame frame, int pc, Budget budget);
+    }
+
+    // The value a def binds. The template is a frame with the defaults in
+    // place; every call starts from a copy of it.
+    public static final class FunctionObject {
+        public final Code code;
+        final Object[] template;
+        final Frame closure;
+
+        FunctionObject(Code code, Object[] defaults, Frame closure) {
+            this.code = code;
+            this.closure = closure;
+            this.template = code.newSlots();
+            System.arraycopy(defaults, 0, template, code.parameterCount - defaults.length, defaults.length);
+        }
+
+        public String toString() {
+            return code.toString();
+        }
+    }
+
+    // An imported module, bound to its alias
+    public static final class ModuleValue {
+        public final String name;
+        final Frame globals;
+
+        ModuleValue(String name, Frame globals) {
+            this.name = name;
+            this.globals = globals;
+        }
+
+        Object get(String attribute) {
+            Integer slot = globals.code.slotIndex.get(attribute);
+            if (slot == null || globals.slots[slot] == UNSET) {
+                throw new MiniPythonError("AttributeError", "module '" + name + "' has no attribute '" + attribute + "'");
+            }
+            return globals.slots[slot];
+        }
+
+        public String toString() {
+            return "<module '" + name + "'>";
+        }
+    }
+
+    // ========== CALLS ==========
+
+    // What a call site knows about the Code it last called
+    static final class CacheEntry {
+        final Code code;
+        final int arguments;
+
+        CacheEntry(Code code, int arguments) {
+            this.code = code;
+            this.arguments = arguments;
+        }
+    }
+
+    static final int MEGAMORPHIC = 8;      // relinks before a site stops caching
+
+    // Example: "fib(n - 1)": callee reads fib, one argument
+    static final class Call extends Expr {
+        final String name;
+        final Expr callee;
+        final Expr[] arguments;
+        CacheEntry cache;
+        int relinks;
+
+        Call(String name, Expr callee, Expr[] arguments) {
+            this.name = name;
+            this.callee = callee;
+            this.arguments = arguments;
+        }
+
+        Object execute(Frame frame) {
+            Interpreter interpreter = frame.interpreter;
+            FunctionObject function = callable(interpreter.inlineCaches ? callee.execute(frame) : lookup(frame, name));
+            Object[] slots = slots(function, interpreter);
+            for (int i = 0; i < arguments.length; i++) {
+                slots[i] = arguments[i].execute(frame);
+            }
+            return invoke(function, slots, interpreter);
+        }
+
+        // The callee's new frame, arguments still to be stored
+        Object[] slots(FunctionObject function, Interpreter interpreter) {
+            CacheEntry entry = cache;
+            if (entry != null && entry.code == function.code) {
+                return function.template.clone();
+            } else if (interpreter.inlineCaches && relinks < MEGAMORPHIC) {
+                checkArguments(function.code, arguments.length);
+                cache = new CacheEntry(function.code, arguments.length);
+                relinks++;
+                return function.template.clone();
+            }
+            return mapArguments(function, arguments.length);
+        }
+    }
+
+    // Example: "sh.area(2)": obj reads sh, a module
+    static final class ModuleCall extends Expr {
+        final String name;
+        final Expr module;
+        final Expr[] arguments;
+        ModuleValue cachedModule;
+        Object cachedFunction;
+        CacheEntry cache;
+
+        ModuleCall(String name, Expr module, Expr[] arguments) {
+            this.name = name;
+            this.module = module;
+            this.arguments = arguments;
+        }
+
+        Object execute(Frame frame) {
+            Object value = module.execute(frame);
+            if (value instanceof FileValue) {
+                Object[] values = new Object[arguments.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    values[i] = arguments[i].execute(frame);
+                }
+                return ((FileValue) value).call(name, values);
+            }
+            if (!(value instanceof ModuleValue)) {
+                throw new MiniPythonError("AttributeError", "'" + Values.typeName(value) + "' object has no attribute '" + name + "'");
+            }
+            FunctionObject function = callable(((ModuleValue) value).get(name));
+            CacheEntry entry = cache;
+            Object[] slots;
+            if (entry != null && entry.code == function.code && frame.interpreter.inlineCaches) {
+                slots = function.template.clone();
+            } else {
+                slots = mapArguments(function, arguments.length);
+                cache = new CacheEntry(function.code, arguments.length);
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                slots[i] = arguments[i].execute(frame);
+            }
+            return invoke(function, slots, frame.interpreter);
+        }
+    }
+
+    static Object invoke(FunctionObject function, Object[] slots, Interpreter interpreter)
+    {
+        if (function.code.pure && interpreter.memoSize > 0) {
+            return memoized(function, slots, interpreter);
+        }
+        return call(function, slots, interpreter);
+    }
+
+    // Example: fib(20) a second time: 20 is in fib's table, and fib does not run
+    private static Object memoized(FunctionObject function, Object[] slots, Interpreter interpreter)
+    {
+        Code code = function.code;
+        MemoTable table = code.memo;
+        if (table == null) {
+            table = interpreter.memoTable(code);
+        }
+        Object key = MemoTable.key(slots, code.parameterCount);
+        if (key == null) {
+            table.unkeyed();
+            return call(function, slots, interpreter);
+        }
+        Object result = table.get(key);
+        if (result == MemoTable.MISSING) {
+            result = call(function, slots, interpreter);
+            table.put(key, result);
+        }
+        return result;
+    }
+
+    private MemoTable memoTable(Code code)
+    {
+        synchronized (code) {
+            if (code.memo == null) {
+                code.memo = new MemoTable(code.name, memoSize);
+                synchronized (memoTables) {
+                    memoTables.add(code.memo);
+                }
+            }
+            return code.memo;
+        }
+    }
+
+    private static Object call(FunctionObject function, Object[] slots, Interpreter interpreter)
+    {
+        if (interpreter.depth >= interpreter.maxDepth) {
+            throw interpreter.budget != null
+                  ? interpreter.budget.tooDeep()
+                  : new MiniPythonError("RecursionError", "maximum recursion depth exceeded");
+        }
+        interpreter.depth++;
+        try {
+            return function.code.execute(new Frame(function.code, slots, function.closure, interpreter));
+        } finally {
+            interpreter.depth--;
+        }
+    }
+
+    // The uncached path: checks the count and builds the frame from the defaults
+    static Object[] mapArguments(FunctionObject function, int arguments)
+    {
+        Code code = function.code;
+        checkArguments(code, arguments);
+        Object[] slots = new Object[code.slotNames.length];
+        for (int i = arguments; i < code.parameterCount; i++) {
+            slots[i] = function.template[i];
+        }
+        for (int i = code.parameterCount; i < slots.length; i++) {
+            slots[i] = UNSET;
+        }
+        return slots;
+    }
+
+    static void checkArguments(Code code, int arguments)
+    {
+        if (arguments < code.minArguments || arguments > code.parameterCount) {
+            String expected = code.minArguments == code.parameterCount
+                              ? String.valueOf(code.parameterCount)
+                              : code.minArguments + " to " + code.parameterCount;
+            throw new MiniPythonError("TypeError", code.name + "() takes " + expected + " arguments (" + arguments + " given)");
+        }
+    }
+
+    // By name, from the innermost frame out
+    static Object lookup(Frame frame, String name)
+    {
+        for (Frame f = frame; f != null; f = f.parent) {
+            Integer slot = f.code.slotIndex.get(name);
+            if (slot != null) {
+                if (f.slots[slot] == UNSET) {
+                    break;
+                }
+                return f.slots[slot];
+            }
+        }
+        throw new MiniPythonError("NameError", "name '" + name + "' is not defined");
+    }
+
+    static FunctionObject callable(Object value)
+    {
+        if (!(value instanceof FunctionObject)) {
+            throw new MiniPythonError("TypeError", "'" + Values.typeName(value) + "' object is not callable");
+        }
+        return (FunctionObject) value;
+    }
+
+    // ========== IMPORTS ==========
+
+    // Runs a module once per interpreter. Example: "import geometry.shapes as sh"
+    ModuleValue importModule(String path)
+    {
+        Path file = resolver.resolve(path);
+        if (file == null) {
+            throw new MiniPythonError("ImportError", "No module named " + path);
+        }
+        ModuleValue module = modules.get(file);
+        if (module == null) {
+            Start ast;
+            try {
+                RecoveringParser parser = new RecoveringParser(
+                    new Lexer(new PushbackReader(Files.newBufferedReader(file), 1024)));
+                ast = parser.parse();
+                if (!parser.getErrors().isEmpty()) {
+                    throw new MiniPythonError("SyntaxError", file + ": " + parser.getErrors().get(0));
+                }
+            } catch (IOException | minipython.lexer.LexerException e) {
+                throw new MiniPythonError("ImportError", file + ": " + e.getMessage());
+            }
+            module = new ModuleValue(path, execute(compile(ast, loopOptimizations)));
+            modules.put(file, module);
+        }
+        return module;
+    }
+
+    // ========== NODES ==========
+
+    abstract static class Expr {
+        abstract Object execute(Frame frame);
+    }
+
+    abstract static class Cond {
+        abstract boolean test(Frame frame);
+    }
+
+    // A CFG block. Returns the index of the next step, -1 when the code returns.
+    abstract static class Step {
+        int line;
+
+        abstract int execute(Frame frame);
+    }
+
+    static final class Constant extends Expr {
+        final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    static final class Local extends Expr {
+        final int slot;
+        final String name;
+
+        Local(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        Object execute(Frame frame) {
+            Object value = frame.slots[slot];
+            if (value == UNSET) {
+                throw unbound(frame, name);
+            }
+            return value;
+        }
+    }
+
+    // A name of an enclosing scope, depth frames up
+    static final class Outer extends Expr {
+        final int depth;
+        final int slot;
+        final String name;
+
+        Outer(int depth, int slot, String name) {
+            this.depth = depth;
+            this.slot = slot;
+            this.name = name;
+        }
+
+        Object execute(Frame frame) {
+            Frame f = frame;
+            for (int i = 0; i < depth; i++) {
+                f = f.parent;
+            }
+            Object value = f.slots[slot];
+            if (value == UNSET) {
+                throw unbound(f, name);
+            }
+            return value;
+        }
+    }
+
+    // A name that no scope assigns
+    static final class Missing extends Expr {
+        final String name;
+
+        Missing(String name) {
+            this.name = name;
+        }
+
+        Object execute(Frame frame) {
+            throw new MiniPythonError("NameError", "name '" + name + "' is not defined");
+        }
+    }
+
+    // Tells the profiler about a new string, list or function
+    static Object allocated(Frame frame, Object value)
+    {
+        Profiler profiler = frame.interpreter.profiler;
+        if (profiler != null && !(value instanceof Long) && !(value instanceof Double)) {
+            profiler.allocated(1);
+        }
+        return value;
+    }
+
+    static MiniPythonError unbound(Frame frame, String name)
+    {
+        return frame.parent == null
+               ? new MiniPythonError("NameError", "name '" + name + "' is not defined")
+               : new MiniPythonError("UnboundLocalError", "local variable '" + name + "' referenced before assignment");
+    }
+
+    // ---- specialization
+
+    // What an arithmetic or comparison node has seen. Within one run a node's
+    // state only changes away from UNINITIALIZED, and then only to GENERIC.
+    // Runs that share a Code (ScriptHost) write it without synchronization,
+    // so one run can put LONGS back over another's GENERIC. The state is only
+    // a hint: every case checks its operand types again before its fast path.
+    static final int UNINITIALIZED = 0;
+    static final int LONGS = 1;
+    static final int STRINGS = 2;
+    static final int LISTS = 3;
+    static final int GENERIC = 4;
+
+    // The case for "a op b" ("==" and the like are op 0)
+    static int specialize(Frame frame, char op, Object a, Object b)
+    {
+        Interpreter interpreter = frame.interpreter;
+        int state = GENERIC;
+        if (interpreter.specialize) {
+            if (a instanceof Long && b instanceof Long && op != '^') {
+                state = LONGS;
+            } else if (Values.isString(a) && Values.isString(b) && (op == '+' || op == 0)) {
+                state = STRINGS;
+            } else if (a instanceof ListValue && b instanceof ListValue && (op == '+' || op == 0)) {
+                state = LISTS;
+            }
+            if (state != GENERIC) {
+                interpreter.specializations++;
+            }
+        }
+        return state;
+    }
+
+    static int deoptimize(Frame frame)
+    {
+        frame.interpreter.deoptimizations++;
+        return GENERIC;
+    }
+
+    // "x op y" on two longs, or null when the generic path must take it:
+    // a result past 64 bits, or a division by zero
+    static Object longArithmetic(char op, long x, long y)
+    {
+        switch (op) {
+            case '+': {
+                long r = x + y;
+                return ((x ^ r) & (y ^ r)) < 0 ? null : (Object) r;
+            }
+            case '-': {
+                long r = x - y;
+                return ((x ^ y) & (x ^ r)) < 0 ? null : (Object) r;
+            }
+            case '*': {
+                long high = Math.multiplyHigh(x, y);
+                long r = x * y;
+                return (high == 0 && r >= 0) || (high == -1 && r < 0) ? (Object) r : null;
+            }
+            case '/':
+                return y == 0 || (x == Long.MIN_VALUE && y == -1) ? null : (Object) Math.floorDiv(x, y);
+            default:
+                return y == 0 ? null : (Object) Math.floorMod(x, y);
+        }
+    }
+
+    static Object genericArithmetic(Frame frame, char op, Object a, Object b)
+    {
+        Budget budget = frame.interpreter.budget;
+        if (budget != null) {
+            budget.beforeArithmetic(op, a, b);
+        }
+        return allocated(frame, Values.arithmetic(op, a, b));
+    }
+
+    static final class Binary extends Expr {
+        final char op;
+        final Expr left;
+        final Expr right;
+        int state;
+
+        Binary(char op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        Object execute(Frame frame) {
+            Object a = left.execute(frame);
+            Object b = right.execute(frame);
+            switch (state) {
+                case LONGS:
+                    if (a instanceof Long && b instanceof Long) {
+                        Object result = longArithmetic(op, (Long) a, (Long) b);
+                        if (result != null) {
+                            return result;
+                        }
+                        break;
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case STRINGS:
+                    if (Values.isString(a) && Values.isString(b)) {
+                        Budget budget = frame.interpreter.budget;
+                        if (budget != null) {
+                            budget.beforeArithmetic(op, a, b);
+                        }
+                        return allocated(frame, Rope.concat((CharSequence) a, (CharSequence) b));
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case LISTS:
+                    if (a instanceof ListValue && b instanceof ListValue) {
+                        Budget budget = frame.interpreter.budget;
+                        if (budget != null) {
+                            budget.allocateList((long) ((ListValue) a).size() + ((ListValue) b).size());
+                        }
+                        return allocated(frame, ((ListValue) a).concat((ListValue) b));
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case UNINITIALIZED:
+                    state = specialize(frame, op, a, b);
+                    break;
+            }
+            return genericArithmetic(frame, op, a, b);
+        }
+    }
+
+    // "x ** n" for a literal n from 2 to 4, as multiplications
+    static final class Power extends Expr {
+        final Expr base;
+        final int exponent;
+
+        Power(Expr base, int exponent) {
+            this.base = base;
+            this.exponent = exponent;
+        }
+
+        Object execute(Frame frame) {
+            return power(frame, base.execute(frame), exponent);
+        }
+
+        // Ints multiply while they fit in 64 bits, and a float squares;
+        // the rest, and a cube or fourth power of a float, which
+        // Math.pow rounds differently, take the generic path
+        static Object power(Frame frame, Object base, int exponent) {
+            if (base instanceof Long) {
+                long x = (Long) base;
+                Object result = base;
+                for (int i = 1; i < exponent && result != null; i++) {
+                    result = longArithmetic('*', (Long) result, x);
+                }
+                if (result != null) {
+                    return result;
+                }
+            } else if (base instanceof Double && exponent == 2) {
+                double x = (Double) base;
+                return x * x;
+            }
+            return genericArithmetic(frame, '^', base, (long) exponent);
+        }
+    }
+
+    // An expression a loop does not change, kept in a slot from its first
+    // run in each entry to the loop (EnterLoop clears the slot). Only
+    // numbers and strings are kept: a list made again each time must stay
+    // a new list.
+    static final class Invariant extends Expr {
+        final Expr expr;
+        final int level;                // how many loops around it, innermost first, it stays the same in
+        int slot;
+
+        Invariant(Expr expr, int level) {
+            this.expr = expr;
+            this.level = level;
+        }
+
+        Object execute(Frame frame) {
+            Object value = frame.slots[slot];
+            if (value == UNSET) {
+                value = expr.execute(frame);
+                if (Values.isNumber(value) || Values.isString(value)) {
+                    frame.slots[slot] = value;
+                }
+            }
+            return value;
+        }
+    }
+
+    static final class ListLiteral extends Expr {
+        final Expr[] items;
+
+        ListLiteral(Expr[] items) {
+            this.items = items;
+        }
+
+        Object execute(Frame frame) {
+            Budget budget = frame.interpreter.budget;
+            if (budget != null) {
+                budget.allocateList(items.length);
+            }
+            ListValue list = new ListValue(items.length);
+            for (Expr item : items) {
+                list.append(item.execute(frame));
+            }
+            return allocated(frame, list);
+        }
+    }
+
+    // "a[i]"
+    static final class Index extends Expr {
+        final Expr list;
+        final Expr index;
+
+        Index(Expr list, Expr index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        Object execute(Frame frame) {
+            return Values.index(list.execute(frame), index.execute(frame));
+        }
+    }
+
+    // "a[i]" in a loop whose test keeps i in range (LoopInvariants.inBounds):
+    // an int index into a list skips the bounds check
+    static final class CountedIndex extends Expr {
+        final Expr list;
+        final Expr index;
+
+        CountedIndex(Expr list, Expr index) {
+            this.list = list;
+            this.index = index;
+        }
+
+        Object execute(Frame frame) {
+            return get(list.execute(frame), index.execute(frame));
+        }
+
+        static Object get(Object list, Object index) {
+            if (list instanceof ListValue && index instanceof Long) {
+                return ((ListValue) list).getInRange((int) (long) (Long) index);
+            }
+            return Values.index(list, index);
+        }
+    }
+
+    // len, ascii, type and open
+    static final class Builtin extends Expr {
+        final String name;
+        final Expr argument;
+
+        Builtin(String name, Expr argument) {
+            this.name = name;
+            this.argument = argument;
+        }
+
+        Object execute(Frame frame) {
+            Object value = argument.execute(frame);
+            switch (name) {
+                case "len":
+                    return Values.len(value);
+                case "ascii":
+                    return Values.repr(value);
+                case "type":
+                    return "<type '" + Values.typeName(value) + "'>";
+                default:
+                    return open(frame.interpreter, value);
+            }
+        }
+
+        private static FileValue open(Interpreter interpreter, Object path) {
+            if (!interpreter.fileAccess) {
+                throw new MiniPythonError("IOError", "open() is not allowed here");
+            }
+            if (!Values.isString(path)) {
+                throw new MiniPythonError("TypeError", "coercing to Unicode: need string, " + Values.typeName(path) + " found");
+            }
+            FileValue file = new FileValue(path.toString(), interpreter.budget);
+            interpreter.files.add(file);
+            return file;
+        }
+    }
+
+    // "max(a, b)", or "max(a)" of one list or string
+    static final class MaxMin extends Expr {
+        final boolean max;
+        final Expr[] arguments;
+
+        MaxMin(boolean max, Expr[] arguments) {
+            this.max = max;
+            this.arguments = arguments;
+        }
+
+        Object execute(Frame frame) {
+            if (arguments.length == 1) {
+                Object value = arguments[0].execute(frame);
+                if (value instanceof ListValue) {
+                    return max ? ((ListValue) value).max() : ((ListValue) value).min();
+                }
+                ListValue items = new ListValue();
+                for (Iterator<Object> it = Values.iterator(value); it.hasNext(); ) {
+                    items.append(it.next());
+                }
+                return max ? items.max() : items.min();
+            }
+            Object best = arguments[0].execute(frame);
+            for (int i = 1; i < arguments.length; i++) {
+                Object value = arguments[i].execute(frame);
+                if (Values.compare(value, best) * (max ? 1 : -1) > 0) {
+                    best = value;
+                }
+            }
+            return best;
+        }
+    }
+
+    // ---- conditions
+
+    // Specializes as Binary does
+    static final class Compare extends Cond {
+        static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+        final int op;
+        final Expr left;
+        final Expr right;
+        int state;
+
+        Compare(String op, Expr left, Expr right) {
+            this.op = Arrays.asList("==", "!=", "<", "<=", ">", ">=").indexOf(op);
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean test(Frame frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            switch (state) {
+                case LONGS:
+                    if (l instanceof Long && r instanceof Long) {
+                        return holds(Long.compare((Long) l, (Long) r));
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case STRINGS:
+                    if (Values.isString(l) && Values.isString(r)) {
+                        if (op == EQ || op == NE) {
+                            return Values.equal(l, r) == (op == EQ);
+                        }
+                        return holds(l.toString().compareTo(r.toString()));
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case LISTS:
+                    if (l instanceof ListValue && r instanceof ListValue) {
+                        if (op == EQ || op == NE) {
+                            return l.equals(r) == (op == EQ);
+                        }
+                        return holds(op, l, r);
+                    }
+                    state = deoptimize(frame);
+                    break;
+                case UNINITIALIZED:
+                    state = specialize(frame, (char) 0, l, r);
+                    break;
+            }
+            if (op == EQ || op == NE) {
+                return Values.equal(l, r) == (op == EQ);
+            }
+            return holds(op, l, r);
+        }
+
+        private boolean holds(int order) {
+            return holds(op, order);
+        }
+
+        // Whether the ordering op holds between l and r. Any ordering with a
+        // NaN is False; lists are ordered by their first unequal elements.
+        // Example: [1, nan] < [1, 2.0] is False, and so is [1, nan] >= [1, 2.0]
+        static boolean holds(int op, Object l, Object r) {
+            if (l instanceof ListValue && r instanceof ListValue) {
+                ListValue a = (ListValue) l;
+                ListValue b = (ListValue) r;
+                int i = a.mismatch(b);
+                return i >= 0 ? holds(op, a.get(i), b.get(i)) : holds(op, Integer.compare(a.size(), b.size()));
+            }
+            return !Values.unordered(l, r) && holds(op, Values.compare(l, r));
+        }
+
+        // Whether op holds between two operands that compare so
+        static boolean holds(int op, int order) {
+            switch (op) {
+                case EQ:
+                    return order == 0;
+                case NE:
+                    return order != 0;
+                case LT:
+                    return order < 0;
+                case LE:
+                    return order <= 0;
+                case GT:
+                    return order > 0;
+                default:
+                    return order >= 0;
+            }
+        }
+    }
+
+    static final class Logical extends Cond {
+        final boolean and;
+        final Cond left;
+        final Cond right;
+
+        Logical(boolean and, Cond left, Cond right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        boolean test(Frame frame) {
+            return and ? left.test(frame) && right.test(frame) : left.test(frame) || right.test(frame);
+        }
+    }
+
+    static final class Not extends Cond {
+        final Cond operand;
+
+        Not(Cond operand) {
+            this.operand = operand;
+        }
+
+        boolean test(Frame frame) {
+            return !operand.test(frame);
+        }
+    }
+
+    static final class Literal extends Cond {
+        final boolean value;
+
+        Literal(boolean value) {
+            this.value = value;
+        }
+
+        boolean test(Frame frame) {
+            return value;
+        }
+    }
+
+    // ---- steps
+
+    static final class Jump extends Step {
+        int next;
+
+        int execute(Frame frame) {
+            return next;
+        }
+    }
+
+    // An if or while header
+    static final class Branch extends Step {
+        final Cond condition;
+        int ifTrue;
+        int ifFalse;
+
+        Branch(Cond condition) {
+            this.condition = condition;
+        }
+
+        int execute(Frame frame) {
+            return condition.test(frame) ? ifTrue : ifFalse;
+        }
+    }
+
+    static final class Return extends Step {
+        final Expr value;
+
+        Return(Expr value) {
+            this.value = value;
+        }
+
+        int execute(Frame frame) {
+            frame.result = value.execute(frame);
+            return -1;
+        }
+    }
+
+    static final class Evaluate extends Step {
+        final Expr expr;
+        int next;
+
+        Evaluate(Expr expr) {
+            this.expr = expr;
+        }
+
+        int execute(Frame frame) {
+            expr.execute(frame);
+            return next;
+        }
+    }
+
+    static final class Assign extends Step {
+        final int slot;
+        final Expr value;
+        int next;
+
+        Assign(int slot, Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        int execute(Frame frame) {
+            frame.slots[slot] = value.execute(frame);
+            return next;
+        }
+    }
+
+    // Example: "x += 1". On a list, += extends it in place, as in Python.
+    // Specializes to ints only.
+    static final class OpAssign extends Step {
+        final int slot;
+        final String name;
+        final char op;
+        final Expr value;
+        int next;
+        int state;
+
+        OpAssign(int slot, String name, char op, Expr value) {
+            this.slot = slot;
+            this.name = name;
+            this.op = op;
+            this.value = value;
+        }
+
+        int execute(Frame frame) {
+            Object current = frame.slots[slot];
+            if (current == UNSET) {
+                throw unbound(frame, name);
+            }
+            Object right = value.execute(frame);
+            if (frame.chunk != null && frame.chunk.reduce(slot, op, right)) {
+                return next;
+            }
+            if (state == LONGS) {
+                if (current instanceof Long && right instanceof Long) {
+                    Object result = longArithmetic(op, (Long) current, (Long) right);
+                    if (result != null) {
+                        frame.slots[slot] = result;
+                        return next;
+                    }
+                } else {
+                    state = deoptimize(frame);
+                }
+            } else if (state == UNINITIALIZED) {
+                // only ints: += on a list extends it in place, and on strings
+                // the join is all the work
+                state = current instanceof Long && right instanceof Long ? specialize(frame, op, current, right) : GENERIC;
+            }
+            frame.slots[slot] = update(frame, op, current, right);
+            return next;
+        }
+
+        // The variable's new value: the same list, extended, or the result
+        static Object update(Frame frame, char op, Object current, Object right) {
+            Budget budget = frame.interpreter.budget;
+            if (op == '+' && current instanceof ListValue) {
+                if (budget != null && (right instanceof ListValue || Values.isString(right))) {
+                    budget.allocateList(Values.len(right));
+                }
+                ((ListValue) current).extend(right);
+                return current;
+            }
+            if (budget != null) {
+                budget.beforeArithmetic(op, current, right);
+            }
+            return allocated(frame, Values.arithmetic(op, current, right));
+        }
+    }
+
+    // "a[i] = v"
+    static final class SetItem extends Step {
+        final Expr list;
+        final Expr index;
+        final Expr value;
+        int next;
+
+        SetItem(Expr list, Expr index, Expr value) {
+            this.list = list;
+            this.index = index;
+            this.value = value;
+        }
+
+        int execute(Frame frame) {
+            Object target = list.execute(frame);
+            Object i = index.execute(frame);
+            if (frame.chunk != null) {
+                frame.chunk.store(target, i, value.execute(frame));
+            } else {
+                store(target, i, value.execute(frame));
+            }
+            return next;
+        }
+
+        static void store(Object target, Object i, Object v) {
+            if (!(target instanceof ListValue)) {
+                throw new MiniPythonError("TypeError", "'" + Values.typeName(target) + "' object does not support item assignment");
+            }
+            ((ListValue) target).set(Values.toIndex(i), v);
+        }
+    }
+
+    // "print a, b" prints "a b"
+    static final class Print extends Step {
+        final Expr[] items;
+        int next;
+
+        Print(Expr[] items) {
+            this.items = items;
+        }
+
+        // Every item is evaluated before any is written, since evaluating
+        // one may call a function that prints lines of its own
+        int execute(Frame frame) {
+            Output output = frame.interpreter.output;
+            int start;
+            if (items.length == 1) {
+                Object value = items[0].execute(frame);
+                start = output.size();
+                output.print(value);
+            } else {
+                Object[] values = new Object[items.length];
+                for (int i = 0; i < items.length; i++) {
+                    values[i] = items[i].execute(frame);
+                }
+                start = output.size();
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        output.print(' ');
+                    }
+                    output.print(values[i]);
+                }
+            }
+            Budget budget = frame.interpreter.budget;
+            if (budget != null) {
+                try {
+                    budget.print(output.size() - start + 1);
+                } catch (MiniPythonError e) {
+                    output.truncate(start);
+                    throw e;
+                }
+            }
+            output.newline();
+            return next;
+        }
+    }
+
+    static final class Assert extends Step {
+        final Expr condition;
+        final Expr message;     // null without one
+        int next;
+
+        Assert(Expr condition, Expr message) {
+            this.condition = condition;
+            this.message = message;
+        }
+
+        int execute(Frame frame) {
+            if (!Values.isTrue(condition.execute(frame))) {
+                throw new MiniPythonError("AssertionError", message == null ? "" : Values.str(message.execute(frame)));
+            }
+            return next;
+        }
+    }
+
+    // The defaults are evaluated when the def runs, as in Python
+    static final class Def extends Step {
+        final Code code;
+        final int slot;
+        final Expr[] defaults;
+        int next;
+
+        Def(Code code, int slot, Expr[] defaults) {
+            this.code = code;
+            this.slot = slot;
+            this.defaults = defaults;
+        }
+
+        int execute(Frame frame) {
+            Object[] values = new Object[defaults.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = defaults[i].execute(frame);
+            }
+            frame.slots[slot] = allocated(frame, new FunctionObject(code, values, frame));
+            return next;
+        }
+    }
+
+    static final class Import extends Step {
+        final String[] paths;
+        final int[] slots;
+        int next;
+
+        Import(String[] paths, int[] slots) {
+            this.paths = paths;
+            this.slots = slots;
+        }
+
+        int execute(Frame frame) {
+            for (int i = 0; i < paths.length; i++) {
+                frame.slots[slots[i]] = frame.interpreter.importModule(paths[i]);
+            }
+            return next;
+        }
+    }
+
+    // Entering a for loop from outside: starts the iterator, or runs the
+    // whole loop in parallel and goes to its exit
+    static final class ForStart extends Step {
+        final Expr iterable;
+        final int iterator;
+        int header;
+        int exit;
+        ParallelLoop parallel;          // null unless LoopDependence found it independent
+
+        ForStart(Expr iterable, int iterator) {
+            this.iterable = iterable;
+            this.iterator = iterator;
+        }
+
+        int execute(Frame frame) {
+            Object value = iterable.execute(frame);
+            if (parallel != null && frame.chunk == null && parallel.run(frame, value)) {
+                return exit;
+            }
+            frame.slots[iterator] = Values.iterator(value);
+            return header;
+        }
+    }
+
+    static final class ForTest extends Step {
+        final int iterator;
+        int body;
+        int exit;
+
+        ForTest(int iterator) {
+            this.iterator = iterator;
+        }
+
+        int execute(Frame frame) {
+            return ((Iterator<?>) frame.slots[iterator]).hasNext() ? body : exit;
+        }
+    }
+
+    static final class ForBind extends Step {
+        final int iterator;
+        final int variable;
+        int next;
+
+        ForBind(int iterator, int variable) {
+            this.iterator = iterator;
+            this.variable = variable;
+        }
+
+        int execute(Frame frame) {
+            frame.slots[variable] = ((Iterator<?>) frame.slots[iterator]).next();
+            return next;
+        }
+    }
+
+    // Entering a loop from outside: clears the slots of its Invariants
+    static final class EnterLoop extends Step {
+        final int[] caches;
+        int next;
+
+        EnterLoop(int[] caches) {
+            this.caches = caches;
+        }
+
+        int execute(Frame frame) {
+            for (int slot : caches) {
+                frame.slots[slot] = UNSET;
+            }
+            return next;
+        }
+    }
+
+    // ========== COMPILER ==========
+
+    // Compiles every scope of a program; returns the module's code
+    public static Code compile(Start ast)
+    {
+        return compile(ast, true);
+    }
+
+    // optimizeLoops off: no Invariant, Power or CountedIndex nodes, to
+    // measure what they save
+    public static Code compile(Start ast, boolean optimizeLoops)
+    {
+        ControlFlowGraph cfg = ControlFlowGraph.build(ast);
+        return new Compiler(cfg, Purity.analyze(ast, cfg), optimizeLoops).compileScope(null);
+    }
+
+    private static class Compiler {
+        private final ControlFlowGraph cfg;
+        private final Purity purity;
+        private final boolean optimizeLoops;
+        private final Map<ControlFlowGraph.Scope, List<String>> slots = new HashMap<>();
+        private final Map<ControlFlowGraph.Scope, LoopNest> nests = new HashMap<>();
+        private final Map<LoopNest.Loop, LoopInvariants> invariants = new HashMap<>();
+
+        // The slots of each loop's Invariants. Example: "while i < len(a)" → [len(a)'s]
+        private final Map<LoopNest.Loop, List<Integer>> caches = new HashMap<>();
+
+        Compiler(ControlFlowGraph cfg, Purity purity, boolean optimizeLoops) {
+            this.cfg = cfg;
+            this.purity = purity;
+            this.optimizeLoops = optimizeLoops;
+            for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+                slots.put(scope, findSlots(scope));
+            }
+        }
+
+        // Parameters, then every name the scope assigns, then one iterator per for loop
+        private List<String> findSlots(ControlFlowGraph.Scope scope) {
+            List<String> names = new ArrayList<>(scope.variables.subList(0, scope.parameterCount));
+            Set<String> seen = new HashSet<>(names);
+            List<String> iterators = new ArrayList<>();
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                for (String name : assigned(block)) {
+                    if (seen.add(name)) {
+                        names.add(name);
+                    }
+                }
+                if (block.kind == ControlFlowGraph.Kind.STATEMENT && block.node instanceof AForStatementStatement) {
+                    iterators.add("<for>");
+                }
+            }
+            names.addAll(iterators);
+            return names;
+        }
+
+        private static List<String> assigned(ControlFlowGraph.Block block) {
+            List<String> names = new ArrayList<>();
+            Node node = block.node;
+            if (block.kind == ControlFlowGraph.Kind.DEF) {
+                names.add(((ADefFuncFunction) node).getName().getText().trim());
+            } else if (block.kind == ControlFlowGraph.Kind.BIND) {
+                names.add(block.defines);
+            } else if (node instanceof AAssignStatementStatement) {
+                names.add(((AAssignStatementStatement) node).getId().getText().trim());
+            } else if (node instanceof APluseqStatementStatement) {
+                names.add(((APluseqStatementStatement) node).getId().getText().trim());
+            } else if (node instanceof AMineqStatementStatement) {
+                names.add(((AMineqStatementStatement) node).getId().getText().trim());
+            } else if (node instanceof AMulteqStatementStatement) {
+                names.add(((AMulteqStatementStatement) node).getId().getText().trim());
+            } else if (node instanceof ADiveqStatementStatement) {
+                names.add(((ADiveqStatementStatement) node).getId().getText().trim());
+            } else if (node instanceof AImportStatementStatement) {
+                for (ModuleResolver.ImportRef ref : importRefs((AImportStatementStatement) node)) {
+                    names.add(ref.alias);
+                }
+            }
+            return names;
+        }
+
+        // Example: "import a.b, c as d" → a.b bound to b, c bound to d
+        private static List<ModuleResolver.ImportRef> importRefs(AImportStatementStatement node) {
+            List<ModuleResolver.ImportRef> refs = new ArrayList<>();
+            AImportsImportList imports = (AImportsImportList) node.getImports();
+            PImportSpec spec = imports.getFirst();
+            PImportListTail tail = imports.getRest();
+            while (spec != null) {
+                APathModulePath path = (APathModulePath) (spec instanceof AImportAsImportSpec
+                                                          ? ((AImportAsImportSpec) spec).getPath()
+                                                          : ((ASimpleImportImportSpec) spec).getPath());
+                List<String> parts = new ArrayList<>();
+                parts.add(path.getFirst().getText().trim());
+                PModulePathTail rest = path.getRest();
+                while (rest instanceof AContinueModulePathTail) {
+                    parts.add(((AContinueModulePathTail) rest).getNext().getText().trim());
+                    rest = ((AContinueModulePathTail) rest).getMore();
+                }
+                String alias = spec instanceof AImportAsImportSpec ? ((AImportAsImportSpec) spec).getAlias().getText().trim()
+                                                                   : parts.get(parts.size() - 1);
+                refs.add(new ModuleResolver.ImportRef(String.join(".", parts), alias, path.getFirst().getLine()));
+                if (tail instanceof AContinueImportListTail) {
+                    spec = ((AContinueImportListTail) tail).getNext();
+                    tail = ((AContinueImportListTail) tail).getMore();
+                } else {
+                    spec = null;
+                }
+            }
+            return refs;
+        }
+
+        Code compileScope(ControlFlowGraph.Scope scope) {
+            if (scope == null) {
+                scope = cfg.getTopLevel();
+            }
+            ADefFuncFunction def = scope.function;
+            List<String> names = slots.get(scope);
+            int minArguments = 0;
+            if (def != null) {
+                List<PAssignValueOpt> defaults = defaults(def);
+                for (int i = 0; i < defaults.size(); i++) {
+                    if (!(defaults.get(i) instanceof AHasValueAssignValueOpt)) {
+                        minArguments = i + 1;
+                    }
+                }
+            }
+            LoopNest nest = LoopNest.of(scope);
+            nests.put(scope, nest);
+            if (optimizeLoops) {
+                for (LoopNest.Loop loop : nest.getLoops()) {
+                    invariants.put(loop, LoopInvariants.analyze(cfg, purity, loop));
+                }
+            }
+
+            // One step per block, then one ForStart per for loop, then one
+            // EnterLoop per loop with Invariants
+            List<Step> steps = new ArrayList<>();
+            Map<ControlFlowGraph.Block, Integer> starts = new HashMap<>();
+            int iterator = names.size() - countForLoops(scope);
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                steps.add(null);
+            }
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                if (block.kind == ControlFlowGraph.Kind.STATEMENT && block.node instanceof AForStatementStatement) {
+                    AForStatementStatement loop = (AForStatementStatement) block.node;
+                    ForStart start = new ForStart(read(scope, loop.getIter()), iterator);
+                    start.line = loop.getForTok().getLine();
+                    start.header = block.index;
+                    starts.put(block, steps.size());
+                    steps.add(start);
+                    ForTest test = new ForTest(iterator);
+                    steps.set(block.index, test);
+                    ForBind bind = new ForBind(iterator, names.indexOf(loop.getVar().getText().trim()));
+                    steps.set(block.successors.get(0).index, bind);
+                    iterator++;
+                }
+            }
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                if (steps.get(block.index) == null) {
+                    steps.set(block.index, step(scope, block));
+                }
+                Step step = steps.get(block.index);
+                if (block.node != null && step.line == 0) {
+                    Token first = ControlFlowGraph.firstToken(block.node);
+                    step.line = first == null ? 0 : first.getLine();
+                }
+            }
+            Map<ControlFlowGraph.Block, Integer> entries = new HashMap<>(starts);
+            for (LoopNest.Loop loop : nest.getLoops()) {
+                List<Integer> cached = caches.get(loop);
+                if (cached != null) {
+                    Integer start = starts.get(loop.header);
+                    EnterLoop enter = new EnterLoop(cached.stream().mapToInt(Integer::intValue).toArray());
+                    enter.next = start != null ? start : loop.header.index;
+                    enter.line = steps.get(enter.next).line;
+                    entries.put(loop.header, steps.size());
+                    steps.add(enter);
+                }
+            }
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                link(steps.get(block.index), block, entries);
+            }
+            for (Map.Entry<ControlFlowGraph.Block, Integer> entry : starts.entrySet()) {
+                ControlFlowGraph.Block header = entry.getKey();
+                ForStart start = (ForStart) steps.get(entry.getValue());
+                start.exit = ((ForTest) steps.get(header.index)).exit;
+                LoopDependence loop = LoopDependence.analyze(cfg, purity, nest.loopAt(header));
+                if (loop != null) {
+                    start.parallel = parallel(scope, loop, (ForBind) steps.get(header.successors.get(0).index));
+                }
+            }
+
+            // After the steps, which may add slots for Invariants
+            Code code = new Code(def == null ? "<module>" : def.getName().getText().trim(),
+                                 def == null ? 0 : def.getName().getLine(),
+                                 scope.parameterCount, minArguments, names, purity.isPure(scope));
+            code.steps = steps.toArray(new Step[0]);
+            code.entry = scope.entry.index;
+            return code;
+        }
+
+        // The slots and reads LoopDependence's names stand for
+        private ParallelLoop parallel(ControlFlowGraph.Scope scope, LoopDependence loop, ForBind bind) {
+            List<String> names = slots.get(scope);
+            int[] privates = new int[loop.privates.size()];
+            int i = 0;
+            for (String name : loop.privates) {
+                privates[i++] = names.indexOf(name);
+            }
+            int[] reductions = new int[loop.reductions.size()];
+            char[] folds = new char[reductions.length];
+            i = 0;
+            for (String name : loop.reductions) {
+                folds[i] = loop.fold(name);
+                reductions[i++] = names.indexOf(name);
+            }
+            List<Expr> targets = new ArrayList<>();
+            for (String name : loop.targets) {
+                targets.add(read(scope, name));
+            }
+            List<Expr> shared = new ArrayList<>();
+            for (String name : loop.shared) {
+                shared.add(read(scope, name));
+            }
+            return new ParallelLoop(bind.variable, bind.next, loop.header.index, privates, reductions, folds,
+                                    targets.toArray(new Expr[0]), shared.toArray(new Expr[0]));
+        }
+
+        private static int countForLoops(ControlFlowGraph.Scope scope) {
+            int count = 0;
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                if (block.kind == ControlFlowGraph.Kind.STATEMENT && block.node instanceof AForStatementStatement) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // Sets the successors of a step. An edge into a loop from before it
+        // goes through the loop's EnterLoop or ForStart, if it has one.
+        private static void link(Step step, ControlFlowGraph.Block block, Map<ControlFlowGraph.Block, Integer> entries) {
+            int[] next = new int[block.successors.size()];
+            for (int i = 0; i < next.length; i++) {
+                ControlFlowGraph.Block to = block.successors.get(i);
+                Integer start = entries.get(to);
+                next[i] = to.kind == ControlFlowGraph.Kind.EXIT ? -1
+                          : start != null && block.index < to.index ? start : to.index;
+            }
+            if (step instanceof Branch) {
+                ((Branch) step).ifTrue = next[0];
+                ((Branch) step).ifFalse = next[1];
+            } else if (step instanceof ForTest) {
+                ((ForTest) step).body = next[0];
+                ((ForTest) step).exit = next[1];
+            } else if (step instanceof ForBind) {
+                ((ForBind) step).next = next[0];
+            } else if (step instanceof Jump) {
+                ((Jump) step).next = next.length == 0 ? -1 : next[0];
+            } else if (step instanceof Evaluate) {
+                ((Evaluate) step).next = next[0];
+            } else if (step instanceof Assign) {
+                ((Assign) step).next = next[0];
+            } else if (step instanceof OpAssign) {
+                ((OpAssign) step).next = next[0];
+            } else if (step instanceof SetItem) {
+                ((SetItem) step).next = next[0];
+            } else if (step instanceof Print) {
+                ((Print) step).next = next[0];
+            } else if (step instanceof Assert) {
+                ((Assert) step).next = next[0];
+            } else if (step instanceof Def) {
+                ((Def) step).next = next[0];
+            } else if (step instanceof Import) {
+                ((Import) step).next = next[0];
+            }
+        }
+
+        private Step step(ControlFlowGraph.Scope scope, ControlFlowGraph.Block block) {
+            Node node = block.node;
+            List<String> names = slots.get(scope);
+            if (block.kind == ControlFlowGraph.Kind.ENTRY || block.kind == ControlFlowGraph.Kind.EXIT) {
+                return new Jump();
+            }
+            if (block.kind == ControlFlowGraph.Kind.DEF) {
+                ADefFuncFunction def = (ADefFuncFunction) node;
+                List<Expr> defaults = new ArrayList<>();
+                for (PAssignValueOpt value : defaults(def)) {
+                    if (value instanceof AHasValueAssignValueOpt) {
+                        defaults.add(expression(scope, ((AHasValueAssignValueOpt) value).getValue()));
+                    }
+                }
+                return new Def(compileScope(cfg.getScope(def)), names.indexOf(def.getName().getText().trim()),
+                               defaults.toArray(new Expr[0]));
+            }
+            if (node instanceof AIfStatementStatement) {
+                return new Branch(condition(scope, ((AIfStatementStatement) node).getCond()));
+            } else if (node instanceof AWhileStatementStatement) {
+                return new Branch(condition(scope, ((AWhileStatementStatement) node).getCond()));
+            } else if (node instanceof AReturnStatementStatement) {
+                return new Return(expression(scope, ((AReturnStatementStatement) node).getExpr()));
+            } else if (node instanceof APrintStatementStatement) {
+                AItemsPrintItems items = (AItemsPrintItems) ((APrintStatementStatement) node).getItems();
+                List<Expr> printed = new ArrayList<>();
+                printed.add(expression(scope, items.getFirst()));
+                PPrintTail tail = items.getRest();
+                while (tail instanceof AContinuePrintTail) {
+                    printed.add(expression(scope, ((AContinuePrintTail) tail).getNext()));
+                    tail = ((AContinuePrintTail) tail).getMore();
+                }
+                return new Print(printed.toArray(new Expr[0]));
+            } else if (node instanceof AAssignStatementStatement) {
+                AAssignStatementStatement assign = (AAssignStatementStatement) node;
+                return new Assign(names.indexOf(assign.getId().getText().trim()), expression(scope, assign.getExpr()));
+            } else if (node instanceof APluseqStatementStatement) {
+                return opAssign(scope, ((APluseqStatementStatement) node).getId(), '+', ((APluseqStatementStatement) node).getExpr());
+            } else if (node instanceof AMineqStatementStatement) {
+                return opAssign(scope, ((AMineqStatementStatement) node).getId(), '-', ((AMineqStatementStatement) node).getExpr());
+            } else if (node instanceof AMulteqStatementStatement) {
+                return opAssign(scope, ((AMulteqStatementStatement) node).getId(), '*', ((AMulteqStatementStatement) node).getExpr());
+            } else if (node instanceof ADiveqStatementStatement) {
+                return opAssign(scope, ((ADiveqStatementStatement) node).getId(), '/', ((ADiveqStatementStatement) node).getExpr());
+            } else if (node instanceof AArrayStatementStatement) {
+                AArrayStatementStatement store = (AArrayStatementStatement) node;
+                return new SetItem(read(scope, store.getId()), expression(scope, store.getIndex()),
+                                   expression(scope, store.getValue()));
+            } else if (node instanceof AAssertionStatementStatement) {
+                AAssertionStatementStatement assertion = (AAssertionStatementStatement) node;
+                Expr message = assertion.getMsg() instanceof APresentCommaExpressionOpt
+                               ? expression(scope, ((APresentCommaExpressionOpt) assertion.getMsg()).getExpr())
+                               : null;
+                return new Assert(expression(scope, assertion.getExpr()), message);
+            } else if (node instanceof AFunctionCallStatementStatement) {
+                return new Evaluate(expression(scope, ((AFunctionCallStatementStatement) node).getCall()));
+            } else if (node instanceof AImportStatementStatement) {
+                List<ModuleResolver.ImportRef> refs = importRefs((AImportStatementStatement) node);
+                String[] paths = new String[refs.size()];
+                int[] targets = new int[refs.size()];
+                for (int i = 0; i < paths.length; i++) {
+                    paths[i] = refs.get(i).modulePath;
+                    targets[i] = names.indexOf(refs.get(i).alias);
+                }
+                return new Import(paths, targets);
+            }
+            return new Jump();
+        }
+
+        private Step opAssign(ControlFlowGraph.Scope scope, TIdentifier id, char op, PExpression expr) {
+            String name = id.getText().trim();
+            return new OpAssign(slots.get(scope).indexOf(name), name, op, expression(scope, expr));
+        }
+
+        private static List<PAssignValueOpt> defaults(ADefFuncFunction def) {
+            List<PAssignValueOpt> defaults = new ArrayList<>();
+            if (def.getArgs() instanceof AHasArgsArgumentOpt) {
+                AArgumentArgument arg = (AArgumentArgument) ((AHasArgsArgumentOpt) def.getArgs()).getArg();
+                defaults.add(arg.getDefault());
+                PArgumentTail tail = arg.getRest();
+                while (tail instanceof AContinueArgumentTail) {
+                    defaults.add(((AContinueArgumentTail) tail).getNextDefault());
+                    tail = ((AContinueArgumentTail) tail).getMore();
+                }
+            }
+            return defaults;
+        }
+
+        // ---- names
+
+        private Expr read(ControlFlowGraph.Scope scope, TIdentifier id) {
+            return read(scope, id.getText().trim());
+        }
+
+        private Expr read(ControlFlowGraph.Scope scope, String name) {
+            int depth = 0;
+            for (ControlFlowGraph.Scope s = scope; s != null; s = s.parent, depth++) {
+                int slot = slots.get(s).indexOf(name);
+                if (slot >= 0) {
+                    return depth == 0 ? new Local(slot, name) : new Outer(depth, slot, name);
+                }
+            }
+            return new Missing(name);
+        }
+
+        // ---- conditions
+
+        private Cond condition(ControlFlowGraph.Scope scope, Node cond) {
+            if (cond instanceof ACompComparison) {
+                return condition(scope, ((ACompComparison) cond).getExpr());
+            } else if (cond instanceof AComp2Comparison) {
+                return new Logical(false, condition(scope, ((AComp2Comparison) cond).getLeft()),
+                                   condition(scope, ((AComp2Comparison) cond).getRight()));
+            } else if (cond instanceof AAftorAfteror) {
+                return condition(scope, ((AAftorAfteror) cond).getExpr());
+            } else if (cond instanceof AAftorandAfteror) {
+                return new Logical(true, condition(scope, ((AAftorandAfteror) cond).getLeft()),
+                                   condition(scope, ((AAftorandAfteror) cond).getRight()));
+            } else if (cond instanceof AAftandAfterand) {
+                return condition(scope, ((AAftandAfterand) cond).getExpr());
+            } else if (cond instanceof AAftnotAfterand) {
+                return new Not(condition(scope, ((AAftnotAfterand) cond).getExpr()));
+            } else if (cond instanceof ATrueAfternot) {
+                return new Literal(true);
+            } else if (cond instanceof AFalseAfternot) {
+                return new Literal(false);
+            } else if (cond instanceof ALessAfternot) {
+                return compare(scope, "<", ((ALessAfternot) cond).getLeft(), ((ALessAfternot) cond).getRight());
+            } else if (cond instanceof ALessequalAfternot) {
+                return compare(scope, "<=", ((ALessequalAfternot) cond).getLeft(), ((ALessequalAfternot) cond).getRight());
+            } else if (cond instanceof AGreaterAfternot) {
+                return compare(scope, ">", ((AGreaterAfternot) cond).getLeft(), ((AGreaterAfternot) cond).getRight());
+            } else if (cond instanceof AGreaterequalAfternot) {
+                return compare(scope, ">=", ((AGreaterequalAfternot) cond).getLeft(), ((AGreaterequalAfternot) cond).getRight());
+            } else if (cond instanceof AEqualAfternot) {
+                return compare(scope, "==", ((AEqualAfternot) cond).getLeft(), ((AEqualAfternot) cond).getRight());
+            } else {
+                return compare(scope, "!=", ((ADifferentAfternot) cond).getLeft(), ((ADifferentAfternot) cond).getRight());
+            }
+        }
+
+        private Cond compare(ControlFlowGraph.Scope scope, String op, PExpression left, PExpression right) {
+            return new Compare(op, expression(scope, left), expression(scope, right));
+        }
+
+        // ---- expressions
+
+        // Compiles an expression bottom-up, without recursion, then gives
+        // each Invariant left in it a slot of the loop it is kept for
+        private Expr expression(ControlFlowGraph.Scope scope, Node root) {
+            ExpressionCompiler compiler = new ExpressionCompiler(scope, loopsAround(scope, root));
+            compiler.traverse(root);
+            for (Invariant invariant : compiler.hoisted) {
+                List<String> names = slots.get(scope);
+                invariant.slot = names.size();
+                names.add("<invariant>");
+                caches.computeIfAbsent(compiler.loops.get(invariant.level - 1).loop, loop -> new ArrayList<>()).add(invariant.slot);
+            }
+            return compiler.nodes.get(root);
+        }
+
+        // The loops of scope an expression runs in, innermost first
+        private List<LoopInvariants> loopsAround(ControlFlowGraph.Scope scope, Node root) {
+            List<LoopInvariants> loops = new ArrayList<>();
+            ControlFlowGraph.Block block = cfg.blockOf(root);
+            if (optimizeLoops && block != null && block.scope == scope) {
+                for (LoopNest.Loop loop = nests.get(scope).innermost(block); loop != null; loop = loop.parent) {
+                    loops.add(invariants.get(loop));
+                }
+            }
+            return loops;
+        }
+
+        // Invariant code motion, strength reduction and bounds-check
+        // elimination happen here, in the loops LoopInvariants describes:
+        //   - an operation or len() of values that stay the same in the
+        //     innermost loop becomes an Invariant, kept for the outermost
+        //     loop they stay the same in; its operands are not kept again
+        //     for the same loop
+        //   - "x ** 2" to "x ** 4" becomes a Power, in or out of loops
+        //   - "a[i]" with a counted i becomes a CountedIndex
+        // Example, inside "while j < len(b)" inside "while i < n":
+        //     "x ** 2 + len(b) * i"  x ** 2 and len(b): kept for the outer
+        //                            loop; len(b) * i: for the inner one
+        private class ExpressionCompiler extends IterativeDepthFirstAdapter {
+            final ControlFlowGraph.Scope scope;
+            final List<LoopInvariants> loops;
+            final Map<Node, Expr> nodes = new IdentityHashMap<>();
+            final Set<Invariant> hoisted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+            ExpressionCompiler(ControlFlowGraph.Scope scope, List<LoopInvariants> loops) {
+                this.scope = scope;
+                this.loops = loops;
+            }
+
+            // ---- leaves
+
+            public void outAIntegerLiteralValuenode(AIntegerLiteralValuenode node) {
+                String text = node.getVal().getText().trim();
+                nodes.put(node, new Constant(Ints.parse(text)));
+            }
+
+            public void outADecimalLiteralValuenode(ADecimalLiteralValuenode node) {
+                nodes.put(node, new Constant(Double.parseDouble(node.getVal().getText().trim())));
+            }
+
+            public void outADoubleQuotesValuenode(ADoubleQuotesValuenode node) {
+                nodes.put(node, new Constant(unquote(node.getVal().getText().trim())));
+            }
+
+            public void outASingleQuotesValuenode(ASingleQuotesValuenode node) {
+                nodes.put(node, new Constant(unquote(node.getVal().getText().trim())));
+            }
+
+            public void outANoneValueValuenode(ANoneValueValuenode node) {
+                nodes.put(node, new Constant(null));
+            }
+
+            public void outAIdentifierValuenode(AIdentifierValuenode node) {
+                nodes.put(node, read(scope, node.getName()));
+            }
+
+            // ---- wrappers of one expression
+
+            public void outAValueSubsetValue(AValueSubsetValue node) {
+                nodes.put(node, nodes.get(node.getVal()));
+            }
+
+            public void outAFuncCallExpressionValue(AFuncCallExpressionValue node) {
+                nodes.put(node, nodes.get(node.getCall()));
+            }
+
+            public void outAParenthesisExpressionValue(AParenthesisExpressionValue node) {
+                nodes.put(node, nodes.get(node.getExpr()));
+            }
+
+            public void outAValuePow(AValuePow node) {
+                nodes.put(node, nodes.get(node.getExpr()));
+            }
+
+            public void outABasePowMultiplication(ABasePowMultiplication node) {
+                nodes.put(node, nodes.get(node.getExpr()));
+            }
+
+            public void outABaseMultExpression(ABaseMultExpression node) {
+                nodes.put(node, nodes.get(node.getExpr()));
+            }
+
+            // ---- operations
+
+            public void outAAddMultExpression(AAddMultExpression node) {
+                binary(node, '+', node.getLeft(), nodes.get(node.getRight()));
+            }
+
+            public void outASubMultExpression(ASubMultExpression node) {
+                binary(node, '-', node.getLeft(), nodes.get(node.getRight()));
+            }
+
+            public void outAMultMultiplication(AMultMultiplication node) {
+                binary(node, '*', node.getLeft(), nodes.get(node.getRight()));
+            }
+
+            public void outADivMultiplication(ADivMultiplication node) {
+                binary(node, '/', node.getLeft(), nodes.get(node.getRight()));
+            }
+
+            public void outAModMultiplication(AModMultiplication node) {
+                binary(node, '%', node.getLeft(), nodes.get(node.getRight()));
+            }
+
+            public void outAPowPow(APowPow node) {
+                Expr exponent = nodes.get(node.getRight());
+                if (optimizeLoops && exponent instanceof Constant && ((Constant) exponent).value instanceof Long
+                    && (Long) ((Constant) exponent).value >= 2 && (Long) ((Constant) exponent).value <= 4) {
+                    Expr base = nodes.get(node.getLeft());
+                    nodes.put(node, hoist(new Power(base, (int) (long) (Long) ((Constant) exponent).value), level(base), base));
+                } else {
+                    binary(node, '^', node.getLeft(), exponent);
+                }
+            }
+
+            public void outAAddMaxExpression(AAddMaxExpression node) {
+                binary(node, '+', node.getLeft(), new MaxMin(true, maxMinArguments(node.getArgs())));
+            }
+
+            public void outASubMaxExpression(ASubMaxExpression node) {
+                binary(node, '-', node.getLeft(), new MaxMin(true, maxMinArguments(node.getArgs())));
+            }
+
+            public void outAAddMinExpression(AAddMinExpression node) {
+                binary(node, '+', node.getLeft(), new MaxMin(false, maxMinArguments(node.getArgs())));
+            }
+
+            public void outASubMinExpression(ASubMinExpression node) {
+                binary(node, '-', node.getLeft(), new MaxMin(false, maxMinArguments(node.getArgs())));
+            }
+
+            public void outAMaxOnlyExpression(AMaxOnlyExpression node) {
+                nodes.put(node, new MaxMin(true, maxMinArguments(node.getArgs())));
+            }
+
+            public void outAMinOnlyExpression(AMinOnlyExpression node) {
+                nodes.put(node, new MaxMin(false, maxMinArguments(node.getArgs())));
+            }
+
+            public void outAPinakasExpressionValue(APinakasExpressionValue node) {
+                String list = node.getId().getText().trim();
+                Node index = Purity.operation(node.getIndex());
+                if (index instanceof AIdentifierValuenode) {
+                    String counter = ((AIdentifierValuenode) index).getName().getText().trim();
+                    for (LoopInvariants loop : loops) {
+                        if (loop.inBounds(list, counter, cfg.blockOf(node))) {
+                            nodes.put(node, new CountedIndex(read(scope, list), nodes.get(node.getIndex())));
+                            return;
+                        }
+                    }
+                }
+                nodes.put(node, new Index(read(scope, list), nodes.get(node.getIndex())));
+            }
+
+            public void outALengthExpessionValue(ALengthExpessionValue node) {
+                Expr argument = nodes.get(node.getExpr());
+                int level = Math.min(level(argument), keepingLengths());
+                nodes.put(node, hoist(new Builtin("len", argument), level, argument));
+            }
+
+            public void outAAsciiExpressionValue(AAsciiExpressionValue node) {
+                nodes.put(node, new Builtin("ascii", nodes.get(node.getExpr())));
+            }
+
+            public void outATypeExpressionValue(ATypeExpressionValue node) {
+                nodes.put(node, new Builtin("type", nodes.get(node.getExpr())));
+            }
+
+            public void outAOpenExpressionValue(AOpenExpressionValue node) {
+                nodes.put(node, new Builtin("open", nodes.get(node.getExpr())));
+            }
+
+            public void outABracketsExpressionValue(ABracketsExpressionValue node) {
+                List<Expr> items = new ArrayList<>();
+                if (node.getList() instanceof AHasItemsExpressionListOpt) {
+                    AExprListExpressionList list = (AExprListExpressionList) ((AHasItemsExpressionListOpt) node.getList()).getItems();
+                    items.add(nodes.get(list.getFirst()));
+                    PExprListTail tail = list.getRest();
+                    while (tail instanceof AContinueExprListTail) {
+                        items.add(nodes.get(((AContinueExprListTail) tail).getNext()));
+                        tail = ((AContinueExprListTail) tail).getMore();
+                    }
+                }
+                nodes.put(node, new ListLiteral(items.toArray(new Expr[0])));
+            }
+
+            // ---- calls
+
+            public void outANoArgsFunctionCall(ANoArgsFunctionCall node) {
+                call(node, node.getName(), new Expr[0]);
+            }
+
+            public void outAWithArgsFunctionCall(AWithArgsFunctionCall node) {
+                List<Expr> args = new ArrayList<>();
+                AArgsCallArgs first = (AArgsCallArgs) node.getArgs();
+                args.add(nodes.get(first.getFirst()));
+                PCallArgsTail tail = first.getRest();
+                while (tail instanceof AContinueCallArgsTail) {
+                    args.add(nodes.get(((AContinueCallArgsTail) tail).getNext()));
+                    tail = ((AContinueCallArgsTail) tail).getMore();
+                }
+                call(node, node.getName(), args.toArray(new Expr[0]));
+            }
+
+            public void outAIdDotFuncValuenode(AIdDotFuncValuenode node) {
+                nodes.put(node, nodes.get(node.getCall()));
+            }
+
+            private void call(Node node, TIdentifier name, Expr[] args) {
+                String function = name.getText().trim();
+                if (node.parent() instanceof AIdDotFuncValuenode) {
+                    TIdentifier module = ((AIdDotFuncValuenode) node.parent()).getObj();
+                    nodes.put(node, new ModuleCall(function, read(scope, module), args));
+                } else {
+                    nodes.put(node, new Call(function, read(scope, name), args));
+                }
+            }
+
+            private void binary(Node node, char op, Node left, Expr right) {
+                int level = Math.min(level(nodes.get(left)), level(right));
+                nodes.put(node, hoist(new Binary(op, nodes.get(left), right), level, nodes.get(left), right));
+            }
+
+            // ---- loops
+
+            // How many of the loops, innermost first, an operand stays the
+            // same in. Operations that do are Invariants by now.
+            private int level(Expr expr) {
+                if (expr instanceof Constant) {
+                    return loops.size();
+                } else if (expr instanceof Local) {
+                    return invariantIn(((Local) expr).name);
+                } else if (expr instanceof Outer) {
+                    return invariantIn(((Outer) expr).name);
+                } else if (expr instanceof Invariant) {
+                    return ((Invariant) expr).level;
+                }
+                return 0;
+            }
+
+            private int invariantIn(String name) {
+                int level = 0;
+                while (level < loops.size() && loops.get(level).isInvariant(name)) {
+                    level++;
+                }
+                return level;
+            }
+
+            private int keepingLengths() {
+                int level = 0;
+                while (level < loops.size() && loops.get(level).keepsLengths()) {
+                    level++;
+                }
+                return level;
+            }
+
+            // expr as an Invariant if it stays the same in level loops; an
+            // operand kept for the same loop is then computed in it instead
+            private Expr hoist(Expr expr, int level, Expr... operands) {
+                if (level == 0) {
+                    return expr;
+                }
+                for (Expr operand : operands) {
+                    if (operand instanceof Invariant && ((Invariant) operand).level == level) {
+                        hoisted.remove(operand);
+                        expr = unwrap(expr, (Invariant) operand);
+                    }
+                }
+                Invariant invariant = new Invariant(expr, level);
+                hoisted.add(invariant);
+                return invariant;
+            }
+
+            // expr with operand replaced by what it keeps
+            private Expr unwrap(Expr expr, Invariant operand) {
+                if (expr instanceof Binary) {
+                    Binary binary = (Binary) expr;
+                    return new Binary(binary.op, binary.left == operand ? operand.expr : binary.left,
+                                      binary.right == operand ? operand.expr : binary.right);
+                } else if (expr instanceof Power) {
+                    return new Power(operand.expr, ((Power) expr).exponent);
+                }
+                return new Builtin("len", operand.expr);
+            }
+
+            private Expr[] maxMinArguments(Node args) {
+                List<Expr> operands = new ArrayList<>();
+                if (args instanceof AMaxArgsMaxArgs) {
+                    operands.add(nodes.get(((AMaxArgsMaxArgs) args).getFirst()));
+                    PMaxArgsTail tail = ((AMaxArgsMaxArgs) args).getRest();
+                    while (tail instanceof AContinueMaxArgsTail) {
+                        operands.add(nodes.get(((AContinueMaxArgsTail) tail).getNext()));
+                        tail = ((AContinueMaxArgsTail) tail).getMore();
+                    }
+                } else {
+                    operands.add(nodes.get(((AMinArgsMinArgs) args).getFirst()));
+                    PMinArgsTail tail = ((AMinArgsMinArgs) args).getRest();
+                    while (tail instanceof AContinueMinArgsTail) {
+                        operands.add(nodes.get(((AContinueMinArgsTail) tail).getNext()));
+                        tail = ((AContinueMinArgsTail) tail).getMore();
+                    }
+                }
+                return operands.toArray(new Expr[0]);
+            }
+        }
+
+        // Example: "'abc'" → abc
+        private static String unquote(String text) {
+            return text.length() >= 2 ? text.substring(1, text.length() - 1) : text;
+        }
+    }
+
+    // ========== MAIN ==========
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: java Interpreter <filename.py> [-nocache] [-nospecialize] [-notier] [-tier-threshold n] [-tier-log]"
+                               + " [-memo] [-memo-size n] [-memo-log] [-noparallel] [-parallel-threshold n] [-parallel-log] [-noloopopt]"
+                               + " [-profile flat|tree|collapsed] [-interval micros]"
+                               + " [-max-steps n] [-max-elements n] [-max-bytes n] [-max-depth n] [-timeout ms]");
+            return;
+        }
+        int[] status = new int[1];
+        // Deep recursion needs more stack than the main thread has
+        Thread thread = new Thread(null, () -> status[0] = runFile(args), "minipython", 512L << 20);
+        thread.start();
+        thread.join();
+        System.exit(status[0]);
+    }
+
+    private static int runFile(String[] args)
+    {
+        Path file = Paths.get(args[0]);
+        Start ast;
+        try {
+            RecoveringParser parser = new RecoveringParser(
+                new Lexer(new PushbackReader(new FileReader(args[0]), 1024)));
+            ast = parser.parse();
+            if (!parser.getErrors().isEmpty()) {
+                for (RecoveringParser.SyntaxError error : parser.getErrors()) {
+                    System.err.println(error);
+                }
+                return 1;
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("Error: File not found - " + args[0]);
+            return 1;
+        } catch (Exception e) {
+            System.err.println(e);
+            return 1;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        Path dir = file.toAbsolutePath().getParent();
+        Interpreter interpreter = new Interpreter(out, new ModuleResolver(Collections.singletonList(dir)));
+        String profile = null;
+        long interval = 1000;
+        Budget budget = null;
+        boolean tiers = true;
+        int tierThreshold = TierCompiler.THRESHOLD;
+        boolean tierLog = false;
+        boolean memoLog = false;
+        boolean parallelLog = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-nocache")) {
+                interpreter.setInlineCaches(false);
+            } else if (args[i].equals("-nospecialize")) {
+                interpreter.setSpecialization(false);
+            } else if (args[i].equals("-notier")) {
+                tiers = false;
+            } else if (args[i].equals("-tier-threshold") && i + 1 < args.length) {
+                tierThreshold = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-tier-log")) {
+                tierLog = true;
+            } else if (args[i].equals("-memo")) {
+                interpreter.setMemoization(MemoTable.SIZE);
+            } else if (args[i].equals("-memo-size") && i + 1 < args.length) {
+                interpreter.setMemoization(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-memo-log")) {
+                memoLog = true;
+            } else if (args[i].equals("-noparallel")) {
+                interpreter.setParallelThreshold(-1);
+            } else if (args[i].equals("-parallel-threshold") && i + 1 < args.length) {
+                interpreter.setParallelThreshold(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-parallel-log")) {
+                parallelLog = true;
+            } else if (args[i].equals("-noloopopt")) {
+                interpreter.setLoopOptimizations(false);
+            } else if (args[i].equals("-profile") && i + 1 < args.length) {
+                profile = args[++i];
+            } else if (args[i].equals("-interval") && i + 1 < args.length) {
+                interval = Long.parseLong(args[++i]);
+            } else if (args[i].startsWith("-max-") || args[i].equals("-timeout")) {
+                if (i + 1 == args.length) {
+                    System.err.println("Error: " + args[i] + " needs a value");
+                    return 1;
+                }
+                budget = budget != null ? budget : new Budget();
+                long limit = Long.parseLong(args[++i]);
+                switch (args[i - 1]) {
+                    case "-max-steps":
+                        budget.setMaxSteps(limit);
+                        break;
+                    case "-max-elements":
+                        budget.setMaxElements(limit);
+                        break;
+                    case "-max-bytes":
+                        budget.setMaxBytes(limit);
+                        break;
+                    case "-max-depth":
+                        budget.setMaxDepth((int) Math.min(limit, Integer.MAX_VALUE));
+                        break;
+                    case "-timeout":
+                        budget.setTimeoutMillis(limit);
+                        break;
+                    default:
+                        System.err.println("Error: unknown option " + args[i - 1]);
+                        return 1;
+                }
+            }
+        }
+        interpreter.setBudget(budget);
+        TierCompiler tierCompiler = null;
+        if (tiers) {
+            tierCompiler = tierThreshold == TierCompiler.THRESHOLD && !tierLog
+                           ? TierCompiler.shared()
+                           : new TierCompiler(tierThreshold, tierLog ? System.err : null);
+        }
+        interpreter.setTierCompiler(tierCompiler);
+        Profiler profiler = null;
+        if (profile != null) {
+            profiler = new Profiler(interval);
+            interpreter.setProfiler(profiler);
+            profiler.start();
+        }
+        try {
+            interpreter.run(compile(ast, interpreter.loopOptimizations));
+            return 0;
+        } catch (MiniPythonError e) {
+            out.flush();
+            System.err.println((e.getLine() > 0 ? "Line " + e.getLine() + ": " : "") + e);
+            return 1;
+        } catch (StackOverflowError e) {
+            out.flush();
+            System.err.println("RecursionError: maximum recursion depth exceeded");
+            return 1;
+        } catch (OutOfMemoryError e) {
+            out.flush();
+            System.err.println("MemoryError: out of memory");
+            return 1;
+        } finally {
+            out.flush();
+            if (tierCompiler != null) {
+                tierCompiler.printSummary();
+            }
+            if (memoLog) {
+                for (MemoTable table : interpreter.getMemoTables()) {
+                    System.err.println("memo " + table);
+                }
+            }
+            if (parallelLog) {
+                System.err.println("parallel: " + interpreter.getParallelSummary());
+            }
+            if (profiler != null) {
+                profiler.stop();
+                profiler.report(profile, System.err);
+                System.err.println(interpreter.getSpecializations() + " nodes specialized, "
+                                   + interpreter.getDeoptimizations() + " deoptimized");
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/*
+ * MiniPython ints, which are unbounded as in Python. An int is a Long
+ * whenever it fits in 64 bits and a BigInteger only when it does not, so
+ * the common case computes on primitive longs and allocates nothing new.
+ * Each operation on two Longs checks for overflow as Math.*Exact does and
+ * is redone on BigIntegers only when it overflows; every result goes through
+ * normalize(), so a value that shrinks back into range is a Long again.
+ *
+ * Values (the interpreter) and IrPasses (the constant folder) both
+ * compute ints here, so a folded constant is the value the program would
+ * have computed. In the checker and the IR, both kinds are type "int".
+ *
+ * Example: add(Long.MAX_VALUE, 1L) → 9223372036854775808 (a BigInteger),
+ *          subtract(that, 1L) → 9223372036854775807L (a Long)
+ */
+public final class Ints
+{
+    // Beyond this many bits a result is refused rather than computed: it
+    // would take gigabytes, and BigInteger itself stops at 2^31 bits.
+    public static final long MAX_BITS = 1L << 30;
+
+    private Ints()
+    {
+    }
+
+    public static boolean isInt(Object value)
+    {
+        return value instanceof Long || value instanceof BigInteger;
+    }
+
+    // The canonical form: a Long if it fits
+    public static Object normalize(BigInteger value)
+    {
+        return value.bitLength() < 64 ? (Object) value.longValue() : value;
+    }
+
+    // Example: "123456789012345678901234567890" → a BigInteger, "42" → 42L
+    public static Object parse(String digits)
+    {
+        if (digits.length() < 19) {
+            return Long.parseLong(digits);
+        }
+        return normalize(new BigInteger(digits));
+    }
+
+    public static BigInteger big(Object value)
+    {
+        return value instanceof Long ? BigInteger.valueOf((Long) value) : (BigInteger) value;
+    }
+
+    // May be infinite for a BigInteger; callers decide whether that is an error
+    public static double toDouble(Object value)
+    {
+        return ((Number) value).doubleValue();
+    }
+
+    public static int signum(Object value)
+    {
+        return value instanceof Long ? Long.signum((Long) value) : ((BigInteger) value).signum();
+    }
+
+    // ========== ARITHMETIC ==========
+
+    // op is one of + - * / % and ^ for **, on two ints. Division and modulo
+    // floor, as in Python. A negative exponent gives a float. Division by
+    // zero throws ArithmeticException; callers that report it check first.
+    public static Object arithmetic(char op, Object a, Object b)
+    {
+        switch (op) {
+            case '+':
+                return add(a, b);
+            case '-':
+                return subtract(a, b);
+            case '*':
+                return multiply(a, b);
+            case '/':
+                return floorDiv(a, b);
+            case '%':
+                return floorMod(a, b);
+            default:
+                return power(a, b);
+        }
+    }
+
+    public static Object add(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long r = x + y;
+            if (((x ^ r) & (y ^ r)) >= 0) {       // Math.addExact's test, without the exception
+                return r;
+            }
+        }
+        return normalize(big(a).add(big(b)));
+    }
+
+    public static Object subtract(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long r = x - y;
+            if (((x ^ y) & (x ^ r)) >= 0) {
+                return r;
+            }
+        }
+        return normalize(big(a).subtract(big(b)));
+    }
+
+    public static Object multiply(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            long high = Math.multiplyHigh(x, y);
+            long low = x * y;
+            if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+                return low;
+            }
+        }
+        return normalize(big(a).multiply(big(b)));
+    }
+
+    public static Object floorDiv(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            long x = (Long) a;
+            long y = (Long) b;
+            if (x != Long.MIN_VALUE || y != -1) {   // the one quotient that overflows
+                return Math.floorDiv(x, y);
+            }
+        }
+        BigInteger[] qr = big(a).divideAndRemainder(big(b));
+        if (qr[1].signum() != 0 && qr[1].signum() != big(b).signum()) {
+            return normalize(qr[0].subtract(BigInteger.ONE));
+        }
+        return normalize(qr[0]);
+    }
+
+    public static Object floorMod(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            return Math.floorMod((long) (Long) a, (long) (Long) b);
+        }
+        BigInteger divisor = big(b);
+        BigInteger r = big(a).remainder(divisor);
+        if (r.signum() != 0 && r.signum() != divisor.signum()) {
+            r = r.add(divisor);
+        }
+        return normalize(r);
+    }
+
+    // By squaring on longs while the result fits, then BigInteger.pow, which
+    // also squares. Too large a result throws ArithmeticException.
+    public static Object power(Object a, Object b)
+    {
+        if (signum(b) < 0) {
+            if (signum(a) == 0) {
+                throw new ArithmeticException("0 cannot be raised to a negative power");
+            }
+            return Math.pow(toDouble(a), toDouble(b));
+        }
+        if (a instanceof Long && b instanceof Long) {
+            long base = (Long) a;
+            long exponent = (Long) b;
+            long result = 1;
+            while (true) {
+                if ((exponent & 1) != 0) {
+                    long high = Math.multiplyHigh(result, base);
+                    long low = result * base;
+                    if (!((high == 0 && low >= 0) || (high == -1 && low < 0))) {
+                        break;
+                    }
+                    result = low;
+                }
+                exponent >>= 1;
+                if (exponent == 0) {
+                    return result;
+                }
+                long high = Math.multiplyHigh(base, base);
+                long low = base * base;
+                if (high != 0 || low < 0) {
+                    break;
+                }
+                base = low;
+            }
+        }
+        if (bitLengthBound('^', a, b) > MAX_BITS) {
+            throw new ArithmeticException("integer result too large");
+        }
+        if (!(b instanceof Long)) {
+            // only 0, 1 and -1 get here: the bound of anything else is too large
+            return signum(a) == 0 ? 0L : signum(a) > 0 || !big(b).testBit(0) ? 1L : -1L;
+        }
+        return normalize(big(a).pow((int) (long) (Long) b));
+    }
+
+    // An upper bound on the bit length of the result of op on two ints,
+    // saturating at Long.MAX_VALUE. Lets callers refuse or charge for a
+    // result before spending the time to compute it.
+    // Example: bitLengthBound('^', 2L, 100L) → 200, bitLengthBound('+', 1L, 1L) → 2
+    public static long bitLengthBound(char op, Object a, Object b)
+    {
+        long x = bitLength(a);
+        long y = bitLength(b);
+        switch (op) {
+            case '+': case '-':
+                return Math.max(x, y) + 1;
+            case '*':
+                return x + y;
+            case '/': case '%':
+                return x + 1;
+            default:
+                if (signum(b) <= 0 || x <= 1 && signum(a) >= 0 || a instanceof Long && (Long) a == -1) {
+                    return 1;       // a float, or 0, 1 and -1 to any power
+                }
+                if (!(b instanceof Long)) {
+                    return Long.MAX_VALUE;
+                }
+                long exponent = (Long) b;
+                return x > Long.MAX_VALUE / exponent ? Long.MAX_VALUE : x * exponent;
+        }
+    }
+
+    private static long bitLength(Object value)
+    {
+        if (value instanceof Long) {
+            long v = (Long) value;
+            return 64 - Long.numberOfLeadingZeros(v < 0 ? ~v : v);
+        }
+        return ((BigInteger) value).bitLength();
+    }
+
+    // ========== COMPARISON ==========
+
+    // Two ints, or an int and a Double, compared exactly as Python does
+    // rather than by rounding the int to a double. NaN gives 0; see
+    // Values.unordered.
+    public static int compare(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        if (isInt(a) && isInt(b)) {
+            return big(a).compareTo(big(b));
+        }
+        if (a instanceof Double) {
+            return -compare(b, a);
+        }
+        double d = (Double) b;
+        if (Double.isNaN(d)) {
+            return 0;
+        }
+        if (Double.isInfinite(d)) {
+            return d > 0 ? -1 : 1;
+        }
+        // Up to 2^53 a long is exactly a double. Example: 2^53 + 1 is
+        // above 9007199254740992.0, to which it would round.
+        if (a instanceof Long && (Long) a >= -(1L << 53) && (Long) a <= 1L << 53) {
+            double x = (Long) a;
+            return x < d ? -1 : x > d ? 1 : 0;
+        }
+        return new BigDecimal(big(a)).compareTo(new BigDecimal(d));
+    }
+}
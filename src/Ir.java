@@ -0,0 +1,558 @@
+import java.math.BigInteger;
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * A typed SSA intermediate representation of a program, lowered from the
+ * checked AST by IrBuilder, so that analyses, optimizations (IrPasses) and
+ * backends do not have to walk the SableCC tree and its chain wrappers.
+ *
+ * Every scope of the ControlFlowGraph becomes a Function: "<module>" for the
+ * top-level code, then one per def. A Function is a list of basic blocks in
+ * reverse postorder, entry first. A block starts with its phis, then has
+ * straight-line instructions and ends with exactly one terminator: jump,
+ * branch (successors: true, false) or return.
+ *
+ * Every value is assigned once and has a type. Expressions have the type the
+ * checker gives them (int, string, none or unknown; decimals are int, as in
+ * TypeCheckerVisitor); the values the checker does not type are bool
+ * (comparisons), list (list literals) and iterator (for loops). Phis have the
+ * join of their operands (ReturnTypeInference.join). Instructions without a
+ * result (print, store, ...) have no type.
+ *
+ *     def count(n):              function count(n) : int
+ *         i = 0                    b0:
+ *         while i < n:               v0 = param 0 n : unknown
+ *             i += 1                 v1 = const 0 : int
+ *         return i                   jump b1
+ *                                  b1:  preds b0, b2
+ *                                    v2 = phi [v1, b0], [v4, b2] : int
+ *                                    v3 = lt v2, v0 : bool
+ *                                    branch v3, b2, b3
+ *                                  b2:  preds b1
+ *                                    v4 = add v2, v5 : int  ...
+ *
+ * Local variables exist only as SSA values. A variable that a def inside the
+ * scope reads is also stored by name (store), and the def reads it back by
+ * name (load) when it runs, as Python closures see the current binding. A
+ * local that is read where it may not be assigned yet is "undef" on that
+ * path, which a backend reports like Python's UnboundLocalError.
+ */
+public class Ir
+{
+    public enum Op {
+        CONST, UNDEF, PARAM, PHI, LOAD, STORE,
+        ADD, SUB, MUL, DIV, MOD, POW,
+        LT, LE, GT, GE, EQ, NE, NOT,
+        LIST, INDEX, SETITEM, LEN, ASCII, TYPE, OPEN, MAX, MIN,
+        CALL, DEF, PRINT, ASSERT, IMPORT,
+        ITER, HASNEXT, NEXT,
+        JUMP, BRANCH, RETURN;
+
+        public boolean isTerminator() {
+            return this == JUMP || this == BRANCH || this == RETURN;
+        }
+
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    public static class Value {
+        public Op op;
+        public String type;                 // null for instructions without a result
+        public Object constant;             // const: Long, BigInteger, Double, String, Boolean, or null for None
+        public String name;                 // param, load, store, call, import. Example: call "sh.area"
+        public int index;                   // param: position
+        public Function function;           // def: the function it binds
+        public Block block;
+        public final List<Value> operands = new ArrayList<>();
+        public final List<Value> users = new ArrayList<>();     // once per use
+        Value replacement;                  // IrBuilder: what a removed phi stands for
+
+        Value(Op op, String type) {
+            this.op = op;
+            this.type = type;
+        }
+
+        public void addOperand(Value operand) {
+            operands.add(operand);
+            operand.users.add(this);
+        }
+
+        public void setOperand(int i, Value operand) {
+            operands.get(i).users.remove(this);
+            operands.set(i, operand);
+            operand.users.add(this);
+        }
+
+        public void removeOperand(int i) {
+            operands.remove(i).users.remove(this);
+        }
+
+        public void clearOperands() {
+            for (Value operand : operands) {
+                operand.users.remove(this);
+            }
+            operands.clear();
+        }
+
+        // Example: after "x = 1 + 2" is folded, every use of the add reads the const
+        public void replaceAllUsesWith(Value other) {
+            for (Value user : new LinkedHashSet<>(users)) {
+                for (int i = 0; i < user.operands.size(); i++) {
+                    if (user.operands.get(i) == this) {
+                        user.operands.set(i, other);
+                        other.users.add(user);
+                    }
+                }
+            }
+            users.clear();
+        }
+
+        // Removes the value from its block. It must have no users left.
+        public void remove() {
+            clearOperands();
+            if (op == Op.PHI) {
+                block.phis.remove(this);
+            } else {
+                block.instructions.remove(this);
+            }
+        }
+
+        public boolean isConstant() {
+            return op == Op.CONST;
+        }
+    }
+
+    public static class Block {
+        public int id;
+        public final Function function;
+        public final List<Value> phis = new ArrayList<>();
+        public final List<Value> instructions = new ArrayList<>();     // the terminator is last
+        public final List<Block> predecessors = new ArrayList<>();     // phi operand i comes from predecessor i
+        public final List<Block> successors = new ArrayList<>();       // branch: true, then false
+        public Block idom;                                              // set by Function.computeDominators
+
+        Block(Function function) {
+            this.function = function;
+            this.id = function.nextBlockId++;
+        }
+
+        public Value getTerminator() {
+            if (instructions.isEmpty()) {
+                return null;
+            }
+            Value last = instructions.get(instructions.size() - 1);
+            return last.op.isTerminator() ? last : null;
+        }
+
+        // Drops one edge from pred, with the phi operands for it
+        public void removePredecessor(Block pred) {
+            int i = predecessors.indexOf(pred);
+            predecessors.remove(i);
+            pred.successors.remove(this);
+            for (Value phi : phis) {
+                phi.removeOperand(i);
+            }
+        }
+    }
+
+    public static class Function {
+        public final String name;
+        public String label;                            // unique in the program. Example: the second "def add" → "add#2"
+        public final ADefFuncFunction def;              // null for the top-level code
+        public final Function parent;
+        public final List<String> parameters = new ArrayList<>();
+        public int requiredParameters;                  // the others have defaults, see Op.DEF
+        public String returnType;
+        public final List<Block> blocks = new ArrayList<>();
+        public Block entry;
+        int nextBlockId;
+
+        Function(String name, ADefFuncFunction def, Function parent) {
+            this.name = name;
+            this.label = name;
+            this.def = def;
+            this.parent = parent;
+        }
+
+        public Block newBlock() {
+            Block block = new Block(this);
+            blocks.add(block);
+            return block;
+        }
+
+        // Appends an instruction, or a phi, to a block
+        public Value add(Block block, Op op, String type, Value... operands) {
+            Value value = new Value(op, type);
+            value.block = block;
+            for (Value operand : operands) {
+                value.addOperand(operand);
+            }
+            if (op == Op.PHI) {
+                block.phis.add(value);
+            } else {
+                block.instructions.add(value);
+            }
+            return value;
+        }
+
+        // A const at the top of the entry block, where it dominates every use
+        public Value constant(Object constant) {
+            Value value = addAtTop(Op.CONST, typeOfConstant(constant));
+            value.constant = constant;
+            return value;
+        }
+
+        // Right after the params of the entry block
+        Value addAtTop(Op op, String type) {
+            Value value = new Value(op, type);
+            value.block = entry;
+            int at = 0;
+            while (at < entry.instructions.size() && entry.instructions.get(at).op == Op.PARAM) {
+                at++;
+            }
+            entry.instructions.add(at, value);
+            return value;
+        }
+
+        public static void link(Block from, Block to) {
+            from.successors.add(to);
+            to.predecessors.add(from);
+        }
+
+        // Drops the blocks the entry cannot reach and puts the rest in reverse postorder.
+        // Returns true if a block was dropped.
+        public boolean removeUnreachableBlocks() {
+            List<Block> order = reversePostorder();
+            if (order.size() == blocks.size()) {
+                blocks.clear();
+                blocks.addAll(order);
+                return false;
+            }
+            Set<Block> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+            reachable.addAll(order);
+            for (Block block : blocks) {
+                if (!reachable.contains(block)) {
+                    for (Block succ : new ArrayList<>(block.successors)) {
+                        succ.removePredecessor(block);
+                    }
+                }
+            }
+            for (Block block : blocks) {
+                if (!reachable.contains(block)) {
+                    for (Value value : block.phis) {
+                        value.clearOperands();
+                    }
+                    for (Value value : block.instructions) {
+                        value.clearOperands();
+                    }
+                }
+            }
+            blocks.clear();
+            blocks.addAll(order);
+            return true;
+        }
+
+        // Joins a block that only jumps to a block with no other predecessor with that
+        // block. Example: "b1: jump b2" and "b2: preds b1" become one block.
+        // Returns true if a block was joined.
+        public boolean mergeBlocks() {
+            boolean merged = false;
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                Value jump = block.getTerminator();
+                while (jump != null && jump.op == Op.JUMP) {
+                    Block next = block.successors.get(0);
+                    if (next == entry || next == block || next.predecessors.size() != 1) {
+                        break;
+                    }
+                    for (Value phi : new ArrayList<>(next.phis)) {
+                        phi.replaceAllUsesWith(phi.operands.get(0));
+                        phi.remove();
+                    }
+                    block.instructions.remove(jump);
+                    for (Value value : next.instructions) {
+                        value.block = block;
+                        block.instructions.add(value);
+                    }
+                    block.successors.clear();
+                    for (Block succ : next.successors) {
+                        block.successors.add(succ);
+                        succ.predecessors.set(succ.predecessors.indexOf(next), block);
+                    }
+                    blocks.remove(next);
+                    merged = true;
+                    jump = block.getTerminator();
+                }
+            }
+            if (merged) {
+                removeUnreachableBlocks();      // back in reverse postorder
+            }
+            return merged;
+        }
+
+        public List<Block> reversePostorder() {
+            List<Block> post = new ArrayList<>();
+            Set<Block> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            Stack<Block> stack = new Stack<>();
+            Stack<Integer> next = new Stack<>();
+            stack.push(entry);
+            next.push(0);
+            seen.add(entry);
+            while (!stack.isEmpty()) {
+                Block block = stack.peek();
+                int i = next.pop();
+                if (i < block.successors.size()) {
+                    next.push(i + 1);
+                    Block succ = block.successors.get(i);
+                    if (seen.add(succ)) {
+                        stack.push(succ);
+                        next.push(0);
+                    }
+                } else {
+                    post.add(stack.pop());
+                }
+            }
+            Collections.reverse(post);
+            return post;
+        }
+
+        // Immediate dominators, with the iterative algorithm of Cooper, Harvey and Kennedy.
+        // The blocks must be in reverse postorder (see removeUnreachableBlocks).
+        public void computeDominators() {
+            Map<Block, Integer> rank = new IdentityHashMap<>();
+            for (int i = 0; i < blocks.size(); i++) {
+                blocks.get(i).idom = null;
+                rank.put(blocks.get(i), i);
+            }
+            entry.idom = entry;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Block block : blocks) {
+                    if (block == entry) {
+                        continue;
+                    }
+                    Block idom = null;
+                    for (Block pred : block.predecessors) {
+                        if (pred.idom != null && rank.containsKey(pred)) {
+                            idom = idom == null ? pred : intersect(pred, idom, rank);
+                        }
+                    }
+                    if (idom != block.idom) {
+                        block.idom = idom;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        private static Block intersect(Block a, Block b, Map<Block, Integer> rank) {
+            while (a != b) {
+                while (rank.get(a) > rank.get(b)) {
+                    a = a.idom;
+                }
+                while (rank.get(b) > rank.get(a)) {
+                    b = b.idom;
+                }
+            }
+            return a;
+        }
+
+        // After computeDominators. Example: the entry dominates every block
+        public static boolean dominates(Block a, Block b) {
+            for (Block block = b; block != null; block = block.idom) {
+                if (block == a) {
+                    return true;
+                }
+                if (block.idom == block) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        // Phi types are the join of their operands, and phis can use each other
+        // around loops, so they are typed to a fixed point from bottom
+        public void inferPhiTypes() {
+            List<Value> phis = new ArrayList<>();
+            for (Block block : blocks) {
+                for (Value phi : block.phis) {
+                    phi.type = ReturnTypeInference.BOTTOM;
+                    phis.add(phi);
+                }
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Value phi : phis) {
+                    String type = joinOperands(phi);
+                    if (!type.equals(phi.type)) {
+                        phi.type = type;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        // Example: "function add(a, [b]) : int" for def add(a, b = 2)
+        public String signature() {
+            StringBuilder text = new StringBuilder("function " + label + "(");
+            for (int i = 0; i < parameters.size(); i++) {
+                text.append(i > 0 ? ", " : "");
+                text.append(i < requiredParameters ? parameters.get(i) : "[" + parameters.get(i) + "]");
+            }
+            return text.append(") : ").append(returnType).toString();
+        }
+    }
+
+    private final List<Function> functions = new ArrayList<>();
+
+    // The top-level code first
+    public List<Function> getFunctions()
+    {
+        return functions;
+    }
+
+    Function addFunction(String name, ADefFuncFunction def, Function parent)
+    {
+        Function function = new Function(name, def, parent);
+        functions.add(function);
+        return function;
+    }
+
+    // ========== TYPES ==========
+
+    // Example: 5 → "int", "a" → "string", null → "none"
+    public static String typeOfConstant(Object constant)
+    {
+        if (constant == null) {
+            return "none";
+        } else if (constant instanceof String) {
+            return "string";
+        } else if (constant instanceof Boolean) {
+            return "bool";
+        }
+        return "int";
+    }
+
+    static String joinOperands(Value phi)
+    {
+        String type = ReturnTypeInference.BOTTOM;
+        for (Value operand : phi.operands) {
+            type = ReturnTypeInference.join(type, operand.type);
+        }
+        return type;
+    }
+
+    // ========== TEXT ==========
+
+    // Blocks and values are numbered in order as they are printed
+    public String dump()
+    {
+        StringBuilder text = new StringBuilder();
+        for (Function function : functions) {
+            if (text.length() > 0) {
+                text.append("\n");
+            }
+            dump(function, text);
+        }
+        return text.toString();
+    }
+
+    public static String dump(Function function)
+    {
+        StringBuilder text = new StringBuilder();
+        dump(function, text);
+        return text.toString();
+    }
+
+    private static void dump(Function function, StringBuilder text)
+    {
+        Map<Block, String> blockNames = new IdentityHashMap<>();
+        Map<Value, String> valueNames = new IdentityHashMap<>();
+        for (Block block : function.blocks) {
+            blockNames.put(block, "b" + blockNames.size());
+            for (Value value : block.phis) {
+                valueNames.put(value, "v" + valueNames.size());
+            }
+            for (Value value : block.instructions) {
+                if (value.type != null) {
+                    valueNames.put(value, "v" + valueNames.size());
+                }
+            }
+        }
+
+        text.append(function.signature()).append("\n");
+        for (Block block : function.blocks) {
+            text.append("  ").append(blockNames.get(block)).append(":");
+            for (int i = 0; i < block.predecessors.size(); i++) {
+                text.append(i == 0 ? "  preds " : ", ").append(name(blockNames, block.predecessors.get(i)));
+            }
+            text.append("\n");
+            for (Value phi : block.phis) {
+                text.append("    ").append(valueNames.get(phi)).append(" = phi ");
+                for (int i = 0; i < phi.operands.size(); i++) {
+                    text.append(i > 0 ? ", " : "").append("[").append(name(valueNames, phi.operands.get(i)))
+                        .append(", ").append(name(blockNames, block.predecessors.get(i))).append("]");
+                }
+                text.append(" : ").append(phi.type).append("\n");
+            }
+            for (Value value : block.instructions) {
+                text.append("    ");
+                if (value.type != null) {
+                    text.append(valueNames.get(value)).append(" = ");
+                }
+                text.append(value.op);
+                List<String> parts = new ArrayList<>();
+                if (value.op == Op.CONST) {
+                    parts.add(literal(value.constant));
+                } else if (value.op == Op.PARAM) {
+                    parts.add(value.index + " " + value.name);
+                } else if (value.op == Op.DEF) {
+                    parts.add(value.function.label);
+                } else if (value.name != null) {
+                    parts.add(value.name);
+                }
+                for (Value operand : value.operands) {
+                    parts.add(name(valueNames, operand));
+                }
+                for (Block succ : value.op.isTerminator() ? block.successors : Collections.<Block>emptyList()) {
+                    parts.add(name(blockNames, succ));
+                }
+                if (!parts.isEmpty()) {
+                    text.append(" ").append(String.join(", ", parts));
+                }
+                if (value.type != null) {
+                    text.append(" : ").append(value.type);
+                }
+                text.append("\n");
+            }
+        }
+    }
+
+    // Values and blocks that are no longer in the function print as "?v" and "?b"
+    private static <T> String name(Map<T, String> names, T item)
+    {
+        String name = names.get(item);
+        return name != null ? name : item instanceof Value ? "?v" : "?b";
+    }
+
+    // Example: "a\"b" for the string a"b, 1.5, None, True
+    public static String literal(Object constant)
+    {
+        if (constant == null) {
+            return "None";
+        } else if (constant instanceof Boolean) {
+            return (Boolean) constant ? "True" : "False";
+        } else if (constant instanceof String) {
+            String s = (String) constant;
+            return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+        } else if (constant instanceof BigInteger || constant instanceof Long) {
+            return constant.toString();
+        }
+        return Double.toString((Double) constant);
+    }
+}
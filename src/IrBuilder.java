@@ -0,0 +1,1008 @@
+import java.util.*;
+import minipython.analysis.*;
+import minipython.node.*;
+
+/*
+ * Lowers a checked program to Ir, one Function per ControlFlowGraph scope.
+ *
+ * The blocks of the ControlFlowGraph are lowered in reverse postorder.
+ * Statements that simply follow each other share a basic block; a block
+ * starts where paths join or a branch goes. Conditions become branches (an
+ * "and" or "or" skips its right side, as in Python), and a for loop gets a
+ * block before the loop that takes the iterator and a block that tests it:
+ *
+ *     for a in b:          it = iter b;  jump test
+ *         print a          test: branch hasnext it, body, after
+ *                          body: a = next it;  print a;  jump test
+ *
+ * SSA form is built during lowering as Braun et al. describe it ("Simple and
+ * Efficient Construction of Static Single Assignment Form"): every block
+ * remembers the value each variable was last given in it. A read looks there,
+ * then in the predecessors, with a phi where several paths join. A block whose
+ * predecessors are not all lowered yet (a loop header) gets incomplete phis,
+ * which are finished when its last predecessor is done (the block is sealed).
+ * A phi that turns out to merge a single value is removed on the spot.
+ *
+ * Types come from the checker: every expression is typed with FlowTypes
+ * before it is lowered.
+ */
+public class IrBuilder
+{
+    private final ControlFlowGraph cfg;
+    private final FlowTypes flow;
+    private final Hashtable<String, String> returnTypes;
+    private final Ir program = new Ir();
+    private final Map<ControlFlowGraph.Scope, Ir.Function> functions = new HashMap<>();
+
+    // Variables of a scope that defs inside it read, so they are also stored by name
+    // Example: x = 1; def f(): print x → global stores x
+    private final Map<ControlFlowGraph.Scope, Set<String>> stored = new HashMap<>();
+
+    // ========== STATE OF THE SCOPE BEING LOWERED ==========
+
+    private ControlFlowGraph.Scope scope;
+    private Ir.Function function;
+    private Ir.Block current;
+    private Ir.Value undef;
+
+    // Per ControlFlowGraph block, by index
+    private int[] rank;                 // position in reverse postorder, -1 if unreachable
+    private Ir.Block[] start;           // where the edges into it arrive; for a for loop, the block before the loop
+    private Ir.Block[] test;            // for loops: the block that asks the iterator for a next element
+    private Ir.Block[] end;             // where its code ended
+    private int[] waiting;              // predecessors not lowered yet (for loops: from before the loop)
+    private int[] waitingBack;          // for loops: predecessors in the loop body not lowered yet
+
+    // The iterator of every for loop. Example: <for a in b> → v3 = iter v2
+    private final Map<Node, Ir.Value> iterators = new IdentityHashMap<>();
+
+    // SSA construction: the value of each variable at the end of a block
+    private final Map<Ir.Block, Map<String, Ir.Value>> definitions = new HashMap<>();
+    private final Map<Ir.Block, Map<String, Ir.Value>> incompletePhis = new HashMap<>();
+    private final Set<Ir.Value> incomplete = new HashSet<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+
+    // Expression lowering: the checker's types, and the value of every node lowered so far
+    private Map<Node, String> types;
+    private final Map<Node, Ir.Value> values = new IdentityHashMap<>();
+    private final Lowering lowering = new Lowering();
+
+    private IrBuilder(ControlFlowGraph cfg, FlowTypes flow, Hashtable<String, String> returnTypes)
+    {
+        this.cfg = cfg;
+        this.flow = flow;
+        this.returnTypes = returnTypes;
+    }
+
+    // The passes must have run on the program; its errors do not stop lowering
+    // (an ill-typed expression is "unknown").
+    public static Ir lower(Start ast, Hashtable<String, Object> symtable)
+    {
+        ControlFlowGraph cfg = ControlFlowGraph.of(ast, symtable);
+        Hashtable<String, String> returnTypes = (Hashtable<String, String>) symtable.get("returnTypes");
+        if (returnTypes == null) {
+            returnTypes = ReturnTypeInference.infer(ast, symtable);
+        }
+        FlowTypes flow = new FlowTypes(cfg, returnTypes, symtable);
+        flow.solveAll();
+
+        IrBuilder builder = new IrBuilder(cfg, flow, returnTypes);
+        builder.findStoredVariables(ast);
+        builder.declareFunctions();
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            if (builder.functions.containsKey(scope)) {
+                builder.lowerScope(scope);
+            }
+        }
+        return builder.program;
+    }
+
+    // ========== FUNCTIONS ==========
+
+    // Defs that can never run are left out
+    private void declareFunctions()
+    {
+        Map<String, Integer> count = new HashMap<>();
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            Ir.Function parent = scope.parent == null ? null : functions.get(scope.parent);
+            if (scope.parent != null && (parent == null || !scope.defBlock.reachable)) {
+                continue;
+            }
+            Ir.Function function = program.addFunction(scope.function == null ? "<module>" : scope.getName(),
+                                                       scope.function, parent);
+            function.parameters.addAll(scope.variables.subList(0, scope.parameterCount));
+            function.requiredParameters = scope.parameterCount;
+            if (scope.function != null) {
+                for (PAssignValueOpt value : defaults(scope.function)) {
+                    if (value instanceof AHasValueAssignValueOpt) {
+                        function.requiredParameters--;
+                    }
+                }
+            }
+            function.returnType = scope.function == null ? "none" : returnTypes.getOrDefault(function.name, "unknown");
+            if (function.returnType.equals("error")) {
+                function.returnType = "unknown";
+            }
+            functions.put(scope, function);
+            count.merge(function.name, 1, Integer::sum);
+        }
+
+        // Example: two "def add" → add#1, add#2
+        Map<String, Integer> seen = new HashMap<>();
+        for (Ir.Function function : program.getFunctions()) {
+            if (count.get(function.name) > 1) {
+                function.label = function.name + "#" + seen.merge(function.name, 1, Integer::sum);
+            }
+        }
+    }
+
+    // The default of every parameter, ANoValueAssignValueOpt when it has none
+    private static List<PAssignValueOpt> defaults(ADefFuncFunction def)
+    {
+        List<PAssignValueOpt> defaults = new ArrayList<>();
+        if (def.getArgs() instanceof AHasArgsArgumentOpt) {
+            AArgumentArgument arg = (AArgumentArgument) ((AHasArgsArgumentOpt) def.getArgs()).getArg();
+            defaults.add(arg.getDefault());
+            PArgumentTail tail = arg.getRest();
+            while (tail instanceof AContinueArgumentTail) {
+                defaults.add(((AContinueArgumentTail) tail).getNextDefault());
+                tail = ((AContinueArgumentTail) tail).getMore();
+            }
+        }
+        return defaults;
+    }
+
+    // A name read in a scope where it is not assigned belongs to the nearest enclosing scope that assigns it
+    private void findStoredVariables(Start ast)
+    {
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            stored.put(scope, new HashSet<>());
+        }
+        ast.apply(new IterativeDepthFirstAdapter() {
+            public void inAIdentifierValuenode(AIdentifierValuenode node) {
+                read(node, node.getName());
+            }
+
+            public void inAPinakasExpressionValue(APinakasExpressionValue node) {
+                read(node, node.getId());
+            }
+
+            public void inAArrayStatementStatement(AArrayStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inAForStatementStatement(AForStatementStatement node) {
+                read(node, node.getIter());
+            }
+
+            public void inAPluseqStatementStatement(APluseqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inAMineqStatementStatement(AMineqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inAMulteqStatementStatement(AMulteqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inADiveqStatementStatement(ADiveqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            private void read(Node at, Token name) {
+                ControlFlowGraph.Block block = cfg.blockOf(at);
+                String variable = name.getText().trim();
+                if (block == null || block.scope.indexOf(variable) >= 0) {
+                    return;
+                }
+                for (ControlFlowGraph.Scope outer = block.scope.parent; outer != null; outer = outer.parent) {
+                    if (outer.indexOf(variable) >= 0) {
+                        stored.get(outer).add(variable);
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    // ========== BLOCKS ==========
+
+    private void lowerScope(ControlFlowGraph.Scope scope)
+    {
+        this.scope = scope;
+        this.function = functions.get(scope);
+        this.undef = null;
+        definitions.clear();
+        incompletePhis.clear();
+        incomplete.clear();
+        sealed.clear();
+
+        List<ControlFlowGraph.Block> blocks = scope.blocks;
+        int n = blocks.size();
+        int[] order = BitVectorDataflow.reversePostorder(scope);
+        rank = new int[n];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < order.length; i++) {
+            rank[order[i]] = i;
+        }
+        start = new Ir.Block[n];
+        test = new Ir.Block[n];
+        end = new Ir.Block[n];
+        waiting = new int[n];
+        waitingBack = new int[n];
+        for (int b : order) {
+            for (ControlFlowGraph.Block pred : blocks.get(b).predecessors) {
+                if (rank[pred.index] < 0) {
+                    continue;
+                }
+                if (isFor(blocks.get(b)) && rank[pred.index] >= rank[b]) {
+                    waitingBack[b]++;
+                } else {
+                    waiting[b]++;
+                }
+            }
+        }
+
+        for (int b : order) {
+            lowerBlock(blocks.get(b));
+        }
+        function.removeUnreachableBlocks();
+        function.mergeBlocks();
+        function.inferPhiTypes();
+    }
+
+    private void lowerBlock(ControlFlowGraph.Block block)
+    {
+        boolean branched = false;
+        switch (block.kind) {
+            case EXIT:
+                return;     // every path to it ends with a return
+            case ENTRY:
+                entry();
+                break;
+            case DEF:
+                current = leader(block) ? startOf(block) : end[onlyPredecessor(block).index];
+                def((ADefFuncFunction) block.node);
+                break;
+            case BIND:
+                current = startOf(block);
+                assign(block.defines, emit(Ir.Op.NEXT, "unknown", iterators.get(block.node)));
+                break;
+            default:
+                current = leader(block) ? startOf(block) : end[onlyPredecessor(block).index];
+                branched = statement(block);
+        }
+        end[block.index] = current;
+
+        if (!branched) {
+            ControlFlowGraph.Block next = block.successors.get(0);
+            if (next.kind == ControlFlowGraph.Kind.EXIT) {
+                emit(Ir.Op.RETURN, null, constant(null));
+            } else if (leader(next)) {
+                jump(target(block, next));
+            }
+        }
+        finished(block);
+    }
+
+    private void entry()
+    {
+        function.entry = function.newBlock();
+        current = function.entry;
+        sealed.add(current);
+        for (int i = 0; i < scope.parameterCount; i++) {
+            Ir.Value param = emit(Ir.Op.PARAM, "unknown");
+            param.index = i;
+            param.name = scope.variables.get(i);
+            assign(param.name, param);
+        }
+    }
+
+    // Whether a block needs a basic block of its own, or just continues its only predecessor's
+    private boolean leader(ControlFlowGraph.Block block)
+    {
+        if (isFor(block)) {
+            return true;
+        }
+        int count = 0;
+        ControlFlowGraph.Block pred = null;
+        for (ControlFlowGraph.Block p : block.predecessors) {
+            if (rank[p.index] >= 0) {
+                pred = p;
+                count++;
+            }
+        }
+        return count != 1 || pred.successors.size() != 1;
+    }
+
+    private ControlFlowGraph.Block onlyPredecessor(ControlFlowGraph.Block block)
+    {
+        for (ControlFlowGraph.Block pred : block.predecessors) {
+            if (rank[pred.index] >= 0) {
+                return pred;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFor(ControlFlowGraph.Block block)
+    {
+        return block.kind == ControlFlowGraph.Kind.STATEMENT && block.node instanceof AForStatementStatement;
+    }
+
+    private Ir.Block startOf(ControlFlowGraph.Block block)
+    {
+        if (start[block.index] == null) {
+            start[block.index] = function.newBlock();
+        }
+        return start[block.index];
+    }
+
+    // The basic block an edge from one ControlFlowGraph block to another goes to.
+    // The end of the function is a new block that returns None.
+    private Ir.Block target(ControlFlowGraph.Block from, ControlFlowGraph.Block to)
+    {
+        if (to.kind == ControlFlowGraph.Kind.EXIT) {
+            Ir.Block exit = function.newBlock();
+            sealed.add(exit);
+            Ir.Value none = function.add(exit, Ir.Op.CONST, "none");
+            function.add(exit, Ir.Op.RETURN, null, none);
+            return exit;
+        }
+        if (isFor(to) && rank[from.index] >= rank[to.index]) {
+            return test[to.index];
+        }
+        return startOf(to);
+    }
+
+    // A block is sealed once all its predecessors are lowered: its phis can be completed
+    private void finished(ControlFlowGraph.Block block)
+    {
+        for (ControlFlowGraph.Block next : block.successors) {
+            if (next.kind == ControlFlowGraph.Kind.EXIT || rank[next.index] < 0) {
+                continue;
+            }
+            if (isFor(next) && rank[block.index] >= rank[next.index]) {
+                if (--waitingBack[next.index] == 0) {
+                    seal(test[next.index]);
+                }
+            } else if (--waiting[next.index] == 0 && start[next.index] != null) {
+                seal(start[next.index]);
+            }
+        }
+    }
+
+    // ========== STATEMENTS ==========
+
+    // Returns true if the statement ended its block with its own branch or return
+    private boolean statement(ControlFlowGraph.Block block)
+    {
+        Node node = block.node;
+        if (node instanceof AIfStatementStatement) {
+            condition(((AIfStatementStatement) node).getCond(),
+                      target(block, block.successors.get(0)), target(block, block.successors.get(1)));
+            return true;
+        } else if (node instanceof AWhileStatementStatement) {
+            condition(((AWhileStatementStatement) node).getCond(),
+                      target(block, block.successors.get(0)), target(block, block.successors.get(1)));
+            return true;
+        } else if (node instanceof AForStatementStatement) {
+            forLoop(block, (AForStatementStatement) node);
+            return true;
+        } else if (node instanceof AReturnStatementStatement) {
+            emit(Ir.Op.RETURN, null, expression(((AReturnStatementStatement) node).getExpr()));
+            return true;
+        } else if (node instanceof APrintStatementStatement) {
+            AItemsPrintItems items = (AItemsPrintItems) ((APrintStatementStatement) node).getItems();
+            List<Ir.Value> printed = new ArrayList<>();
+            printed.add(expression(items.getFirst()));
+            PPrintTail tail = items.getRest();
+            while (tail instanceof AContinuePrintTail) {
+                printed.add(expression(((AContinuePrintTail) tail).getNext()));
+                tail = ((AContinuePrintTail) tail).getMore();
+            }
+            emit(Ir.Op.PRINT, null, printed.toArray(new Ir.Value[0]));
+        } else if (node instanceof AAssignStatementStatement) {
+            AAssignStatementStatement assign = (AAssignStatementStatement) node;
+            assign(assign.getId().getText().trim(), expression(assign.getExpr()));
+        } else if (node instanceof APluseqStatementStatement) {
+            opAssign(((APluseqStatementStatement) node).getId(), Ir.Op.ADD, ((APluseqStatementStatement) node).getExpr());
+        } else if (node instanceof AMineqStatementStatement) {
+            opAssign(((AMineqStatementStatement) node).getId(), Ir.Op.SUB, ((AMineqStatementStatement) node).getExpr());
+        } else if (node instanceof AMulteqStatementStatement) {
+            opAssign(((AMulteqStatementStatement) node).getId(), Ir.Op.MUL, ((AMulteqStatementStatement) node).getExpr());
+        } else if (node instanceof ADiveqStatementStatement) {
+            opAssign(((ADiveqStatementStatement) node).getId(), Ir.Op.DIV, ((ADiveqStatementStatement) node).getExpr());
+        } else if (node instanceof AArrayStatementStatement) {
+            AArrayStatementStatement store = (AArrayStatementStatement) node;
+            Ir.Value list = read(store.getId().getText().trim(), store.getId());
+            Ir.Value index = expression(store.getIndex());
+            emit(Ir.Op.SETITEM, null, list, index, expression(store.getValue()));
+        } else if (node instanceof AAssertionStatementStatement) {
+            AAssertionStatementStatement assertion = (AAssertionStatementStatement) node;
+            Ir.Value condition = expression(assertion.getExpr());
+            if (assertion.getMsg() instanceof APresentCommaExpressionOpt) {
+                emit(Ir.Op.ASSERT, null, condition, expression(((APresentCommaExpressionOpt) assertion.getMsg()).getExpr()));
+            } else {
+                emit(Ir.Op.ASSERT, null, condition);
+            }
+        } else if (node instanceof AFunctionCallStatementStatement) {
+            expression(((AFunctionCallStatementStatement) node).getCall());
+        } else if (node instanceof AImportStatementStatement) {
+            AImportsImportList imports = (AImportsImportList) ((AImportStatementStatement) node).getImports();
+            importSpec(imports.getFirst());
+            PImportListTail tail = imports.getRest();
+            while (tail instanceof AContinueImportListTail) {
+                importSpec(((AContinueImportListTail) tail).getNext());
+                tail = ((AContinueImportListTail) tail).getMore();
+            }
+        }
+        return false;
+    }
+
+    // Example: "x += 1" → v2 = add v1, v0 with x's current value v1, and x = v2.
+    // x's type is the checker's: v1 may be a loop phi that is not typed yet.
+    private void opAssign(TIdentifier id, Ir.Op op, PExpression expr)
+    {
+        String name = id.getText().trim();
+        Ir.Value left = read(name, id);
+        Ir.Value right = expression(expr);
+        String leftType = flow.typeAt(id, name);
+        assign(name, emit(op, arithmeticType(op, leftType, right.type), left, right));
+    }
+
+    // Example: "import shapes.circle as c" → import shapes.circle as c
+    private void importSpec(PImportSpec spec)
+    {
+        StringBuilder name = new StringBuilder();
+        APathModulePath path = (APathModulePath) (spec instanceof AImportAsImportSpec
+                                                  ? ((AImportAsImportSpec) spec).getPath()
+                                                  : ((ASimpleImportImportSpec) spec).getPath());
+        name.append(path.getFirst().getText().trim());
+        PModulePathTail tail = path.getRest();
+        while (tail instanceof AContinueModulePathTail) {
+            name.append(".").append(((AContinueModulePathTail) tail).getNext().getText().trim());
+            tail = ((AContinueModulePathTail) tail).getMore();
+        }
+        if (spec instanceof AImportAsImportSpec) {
+            name.append(" as ").append(((AImportAsImportSpec) spec).getAlias().getText().trim());
+        }
+        emit(Ir.Op.IMPORT, null).name = name.toString();
+    }
+
+    // The defaults are evaluated where the def is, as in Python
+    private void def(ADefFuncFunction def)
+    {
+        List<Ir.Value> defaults = new ArrayList<>();
+        for (PAssignValueOpt value : defaults(def)) {
+            if (value instanceof AHasValueAssignValueOpt) {
+                defaults.add(expression(((AHasValueAssignValueOpt) value).getValue()));
+            }
+        }
+        Ir.Value binding = emit(Ir.Op.DEF, null, defaults.toArray(new Ir.Value[0]));
+        binding.function = functions.get(cfg.getScope(def));
+        binding.name = binding.function.name;
+    }
+
+    private void forLoop(ControlFlowGraph.Block block, AForStatementStatement loop)
+    {
+        Ir.Value iterable = read(loop.getIter().getText().trim(), loop.getIter());
+        Ir.Value iterator = emit(Ir.Op.ITER, "iterator", iterable);
+        iterators.put(loop, iterator);
+
+        Ir.Block header = function.newBlock();
+        test[block.index] = header;
+        jump(header);
+        current = header;
+        if (waitingBack[block.index] == 0) {
+            seal(header);
+        }
+        Ir.Value hasNext = emit(Ir.Op.HASNEXT, "bool", iterator);
+        branch(hasNext, target(block, block.successors.get(0)), target(block, block.successors.get(1)));
+    }
+
+    // ========== CONDITIONS ==========
+
+    // Jumps to ifTrue or ifFalse. The right side of "and" and "or" only runs when it decides.
+    private void condition(Node cond, Ir.Block ifTrue, Ir.Block ifFalse)
+    {
+        if (cond instanceof ACompComparison) {
+            condition(((ACompComparison) cond).getExpr(), ifTrue, ifFalse);
+        } else if (cond instanceof AComp2Comparison) {
+            Ir.Block right = function.newBlock();
+            condition(((AComp2Comparison) cond).getLeft(), ifTrue, right);
+            seal(right);
+            current = right;
+            condition(((AComp2Comparison) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof AAftorAfteror) {
+            condition(((AAftorAfteror) cond).getExpr(), ifTrue, ifFalse);
+        } else if (cond instanceof AAftorandAfteror) {
+            Ir.Block right = function.newBlock();
+            condition(((AAftorandAfteror) cond).getLeft(), right, ifFalse);
+            seal(right);
+            current = right;
+            condition(((AAftorandAfteror) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof AAftandAfterand) {
+            condition(((AAftandAfterand) cond).getExpr(), ifTrue, ifFalse);
+        } else if (cond instanceof AAftnotAfterand) {
+            condition(((AAftnotAfterand) cond).getExpr(), ifFalse, ifTrue);
+        } else if (cond instanceof ATrueAfternot) {
+            branch(constant(Boolean.TRUE), ifTrue, ifFalse);
+        } else if (cond instanceof AFalseAfternot) {
+            branch(constant(Boolean.FALSE), ifTrue, ifFalse);
+        } else if (cond instanceof ALessAfternot) {
+            compare(Ir.Op.LT, ((ALessAfternot) cond).getLeft(), ((ALessAfternot) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof ALessequalAfternot) {
+            compare(Ir.Op.LE, ((ALessequalAfternot) cond).getLeft(), ((ALessequalAfternot) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof AGreaterAfternot) {
+            compare(Ir.Op.GT, ((AGreaterAfternot) cond).getLeft(), ((AGreaterAfternot) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof AGreaterequalAfternot) {
+            compare(Ir.Op.GE, ((AGreaterequalAfternot) cond).getLeft(), ((AGreaterequalAfternot) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof AEqualAfternot) {
+            compare(Ir.Op.EQ, ((AEqualAfternot) cond).getLeft(), ((AEqualAfternot) cond).getRight(), ifTrue, ifFalse);
+        } else if (cond instanceof ADifferentAfternot) {
+            compare(Ir.Op.NE, ((ADifferentAfternot) cond).getLeft(), ((ADifferentAfternot) cond).getRight(), ifTrue, ifFalse);
+        }
+    }
+
+    private void compare(Ir.Op op, PExpression left, PExpression right, Ir.Block ifTrue, Ir.Block ifFalse)
+    {
+        Ir.Value l = expression(left);
+        Ir.Value r = expression(right);
+        branch(emit(op, "bool", l, r), ifTrue, ifFalse);
+    }
+
+    // ========== EXPRESSIONS ==========
+
+    // Lowers an expression, or a call or default value, and returns its value
+    private Ir.Value expression(Node root)
+    {
+        types = flow.typesIn(root);
+        values.clear();
+        root.apply(lowering);
+        return values.get(root);
+    }
+
+    // The checker's type of a node; an ill-typed one is unknown
+    private String typeOf(Node node, String otherwise)
+    {
+        String type = types.get(node);
+        if (type == null) {
+            return otherwise;
+        }
+        return type.equals("error") || type.equals(ReturnTypeInference.BOTTOM) ? "unknown" : type;
+    }
+
+    // The checker's rule, for operations it does not type itself. Example: int + int → int
+    private static String arithmeticType(Ir.Op op, String left, String right)
+    {
+        if (left.equals("int") && right.equals("int")) {
+            return "int";
+        }
+        if (op == Ir.Op.ADD && left.equals("string") && right.equals("string")) {
+            return "string";
+        }
+        return "unknown";
+    }
+
+    private class Lowering extends IterativeDepthFirstAdapter
+    {
+        // ---- leaves
+
+        public void outAIntegerLiteralValuenode(AIntegerLiteralValuenode node) {
+            String text = node.getVal().getText().trim();
+            values.put(node, constant(Ints.parse(text)));
+        }
+
+        public void outADecimalLiteralValuenode(ADecimalLiteralValuenode node) {
+            values.put(node, constant(Double.parseDouble(node.getVal().getText().trim())));
+        }
+
+        public void outADoubleQuotesValuenode(ADoubleQuotesValuenode node) {
+            values.put(node, constant(unquote(node.getVal().getText().trim())));
+        }
+
+        public void outASingleQuotesValuenode(ASingleQuotesValuenode node) {
+            values.put(node, constant(unquote(node.getVal().getText().trim())));
+        }
+
+        public void outANoneValueValuenode(ANoneValueValuenode node) {
+            values.put(node, constant(null));
+        }
+
+        public void outAIdentifierValuenode(AIdentifierValuenode node) {
+            values.put(node, read(node.getName().getText().trim(), node));
+        }
+
+        // ---- wrappers of one expression
+
+        public void outAValueSubsetValue(AValueSubsetValue node) {
+            values.put(node, values.get(node.getVal()));
+        }
+
+        public void outAFuncCallExpressionValue(AFuncCallExpressionValue node) {
+            values.put(node, values.get(node.getCall()));
+        }
+
+        public void outAParenthesisExpressionValue(AParenthesisExpressionValue node) {
+            values.put(node, values.get(node.getExpr()));
+        }
+
+        public void outAIdDotFuncValuenode(AIdDotFuncValuenode node) {
+            values.put(node, values.get(node.getCall()));
+        }
+
+        public void outAValuePow(AValuePow node) {
+            values.put(node, values.get(node.getExpr()));
+        }
+
+        public void outABasePowMultiplication(ABasePowMultiplication node) {
+            values.put(node, values.get(node.getExpr()));
+        }
+
+        public void outABaseMultExpression(ABaseMultExpression node) {
+            values.put(node, values.get(node.getExpr()));
+        }
+
+        // ---- operations
+
+        public void outAAddMultExpression(AAddMultExpression node) {
+            binary(node, Ir.Op.ADD, node.getLeft(), node.getRight());
+        }
+
+        public void outASubMultExpression(ASubMultExpression node) {
+            binary(node, Ir.Op.SUB, node.getLeft(), node.getRight());
+        }
+
+        public void outAMultMultiplication(AMultMultiplication node) {
+            binary(node, Ir.Op.MUL, node.getLeft(), node.getRight());
+        }
+
+        public void outADivMultiplication(ADivMultiplication node) {
+            binary(node, Ir.Op.DIV, node.getLeft(), node.getRight());
+        }
+
+        public void outAModMultiplication(AModMultiplication node) {
+            binary(node, Ir.Op.MOD, node.getLeft(), node.getRight());
+        }
+
+        public void outAPowPow(APowPow node) {
+            binary(node, Ir.Op.POW, node.getLeft(), node.getRight());
+        }
+
+        public void outAAddMaxExpression(AAddMaxExpression node) {
+            combine(node, Ir.Op.ADD, node.getLeft(), maxMin(Ir.Op.MAX, node.getArgs()));
+        }
+
+        public void outASubMaxExpression(ASubMaxExpression node) {
+            combine(node, Ir.Op.SUB, node.getLeft(), maxMin(Ir.Op.MAX, node.getArgs()));
+        }
+
+        public void outAAddMinExpression(AAddMinExpression node) {
+            combine(node, Ir.Op.ADD, node.getLeft(), maxMin(Ir.Op.MIN, node.getArgs()));
+        }
+
+        public void outASubMinExpression(ASubMinExpression node) {
+            combine(node, Ir.Op.SUB, node.getLeft(), maxMin(Ir.Op.MIN, node.getArgs()));
+        }
+
+        public void outAMaxOnlyExpression(AMaxOnlyExpression node) {
+            values.put(node, maxMin(Ir.Op.MAX, node.getArgs()));
+        }
+
+        public void outAMinOnlyExpression(AMinOnlyExpression node) {
+            values.put(node, maxMin(Ir.Op.MIN, node.getArgs()));
+        }
+
+        // The list is read before the index is evaluated
+        public void inAPinakasExpressionValue(APinakasExpressionValue node) {
+            values.put(node.getId(), read(node.getId().getText().trim(), node.getId()));
+        }
+
+        public void outAPinakasExpressionValue(APinakasExpressionValue node) {
+            values.put(node, emit(Ir.Op.INDEX, typeOf(node, "unknown"), values.get(node.getId()), values.get(node.getIndex())));
+        }
+
+        public void outALengthExpessionValue(ALengthExpessionValue node) {
+            values.put(node, emit(Ir.Op.LEN, "int", values.get(node.getExpr())));
+        }
+
+        public void outAAsciiExpressionValue(AAsciiExpressionValue node) {
+            values.put(node, emit(Ir.Op.ASCII, typeOf(node, "unknown"), values.get(node.getExpr())));
+        }
+
+        public void outATypeExpressionValue(ATypeExpressionValue node) {
+            values.put(node, emit(Ir.Op.TYPE, "string", values.get(node.getExpr())));
+        }
+
+        public void outAOpenExpressionValue(AOpenExpressionValue node) {
+            values.put(node, emit(Ir.Op.OPEN, typeOf(node, "unknown"), values.get(node.getExpr())));
+        }
+
+        public void outABracketsExpressionValue(ABracketsExpressionValue node) {
+            List<Ir.Value> items = new ArrayList<>();
+            if (node.getList() instanceof AHasItemsExpressionListOpt) {
+                AExprListExpressionList list = (AExprListExpressionList) ((AHasItemsExpressionListOpt) node.getList()).getItems();
+                items.add(values.get(list.getFirst()));
+                PExprListTail tail = list.getRest();
+                while (tail instanceof AContinueExprListTail) {
+                    items.add(values.get(((AContinueExprListTail) tail).getNext()));
+                    tail = ((AContinueExprListTail) tail).getMore();
+                }
+            }
+            values.put(node, emit(Ir.Op.LIST, "list", items.toArray(new Ir.Value[0])));
+        }
+
+        // ---- calls
+
+        public void outANoArgsFunctionCall(ANoArgsFunctionCall node) {
+            call(node, node.getName(), new ArrayList<>());
+        }
+
+        public void outAWithArgsFunctionCall(AWithArgsFunctionCall node) {
+            List<Ir.Value> args = new ArrayList<>();
+            AArgsCallArgs first = (AArgsCallArgs) node.getArgs();
+            args.add(values.get(first.getFirst()));
+            PCallArgsTail tail = first.getRest();
+            while (tail instanceof AContinueCallArgsTail) {
+                args.add(values.get(((AContinueCallArgsTail) tail).getNext()));
+                tail = ((AContinueCallArgsTail) tail).getMore();
+            }
+            call(node, node.getName(), args);
+        }
+
+        // Example: "sh.area(2)" → call sh.area, v1
+        private void call(Node node, TIdentifier name, List<Ir.Value> args) {
+            Ir.Value call = emit(Ir.Op.CALL, typeOf(node, "unknown"), args.toArray(new Ir.Value[0]));
+            call.name = name.getText().trim();
+            if (node.parent() instanceof AIdDotFuncValuenode) {
+                call.name = ((AIdDotFuncValuenode) node.parent()).getObj().getText().trim() + "." + call.name;
+            }
+            values.put(node, call);
+        }
+
+        private void binary(Node node, Ir.Op op, Node left, Node right) {
+            combine(node, op, left, values.get(right));
+        }
+
+        private void combine(Node node, Ir.Op op, Node left, Ir.Value right) {
+            Ir.Value l = values.get(left);
+            values.put(node, emit(op, typeOf(node, arithmeticType(op, l.type, right.type)), l, right));
+        }
+
+        // Example: "max(a, 2)" → max v0, v1
+        private Ir.Value maxMin(Ir.Op op, Node args) {
+            List<Ir.Value> operands = new ArrayList<>();
+            if (args instanceof AMaxArgsMaxArgs) {
+                operands.add(values.get(((AMaxArgsMaxArgs) args).getFirst()));
+                PMaxArgsTail tail = ((AMaxArgsMaxArgs) args).getRest();
+                while (tail instanceof AContinueMaxArgsTail) {
+                    operands.add(values.get(((AContinueMaxArgsTail) tail).getNext()));
+                    tail = ((AContinueMaxArgsTail) tail).getMore();
+                }
+            } else {
+                operands.add(values.get(((AMinArgsMinArgs) args).getFirst()));
+                PMinArgsTail tail = ((AMinArgsMinArgs) args).getRest();
+                while (tail instanceof AContinueMinArgsTail) {
+                    operands.add(values.get(((AContinueMinArgsTail) tail).getNext()));
+                    tail = ((AContinueMinArgsTail) tail).getMore();
+                }
+            }
+            String type = "int";
+            for (Ir.Value operand : operands) {
+                if (!operand.type.equals("int")) {
+                    type = "unknown";
+                }
+            }
+            return emit(op, type, operands.toArray(new Ir.Value[0]));
+        }
+    }
+
+    // Example: "'abc'" → abc
+    private static String unquote(String text)
+    {
+        return text.length() >= 2 ? text.substring(1, text.length() - 1) : text;
+    }
+
+    // ========== EMITTING ==========
+
+    private Ir.Value emit(Ir.Op op, String type, Ir.Value... operands)
+    {
+        return function.add(current, op, type, operands);
+    }
+
+    private Ir.Value constant(Object constant)
+    {
+        Ir.Value value = emit(Ir.Op.CONST, Ir.typeOfConstant(constant));
+        value.constant = constant;
+        return value;
+    }
+
+    private void jump(Ir.Block to)
+    {
+        emit(Ir.Op.JUMP, null);
+        Ir.Function.link(current, to);
+    }
+
+    private void branch(Ir.Value condition, Ir.Block ifTrue, Ir.Block ifFalse)
+    {
+        emit(Ir.Op.BRANCH, null, condition);
+        Ir.Function.link(current, ifTrue);
+        Ir.Function.link(current, ifFalse);
+    }
+
+    // ========== SSA CONSTRUCTION ==========
+
+    // Names the scope does not assign are read from the enclosing scopes by name
+    private Ir.Value read(String name, Node at)
+    {
+        if (scope.indexOf(name) >= 0) {
+            return read(name, current);
+        }
+        Ir.Value load = emit(Ir.Op.LOAD, typeOf(at, flow.typeAt(at, name)));
+        load.name = name;
+        return load;
+    }
+
+    private void assign(String name, Ir.Value value)
+    {
+        write(name, current, value);
+        if (stored.get(scope).contains(name)) {
+            emit(Ir.Op.STORE, null, value).name = name;
+        }
+    }
+
+    private void write(String name, Ir.Block block, Ir.Value value)
+    {
+        definitions.computeIfAbsent(block, k -> new HashMap<>()).put(name, value);
+    }
+
+    private Ir.Value defined(String name, Ir.Block block)
+    {
+        Map<String, Ir.Value> defs = definitions.get(block);
+        Ir.Value value = defs == null ? null : defs.get(name);
+        while (value != null && value.replacement != null) {
+            value = value.replacement;
+        }
+        return value;
+    }
+
+    // A read that walks back to a phi in the next join of paths. With an explicit
+    // stack, since a long function can have thousands of blocks between a variable's
+    // assignment and its use.
+    private Ir.Value read(String name, Ir.Block block)
+    {
+        Stack<Ir.Block> blocks = new Stack<>();        // blocks waiting for the value from their predecessor(s)
+        Stack<Integer> next = new Stack<>();           // for a phi block: the predecessor being read
+        Stack<Ir.Value> phis = new Stack<>();          // and its phi, kept out of removeIfTrivial until complete
+        Ir.Value result;
+        while (true) {
+            result = defined(name, block);
+            if (result == null) {
+                if (!sealed.contains(block)) {
+                    result = function.add(block, Ir.Op.PHI, ReturnTypeInference.BOTTOM);
+                    incompletePhis.computeIfAbsent(block, k -> new HashMap<>()).put(name, result);
+                    incomplete.add(result);
+                    write(name, block, result);
+                } else if (block.predecessors.isEmpty()) {
+                    result = undef();
+                    write(name, block, result);
+                } else if (block.predecessors.size() == 1) {
+                    blocks.push(block);
+                    next.push(-1);
+                    block = block.predecessors.get(0);
+                    continue;
+                } else {
+                    Ir.Value phi = function.add(block, Ir.Op.PHI, ReturnTypeInference.BOTTOM);
+                    write(name, block, phi);
+                    incomplete.add(phi);
+                    phis.push(phi);
+                    blocks.push(block);
+                    next.push(0);
+                    block = block.predecessors.get(0);
+                    continue;
+                }
+            }
+
+            // Hand the value back to the blocks waiting for it
+            boolean descended = false;
+            while (!blocks.isEmpty() && !descended) {
+                Ir.Block waiting = blocks.peek();
+                int i = next.pop();
+                if (i < 0) {
+                    blocks.pop();
+                    write(name, waiting, result);
+                    continue;
+                }
+                Ir.Value phi = phis.peek();
+                phi.addOperand(result);
+                if (i + 1 < waiting.predecessors.size()) {
+                    next.push(i + 1);
+                    block = waiting.predecessors.get(i + 1);
+                    descended = true;
+                } else {
+                    blocks.pop();
+                    phis.pop();
+                    incomplete.remove(phi);
+                    result = removeIfTrivial(phi);
+                    write(name, waiting, result);
+                }
+            }
+            if (!descended) {
+                return result;
+            }
+        }
+    }
+
+    private void seal(Ir.Block block)
+    {
+        Map<String, Ir.Value> phis = incompletePhis.remove(block);
+        sealed.add(block);
+        if (phis == null) {
+            return;
+        }
+        for (Map.Entry<String, Ir.Value> entry : phis.entrySet()) {
+            Ir.Value phi = entry.getValue();
+            for (Ir.Block pred : block.predecessors) {
+                phi.addOperand(read(entry.getKey(), pred));
+            }
+            incomplete.remove(phi);
+            removeIfTrivial(phi);
+        }
+    }
+
+    // A phi of one value (besides itself) is that value. Removing it can make the
+    // phis using it trivial in turn. Returns what the phi stands for.
+    private Ir.Value removeIfTrivial(Ir.Value phi)
+    {
+        Stack<Ir.Value> work = new Stack<>();
+        work.push(phi);
+        while (!work.isEmpty()) {
+            Ir.Value candidate = work.pop();
+            if (candidate.replacement != null || incomplete.contains(candidate)) {
+                continue;
+            }
+            Ir.Value same = null;
+            boolean trivial = true;
+            for (Ir.Value operand : candidate.operands) {
+                if (operand == same || operand == candidate) {
+                    continue;
+                }
+                if (same != null) {
+                    trivial = false;
+                    break;
+                }
+                same = operand;
+            }
+            if (!trivial) {
+                continue;
+            }
+            if (same == null) {
+                same = undef();     // only reachable from itself
+            }
+            List<Ir.Value> users = new ArrayList<>(candidate.users);
+            candidate.replaceAllUsesWith(same);
+            candidate.replacement = same;
+            candidate.remove();
+            for (Ir.Value user : users) {
+                if (user.op == Ir.Op.PHI && user != candidate) {
+                    work.push(user);
+                }
+            }
+        }
+        while (phi.replacement != null) {
+            phi = phi.replacement;
+        }
+        return phi;
+    }
+
+    private Ir.Value undef()
+    {
+        if (undef == null) {
+            undef = function.addAtTop(Ir.Op.UNDEF, ReturnTypeInference.BOTTOM);
+        }
+        return undef;
+    }
+}
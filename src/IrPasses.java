@@ -0,0 +1,558 @@
+import java.util.*;
+
+/*
+ * Optimizations over Ir, written once for every backend. A pass rewrites one
+ * function and says whether it changed anything; optimize() runs the passes
+ * in order until none of them does, and checks the function with IrVerifier
+ * after every pass that changed it.
+ *
+ *   constprop   sparse conditional constant propagation (Wegman and Zadeck):
+ *               folds operations on constants, follows only the branches
+ *               that can be taken, drops the blocks that cannot run and
+ *               joins the straight lines of blocks that are left
+ *   cse         common subexpressions: a computation whose operands are the
+ *               same as one in a dominating block reuses its value
+ *   dce         dead code: values nothing uses and that have no effect
+ *
+ * Example:
+ *     x = 2                       v0 = const 2
+ *     y = x * 3          →        v1 = const 6
+ *     if y > 5:                   print v1, v1
+ *         print y, x * 3
+ *
+ * Semantics follow the interpreter: "/" on ints is floor division, ints
+ * are unbounded (Ints) but results past a few thousand bits are not
+ * folded, and an operation that may fail at run
+ * time (a division by a variable, an index, an unknown operand) is never
+ * removed.
+ */
+public class IrPasses
+{
+    public interface Pass {
+        String getName();
+
+        // Returns true if the function changed
+        boolean run(Ir.Function function);
+    }
+
+    public static final Pass CONSTANT_PROPAGATION = new ConstantPropagation();
+    public static final Pass COMMON_SUBEXPRESSIONS = new CommonSubexpressions();
+    public static final Pass DEAD_CODE = new DeadCode();
+
+    public static List<Pass> standard()
+    {
+        return Arrays.asList(CONSTANT_PROPAGATION, COMMON_SUBEXPRESSIONS, DEAD_CODE);
+    }
+
+    // Example: "constprop,dce" → [constprop, dce]
+    public static List<Pass> parse(String names)
+    {
+        List<Pass> passes = new ArrayList<>();
+        for (String name : names.split(",")) {
+            Pass found = null;
+            for (Pass pass : standard()) {
+                if (pass.getName().equals(name.trim())) {
+                    found = pass;
+                }
+            }
+            if (found == null) {
+                throw new IllegalArgumentException("Unknown pass '" + name.trim() + "'");
+            }
+            passes.add(found);
+        }
+        return passes;
+    }
+
+    // Throws IllegalStateException with the verifier's messages if a pass breaks a function
+    public static void optimize(Ir program, List<Pass> passes)
+    {
+        for (Ir.Function function : program.getFunctions()) {
+            boolean changed = true;
+            for (int round = 0; changed && round < 10; round++) {
+                changed = false;
+                for (Pass pass : passes) {
+                    if (pass.run(function)) {
+                        changed = true;
+                        function.inferPhiTypes();
+                        List<String> errors = IrVerifier.verify(function);
+                        if (!errors.isEmpty()) {
+                            throw new IllegalStateException("Invalid IR after " + pass.getName() + ": "
+                                                            + String.join("; ", errors));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // ========== WHAT AN INSTRUCTION MAY DO ==========
+
+    private static final Set<String> SCALARS = new HashSet<>(Arrays.asList("int", "string", "none", "bool"));
+
+    // No effect and cannot fail, so it can go when nothing uses it
+    static boolean isRemovable(Ir.Value value)
+    {
+        switch (value.op) {
+            case CONST: case UNDEF: case PARAM: case PHI: case LIST: case TYPE:
+            case LT: case LE: case GT: case GE: case EQ: case NE: case NOT: case HASNEXT:
+                return true;
+            case ADD:
+                return bothAre(value, "int") || bothAre(value, "string");
+            case SUB: case MUL: case POW:
+                return bothAre(value, "int");
+            case DIV: case MOD:
+                Ir.Value divisor = value.operands.get(1);
+                return bothAre(value, "int") && divisor.isConstant() && !isZero(divisor.constant);
+            case LEN:
+                String type = value.operands.get(0).type;
+                return type.equals("string") || type.equals("list");
+            case MAX: case MIN:
+                return value.type.equals("int");
+            default:
+                return false;
+        }
+    }
+
+    // Gives the same result every time it runs with the same operands, so a
+    // dominating copy can stand in for it. Lists are mutable: never shared.
+    static boolean isNumberable(Ir.Value value)
+    {
+        switch (value.op) {
+            case CONST: case TYPE: case LOAD:
+                return true;
+            case ADD: case SUB: case MUL: case DIV: case MOD: case POW: case MAX: case MIN:
+            case LT: case LE: case GT: case GE: case EQ: case NE: case NOT:
+                for (Ir.Value operand : value.operands) {
+                    if (!SCALARS.contains(operand.type)) {
+                        return false;
+                    }
+                }
+                return true;
+            case LEN:
+                return value.operands.get(0).type.equals("string");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean bothAre(Ir.Value value, String type)
+    {
+        return value.operands.get(0).type.equals(type) && value.operands.get(1).type.equals(type);
+    }
+
+    private static boolean isZero(Object constant)
+    {
+        return constant instanceof Number && ((Number) constant).doubleValue() == 0;
+    }
+
+    // ========== CONSTANT PROPAGATION ==========
+
+    private static class ConstantPropagation implements Pass {
+        // Lattice: no entry (not reached yet) < a constant < VARYING
+        private static final Object VARYING = new Object();
+        private static final Object NONE = new Object();        // the constant None, since null means "no entry"
+
+        private Map<Ir.Value, Object> lattice;
+        private Set<Ir.Block> executable;
+        private Set<List<Ir.Block>> executableEdges;
+        private Deque<Ir.Block[]> edgeWork;
+        private Deque<Ir.Value> valueWork;
+
+        public String getName() {
+            return "constprop";
+        }
+
+        public boolean run(Ir.Function function) {
+            lattice = new IdentityHashMap<>();
+            executable = Collections.newSetFromMap(new IdentityHashMap<>());
+            executableEdges = new HashSet<>();
+            edgeWork = new ArrayDeque<>();
+            valueWork = new ArrayDeque<>();
+
+            edgeWork.add(new Ir.Block[] {null, function.entry});
+            while (!edgeWork.isEmpty() || !valueWork.isEmpty()) {
+                if (!edgeWork.isEmpty()) {
+                    Ir.Block[] edge = edgeWork.poll();
+                    if (edge[0] != null && !executableEdges.add(Arrays.asList(edge[0], edge[1]))) {
+                        continue;
+                    }
+                    Ir.Block block = edge[1];
+                    for (Ir.Value phi : block.phis) {
+                        visit(phi);
+                    }
+                    if (executable.add(block)) {
+                        for (Ir.Value value : block.instructions) {
+                            visit(value);
+                        }
+                    }
+                } else {
+                    for (Ir.Value user : valueWork.poll().users) {
+                        if (executable.contains(user.block)) {
+                            visit(user);
+                        }
+                    }
+                }
+            }
+            return rewrite(function);
+        }
+
+        private void visit(Ir.Value value) {
+            Ir.Block block = value.block;
+            switch (value.op) {
+                case JUMP:
+                    edgeWork.add(new Ir.Block[] {block, block.successors.get(0)});
+                    return;
+                case BRANCH:
+                    Object condition = lattice.get(value.operands.get(0));
+                    if (condition == VARYING) {
+                        edgeWork.add(new Ir.Block[] {block, block.successors.get(0)});
+                        edgeWork.add(new Ir.Block[] {block, block.successors.get(1)});
+                    } else if (condition instanceof Boolean) {
+                        edgeWork.add(new Ir.Block[] {block, block.successors.get((Boolean) condition ? 0 : 1)});
+                    }
+                    return;
+                case PHI:
+                    Object merged = null;
+                    for (int i = 0; i < value.operands.size(); i++) {
+                        if (executableEdges.contains(Arrays.asList(block.predecessors.get(i), block))) {
+                            merged = meet(merged, lattice.get(value.operands.get(i)));
+                        }
+                    }
+                    update(value, merged);
+                    return;
+                case CONST:
+                    update(value, value.constant == null ? NONE : value.constant);
+                    return;
+                default:
+                    break;
+            }
+            if (value.type == null) {
+                return;
+            }
+            Object[] constants = new Object[value.operands.size()];
+            for (int i = 0; i < constants.length; i++) {
+                Object operand = lattice.get(value.operands.get(i));
+                if (operand == null) {
+                    return;     // wait until it is reached
+                }
+                constants[i] = operand;
+            }
+            Object folded = VARYING;
+            if (!Arrays.asList(constants).contains(VARYING)) {
+                for (int i = 0; i < constants.length; i++) {
+                    constants[i] = constants[i] == NONE ? null : constants[i];
+                }
+                folded = fold(value.op, constants);
+                folded = folded == null ? NONE : folded;
+            }
+            update(value, folded);
+        }
+
+        private static Object meet(Object a, Object b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            return a.equals(b) && a.getClass() == b.getClass() ? a : VARYING;
+        }
+
+        private void update(Ir.Value value, Object state) {
+            Object old = lattice.get(value);
+            if (state != null && !state.equals(old)) {
+                lattice.put(value, old == null ? state : VARYING);
+                if (old != VARYING) {
+                    valueWork.add(value);
+                }
+            }
+        }
+
+        private boolean rewrite(Ir.Function function) {
+            boolean changed = false;
+            for (Ir.Block block : function.blocks) {
+                if (!executable.contains(block)) {
+                    continue;
+                }
+                for (Ir.Value phi : new ArrayList<>(block.phis)) {
+                    Object state = lattice.get(phi);
+                    if (state != null && state != VARYING) {
+                        phi.replaceAllUsesWith(function.constant(state == NONE ? null : state));
+                        phi.remove();
+                        changed = true;
+                    }
+                }
+                for (Ir.Value value : block.instructions) {
+                    Object state = lattice.get(value);
+                    if (value.op != Ir.Op.CONST && value.type != null && state != null && state != VARYING) {
+                        value.clearOperands();
+                        value.op = Ir.Op.CONST;
+                        value.constant = state == NONE ? null : state;
+                        value.type = Ir.typeOfConstant(value.constant);
+                        changed = true;
+                    }
+                }
+
+                // A branch that always goes one way becomes a jump
+                Ir.Value terminator = block.getTerminator();
+                if (terminator != null && terminator.op == Ir.Op.BRANCH) {
+                    Object condition = lattice.get(terminator.operands.get(0));
+                    if (condition instanceof Boolean) {
+                        block.successors.get((Boolean) condition ? 1 : 0).removePredecessor(block);
+                        terminator.clearOperands();
+                        terminator.op = Ir.Op.JUMP;
+                        changed = true;
+                    }
+                }
+            }
+            changed |= function.removeUnreachableBlocks();
+            changed |= removeTrivialPhis(function);
+            changed |= function.mergeBlocks();
+            return changed;
+        }
+    }
+
+    // A phi that merges one value (besides itself) is that value. Example: after an
+    // edge is dropped, or when CSE made its operands the same.
+    private static boolean removeTrivialPhis(Ir.Function function)
+    {
+        boolean changed = false;
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Value phi : new ArrayList<>(block.phis)) {
+                    Ir.Value same = null;
+                    for (Ir.Value operand : phi.operands) {
+                        if (operand != phi && operand != same) {
+                            same = same == null ? operand : phi;
+                        }
+                    }
+                    if (same != null && same != phi) {
+                        phi.replaceAllUsesWith(same);
+                        phi.remove();
+                        removed = changed = true;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    // ========== FOLDING ==========
+
+    // Past this many bits an int result is left to run time: a folded
+    // constant that large would only bloat the IR
+    private static final long MAX_FOLDED_BITS = 4096;
+
+    // The result of an operation on constants (null is None), or VARYING if it is not
+    // folded: unknown semantics, an error at run time, or a very large int.
+    // Numbers are computed by Values and Ints, the same code that runs them, so
+    // the folder cannot disagree with the interpreter.
+    static Object fold(Ir.Op op, Object[] c)
+    {
+        Object varying = ConstantPropagation.VARYING;
+        try {
+            switch (op) {
+                case ADD:
+                    if (c[0] instanceof String && c[1] instanceof String) {
+                        return (String) c[0] + c[1];
+                    }
+                    // fall through
+                case SUB: case MUL: case DIV: case MOD: case POW:
+                    return isNumber(c[0]) && isNumber(c[1]) ? foldNumber(op, c[0], c[1]) : varying;
+                case LT: case LE: case GT: case GE:
+                    int order;
+                    if (Values.unordered(c[0], c[1])) {
+                        return false;
+                    } else if (isNumber(c[0]) && isNumber(c[1])) {
+                        order = Values.compare(c[0], c[1]);
+                    } else if (c[0] instanceof String && c[1] instanceof String) {
+                        order = ((String) c[0]).compareTo((String) c[1]);
+                    } else {
+                        return varying;
+                    }
+                    return op == Ir.Op.LT ? order < 0 : op == Ir.Op.LE ? order <= 0 : op == Ir.Op.GT ? order > 0 : order >= 0;
+                case EQ: case NE:
+                    boolean equal;
+                    if (isNumber(c[0]) && isNumber(c[1])) {
+                        equal = Values.equal(c[0], c[1]);
+                    } else {
+                        equal = Objects.equals(c[0], c[1]);
+                    }
+                    return op == Ir.Op.EQ ? equal : !equal;
+                case NOT:
+                    return c[0] instanceof Boolean ? !(Boolean) c[0] : varying;
+                case LEN:
+                    return c[0] instanceof String ? (Object) (long) ((String) c[0]).length() : varying;
+                case MAX: case MIN:
+                    Object best = null;
+                    for (Object value : c) {
+                        if (!Ints.isInt(value)) {
+                            return varying;
+                        }
+                        if (best == null || Ints.compare(value, best) * (op == Ir.Op.MAX ? 1 : -1) > 0) {
+                            best = value;
+                        }
+                    }
+                    return best;
+                default:
+                    return varying;
+            }
+        } catch (MiniPythonError e) {
+            return varying;         // Example: 0 ** -1.0 raises ZeroDivisionError, at run time
+        }
+    }
+
+    // Values.arithmetic, unless the result is an int too large to keep in the IR
+    private static Object foldNumber(Ir.Op op, Object a, Object b)
+    {
+        char c = op == Ir.Op.ADD ? '+' : op == Ir.Op.SUB ? '-' : op == Ir.Op.MUL ? '*'
+                 : op == Ir.Op.DIV ? '/' : op == Ir.Op.MOD ? '%' : '^';
+        if (Ints.isInt(a) && Ints.isInt(b) && Ints.bitLengthBound(c, a, b) > MAX_FOLDED_BITS) {
+            return ConstantPropagation.VARYING;
+        }
+        return Values.arithmetic(c, a, b);
+    }
+
+    private static boolean isNumber(Object constant)
+    {
+        return Values.isNumber(constant);
+    }
+
+    // ========== COMMON SUBEXPRESSIONS ==========
+
+    private static class CommonSubexpressions implements Pass {
+        public String getName() {
+            return "cse";
+        }
+
+        // Walks the dominator tree with the computations available on the way down
+        public boolean run(Ir.Function function) {
+            function.computeDominators();
+            Map<Ir.Block, List<Ir.Block>> children = new IdentityHashMap<>();
+            for (Ir.Block block : function.blocks) {
+                if (block != function.entry) {
+                    children.computeIfAbsent(block.idom, k -> new ArrayList<>()).add(block);
+                }
+            }
+
+            boolean changed = false;
+            Map<List<Object>, Ir.Value> available = new HashMap<>();
+            Stack<Ir.Block> work = new Stack<>();
+            Stack<List<List<Object>>> added = new Stack<>();     // keys to forget when a block's subtree is done
+            work.push(function.entry);
+            added.push(null);
+            while (!work.isEmpty()) {
+                Ir.Block block = work.peek();
+                if (added.peek() != null) {
+                    for (List<Object> key : added.pop()) {
+                        available.remove(key);
+                    }
+                    work.pop();
+                    continue;
+                }
+                List<List<Object>> keys = new ArrayList<>();
+                for (Ir.Value value : new ArrayList<>(block.instructions)) {
+                    if (value.type == null || !isNumberable(value)) {
+                        continue;
+                    }
+                    List<Object> key = key(value);
+                    Ir.Value existing = available.get(key);
+                    if (existing != null) {
+                        value.replaceAllUsesWith(existing);
+                        value.remove();
+                        changed = true;
+                    } else {
+                        available.put(key, value);
+                        keys.add(key);
+                    }
+                }
+                added.pop();
+                added.push(keys);
+                for (Ir.Block child : children.getOrDefault(block, Collections.emptyList())) {
+                    work.push(child);
+                    added.push(null);
+                }
+            }
+            return removeTrivialPhis(function) || changed;
+        }
+
+        // Example: v3 = add v1, v2 : int → [add, int, null, null, v1, v2]
+        private static List<Object> key(Ir.Value value) {
+            List<Object> key = new ArrayList<>();
+            key.add(value.op);
+            key.add(value.type);
+            key.add(value.name);
+            key.add(value.constant == null ? null : Arrays.asList(value.constant.getClass(), value.constant));
+            for (Ir.Value operand : value.operands) {
+                key.add(new Identity(operand));
+            }
+            return key;
+        }
+    }
+
+    // Compares values by identity inside keys
+    private static class Identity {
+        final Ir.Value value;
+
+        Identity(Ir.Value value) {
+            this.value = value;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Identity && ((Identity) other).value == value;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(value);
+        }
+    }
+
+    // ========== DEAD CODE ==========
+
+    private static class DeadCode implements Pass {
+        public String getName() {
+            return "dce";
+        }
+
+        // Marks what effects and terminators need, then sweeps the rest
+        public boolean run(Ir.Function function) {
+            Set<Ir.Value> live = Collections.newSetFromMap(new IdentityHashMap<>());
+            Stack<Ir.Value> work = new Stack<>();
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Value value : block.instructions) {
+                    if (!isRemovable(value) && live.add(value)) {
+                        work.push(value);
+                    }
+                }
+            }
+            while (!work.isEmpty()) {
+                for (Ir.Value operand : work.pop().operands) {
+                    if (live.add(operand)) {
+                        work.push(operand);
+                    }
+                }
+            }
+
+            boolean changed = false;
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Value value : block.phis) {
+                    if (!live.contains(value)) {
+                        value.clearOperands();
+                    }
+                }
+                for (Ir.Value value : block.instructions) {
+                    if (!live.contains(value)) {
+                        value.clearOperands();
+                    }
+                }
+            }
+            for (Ir.Block block : function.blocks) {
+                changed |= block.phis.removeIf(value -> !live.contains(value));
+                changed |= block.instructions.removeIf(value -> !live.contains(value));
+            }
+            return changed;
+        }
+    }
+}
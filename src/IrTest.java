@@ -0,0 +1,92 @@
+import java.io.*;
+import java.util.*;
+import java.nio.file.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+
+/*
+ * Checks a file, lowers it to the SSA IR, verifies the IR and prints it.
+ * With -O the standard passes (constprop, cse, dce) run before printing;
+ * -passes runs the named ones, in order. The checker's errors are printed
+ * first, but do not stop lowering.
+ *
+ * Usage: java IrTest <filename.py> [-O | -passes constprop,cse,dce]
+ */
+public class IrTest
+{
+  public static void main(String[] args)
+  {
+    if (args.length == 0)
+    {
+      System.out.println("Usage: java IrTest <filename.py> [-O | -passes constprop,cse,dce]");
+      return;
+    }
+    try
+    {
+      List<IrPasses.Pass> passes = new ArrayList<>();
+      if (args.length > 1 && args[1].equals("-O"))
+      {
+        passes = IrPasses.standard();
+      }
+      else if (args.length > 2 && args[1].equals("-passes"))
+      {
+        passes = IrPasses.parse(args[2]);
+      }
+
+      RecoveringParser parser =
+        new RecoveringParser(
+        new Lexer(
+        new PushbackReader(
+        new FileReader(args[0]), 1024)));
+      Start ast = parser.parse();
+      for (RecoveringParser.SyntaxError error : parser.getErrors())
+      {
+        System.out.println("# " + error);
+      }
+
+      // The checker's messages, as comments above the IR
+      List<String> sourceLines = Files.readAllLines(Paths.get(args[0]));
+      Hashtable<String, Object> symtable = new Hashtable<>();
+      ByteArrayOutputStream messages = new ByteArrayOutputStream();
+      PrintStream out = new PrintStream(messages);
+      DeclarationVisitor declarationVisitor = new DeclarationVisitor(symtable);
+      declarationVisitor.setOut(out);
+      ast.apply(declarationVisitor);
+      VariableDeclarationVisitor variableVisitor = new VariableDeclarationVisitor(symtable);
+      variableVisitor.setOut(out);
+      ast.apply(variableVisitor);
+      TypeCheckerVisitor typeChecker = new TypeCheckerVisitor(symtable, sourceLines);
+      typeChecker.setOut(out);
+      ast.apply(typeChecker);
+      out.flush();
+      for (String line : messages.toString().split("\n"))
+      {
+        if (!line.trim().isEmpty())
+        {
+          System.out.println("# " + line);
+        }
+      }
+
+      Ir program = IrBuilder.lower(ast, symtable);
+      List<String> errors = IrVerifier.verify(program);
+      if (errors.isEmpty() && !passes.isEmpty())
+      {
+        IrPasses.optimize(program, passes);
+      }
+
+      System.out.print(program.dump());
+      for (String error : errors)
+      {
+        System.out.println("INVALID: " + error);
+      }
+    }
+    catch (FileNotFoundException e)
+    {
+      System.err.println("Error: File not found - " + args[0]);
+    }
+    catch (Exception e)
+    {
+      System.err.println(e);
+    }
+  }
+}
@@ -0,0 +1,289 @@
+import java.util.*;
+
+/*
+ * Checks that an Ir program is well formed, after lowering and after every
+ * pass. Returns one message per problem, empty when the program is valid:
+ *
+ *   - every block ends with exactly one terminator, phis come first, and the
+ *     successors are the terminator's targets (a branch has two)
+ *   - predecessor and successor lists mirror each other, the entry has no
+ *     predecessors and every block is reachable from it
+ *   - a phi has one operand per predecessor
+ *   - every operand is defined in the same function, before its use in the
+ *     same block or in a block that dominates it (a phi operand: dominates
+ *     the predecessor it comes from)
+ *   - users lists match the operands
+ *   - types: a const has the type of its constant, a branch tests a bool, a
+ *     phi has the join of its operands, a return fits the function's return
+ *     type, and an instruction has a result exactly when it produces a value
+ *
+ * Example: "add#2 b3: v7 = add v4, v9: v9 is not defined before its use"
+ */
+public class IrVerifier
+{
+    private static final Set<String> TYPES = new HashSet<>(Arrays.asList(
+        "int", "string", "none", "bool", "list", "iterator", "unknown", ReturnTypeInference.BOTTOM));
+
+    private final Ir.Function function;
+    private final List<String> errors = new ArrayList<>();
+    private final Map<Ir.Block, String> blockNames = new IdentityHashMap<>();
+    private final Map<Ir.Value, String> valueNames = new IdentityHashMap<>();
+
+    // Where each value is defined: its block and position in it (phis are -1)
+    private final Map<Ir.Value, Integer> positions = new IdentityHashMap<>();
+
+    private IrVerifier(Ir.Function function)
+    {
+        this.function = function;
+    }
+
+    public static List<String> verify(Ir program)
+    {
+        List<String> errors = new ArrayList<>();
+        for (Ir.Function function : program.getFunctions()) {
+            errors.addAll(verify(function));
+        }
+        return errors;
+    }
+
+    public static List<String> verify(Ir.Function function)
+    {
+        IrVerifier verifier = new IrVerifier(function);
+        verifier.check();
+        return verifier.errors;
+    }
+
+    private void check()
+    {
+        // Names as Ir.dump() prints them
+        for (Ir.Block block : function.blocks) {
+            blockNames.put(block, "b" + blockNames.size());
+            for (Ir.Value phi : block.phis) {
+                valueNames.put(phi, "v" + valueNames.size());
+                positions.put(phi, -1);
+            }
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Ir.Value value = block.instructions.get(i);
+                valueNames.put(value, value.type != null ? "v" + valueNames.size() : value.op.toString());
+                positions.put(value, i);
+            }
+        }
+
+        if (function.blocks.isEmpty() || function.blocks.get(0) != function.entry) {
+            error(null, "the entry block is not the first block");
+            return;
+        }
+        if (!function.entry.predecessors.isEmpty()) {
+            error(function.entry, "the entry block has predecessors");
+        }
+        Set<Ir.Block> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        reachable.addAll(function.reversePostorder());
+        for (Ir.Block block : function.blocks) {
+            if (!reachable.contains(block)) {
+                error(block, "is not reachable from the entry block");
+            }
+            checkEdges(block);
+        }
+        if (!errors.isEmpty()) {
+            return;     // dominance is meaningless on a broken graph
+        }
+
+        function.computeDominators();
+        for (Ir.Block block : function.blocks) {
+            for (Ir.Value phi : block.phis) {
+                checkPhi(block, phi);
+            }
+            for (int i = 0; i < block.instructions.size(); i++) {
+                checkInstruction(block, block.instructions.get(i), i);
+            }
+        }
+    }
+
+    // ========== STRUCTURE ==========
+
+    private void checkEdges(Ir.Block block)
+    {
+        Ir.Value terminator = block.getTerminator();
+        if (terminator == null) {
+            error(block, "does not end with a jump, branch or return");
+        }
+        for (int i = 0; i + 1 < block.instructions.size(); i++) {
+            if (block.instructions.get(i).op.isTerminator()) {
+                error(block, block.instructions.get(i).op + " is not the last instruction");
+            }
+        }
+        if (terminator != null) {
+            int expected = terminator.op == Ir.Op.BRANCH ? 2 : terminator.op == Ir.Op.JUMP ? 1 : 0;
+            if (block.successors.size() != expected) {
+                error(block, terminator.op + " has " + block.successors.size() + " successors");
+            }
+        }
+        for (Ir.Block succ : block.successors) {
+            if (!blockNames.containsKey(succ)) {
+                error(block, "jumps to a block that is not in the function");
+            } else if (count(succ.predecessors, block) != count(block.successors, succ)) {
+                error(block, "is not a predecessor of its successor " + blockNames.get(succ));
+            }
+        }
+        for (Ir.Block pred : block.predecessors) {
+            if (!blockNames.containsKey(pred)) {
+                error(block, "has a predecessor that is not in the function");
+            } else if (count(pred.successors, block) != count(block.predecessors, pred)) {
+                error(block, "is not a successor of its predecessor " + blockNames.get(pred));
+            }
+        }
+        for (Ir.Value phi : block.phis) {
+            if (phi.op != Ir.Op.PHI) {
+                error(block, valueNames.get(phi) + " is among the phis but is a " + phi.op);
+            }
+        }
+    }
+
+    private static <T> int count(List<T> list, T item)
+    {
+        int count = 0;
+        for (T element : list) {
+            if (element == item) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ========== VALUES ==========
+
+    private void checkPhi(Ir.Block block, Ir.Value phi)
+    {
+        checkCommon(block, phi);
+        if (phi.operands.size() != block.predecessors.size()) {
+            error(block, valueNames.get(phi) + " has " + phi.operands.size() + " operands for "
+                         + block.predecessors.size() + " predecessors");
+            return;
+        }
+        for (int i = 0; i < phi.operands.size(); i++) {
+            Ir.Value operand = phi.operands.get(i);
+            Ir.Block pred = block.predecessors.get(i);
+            if (defined(block, phi, operand) && !Ir.Function.dominates(operand.block, pred)) {
+                error(block, valueNames.get(phi) + ": " + name(operand) + " does not dominate the predecessor "
+                             + blockNames.get(pred));
+            }
+        }
+        if (!phi.type.equals(Ir.joinOperands(phi))) {
+            error(block, valueNames.get(phi) + " has type " + phi.type + ", its operands join to " + Ir.joinOperands(phi));
+        }
+    }
+
+    private void checkInstruction(Ir.Block block, Ir.Value value, int position)
+    {
+        checkCommon(block, value);
+        if (value.op == Ir.Op.PHI) {
+            error(block, valueNames.get(value) + " is a phi after the first instruction");
+            return;
+        }
+        for (Ir.Value operand : value.operands) {
+            if (!defined(block, value, operand)) {
+                continue;
+            }
+            boolean before = operand.block == block ? positions.get(operand) < position
+                                                    : Ir.Function.dominates(operand.block, block);
+            if (!before) {
+                error(block, valueNames.get(value) + ": " + name(operand) + " is not defined before its use");
+            }
+        }
+
+        boolean hasResult = !value.op.isTerminator() && value.op != Ir.Op.STORE && value.op != Ir.Op.SETITEM
+                            && value.op != Ir.Op.DEF && value.op != Ir.Op.PRINT && value.op != Ir.Op.ASSERT
+                            && value.op != Ir.Op.IMPORT;
+        if (hasResult != (value.type != null)) {
+            error(block, valueNames.get(value) + ": " + value.op + (hasResult ? " must" : " must not") + " have a type");
+            return;
+        }
+
+        switch (value.op) {
+            case CONST:
+                if (!value.operands.isEmpty() || !value.type.equals(Ir.typeOfConstant(value.constant))) {
+                    error(block, valueNames.get(value) + ": const " + Ir.literal(value.constant) + " is not a " + value.type);
+                }
+                break;
+            case BRANCH:
+                if (value.operands.size() != 1 || !"bool".equals(value.operands.get(0).type)) {
+                    error(block, "branch does not test one bool");
+                }
+                break;
+            case RETURN:
+                if (value.operands.size() != 1) {
+                    error(block, "return does not have one value");
+                } else if (!function.returnType.equals(ReturnTypeInference.join(function.returnType, value.operands.get(0).type))) {
+                    error(block, "return of " + value.operands.get(0).type + " from a function that returns " + function.returnType);
+                }
+                break;
+            case HASNEXT:
+                if (value.operands.size() != 1 || !"iterator".equals(value.operands.get(0).type)) {
+                    error(block, valueNames.get(value) + ": hasnext does not take an iterator");
+                }
+                // fall through
+            case LT: case LE: case GT: case GE: case EQ: case NE: case NOT:
+                if (!value.type.equals("bool")) {
+                    error(block, valueNames.get(value) + ": " + value.op + " must be a bool");
+                }
+                break;
+            case ITER:
+                if (!value.type.equals("iterator")) {
+                    error(block, valueNames.get(value) + ": iter must be an iterator");
+                }
+                break;
+            case NEXT:
+                if (value.operands.size() != 1 || !"iterator".equals(value.operands.get(0).type)) {
+                    error(block, valueNames.get(value) + ": next does not take an iterator");
+                }
+                break;
+            case DEF:
+                if (value.function == null) {
+                    error(block, "def without a function");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void checkCommon(Ir.Block block, Ir.Value value)
+    {
+        if (value.block != block) {
+            error(block, valueNames.get(value) + " names another block as its own");
+        }
+        if (value.type != null && !TYPES.contains(value.type)) {
+            error(block, valueNames.get(value) + " has the unknown type " + value.type);
+        }
+        for (Ir.Value operand : value.operands) {
+            if (count(operand.users, value) != count(value.operands, operand)) {
+                error(block, valueNames.get(value) + " is missing from the users of " + name(operand));
+            }
+        }
+        for (Ir.Value user : value.users) {
+            if (!user.operands.contains(value)) {
+                error(block, valueNames.get(value) + " lists " + name(user) + " as a user, which does not use it");
+            }
+        }
+    }
+
+    // The operand is still in this function. Reports it otherwise.
+    private boolean defined(Ir.Block block, Ir.Value user, Ir.Value operand)
+    {
+        if (!positions.containsKey(operand) || operand.type == null) {
+            error(block, valueNames.get(user) + " uses a value that is not in the function");
+            return false;
+        }
+        return true;
+    }
+
+    private String name(Ir.Value value)
+    {
+        return valueNames.getOrDefault(value, "?v");
+    }
+
+    private void error(Ir.Block block, String message)
+    {
+        errors.add(function.label + (block == null ? "" : " " + blockNames.get(block)) + ": " + message);
+    }
+}
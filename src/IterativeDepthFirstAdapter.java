@@ -0,0 +1,2056 @@
+import java.util.*;
+import minipython.analysis.*;
+import minipython.node.*;
+
+/*
+ * Drop-in replacement for DepthFirstAdapter that walks the tree with an
+ * explicit stack instead of Java recursion.
+ *
+ * The generated DepthFirstAdapter recurses once per node, so long argument
+ * lists (nested call_args_tail) and long left-recursive chains such as
+ * "a + b + c + ..." overflow the default thread stack. Here every node is
+ * pushed on a heap-allocated stack; the in/out callbacks are called in
+ * exactly the same order as DepthFirstAdapter calls them, so visitors only
+ * need to change the class they extend.
+ *
+ * Subclasses should override in.../out.../defaultIn/defaultOut (and
+ * defaultCase for tokens) only: case... methods of non-token nodes are
+ * used as entry points and are not called during the walk.
+ *
+ * Example:
+ *   public class MyVisitor extends IterativeDepthFirstAdapter { ... }
+ *   ast.apply(new MyVisitor());
+ */
+public class IterativeDepthFirstAdapter extends DepthFirstAdapter
+{
+    // Pending work: a node to enter, or (exit[i] == true) a node to leave
+    private Node[] nodes = new Node[64];
+    private boolean[] exit = new boolean[64];
+    private int sp = 0;
+
+    private final Enter enter = new Enter();
+    private final Exit leave = new Exit();
+
+    // ========== ENGINE ==========
+
+    public void caseStart(Start node)
+    {
+        inStart(node);
+        traverse(node.getPProgramme());
+        node.getEOF().apply(this);
+        outStart(node);
+    }
+
+    // Walks the subtree rooted at the given node. Safe to call re-entrantly
+    // from a callback: the nested walk finishes before the outer one resumes.
+    public void traverse(Node root)
+    {
+        int base = sp;
+        push(root);
+        while (sp > base) {
+            sp--;
+            Node node = nodes[sp];
+            boolean leaving = exit[sp];
+            nodes[sp] = null;
+            if (node instanceof Token) {
+                node.apply(this);
+            } else if (leaving) {
+                node.apply(leave);
+            } else {
+                node.apply(enter);
+            }
+        }
+    }
+
+    private void grow()
+    {
+        nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        exit = Arrays.copyOf(exit, exit.length * 2);
+    }
+
+    private void push(Node node)
+    {
+        if (node == null) {
+            return;
+        }
+        if (sp == nodes.length) {
+            grow();
+        }
+        nodes[sp] = node;
+        exit[sp] = false;
+        sp++;
+    }
+
+    private void pushExit(Node node)
+    {
+        if (sp == nodes.length) {
+            grow();
+        }
+        nodes[sp] = node;
+        exit[sp] = true;
+        sp++;
+    }
+
+    // Children are popped in reverse push order, so lists are pushed back to front
+    private void pushAll(List<? extends Node> list)
+    {
+        ListIterator<? extends Node> it = list.listIterator(list.size());
+        while (it.hasPrevious()) {
+            push(it.previous());
+        }
+    }
+
+    // ========== ENTRY POINTS ==========
+    // node.apply(visitor) on any subtree also walks it iteratively
+
+    public void caseAProgramme(AProgramme node)
+    {
+        traverse(node);
+    }
+
+    public void caseAFuncCommands(AFuncCommands node)
+    {
+        traverse(node);
+    }
+
+    public void caseAStatCommands(AStatCommands node)
+    {
+        traverse(node);
+    }
+
+    public void caseAInvalidCommands(AInvalidCommands node)
+    {
+        traverse(node);
+    }
+
+    public void caseADefFuncFunction(ADefFuncFunction node)
+    {
+        traverse(node);
+    }
+
+    public void caseANoArgsArgumentOpt(ANoArgsArgumentOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAHasArgsArgumentOpt(AHasArgsArgumentOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAArgumentArgument(AArgumentArgument node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndArgumentTail(AEndArgumentTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueArgumentTail(AContinueArgumentTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseANoValueAssignValueOpt(ANoValueAssignValueOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAHasValueAssignValueOpt(AHasValueAssignValueOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIfStatementStatement(AIfStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAWhileStatementStatement(AWhileStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAForStatementStatement(AForStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPrintStatementStatement(APrintStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAReturnStatementStatement(AReturnStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAssignStatementStatement(AAssignStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMineqStatementStatement(AMineqStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPluseqStatementStatement(APluseqStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMulteqStatementStatement(AMulteqStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseADiveqStatementStatement(ADiveqStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAArrayStatementStatement(AArrayStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAssertionStatementStatement(AAssertionStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAFunctionCallStatementStatement(AFunctionCallStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAImportStatementStatement(AImportStatementStatement node)
+    {
+        traverse(node);
+    }
+
+    public void caseAItemsPrintItems(AItemsPrintItems node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndPrintTail(AEndPrintTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinuePrintTail(AContinuePrintTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseANoneCommaExpressionOpt(ANoneCommaExpressionOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPresentCommaExpressionOpt(APresentCommaExpressionOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAImportsImportList(AImportsImportList node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEmptyImportListTail(AEmptyImportListTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueImportListTail(AContinueImportListTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseASimpleImportImportSpec(ASimpleImportImportSpec node)
+    {
+        traverse(node);
+    }
+
+    public void caseAImportAsImportSpec(AImportAsImportSpec node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPathModulePath(APathModulePath node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEmptyModulePathTail(AEmptyModulePathTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueModulePathTail(AContinueModulePathTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseANoArgsFunctionCall(ANoArgsFunctionCall node)
+    {
+        traverse(node);
+    }
+
+    public void caseAWithArgsFunctionCall(AWithArgsFunctionCall node)
+    {
+        traverse(node);
+    }
+
+    public void caseAArgsCallArgs(AArgsCallArgs node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndCallArgsTail(AEndCallArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueCallArgsTail(AContinueCallArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseASingleCommaExprCommaExpression(ASingleCommaExprCommaExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseACompComparison(ACompComparison node)
+    {
+        traverse(node);
+    }
+
+    public void caseAComp2Comparison(AComp2Comparison node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAftorAfteror(AAftorAfteror node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAftorandAfteror(AAftorandAfteror node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAftandAfterand(AAftandAfterand node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAftnotAfterand(AAftnotAfterand node)
+    {
+        traverse(node);
+    }
+
+    public void caseATrueAfternot(ATrueAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseAFalseAfternot(AFalseAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseALessequalAfternot(ALessequalAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseAGreaterequalAfternot(AGreaterequalAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseADifferentAfternot(ADifferentAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEqualAfternot(AEqualAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseALessAfternot(ALessAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseAGreaterAfternot(AGreaterAfternot node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAddMultExpression(AAddMultExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseASubMultExpression(ASubMultExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAddMaxExpression(AAddMaxExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseASubMaxExpression(ASubMaxExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAddMinExpression(AAddMinExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseASubMinExpression(ASubMinExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMaxOnlyExpression(AMaxOnlyExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMinOnlyExpression(AMinOnlyExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseABaseMultExpression(ABaseMultExpression node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMaxArgsMaxArgs(AMaxArgsMaxArgs node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndMaxArgsTail(AEndMaxArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueMaxArgsTail(AContinueMaxArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMinArgsMinArgs(AMinArgsMinArgs node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndMinArgsTail(AEndMinArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueMinArgsTail(AContinueMinArgsTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIntPrimary(AIntPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseADecPrimary(ADecPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIdPrimary(AIdPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAStrPrimary(AStrPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAStrSPrimary(AStrSPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAParenExprPrimary(AParenExprPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAFuncCallPrimary(AFuncCallPrimary node)
+    {
+        traverse(node);
+    }
+
+    public void caseAMultMultiplication(AMultMultiplication node)
+    {
+        traverse(node);
+    }
+
+    public void caseADivMultiplication(ADivMultiplication node)
+    {
+        traverse(node);
+    }
+
+    public void caseAModMultiplication(AModMultiplication node)
+    {
+        traverse(node);
+    }
+
+    public void caseABasePowMultiplication(ABasePowMultiplication node)
+    {
+        traverse(node);
+    }
+
+    public void caseAValuePow(AValuePow node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPowPow(APowPow node)
+    {
+        traverse(node);
+    }
+
+    public void caseAValueSubsetValue(AValueSubsetValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAPinakasExpressionValue(APinakasExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAFuncCallExpressionValue(AFuncCallExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseALengthExpessionValue(ALengthExpessionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseATypeExpressionValue(ATypeExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAOpenExpressionValue(AOpenExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAAsciiExpressionValue(AAsciiExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAParenthesisExpressionValue(AParenthesisExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseABracketsExpressionValue(ABracketsExpressionValue node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEmptyExpressionListOpt(AEmptyExpressionListOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAHasItemsExpressionListOpt(AHasItemsExpressionListOpt node)
+    {
+        traverse(node);
+    }
+
+    public void caseAExprListExpressionList(AExprListExpressionList node)
+    {
+        traverse(node);
+    }
+
+    public void caseAEndExprListTail(AEndExprListTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAContinueExprListTail(AContinueExprListTail node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIdDotFuncValuenode(AIdDotFuncValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIdentifierValuenode(AIdentifierValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseADoubleQuotesValuenode(ADoubleQuotesValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseASingleQuotesValuenode(ASingleQuotesValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseAIntegerLiteralValuenode(AIntegerLiteralValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseADecimalLiteralValuenode(ADecimalLiteralValuenode node)
+    {
+        traverse(node);
+    }
+
+    public void caseANoneValueValuenode(ANoneValueValuenode node)
+    {
+        traverse(node);
+    }
+
+    // ========== ENTERING NODES ==========
+    // Calls in...(), schedules out...() and then the children, last child first
+
+    private class Enter extends AnalysisAdapter
+    {
+        public void caseAProgramme(AProgramme node)
+        {
+            inAProgramme(node);
+            pushExit(node);
+            pushAll(node.getCommands());
+        }
+
+        public void caseAFuncCommands(AFuncCommands node)
+        {
+            inAFuncCommands(node);
+            pushExit(node);
+            push(node.getFunc());
+        }
+
+        public void caseAStatCommands(AStatCommands node)
+        {
+            inAStatCommands(node);
+            pushExit(node);
+            push(node.getStmt());
+        }
+
+        public void caseAInvalidCommands(AInvalidCommands node)
+        {
+            inAInvalidCommands(node);
+            pushExit(node);
+        }
+
+        public void caseADefFuncFunction(ADefFuncFunction node)
+        {
+            inADefFuncFunction(node);
+            pushExit(node);
+            push(node.getBody());
+            push(node.getArgs());
+            push(node.getName());
+        }
+
+        public void caseANoArgsArgumentOpt(ANoArgsArgumentOpt node)
+        {
+            inANoArgsArgumentOpt(node);
+            pushExit(node);
+        }
+
+        public void caseAHasArgsArgumentOpt(AHasArgsArgumentOpt node)
+        {
+            inAHasArgsArgumentOpt(node);
+            pushExit(node);
+            push(node.getArg());
+        }
+
+        public void caseAArgumentArgument(AArgumentArgument node)
+        {
+            inAArgumentArgument(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getDefault());
+            push(node.getParam());
+        }
+
+        public void caseAEndArgumentTail(AEndArgumentTail node)
+        {
+            inAEndArgumentTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueArgumentTail(AContinueArgumentTail node)
+        {
+            inAContinueArgumentTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNextDefault());
+            push(node.getNextParam());
+            push(node.getNextComma());
+        }
+
+        public void caseANoValueAssignValueOpt(ANoValueAssignValueOpt node)
+        {
+            inANoValueAssignValueOpt(node);
+            pushExit(node);
+        }
+
+        public void caseAHasValueAssignValueOpt(AHasValueAssignValueOpt node)
+        {
+            inAHasValueAssignValueOpt(node);
+            pushExit(node);
+            push(node.getValue());
+            push(node.getAssign());
+        }
+
+        public void caseAIfStatementStatement(AIfStatementStatement node)
+        {
+            inAIfStatementStatement(node);
+            pushExit(node);
+            push(node.getThen());
+            push(node.getCond());
+            push(node.getIfTok());
+        }
+
+        public void caseAWhileStatementStatement(AWhileStatementStatement node)
+        {
+            inAWhileStatementStatement(node);
+            pushExit(node);
+            push(node.getBody());
+            push(node.getCond());
+            push(node.getWhileTok());
+        }
+
+        public void caseAForStatementStatement(AForStatementStatement node)
+        {
+            inAForStatementStatement(node);
+            pushExit(node);
+            push(node.getBody());
+            push(node.getIter());
+            push(node.getInTok());
+            push(node.getVar());
+            push(node.getForTok());
+        }
+
+        public void caseAPrintStatementStatement(APrintStatementStatement node)
+        {
+            inAPrintStatementStatement(node);
+            pushExit(node);
+            push(node.getItems());
+            push(node.getPrintTok());
+        }
+
+        public void caseAReturnStatementStatement(AReturnStatementStatement node)
+        {
+            inAReturnStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getReturnTok());
+        }
+
+        public void caseAAssignStatementStatement(AAssignStatementStatement node)
+        {
+            inAAssignStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getAssignTok());
+            push(node.getId());
+        }
+
+        public void caseAMineqStatementStatement(AMineqStatementStatement node)
+        {
+            inAMineqStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOp());
+            push(node.getId());
+        }
+
+        public void caseAPluseqStatementStatement(APluseqStatementStatement node)
+        {
+            inAPluseqStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOp());
+            push(node.getId());
+        }
+
+        public void caseAMulteqStatementStatement(AMulteqStatementStatement node)
+        {
+            inAMulteqStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOp());
+            push(node.getId());
+        }
+
+        public void caseADiveqStatementStatement(ADiveqStatementStatement node)
+        {
+            inADiveqStatementStatement(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOp());
+            push(node.getId());
+        }
+
+        public void caseAArrayStatementStatement(AArrayStatementStatement node)
+        {
+            inAArrayStatementStatement(node);
+            pushExit(node);
+            push(node.getValue());
+            push(node.getAssignTok());
+            push(node.getIndex());
+            push(node.getId());
+        }
+
+        public void caseAAssertionStatementStatement(AAssertionStatementStatement node)
+        {
+            inAAssertionStatementStatement(node);
+            pushExit(node);
+            push(node.getMsg());
+            push(node.getExpr());
+            push(node.getAssertTok());
+        }
+
+        public void caseAFunctionCallStatementStatement(AFunctionCallStatementStatement node)
+        {
+            inAFunctionCallStatementStatement(node);
+            pushExit(node);
+            push(node.getCall());
+        }
+
+        public void caseAImportStatementStatement(AImportStatementStatement node)
+        {
+            inAImportStatementStatement(node);
+            pushExit(node);
+            push(node.getImports());
+            push(node.getImportTok());
+        }
+
+        public void caseAItemsPrintItems(AItemsPrintItems node)
+        {
+            inAItemsPrintItems(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEndPrintTail(AEndPrintTail node)
+        {
+            inAEndPrintTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinuePrintTail(AContinuePrintTail node)
+        {
+            inAContinuePrintTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseANoneCommaExpressionOpt(ANoneCommaExpressionOpt node)
+        {
+            inANoneCommaExpressionOpt(node);
+            pushExit(node);
+        }
+
+        public void caseAPresentCommaExpressionOpt(APresentCommaExpressionOpt node)
+        {
+            inAPresentCommaExpressionOpt(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getCommaTok());
+        }
+
+        public void caseAImportsImportList(AImportsImportList node)
+        {
+            inAImportsImportList(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEmptyImportListTail(AEmptyImportListTail node)
+        {
+            inAEmptyImportListTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueImportListTail(AContinueImportListTail node)
+        {
+            inAContinueImportListTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseASimpleImportImportSpec(ASimpleImportImportSpec node)
+        {
+            inASimpleImportImportSpec(node);
+            pushExit(node);
+            push(node.getPath());
+        }
+
+        public void caseAImportAsImportSpec(AImportAsImportSpec node)
+        {
+            inAImportAsImportSpec(node);
+            pushExit(node);
+            push(node.getAlias());
+            push(node.getAsTok());
+            push(node.getPath());
+        }
+
+        public void caseAPathModulePath(APathModulePath node)
+        {
+            inAPathModulePath(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEmptyModulePathTail(AEmptyModulePathTail node)
+        {
+            inAEmptyModulePathTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueModulePathTail(AContinueModulePathTail node)
+        {
+            inAContinueModulePathTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getDotTok());
+        }
+
+        public void caseANoArgsFunctionCall(ANoArgsFunctionCall node)
+        {
+            inANoArgsFunctionCall(node);
+            pushExit(node);
+            push(node.getRparenTok());
+            push(node.getLparenTok());
+            push(node.getName());
+        }
+
+        public void caseAWithArgsFunctionCall(AWithArgsFunctionCall node)
+        {
+            inAWithArgsFunctionCall(node);
+            pushExit(node);
+            push(node.getRparenTok());
+            push(node.getArgs());
+            push(node.getLparenTok());
+            push(node.getName());
+        }
+
+        public void caseAArgsCallArgs(AArgsCallArgs node)
+        {
+            inAArgsCallArgs(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEndCallArgsTail(AEndCallArgsTail node)
+        {
+            inAEndCallArgsTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueCallArgsTail(AContinueCallArgsTail node)
+        {
+            inAContinueCallArgsTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseASingleCommaExprCommaExpression(ASingleCommaExprCommaExpression node)
+        {
+            inASingleCommaExprCommaExpression(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getCommaTok());
+        }
+
+        public void caseACompComparison(ACompComparison node)
+        {
+            inACompComparison(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAComp2Comparison(AComp2Comparison node)
+        {
+            inAComp2Comparison(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAAftorAfteror(AAftorAfteror node)
+        {
+            inAAftorAfteror(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAAftorandAfteror(AAftorandAfteror node)
+        {
+            inAAftorandAfteror(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAAftandAfterand(AAftandAfterand node)
+        {
+            inAAftandAfterand(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAAftnotAfterand(AAftnotAfterand node)
+        {
+            inAAftnotAfterand(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOp());
+        }
+
+        public void caseATrueAfternot(ATrueAfternot node)
+        {
+            inATrueAfternot(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAFalseAfternot(AFalseAfternot node)
+        {
+            inAFalseAfternot(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseALessequalAfternot(ALessequalAfternot node)
+        {
+            inALessequalAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAGreaterequalAfternot(AGreaterequalAfternot node)
+        {
+            inAGreaterequalAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseADifferentAfternot(ADifferentAfternot node)
+        {
+            inADifferentAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAEqualAfternot(AEqualAfternot node)
+        {
+            inAEqualAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseALessAfternot(ALessAfternot node)
+        {
+            inALessAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAGreaterAfternot(AGreaterAfternot node)
+        {
+            inAGreaterAfternot(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAAddMultExpression(AAddMultExpression node)
+        {
+            inAAddMultExpression(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseASubMultExpression(ASubMultExpression node)
+        {
+            inASubMultExpression(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAAddMaxExpression(AAddMaxExpression node)
+        {
+            inAAddMaxExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMaxTok());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseASubMaxExpression(ASubMaxExpression node)
+        {
+            inASubMaxExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMaxTok());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAAddMinExpression(AAddMinExpression node)
+        {
+            inAAddMinExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMinTok());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseASubMinExpression(ASubMinExpression node)
+        {
+            inASubMinExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMinTok());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAMaxOnlyExpression(AMaxOnlyExpression node)
+        {
+            inAMaxOnlyExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMaxTok());
+        }
+
+        public void caseAMinOnlyExpression(AMinOnlyExpression node)
+        {
+            inAMinOnlyExpression(node);
+            pushExit(node);
+            push(node.getArgs());
+            push(node.getMinTok());
+        }
+
+        public void caseABaseMultExpression(ABaseMultExpression node)
+        {
+            inABaseMultExpression(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAMaxArgsMaxArgs(AMaxArgsMaxArgs node)
+        {
+            inAMaxArgsMaxArgs(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEndMaxArgsTail(AEndMaxArgsTail node)
+        {
+            inAEndMaxArgsTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueMaxArgsTail(AContinueMaxArgsTail node)
+        {
+            inAContinueMaxArgsTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseAMinArgsMinArgs(AMinArgsMinArgs node)
+        {
+            inAMinArgsMinArgs(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEndMinArgsTail(AEndMinArgsTail node)
+        {
+            inAEndMinArgsTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueMinArgsTail(AContinueMinArgsTail node)
+        {
+            inAContinueMinArgsTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseAIntPrimary(AIntPrimary node)
+        {
+            inAIntPrimary(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseADecPrimary(ADecPrimary node)
+        {
+            inADecPrimary(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAIdPrimary(AIdPrimary node)
+        {
+            inAIdPrimary(node);
+            pushExit(node);
+            push(node.getName());
+        }
+
+        public void caseAStrPrimary(AStrPrimary node)
+        {
+            inAStrPrimary(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAStrSPrimary(AStrSPrimary node)
+        {
+            inAStrSPrimary(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAParenExprPrimary(AParenExprPrimary node)
+        {
+            inAParenExprPrimary(node);
+            pushExit(node);
+            push(node.getRparenTok());
+            push(node.getExpr());
+            push(node.getLparenTok());
+        }
+
+        public void caseAFuncCallPrimary(AFuncCallPrimary node)
+        {
+            inAFuncCallPrimary(node);
+            pushExit(node);
+            push(node.getCall());
+        }
+
+        public void caseAMultMultiplication(AMultMultiplication node)
+        {
+            inAMultMultiplication(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseADivMultiplication(ADivMultiplication node)
+        {
+            inADivMultiplication(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAModMultiplication(AModMultiplication node)
+        {
+            inAModMultiplication(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseABasePowMultiplication(ABasePowMultiplication node)
+        {
+            inABasePowMultiplication(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAValuePow(AValuePow node)
+        {
+            inAValuePow(node);
+            pushExit(node);
+            push(node.getExpr());
+        }
+
+        public void caseAPowPow(APowPow node)
+        {
+            inAPowPow(node);
+            pushExit(node);
+            push(node.getRight());
+            push(node.getOp());
+            push(node.getLeft());
+        }
+
+        public void caseAValueSubsetValue(AValueSubsetValue node)
+        {
+            inAValueSubsetValue(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAPinakasExpressionValue(APinakasExpressionValue node)
+        {
+            inAPinakasExpressionValue(node);
+            pushExit(node);
+            push(node.getIndex());
+            push(node.getId());
+        }
+
+        public void caseAFuncCallExpressionValue(AFuncCallExpressionValue node)
+        {
+            inAFuncCallExpressionValue(node);
+            pushExit(node);
+            push(node.getCall());
+        }
+
+        public void caseALengthExpessionValue(ALengthExpessionValue node)
+        {
+            inALengthExpessionValue(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getLenTok());
+        }
+
+        public void caseATypeExpressionValue(ATypeExpressionValue node)
+        {
+            inATypeExpressionValue(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getTypeTok());
+        }
+
+        public void caseAOpenExpressionValue(AOpenExpressionValue node)
+        {
+            inAOpenExpressionValue(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getOpenTok());
+        }
+
+        public void caseAAsciiExpressionValue(AAsciiExpressionValue node)
+        {
+            inAAsciiExpressionValue(node);
+            pushExit(node);
+            push(node.getExpr());
+            push(node.getAsciiTok());
+        }
+
+        public void caseAParenthesisExpressionValue(AParenthesisExpressionValue node)
+        {
+            inAParenthesisExpressionValue(node);
+            pushExit(node);
+            push(node.getRparenTok());
+            push(node.getExpr());
+            push(node.getLparenTok());
+        }
+
+        public void caseABracketsExpressionValue(ABracketsExpressionValue node)
+        {
+            inABracketsExpressionValue(node);
+            pushExit(node);
+            push(node.getList());
+        }
+
+        public void caseAEmptyExpressionListOpt(AEmptyExpressionListOpt node)
+        {
+            inAEmptyExpressionListOpt(node);
+            pushExit(node);
+        }
+
+        public void caseAHasItemsExpressionListOpt(AHasItemsExpressionListOpt node)
+        {
+            inAHasItemsExpressionListOpt(node);
+            pushExit(node);
+            push(node.getItems());
+        }
+
+        public void caseAExprListExpressionList(AExprListExpressionList node)
+        {
+            inAExprListExpressionList(node);
+            pushExit(node);
+            push(node.getRest());
+            push(node.getFirst());
+        }
+
+        public void caseAEndExprListTail(AEndExprListTail node)
+        {
+            inAEndExprListTail(node);
+            pushExit(node);
+        }
+
+        public void caseAContinueExprListTail(AContinueExprListTail node)
+        {
+            inAContinueExprListTail(node);
+            pushExit(node);
+            push(node.getMore());
+            push(node.getNext());
+            push(node.getCommaTok());
+        }
+
+        public void caseAIdDotFuncValuenode(AIdDotFuncValuenode node)
+        {
+            inAIdDotFuncValuenode(node);
+            pushExit(node);
+            push(node.getCall());
+            push(node.getObj());
+        }
+
+        public void caseAIdentifierValuenode(AIdentifierValuenode node)
+        {
+            inAIdentifierValuenode(node);
+            pushExit(node);
+            push(node.getName());
+        }
+
+        public void caseADoubleQuotesValuenode(ADoubleQuotesValuenode node)
+        {
+            inADoubleQuotesValuenode(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseASingleQuotesValuenode(ASingleQuotesValuenode node)
+        {
+            inASingleQuotesValuenode(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseAIntegerLiteralValuenode(AIntegerLiteralValuenode node)
+        {
+            inAIntegerLiteralValuenode(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseADecimalLiteralValuenode(ADecimalLiteralValuenode node)
+        {
+            inADecimalLiteralValuenode(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+
+        public void caseANoneValueValuenode(ANoneValueValuenode node)
+        {
+            inANoneValueValuenode(node);
+            pushExit(node);
+            push(node.getVal());
+        }
+    }
+
+    // ========== LEAVING NODES ==========
+
+    private class Exit extends AnalysisAdapter
+    {
+        public void caseAProgramme(AProgramme node)
+        {
+            outAProgramme(node);
+        }
+
+        public void caseAFuncCommands(AFuncCommands node)
+        {
+            outAFuncCommands(node);
+        }
+
+        public void caseAStatCommands(AStatCommands node)
+        {
+            outAStatCommands(node);
+        }
+
+        public void caseAInvalidCommands(AInvalidCommands node)
+        {
+            outAInvalidCommands(node);
+        }
+
+        public void caseADefFuncFunction(ADefFuncFunction node)
+        {
+            outADefFuncFunction(node);
+        }
+
+        public void caseANoArgsArgumentOpt(ANoArgsArgumentOpt node)
+        {
+            outANoArgsArgumentOpt(node);
+        }
+
+        public void caseAHasArgsArgumentOpt(AHasArgsArgumentOpt node)
+        {
+            outAHasArgsArgumentOpt(node);
+        }
+
+        public void caseAArgumentArgument(AArgumentArgument node)
+        {
+            outAArgumentArgument(node);
+        }
+
+        public void caseAEndArgumentTail(AEndArgumentTail node)
+        {
+            outAEndArgumentTail(node);
+        }
+
+        public void caseAContinueArgumentTail(AContinueArgumentTail node)
+        {
+            outAContinueArgumentTail(node);
+        }
+
+        public void caseANoValueAssignValueOpt(ANoValueAssignValueOpt node)
+        {
+            outANoValueAssignValueOpt(node);
+        }
+
+        public void caseAHasValueAssignValueOpt(AHasValueAssignValueOpt node)
+        {
+            outAHasValueAssignValueOpt(node);
+        }
+
+        public void caseAIfStatementStatement(AIfStatementStatement node)
+        {
+            outAIfStatementStatement(node);
+        }
+
+        public void caseAWhileStatementStatement(AWhileStatementStatement node)
+        {
+            outAWhileStatementStatement(node);
+        }
+
+        public void caseAForStatementStatement(AForStatementStatement node)
+        {
+            outAForStatementStatement(node);
+        }
+
+        public void caseAPrintStatementStatement(APrintStatementStatement node)
+        {
+            outAPrintStatementStatement(node);
+        }
+
+        public void caseAReturnStatementStatement(AReturnStatementStatement node)
+        {
+            outAReturnStatementStatement(node);
+        }
+
+        public void caseAAssignStatementStatement(AAssignStatementStatement node)
+        {
+            outAAssignStatementStatement(node);
+        }
+
+        public void caseAMineqStatementStatement(AMineqStatementStatement node)
+        {
+            outAMineqStatementStatement(node);
+        }
+
+        public void caseAPluseqStatementStatement(APluseqStatementStatement node)
+        {
+            outAPluseqStatementStatement(node);
+        }
+
+        public void caseAMulteqStatementStatement(AMulteqStatementStatement node)
+        {
+            outAMulteqStatementStatement(node);
+        }
+
+        public void caseADiveqStatementStatement(ADiveqStatementStatement node)
+        {
+            outADiveqStatementStatement(node);
+        }
+
+        public void caseAArrayStatementStatement(AArrayStatementStatement node)
+        {
+            outAArrayStatementStatement(node);
+        }
+
+        public void caseAAssertionStatementStatement(AAssertionStatementStatement node)
+        {
+            outAAssertionStatementStatement(node);
+        }
+
+        public void caseAFunctionCallStatementStatement(AFunctionCallStatementStatement node)
+        {
+            outAFunctionCallStatementStatement(node);
+        }
+
+        public void caseAImportStatementStatement(AImportStatementStatement node)
+        {
+            outAImportStatementStatement(node);
+        }
+
+        public void caseAItemsPrintItems(AItemsPrintItems node)
+        {
+            outAItemsPrintItems(node);
+        }
+
+        public void caseAEndPrintTail(AEndPrintTail node)
+        {
+            outAEndPrintTail(node);
+        }
+
+        public void caseAContinuePrintTail(AContinuePrintTail node)
+        {
+            outAContinuePrintTail(node);
+        }
+
+        public void caseANoneCommaExpressionOpt(ANoneCommaExpressionOpt node)
+        {
+            outANoneCommaExpressionOpt(node);
+        }
+
+        public void caseAPresentCommaExpressionOpt(APresentCommaExpressionOpt node)
+        {
+            outAPresentCommaExpressionOpt(node);
+        }
+
+        public void caseAImportsImportList(AImportsImportList node)
+        {
+            outAImportsImportList(node);
+        }
+
+        public void caseAEmptyImportListTail(AEmptyImportListTail node)
+        {
+            outAEmptyImportListTail(node);
+        }
+
+        public void caseAContinueImportListTail(AContinueImportListTail node)
+        {
+            outAContinueImportListTail(node);
+        }
+
+        public void caseASimpleImportImportSpec(ASimpleImportImportSpec node)
+        {
+            outASimpleImportImportSpec(node);
+        }
+
+        public void caseAImportAsImportSpec(AImportAsImportSpec node)
+        {
+            outAImportAsImportSpec(node);
+        }
+
+        public void caseAPathModulePath(APathModulePath node)
+        {
+            outAPathModulePath(node);
+        }
+
+        public void caseAEmptyModulePathTail(AEmptyModulePathTail node)
+        {
+            outAEmptyModulePathTail(node);
+        }
+
+        public void caseAContinueModulePathTail(AContinueModulePathTail node)
+        {
+            outAContinueModulePathTail(node);
+        }
+
+        public void caseANoArgsFunctionCall(ANoArgsFunctionCall node)
+        {
+            outANoArgsFunctionCall(node);
+        }
+
+        public void caseAWithArgsFunctionCall(AWithArgsFunctionCall node)
+        {
+            outAWithArgsFunctionCall(node);
+        }
+
+        public void caseAArgsCallArgs(AArgsCallArgs node)
+        {
+            outAArgsCallArgs(node);
+        }
+
+        public void caseAEndCallArgsTail(AEndCallArgsTail node)
+        {
+            outAEndCallArgsTail(node);
+        }
+
+        public void caseAContinueCallArgsTail(AContinueCallArgsTail node)
+        {
+            outAContinueCallArgsTail(node);
+        }
+
+        public void caseASingleCommaExprCommaExpression(ASingleCommaExprCommaExpression node)
+        {
+            outASingleCommaExprCommaExpression(node);
+        }
+
+        public void caseACompComparison(ACompComparison node)
+        {
+            outACompComparison(node);
+        }
+
+        public void caseAComp2Comparison(AComp2Comparison node)
+        {
+            outAComp2Comparison(node);
+        }
+
+        public void caseAAftorAfteror(AAftorAfteror node)
+        {
+            outAAftorAfteror(node);
+        }
+
+        public void caseAAftorandAfteror(AAftorandAfteror node)
+        {
+            outAAftorandAfteror(node);
+        }
+
+        public void caseAAftandAfterand(AAftandAfterand node)
+        {
+            outAAftandAfterand(node);
+        }
+
+        public void caseAAftnotAfterand(AAftnotAfterand node)
+        {
+            outAAftnotAfterand(node);
+        }
+
+        public void caseATrueAfternot(ATrueAfternot node)
+        {
+            outATrueAfternot(node);
+        }
+
+        public void caseAFalseAfternot(AFalseAfternot node)
+        {
+            outAFalseAfternot(node);
+        }
+
+        public void caseALessequalAfternot(ALessequalAfternot node)
+        {
+            outALessequalAfternot(node);
+        }
+
+        public void caseAGreaterequalAfternot(AGreaterequalAfternot node)
+        {
+            outAGreaterequalAfternot(node);
+        }
+
+        public void caseADifferentAfternot(ADifferentAfternot node)
+        {
+            outADifferentAfternot(node);
+        }
+
+        public void caseAEqualAfternot(AEqualAfternot node)
+        {
+            outAEqualAfternot(node);
+        }
+
+        public void caseALessAfternot(ALessAfternot node)
+        {
+            outALessAfternot(node);
+        }
+
+        public void caseAGreaterAfternot(AGreaterAfternot node)
+        {
+            outAGreaterAfternot(node);
+        }
+
+        public void caseAAddMultExpression(AAddMultExpression node)
+        {
+            outAAddMultExpression(node);
+        }
+
+        public void caseASubMultExpression(ASubMultExpression node)
+        {
+            outASubMultExpression(node);
+        }
+
+        public void caseAAddMaxExpression(AAddMaxExpression node)
+        {
+            outAAddMaxExpression(node);
+        }
+
+        public void caseASubMaxExpression(ASubMaxExpression node)
+        {
+            outASubMaxExpression(node);
+        }
+
+        public void caseAAddMinExpression(AAddMinExpression node)
+        {
+            outAAddMinExpression(node);
+        }
+
+        public void caseASubMinExpression(ASubMinExpression node)
+        {
+            outASubMinExpression(node);
+        }
+
+        public void caseAMaxOnlyExpression(AMaxOnlyExpression node)
+        {
+            outAMaxOnlyExpression(node);
+        }
+
+        public void caseAMinOnlyExpression(AMinOnlyExpression node)
+        {
+            outAMinOnlyExpression(node);
+        }
+
+        public void caseABaseMultExpression(ABaseMultExpression node)
+        {
+            outABaseMultExpression(node);
+        }
+
+        public void caseAMaxArgsMaxArgs(AMaxArgsMaxArgs node)
+        {
+            outAMaxArgsMaxArgs(node);
+        }
+
+        public void caseAEndMaxArgsTail(AEndMaxArgsTail node)
+        {
+            outAEndMaxArgsTail(node);
+        }
+
+        public void caseAContinueMaxArgsTail(AContinueMaxArgsTail node)
+        {
+            outAContinueMaxArgsTail(node);
+        }
+
+        public void caseAMinArgsMinArgs(AMinArgsMinArgs node)
+        {
+            outAMinArgsMinArgs(node);
+        }
+
+        public void caseAEndMinArgsTail(AEndMinArgsTail node)
+        {
+            outAEndMinArgsTail(node);
+        }
+
+        public void caseAContinueMinArgsTail(AContinueMinArgsTail node)
+        {
+            outAContinueMinArgsTail(node);
+        }
+
+        public void caseAIntPrimary(AIntPrimary node)
+        {
+            outAIntPrimary(node);
+        }
+
+        public void caseADecPrimary(ADecPrimary node)
+        {
+            outADecPrimary(node);
+        }
+
+        public void caseAIdPrimary(AIdPrimary node)
+        {
+            outAIdPrimary(node);
+        }
+
+        public void caseAStrPrimary(AStrPrimary node)
+        {
+            outAStrPrimary(node);
+        }
+
+        public void caseAStrSPrimary(AStrSPrimary node)
+        {
+            outAStrSPrimary(node);
+        }
+
+        public void caseAParenExprPrimary(AParenExprPrimary node)
+        {
+            outAParenExprPrimary(node);
+        }
+
+        public void caseAFuncCallPrimary(AFuncCallPrimary node)
+        {
+            outAFuncCallPrimary(node);
+        }
+
+        public void caseAMultMultiplication(AMultMultiplication node)
+        {
+            outAMultMultiplication(node);
+        }
+
+        public void caseADivMultiplication(ADivMultiplication node)
+        {
+            outADivMultiplication(node);
+        }
+
+        public void caseAModMultiplication(AModMultiplication node)
+        {
+            outAModMultiplication(node);
+        }
+
+        public void caseABasePowMultiplication(ABasePowMultiplication node)
+        {
+            outABasePowMultiplication(node);
+        }
+
+        public void caseAValuePow(AValuePow node)
+        {
+            outAValuePow(node);
+        }
+
+        public void caseAPowPow(APowPow node)
+        {
+            outAPowPow(node);
+        }
+
+        public void caseAValueSubsetValue(AValueSubsetValue node)
+        {
+            outAValueSubsetValue(node);
+        }
+
+        public void caseAPinakasExpressionValue(APinakasExpressionValue node)
+        {
+            outAPinakasExpressionValue(node);
+        }
+
+        public void caseAFuncCallExpressionValue(AFuncCallExpressionValue node)
+        {
+            outAFuncCallExpressionValue(node);
+        }
+
+        public void caseALengthExpessionValue(ALengthExpessionValue node)
+        {
+            outALengthExpessionValue(node);
+        }
+
+        public void caseATypeExpressionValue(ATypeExpressionValue node)
+        {
+            outATypeExpressionValue(node);
+        }
+
+        public void caseAOpenExpressionValue(AOpenExpressionValue node)
+        {
+            outAOpenExpressionValue(node);
+        }
+
+        public void caseAAsciiExpressionValue(AAsciiExpressionValue node)
+        {
+            outAAsciiExpressionValue(node);
+        }
+
+        public void caseAParenthesisExpressionValue(AParenthesisExpressionValue node)
+        {
+            outAParenthesisExpressionValue(node);
+        }
+
+        public void caseABracketsExpressionValue(ABracketsExpressionValue node)
+        {
+            outABracketsExpressionValue(node);
+        }
+
+        public void caseAEmptyExpressionListOpt(AEmptyExpressionListOpt node)
+        {
+            outAEmptyExpressionListOpt(node);
+        }
+
+        public void caseAHasItemsExpressionListOpt(AHasItemsExpressionListOpt node)
+        {
+            outAHasItemsExpressionListOpt(node);
+        }
+
+        public void caseAExprListExpressionList(AExprListExpressionList node)
+        {
+            outAExprListExpressionList(node);
+        }
+
+        public void caseAEndExprListTail(AEndExprListTail node)
+        {
+            outAEndExprListTail(node);
+        }
+
+        public void caseAContinueExprListTail(AContinueExprListTail node)
+        {
+            outAContinueExprListTail(node);
+        }
+
+        public void caseAIdDotFuncValuenode(AIdDotFuncValuenode node)
+        {
+            outAIdDotFuncValuenode(node);
+        }
+
+        public void caseAIdentifierValuenode(AIdentifierValuenode node)
+        {
+            outAIdentifierValuenode(node);
+        }
+
+        public void caseADoubleQuotesValuenode(ADoubleQuotesValuenode node)
+        {
+            outADoubleQuotesValuenode(node);
+        }
+
+        public void caseASingleQuotesValuenode(ASingleQuotesValuenode node)
+        {
+            outASingleQuotesValuenode(node);
+        }
+
+        public void caseAIntegerLiteralValuenode(AIntegerLiteralValuenode node)
+        {
+            outAIntegerLiteralValuenode(node);
+        }
+
+        public void caseADecimalLiteralValuenode(ADecimalLiteralValuenode node)
+        {
+            outADecimalLiteralValuenode(node);
+        }
+
+        public void caseANoneValueValuenode(ANoneValueValuenode node)
+        {
+            outANoneValueValuenode(node);
+        }
+    }
+}
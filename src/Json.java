@@ -0,0 +1,254 @@
+import java.util.*;
+
+/*
+ * Minimal JSON reader/writer for the language server protocol.
+ *
+ * Values map to Java as:
+ *   object → LinkedHashMap<String, Object>, array → ArrayList<Object>,
+ *   string → String, number → Long or Double, true/false → Boolean, null → null
+ *
+ * Example:
+ *   Map<String, Object> msg = (Map<String, Object>) Json.parse("{\"id\":1}");
+ *   Json.write(msg)  →  {"id":1}
+ */
+public class Json
+{
+    private final String text;
+    private int pos;
+
+    private Json(String text)
+    {
+        this.text = text;
+    }
+
+    public static Object parse(String text)
+    {
+        Json parser = new Json(text);
+        parser.skipSpace();
+        Object value = parser.value();
+        parser.skipSpace();
+        if (parser.pos != text.length()) {
+            throw parser.error("trailing characters");
+        }
+        return value;
+    }
+
+    // ========== READING ==========
+
+    private Object value()
+    {
+        if (pos >= text.length()) {
+            throw error("unexpected end");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': literal("true"); return Boolean.TRUE;
+            case 'f': literal("false"); return Boolean.FALSE;
+            case 'n': literal("null"); return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("unexpected '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object()
+    {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipSpace();
+            String key = string();
+            skipSpace();
+            expect(':');
+            skipSpace();
+            map.put(key, value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return map;
+            }
+        }
+    }
+
+    private List<Object> array()
+    {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipSpace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            skipSpace();
+            list.add(value());
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return list;
+            }
+        }
+    }
+
+    private String string()
+    {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escape = text.charAt(pos++);
+            switch (escape) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(escape);  // \" \\ \/
+            }
+        }
+    }
+
+    private Object number()
+    {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        return decimal ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+    }
+
+    private void literal(String word)
+    {
+        if (!text.startsWith(word, pos)) {
+            throw error("expected " + word);
+        }
+        pos += word.length();
+    }
+
+    private char peek()
+    {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void expect(char c)
+    {
+        if (peek() != c) {
+            throw error("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipSpace()
+    {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException("Invalid JSON at " + pos + ": " + message);
+    }
+
+    // ========== WRITING ==========
+
+    public static String write(Object value)
+    {
+        StringBuilder sb = new StringBuilder();
+        write(value, sb);
+        return sb.toString();
+    }
+
+    private static void write(Object value, StringBuilder sb)
+    {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value, sb);
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                writeString(entry.getKey().toString(), sb);
+                sb.append(':');
+                write(entry.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof Collection) {
+            sb.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                write(item, sb);
+            }
+            sb.append(']');
+        } else {
+            sb.append(value);  // Number, Boolean
+        }
+    }
+
+    private static void writeString(String s, StringBuilder sb)
+    {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
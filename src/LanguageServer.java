@@ -0,0 +1,443 @@
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import minipython.node.*;
+
+/*
+ * Language Server Protocol endpoint over stdio, for editors.
+ *
+ * Open documents are kept in memory as IncrementalDocuments, so an edit only
+ * relexes the changed lines and reparses the top-level commands they belong
+ * to. This happens on the request thread, before the next message is read.
+ *
+ * The three semantic passes then run on a background thread over the
+ * current commands and push textDocument/publishDiagnostics. A run that an
+ * edit has already superseded is skipped.
+ *
+ * Supported:
+ *   initialize, shutdown, exit
+ *   textDocument/didOpen, didChange (incremental), didClose
+ *   textDocument/definition (functions, from DeclarationVisitor's functions table)
+ *
+ * Usage: java -cp build LanguageServer [-timing]
+ *   -timing logs the time spent on every edit to stderr
+ */
+public class LanguageServer
+{
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    // Editor state of one file
+    private static class OpenDocument {
+        final String uri;
+        final IncrementalDocument text;
+        final Path path;                    // null when the uri is not a file
+        volatile int version;
+
+        // Owned by the analysis thread
+        final Start ast = new Start(new AProgramme(new ArrayList<>()), new EOF());
+        volatile Hashtable<String, Object> symtable = new Hashtable<>();
+
+        OpenDocument(String uri, String content, int version) {
+            this.uri = uri;
+            this.text = new IncrementalDocument(content);
+            this.version = version;
+            Path file = null;
+            try {
+                file = Paths.get(URI.create(uri));
+            } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+                // Example: "untitled:Untitled-1"
+            }
+            this.path = file;
+        }
+    }
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final boolean timing;
+    private final Map<String, OpenDocument> documents = new HashMap<>();
+    private final ExecutorService analyzer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "minipython-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean shutdown;
+
+    // Interfaces of imported modules, read from their summaries. Example: path → [lastModified, ModuleInterface]
+    private final Map<Path, Object[]> moduleCache = new ConcurrentHashMap<>();
+
+    public LanguageServer(InputStream in, OutputStream out, boolean timing)
+    {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+        this.timing = timing;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean timing = args.length > 0 && args[0].equals("-timing");
+        // The protocol owns stdout; anything else printed there would corrupt it
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+        System.setOut(System.err);
+        boolean clean = new LanguageServer(System.in, protocol, timing).run();
+        System.exit(clean ? 0 : 1);
+    }
+
+    // Serves until "exit" or end of input. Returns true if "shutdown" came first.
+    public boolean run() throws IOException
+    {
+        while (true) {
+            Map<String, Object> message = readMessage();
+            if (message == null) {
+                return shutdown;
+            }
+            String method = (String) message.get("method");
+            if ("exit".equals(method)) {
+                return shutdown;
+            }
+            try {
+                handle(message, method);
+            } catch (RuntimeException e) {
+                System.err.println("Error handling " + method + ": " + e);
+                if (message.containsKey("id")) {
+                    sendError(message.get("id"), -32603, e.toString());
+                }
+            }
+        }
+    }
+
+    // ========== MESSAGES ==========
+
+    private void handle(Map<String, Object> message, String method)
+    {
+        Object id = message.get("id");
+        Map<String, Object> params = (Map<String, Object>) message.get("params");
+        if (method == null) {
+            return;     // a response to something we never send
+        }
+        switch (method) {
+            case "initialize":
+                sendResult(id, map("capabilities", map(
+                        "textDocumentSync", map("openClose", true, "change", 2),
+                        "definitionProvider", true),
+                    "serverInfo", map("name", "minipython")));
+                break;
+            case "shutdown":
+                shutdown = true;
+                sendResult(id, null);
+                break;
+            case "textDocument/didOpen":
+                didOpen((Map<String, Object>) params.get("textDocument"));
+                break;
+            case "textDocument/didChange":
+                didChange(params);
+                break;
+            case "textDocument/didClose":
+                didClose((Map<String, Object>) params.get("textDocument"));
+                break;
+            case "textDocument/definition":
+                sendResult(id, definition(params));
+                break;
+            default:
+                if (id != null) {
+                    sendError(id, -32601, "Method not found: " + method);
+                }
+        }
+    }
+
+    private void didOpen(Map<String, Object> item)
+    {
+        long start = System.nanoTime();
+        String uri = (String) item.get("uri");
+        OpenDocument document = new OpenDocument(uri, (String) item.get("text"), number(item.get("version")));
+        documents.put(uri, document);
+        logTiming("open " + uri, start, document.text.getReparsedCount());
+        scheduleAnalysis(document);
+    }
+
+    private void didChange(Map<String, Object> params)
+    {
+        long start = System.nanoTime();
+        Map<String, Object> item = (Map<String, Object>) params.get("textDocument");
+        OpenDocument document = documents.get((String) item.get("uri"));
+        if (document == null) {
+            return;
+        }
+        int reparsed = 0;
+        for (Object change : (List<Object>) params.get("contentChanges")) {
+            Map<String, Object> edit = (Map<String, Object>) change;
+            Map<String, Object> range = (Map<String, Object>) edit.get("range");
+            if (range == null) {
+                document.text.setText((String) edit.get("text"));
+            } else {
+                Map<String, Object> from = (Map<String, Object>) range.get("start");
+                Map<String, Object> to = (Map<String, Object>) range.get("end");
+                document.text.replace(number(from.get("line")), number(from.get("character")),
+                                      number(to.get("line")), number(to.get("character")),
+                                      (String) edit.get("text"));
+            }
+            reparsed += document.text.getReparsedCount();
+        }
+        document.version = number(item.get("version"));
+        logTiming("change v" + document.version, start, reparsed);
+        scheduleAnalysis(document);
+    }
+
+    private void didClose(Map<String, Object> item)
+    {
+        String uri = (String) item.get("uri");
+        OpenDocument document = documents.remove(uri);
+        if (document != null) {
+            document.version = -1;      // cancels pending analysis
+            sendNotification("textDocument/publishDiagnostics",
+                             map("uri", uri, "diagnostics", new ArrayList<>()));
+        }
+    }
+
+    // Example: cursor on "area" in "x = area(2)" → the "area" of "def area(side):"
+    private Object definition(Map<String, Object> params)
+    {
+        OpenDocument document = documents.get((String) ((Map<String, Object>) params.get("textDocument")).get("uri"));
+        Map<String, Object> position = (Map<String, Object>) params.get("position");
+        if (document == null) {
+            return null;
+        }
+        Token token = document.text.tokenAt(number(position.get("line")), number(position.get("character")));
+        if (!(token instanceof TIdentifier)) {
+            return null;
+        }
+        String name = token.getText();
+        Hashtable<String, DeclarationVisitor.FunctionInfo> functions =
+            (Hashtable<String, DeclarationVisitor.FunctionInfo>) document.symtable.get("functions");
+        DeclarationVisitor.FunctionInfo info = functions != null ? functions.get(name) : null;
+        if (info == null || !info.isDeclared) {
+            return null;
+        }
+        int line = info.line - 1;
+        int column = document.text.findIdentifier(line, name);
+        if (column < 0) {
+            return null;    // the declaration moved since the last analysis
+        }
+        return map("uri", document.uri,
+                   "range", range(line, column, line, column + name.length()));
+    }
+
+    // ========== ANALYSIS ==========
+
+    // Snapshots the parse on this thread (copied, so later edits cannot renumber it);
+    // the semantic passes run on the analysis thread
+    private void scheduleAnalysis(OpenDocument document)
+    {
+        int version = document.version;
+        List<PCommands> commands = document.text.getCommands();
+        List<Object> diagnostics = new ArrayList<>();
+        for (Map.Entry<Integer, String> error : document.text.getLexErrors().entrySet()) {
+            diagnostics.add(diagnostic(error.getKey(), 0, "Lexer", error.getValue()));
+        }
+        for (RecoveringParser.SyntaxError error : document.text.getSyntaxErrors()) {
+            diagnostics.add(diagnostic(error.line - 1, error.pos - 1, "Syntax", error.message));
+        }
+        analyzer.execute(() -> analyze(document, version, commands, diagnostics));
+    }
+
+    private void analyze(OpenDocument document, int version, List<PCommands> commands, List<Object> diagnostics)
+    {
+        if (version != document.version) {
+            return;     // a newer edit is queued behind us
+        }
+        long start = System.nanoTime();
+        try {
+            ((AProgramme) document.ast.getPProgramme()).setCommands(commands);
+
+            Hashtable<String, Object> symtable = new Hashtable<>();
+            symtable.put("imports", bindImports(document, diagnostics));
+
+            DeclarationVisitor declarationVisitor = new DeclarationVisitor(symtable);
+            declarationVisitor.setOut(DISCARD);
+            document.ast.apply(declarationVisitor);
+
+            VariableDeclarationVisitor variableVisitor = new VariableDeclarationVisitor(symtable);
+            variableVisitor.setOut(DISCARD);
+            document.ast.apply(variableVisitor);
+
+            TypeCheckerVisitor typeChecker = new TypeCheckerVisitor(symtable, null);
+            typeChecker.setOut(DISCARD);
+            document.ast.apply(typeChecker);
+
+            List<Diagnostic> found = (List<Diagnostic>) symtable.get("diagnostics");
+            if (found != null) {
+                for (Diagnostic d : found) {
+                    diagnostics.add(diagnostic(d.line - 1, 0, d.rule, d.message));
+                }
+            }
+            if (version == document.version) {
+                document.symtable = symtable;   // definitions answer for the current text only
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error during analysis of " + document.uri + ": " + e);
+        }
+        logTiming("analysis v" + version, start, 0);
+        if (version == document.version) {
+            sendNotification("textDocument/publishDiagnostics",
+                             map("uri", document.uri, "version", version, "diagnostics", diagnostics));
+        }
+    }
+
+    // Binds every import alias to the module's cached interface (see ModuleSummary).
+    // Modules without an up-to-date summary are bound unresolved, so calls into them are not checked.
+    private Hashtable<String, ModuleInterface> bindImports(OpenDocument document, List<Object> diagnostics)
+    {
+        Hashtable<String, ModuleInterface> imports = new Hashtable<>();
+        List<Path> directories = new ArrayList<>();
+        if (document.path != null && document.path.getParent() != null) {
+            directories.add(document.path.getParent());
+        }
+        ModuleResolver resolver = new ModuleResolver(directories);
+        for (ModuleResolver.ImportRef ref : ModuleResolver.collectImports(document.ast)) {
+            Path target = resolver.resolve(ref.modulePath);
+            if (target == null) {
+                diagnostics.add(diagnostic(ref.line - 1, 0, "Imports",
+                                           "Module '" + ref.modulePath + "' not found on search path"));
+                imports.put(ref.alias, ModuleInterface.unresolved(ref.modulePath));
+            } else {
+                imports.put(ref.alias, moduleInterface(ref.modulePath, target));
+            }
+        }
+        return imports;
+    }
+
+    private ModuleInterface moduleInterface(String name, Path source)
+    {
+        try {
+            long modified = Files.getLastModifiedTime(source).toMillis();
+            Object[] cached = moduleCache.get(source);
+            if (cached != null && (Long) cached[0] == modified) {
+                return (ModuleInterface) cached[1];
+            }
+            ModuleSummary summary = ModuleSummary.read(ModuleSummary.pathFor(source), name);
+            ModuleInterface exports = summary != null && summary.sourceDigest == ModuleSummary.sourceDigest(source)
+                ? summary.exports : ModuleInterface.unresolved(name);
+            moduleCache.put(source, new Object[] { modified, exports });
+            return exports;
+        } catch (IOException e) {
+            return ModuleInterface.unresolved(name);
+        }
+    }
+
+    // ========== PROTOCOL ==========
+
+    // Reads one "Content-Length: N\r\n\r\n<json>" message, or null at end of input
+    private Map<String, Object> readMessage() throws IOException
+    {
+        int length = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null) {
+                return null;
+            }
+            if (header.isEmpty()) {
+                break;
+            }
+            if (header.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+        return (Map<String, Object>) Json.parse(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private String readHeaderLine() throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = sb.length();
+                return end > 0 && sb.charAt(end - 1) == '\r' ? sb.substring(0, end - 1) : sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return null;
+    }
+
+    private synchronized void send(Map<String, Object> message)
+    {
+        try {
+            byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+            out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write to client: " + e.getMessage());
+        }
+    }
+
+    private void sendResult(Object id, Object result)
+    {
+        Map<String, Object> message = map("jsonrpc", "2.0", "id", id);
+        message.put("result", result);
+        send(message);
+    }
+
+    private void sendError(Object id, int code, String text)
+    {
+        send(map("jsonrpc", "2.0", "id", id, "error", map("code", code, "message", text)));
+    }
+
+    private void sendNotification(String method, Object params)
+    {
+        send(map("jsonrpc", "2.0", "method", method, "params", params));
+    }
+
+    // ========== HELPERS ==========
+
+    // Example: map("line", 3, "character", 0) → {"line":3,"character":0}
+    private static Map<String, Object> map(Object... keysAndValues)
+    {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static Map<String, Object> range(int startLine, int startChar, int endLine, int endChar)
+    {
+        return map("start", map("line", startLine, "character", startChar),
+                   "end", map("line", endLine, "character", endChar));
+    }
+
+    // Marks from the column to the end of the line
+    private static Map<String, Object> diagnostic(int line, int column, String code, String message)
+    {
+        line = Math.max(line, 0);
+        return map("range", range(line, Math.max(column, 0), line + 1, 0),
+                   "severity", 1,
+                   "source", "minipython",
+                   "code", code,
+                   "message", message);
+    }
+
+    private static int number(Object value)
+    {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private void logTiming(String what, long startNanos, int reparsed)
+    {
+        if (timing) {
+            System.err.printf("[timing] %s: %.2f ms%s%n", what, (System.nanoTime() - startNanos) / 1e6,
+                              reparsed > 0 ? ", " + reparsed + " command(s) reparsed" : "");
+        }
+    }
+}
@@ -0,0 +1,434 @@
+import java.util.*;
+
+/*
+ * A MiniPython list. Its storage adapts to what it holds, so numeric lists
+ * are not boxed element by element:
+ *
+ *   LONGS    long[]     every element is an int
+ *   DOUBLES  double[]   every element is a decimal
+ *   OBJECTS  Object[]   anything else: strings, None, lists, or ints mixed
+ *                       with decimals (Python keeps 1 and 1.0 apart, so an
+ *                       int never goes into a double slot)
+ *
+ * An empty list takes the storage of its first element; storing an element
+ * that does not fit moves the list to OBJECTS for good. Growth is amortized
+ * by half the capacity each time.
+ *
+ * Indexes follow Python: -1 is the last element, and anything outside
+ * [-size, size) raises an IndexError.
+ *
+ * Example: [1, 2, 3] is LONGS; after "a[0] = 'x'" it is OBJECTS ['x', 2, 3]
+ */
+public final class ListValue implements Iterable<Object>, Comparable<ListValue>
+{
+    public static final int LONGS = 0;
+    public static final int DOUBLES = 1;
+    public static final int OBJECTS = 2;
+
+    private static final long[] NO_LONGS = new long[0];
+
+    private int kind = LONGS;
+    private long[] longs = NO_LONGS;
+    private double[] doubles;
+    private Object[] objects;
+    private int size;
+
+    public ListValue()
+    {
+    }
+
+    public ListValue(int capacity)
+    {
+        longs = new long[capacity];
+    }
+
+    // Example: ListValue.of(4L, "val") → [4, 'val']
+    public static ListValue of(Object... values)
+    {
+        ListValue list = new ListValue(values.length);
+        for (Object value : values) {
+            list.append(value);
+        }
+        return list;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getKind()
+    {
+        return kind;
+    }
+
+    // ========== ELEMENTS ==========
+
+    public Object get(long index)
+    {
+        int i = checkIndex(index);
+        switch (kind) {
+            case LONGS:
+                return longs[i];
+            case DOUBLES:
+                return doubles[i];
+            default:
+                return objects[i];
+        }
+    }
+
+    // get() for an index already known to be in 0..size-1 (see LoopInvariants)
+    Object getInRange(int i)
+    {
+        switch (kind) {
+            case LONGS:
+                return longs[i];
+            case DOUBLES:
+                return doubles[i];
+            default:
+                return objects[i];
+        }
+    }
+
+    // For loops over a list known to be LONGS. Example: the sum of an int list
+    //     if (list.getKind() == ListValue.LONGS) for (...) total += list.getLong(i);
+    public long getLong(int index)
+    {
+        return longs[checkIndex(index)];
+    }
+
+    public double getDouble(int index)
+    {
+        return doubles[checkIndex(index)];
+    }
+
+    // "a[index] = value"
+    public void set(long index, Object value)
+    {
+        int i = checkIndex(index);
+        switch (storageFor(value)) {
+            case LONGS:
+                longs[i] = (Long) value;
+                break;
+            case DOUBLES:
+                doubles[i] = (Double) value;
+                break;
+            default:
+                objects[i] = value;
+                break;
+        }
+    }
+
+    public void append(Object value)
+    {
+        if (size == capacity()) {
+            grow(size + 1);
+        }
+        switch (storageFor(value)) {
+            case LONGS:
+                longs[size++] = (Long) value;
+                break;
+            case DOUBLES:
+                doubles[size++] = (Double) value;
+                break;
+            default:
+                objects[size++] = value;
+                break;
+        }
+    }
+
+    // "a += b": appends every element of b, which may be a or a string
+    public void extend(Object iterable)
+    {
+        if (iterable instanceof ListValue) {
+            appendAll((ListValue) iterable);
+            return;
+        }
+        for (Iterator<Object> it = Values.iterator(iterable); it.hasNext(); ) {
+            append(it.next());
+        }
+    }
+
+    // "a + b": a new list
+    public ListValue concat(ListValue other)
+    {
+        ListValue result = new ListValue(size + other.size);
+        result.appendAll(this);
+        result.appendAll(other);
+        return result;
+    }
+
+    // "a * count": a new list, empty when count <= 0
+    public ListValue repeat(long count)
+    {
+        if (count <= 0 || size == 0) {
+            return new ListValue();
+        }
+        if (count > (Integer.MAX_VALUE - 8) / size) {
+            throw new MiniPythonError("MemoryError", "cannot fit " + count + " copies of " + size + " elements in a list");
+        }
+        ListValue result = new ListValue((int) (count * size));
+        for (long i = 0; i < count; i++) {
+            result.appendAll(this);
+        }
+        return result;
+    }
+
+    private void appendAll(ListValue other)
+    {
+        if (other.size == 0) {
+            return;
+        }
+        if (size == 0 || kind == other.kind) {
+            if (size == 0) {
+                int capacity = Math.max(capacity(), other.size);
+                kind = other.kind;
+                allocate(capacity);
+            }
+            if (capacity() < size + other.size) {
+                grow(size + other.size);
+            }
+            System.arraycopy(other.storage(), 0, storage(), size, other.size);
+            size += other.size;
+            return;
+        }
+        for (int i = 0; i < other.size; i++) {
+            append(other.get(i));
+        }
+    }
+
+    // Converts a Python index to an array index
+    private int checkIndex(long index)
+    {
+        long i = index < 0 ? index + size : index;
+        if (i < 0 || i >= size) {
+            throw new MiniPythonError("IndexError", "list index out of range");
+        }
+        return (int) i;
+    }
+
+    // ========== STORAGE ==========
+
+    // Makes room for value and returns the storage it goes into
+    private int storageFor(Object value)
+    {
+        int wanted = value instanceof Long ? LONGS : value instanceof Double ? DOUBLES : OBJECTS;
+        if (wanted == kind) {
+            return kind;
+        }
+        if (size == 0) {
+            int capacity = capacity();
+            kind = wanted;
+            allocate(capacity);
+            return kind;
+        }
+        if (kind != OBJECTS) {
+            Object[] boxed = new Object[capacity()];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = kind == LONGS ? (Object) longs[i] : (Object) doubles[i];
+            }
+            longs = null;
+            doubles = null;
+            objects = boxed;
+            kind = OBJECTS;
+        }
+        return OBJECTS;
+    }
+
+    private int capacity()
+    {
+        return kind == LONGS ? longs.length : kind == DOUBLES ? doubles.length : objects.length;
+    }
+
+    private Object storage()
+    {
+        return kind == LONGS ? longs : kind == DOUBLES ? doubles : objects;
+    }
+
+    // Fresh, empty storage of the current kind
+    private void allocate(int capacity)
+    {
+        longs = kind == LONGS ? new long[capacity] : null;
+        doubles = kind == DOUBLES ? new double[capacity] : null;
+        objects = kind == OBJECTS ? new Object[capacity] : null;
+    }
+
+    private void grow(int minimum)
+    {
+        int capacity = capacity();
+        int grown = (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) minimum, capacity + (capacity >> 1) + 4L));
+        if (grown < minimum) {
+            throw new MiniPythonError("MemoryError", "cannot fit " + minimum + " elements in a list");
+        }
+        switch (kind) {
+            case LONGS:
+                longs = Arrays.copyOf(longs, grown);
+                break;
+            case DOUBLES:
+                doubles = Arrays.copyOf(doubles, grown);
+                break;
+            default:
+                objects = Arrays.copyOf(objects, grown);
+                break;
+        }
+    }
+
+    // ========== BUILTINS ==========
+
+    // "max(a)". Raises a ValueError on an empty list.
+    public Object max()
+    {
+        return extreme(1);
+    }
+
+    // "min(a)". Raises a ValueError on an empty list.
+    public Object min()
+    {
+        return extreme(-1);
+    }
+
+    // The first element that no other element beats in the given direction,
+    // as Python returns it
+    private Object extreme(int direction)
+    {
+        if (size == 0) {
+            throw new MiniPythonError("ValueError", (direction > 0 ? "max" : "min") + "() arg is an empty sequence");
+        }
+        switch (kind) {
+            case LONGS: {
+                long best = longs[0];
+                for (int i = 1; i < size; i++) {
+                    long x = longs[i];
+                    if (direction > 0 ? x > best : x < best) {
+                        best = x;
+                    }
+                }
+                return best;
+            }
+            case DOUBLES: {
+                double best = doubles[0];
+                for (int i = 1; i < size; i++) {
+                    double x = doubles[i];
+                    if (direction > 0 ? x > best : x < best) {
+                        best = x;
+                    }
+                }
+                return best;
+            }
+            default: {
+                Object best = objects[0];
+                for (int i = 1; i < size; i++) {
+                    if (Values.compare(objects[i], best) * direction > 0) {
+                        best = objects[i];
+                    }
+                }
+                return best;
+            }
+        }
+    }
+
+    // Reads the list as it is at each step, so "for x in a" sees elements
+    // stored by the loop body, and stops at the current size as Python does
+    @Override
+    public Iterator<Object> iterator()
+    {
+        return new Iterator<Object>() {
+            private int next;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            @Override
+            public Object next()
+            {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                int i = next++;
+                return kind == LONGS ? (Object) longs[i] : kind == DOUBLES ? (Object) doubles[i] : objects[i];
+            }
+        };
+    }
+
+    // ========== COMPARISON AND PRINTING ==========
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ListValue) || ((ListValue) other).size != size) {
+            return false;
+        }
+        ListValue that = (ListValue) other;
+        if (kind == LONGS && that.kind == LONGS) {
+            return Arrays.equals(longs, 0, size, that.longs, 0, size);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!Values.equal(get(i), that.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 1;
+        for (Object value : this) {
+            hash = 31 * hash + (value instanceof Double && (Double) value == Math.rint((Double) value)
+                                ? Long.hashCode(((Double) value).longValue()) : Objects.hashCode(value));
+        }
+        return hash;
+    }
+
+    // Element by element, then the shorter list first
+    @Override
+    public int compareTo(ListValue other)
+    {
+        int i = mismatch(other);
+        return i >= 0 ? Values.compare(get(i), other.get(i)) : Integer.compare(size, other.size);
+    }
+
+    // The first index where the two lists hold unequal elements, or -1 when
+    // one is a prefix of the other. Example: [1, 2, 3] and [1, 5] → 1
+    public int mismatch(ListValue other)
+    {
+        int common = Math.min(size, other.size);
+        for (int i = 0; i < common; i++) {
+            if (!Values.equal(get(i), other.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Example: [4, 'val', None, 2.5]
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            switch (kind) {
+                case LONGS:
+                    sb.append(longs[i]);
+                    break;
+                case DOUBLES:
+                    sb.append(Values.repr(doubles[i]));
+                    break;
+                default:
+                    sb.append(objects[i] == this ? "[...]" : Values.repr(objects[i]));
+                    break;
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,309 @@
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Decides whether the iterations of a "for x in xs" loop can run at the
+ * same time, each on its own copy of the frame (see ParallelLoop).
+ *
+ * They can when nothing one iteration does is seen by another, as each
+ * variable the body touches shows:
+ *
+ *   private     assigned by the body ("=", a nested for, or x itself) and
+ *               never read before that in the same iteration, so no value
+ *               flows from one iteration to the next. Each chunk of
+ *               iterations has its own; after the loop, the values of the
+ *               last iteration that assigned them are kept.
+ *   reduction   only updated, with "+=", "-=" (together) or "*=", and read
+ *               nowhere else. Each iteration's operands are kept and applied
+ *               after the loop, in the loop's order.
+ *   target      only stored into, "a[i] = v". The stores are kept and made
+ *               after the loop, in the loop's order.
+ *   shared      read but neither assigned nor stored into.
+ *
+ * The body may not print, return, import, define functions, open files or
+ * make calls through a dot, and it may only call functions Purity finds
+ * read-only: they can neither see the loop's variables nor change a list.
+ * Whether a target or reduction list can be reached from a shared value,
+ * through which the body would see it change, depends on the values and is
+ * checked by ParallelLoop each time the loop starts.
+ *
+ *     for i in indices:                 i: private (the loop variable)
+ *         y = f(data[i])                y: private; data: shared; f: read-only
+ *         out[i] = y * y                out: target
+ *         total += y                    total: reduction
+ *
+ * A private read before it is assigned ("x = x + 1") is found by liveness
+ * over the body: the names read at the start of an iteration, where the
+ * back edge to the loop's header ends it.
+ */
+public final class LoopDependence
+{
+    public final LoopNest.Loop loop;
+    public final ControlFlowGraph.Block header;
+    public final Set<String> privates = new LinkedHashSet<>();
+    public final Set<String> reductions = new LinkedHashSet<>();
+    public final Set<String> targets = new LinkedHashSet<>();
+    public final Set<String> shared = new LinkedHashSet<>();
+
+    private final ControlFlowGraph cfg;
+    private final Purity purity;
+
+    // How each name is used in the body. Example: "total += y" → total: "+", y: read
+    private final Map<String, Set<Character>> updates = new HashMap<>();
+    private final Set<String> read = new HashSet<>();
+    private final Set<String> called = new HashSet<>();
+    private final Set<String> extended = new HashSet<>();      // "+=" that may extend a list
+
+    private LoopDependence(ControlFlowGraph cfg, Purity purity, LoopNest.Loop loop)
+    {
+        this.cfg = cfg;
+        this.purity = purity;
+        this.loop = loop;
+        this.header = loop.header;
+    }
+
+    // The names of a for loop, or null when its iterations depend on each
+    // other or on what the body cannot be shown not to do
+    public static LoopDependence analyze(ControlFlowGraph cfg, Purity purity, LoopNest.Loop loop)
+    {
+        LoopDependence dependence = new LoopDependence(cfg, purity, loop);
+        return dependence.collect() && dependence.classify() && dependence.independent() ? dependence : null;
+    }
+
+    // How a reduction's updates combine: '*' for "*=", else '+'
+    public char fold(String reduction)
+    {
+        return updates.get(reduction).contains('*') ? '*' : '+';
+    }
+
+    // ========== BODY ==========
+
+    // Every block of the body, which may neither return nor define a function
+    private boolean collect()
+    {
+        if (loop.returns) {
+            return false;
+        }
+        for (ControlFlowGraph.Block block : loop.body) {
+            if (block.kind != ControlFlowGraph.Kind.STATEMENT && block.kind != ControlFlowGraph.Kind.BIND
+                || !statement(block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Records what one block assigns and reads; false if it may not be in the body
+    private boolean statement(ControlFlowGraph.Block block)
+    {
+        Node node = block.node;
+        if (block.kind == ControlFlowGraph.Kind.BIND) {
+            privates.add(block.defines);
+            return true;
+        }
+        if (node instanceof APrintStatementStatement || node instanceof AReturnStatementStatement
+            || node instanceof AImportStatementStatement) {
+            return false;
+        } else if (node instanceof AAssignStatementStatement) {
+            privates.add(((AAssignStatementStatement) node).getId().getText().trim());
+        } else if (node instanceof APluseqStatementStatement) {
+            update(((APluseqStatementStatement) node).getId(), '+');
+            if (Purity.extendsList((APluseqStatementStatement) node)) {
+                extended.add(((APluseqStatementStatement) node).getId().getText().trim());
+            }
+        } else if (node instanceof AMineqStatementStatement) {
+            update(((AMineqStatementStatement) node).getId(), '-');
+        } else if (node instanceof AMulteqStatementStatement) {
+            update(((AMulteqStatementStatement) node).getId(), '*');
+        } else if (node instanceof ADiveqStatementStatement) {
+            update(((ADiveqStatementStatement) node).getId(), '/');
+        } else if (node instanceof AArrayStatementStatement) {
+            targets.add(((AArrayStatementStatement) node).getId().getText().trim());
+        } else if (node instanceof AForStatementStatement) {
+            read.add(((AForStatementStatement) node).getIter().getText().trim());
+        }
+        return expressions(block);
+    }
+
+    private void update(TIdentifier id, char op)
+    {
+        updates.computeIfAbsent(id.getText().trim(), name -> new HashSet<>()).add(op);
+    }
+
+    // The names the block's expressions read and call. The node of an if,
+    // while or for also holds its body's statements, which are blocks of
+    // their own and are skipped here.
+    private boolean expressions(ControlFlowGraph.Block block)
+    {
+        boolean[] allowed = {true};
+        new IterativeDepthFirstAdapter() {
+            public void inAIdentifierValuenode(AIdentifierValuenode node) {
+                if (cfg.blockOf(node) == block) {
+                    read.add(node.getName().getText().trim());
+                }
+            }
+
+            public void inAPinakasExpressionValue(APinakasExpressionValue node) {
+                if (cfg.blockOf(node) == block) {
+                    read.add(node.getId().getText().trim());
+                }
+            }
+
+            public void inANoArgsFunctionCall(ANoArgsFunctionCall node) {
+                call(node, node.getName());
+            }
+
+            public void inAWithArgsFunctionCall(AWithArgsFunctionCall node) {
+                call(node, node.getName());
+            }
+
+            public void inAIdDotFuncValuenode(AIdDotFuncValuenode node) {
+                if (cfg.blockOf(node) == block) {
+                    allowed[0] = false;
+                }
+            }
+
+            public void inAOpenExpressionValue(AOpenExpressionValue node) {
+                if (cfg.blockOf(node) == block) {
+                    allowed[0] = false;
+                }
+            }
+
+            private void call(Node node, TIdentifier name) {
+                if (cfg.blockOf(node) == block) {
+                    String callee = name.getText().trim();
+                    ControlFlowGraph.Scope function = purity.function(block.scope, callee);
+                    if (function == null || !purity.isReadOnly(function)) {
+                        allowed[0] = false;
+                    }
+                    called.add(callee);
+                }
+            }
+        }.traverse(block.node);
+        return allowed[0];
+    }
+
+    // ========== VARIABLES ==========
+
+    // Sorts the names the body updates into reductions and privates, and
+    // checks that reductions and targets are used in no other way
+    private boolean classify()
+    {
+        for (Map.Entry<String, Set<Character>> entry : updates.entrySet()) {
+            String name = entry.getKey();
+            Set<Character> ops = entry.getValue();
+            boolean additive = ops.stream().allMatch(op -> op == '+' || op == '-');
+            boolean multiplicative = ops.size() == 1 && ops.contains('*');
+            if ((additive || multiplicative) && !privates.contains(name) && !read.contains(name)) {
+                reductions.add(name);
+            } else {
+                privates.add(name);
+            }
+        }
+        for (String name : extended) {
+            if (privates.contains(name)) {
+                return false;               // it may hold a list from outside the iteration
+            }
+        }
+        for (String target : targets) {
+            if (privates.contains(target) || reductions.contains(target) || read.contains(target)) {
+                return false;
+            }
+        }
+        for (String callee : called) {
+            if (privates.contains(callee) || reductions.contains(callee) || targets.contains(callee)) {
+                return false;
+            }
+        }
+        for (String name : read) {
+            if (!privates.contains(name)) {
+                shared.add(name);
+            }
+        }
+        return true;
+    }
+
+    // No private is read at the start of an iteration before it is assigned
+    private boolean independent()
+    {
+        Map<ControlFlowGraph.Block, Set<String>> live = new HashMap<>();
+        for (ControlFlowGraph.Block block : loop.body) {
+            live.put(block, new HashSet<>());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ControlFlowGraph.Block block : loop.body) {
+                Set<String> in = new HashSet<>();
+                for (ControlFlowGraph.Block next : block.successors) {
+                    if (next != header) {
+                        in.addAll(live.get(next));
+                    }
+                }
+                in.remove(assigned(block));
+                in.addAll(uses(block));
+                if (!in.equals(live.get(block))) {
+                    live.put(block, in);
+                    changed = true;
+                }
+            }
+        }
+        Set<String> exposed = live.get(header.successors.get(0));
+        exposed.retainAll(privates);
+        return exposed.isEmpty();
+    }
+
+    // The private a block assigns, if any
+    private String assigned(ControlFlowGraph.Block block)
+    {
+        if (block.kind == ControlFlowGraph.Kind.BIND) {
+            return block.defines;
+        }
+        Node node = block.node;
+        String name = null;
+        if (node instanceof AAssignStatementStatement) {
+            name = ((AAssignStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof APluseqStatementStatement) {
+            name = ((APluseqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMineqStatementStatement) {
+            name = ((AMineqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMulteqStatementStatement) {
+            name = ((AMulteqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof ADiveqStatementStatement) {
+            name = ((ADiveqStatementStatement) node).getId().getText().trim();
+        }
+        return name != null && privates.contains(name) ? name : null;
+    }
+
+    // The privates a block reads, before it assigns any. An update such as
+    // "x += 1" reads x.
+    private Set<String> uses(ControlFlowGraph.Block block)
+    {
+        Set<String> uses = new HashSet<>();
+        if (block.kind == ControlFlowGraph.Kind.BIND) {
+            return uses;
+        }
+        new IterativeDepthFirstAdapter() {
+            public void inAIdentifierValuenode(AIdentifierValuenode node) {
+                if (cfg.blockOf(node) == block) {
+                    uses.add(node.getName().getText().trim());
+                }
+            }
+
+            public void inAPinakasExpressionValue(APinakasExpressionValue node) {
+                if (cfg.blockOf(node) == block) {
+                    uses.add(node.getId().getText().trim());
+                }
+            }
+        }.traverse(block.node);
+        if (block.node instanceof AForStatementStatement) {
+            uses.add(((AForStatementStatement) block.node).getIter().getText().trim());
+        }
+        String updated = assigned(block);
+        if (updated != null && !(block.node instanceof AAssignStatementStatement)) {
+            uses.add(updated);
+        }
+        uses.retainAll(privates);
+        return uses;
+    }
+}
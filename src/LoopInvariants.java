@@ -0,0 +1,303 @@
+import java.util.*;
+import java.util.function.Predicate;
+import minipython.node.*;
+
+/*
+ * What stays the same while a loop runs, for the Interpreter's loop
+ * optimizations:
+ *
+ *   invariant names   the names no block of the loop assigns. An expression
+ *                     of them, such as "x ** 2" or "n - 1", has the same
+ *                     value in every iteration; a def cannot assign a name
+ *                     of the scope around it, so no call changes them.
+ *   lengths           whether every list keeps its length while the loop
+ *                     runs: only "+=" grows a list in place, so it must
+ *                     not appear in the loop with a value that may be a
+ *                     list or string, unless the name it updates holds a
+ *                     number or a string all along (a literal on the way
+ *                     in, then only literals, "+=" and "-="), nor in a
+ *                     function the loop calls (Purity's read-only
+ *                     functions), and the loop makes no call through a
+ *                     dot and imports nothing. "len(a)" of an invariant a
+ *                     is then invariant too.
+ *   counted indices   "a[i]" in a loop "while i < len(a)", where the
+ *                     loop only ever adds a positive literal to i, after
+ *                     the access in an iteration, and i starts at a
+ *                     literal: from the test to the access i is in range.
+ *
+ *     i = 0
+ *     while i < len(a):         len(a): invariant if the loop keeps lengths
+ *         b[i] = a[i] * k ** 2  a[i]: counted; k ** 2: invariant
+ *         i += 1
+ */
+public final class LoopInvariants
+{
+    public final LoopNest.Loop loop;
+
+    private final ControlFlowGraph cfg;
+    private final Set<String> assigned = new HashSet<>();
+    private final Set<String> extended = new HashSet<>();      // "+=" that may extend a list
+    private boolean imports;
+    private boolean keepsLengths = true;
+
+    private LoopInvariants(ControlFlowGraph cfg, LoopNest.Loop loop)
+    {
+        this.cfg = cfg;
+        this.loop = loop;
+    }
+
+    public static LoopInvariants analyze(ControlFlowGraph cfg, Purity purity, LoopNest.Loop loop)
+    {
+        LoopInvariants invariants = new LoopInvariants(cfg, loop);
+        for (ControlFlowGraph.Block block : loop.body) {
+            invariants.assignments(block);
+        }
+        for (String name : invariants.extended) {
+            if (!invariants.scalar(name)) {
+                invariants.keepsLengths = false;
+            }
+        }
+        invariants.calls(purity, loop.header);
+        for (ControlFlowGraph.Block block : loop.body) {
+            invariants.calls(purity, block);
+        }
+        return invariants;
+    }
+
+    // Whether the loop never assigns name
+    public boolean isInvariant(String name)
+    {
+        return !imports && !assigned.contains(name);
+    }
+
+    public boolean keepsLengths()
+    {
+        return keepsLengths;
+    }
+
+    // ========== BODY ==========
+
+    private void assignments(ControlFlowGraph.Block block)
+    {
+        String name = assignedName(block);
+        if (name != null) {
+            assigned.add(name);
+        }
+        if (block.node instanceof APluseqStatementStatement && Purity.extendsList((APluseqStatementStatement) block.node)) {
+            extended.add(name);
+        } else if (block.node instanceof AImportStatementStatement) {
+            imports = true;             // binds its aliases
+            keepsLengths = false;       // and runs the module's code
+        }
+    }
+
+    // Whether name holds a number or a string all through the loop: "+="
+    // and "-=" on one give another or raise a TypeError
+    private boolean scalar(String name)
+    {
+        for (ControlFlowGraph.Block b : loop.body) {
+            if (name.equals(assignedName(b)) && !literalAssignment(b.node) && !additive(b.node)) {
+                return false;
+            }
+        }
+        return entersWith(name, LoopInvariants::literalAssignment, LoopInvariants::additive);
+    }
+
+    // A call the loop makes may extend a list, unless it reaches a read-only function
+    private void calls(Purity purity, ControlFlowGraph.Block block)
+    {
+        if (block.node == null || block.kind == ControlFlowGraph.Kind.DEF) {
+            return;
+        }
+        new IterativeDepthFirstAdapter() {
+            public void inANoArgsFunctionCall(ANoArgsFunctionCall node) {
+                call(node, node.getName());
+            }
+
+            public void inAWithArgsFunctionCall(AWithArgsFunctionCall node) {
+                call(node, node.getName());
+            }
+
+            public void inAIdDotFuncValuenode(AIdDotFuncValuenode node) {
+                if (cfg.blockOf(node) == block) {
+                    keepsLengths = false;
+                }
+            }
+
+            private void call(Node node, TIdentifier name) {
+                if (cfg.blockOf(node) == block) {
+                    ControlFlowGraph.Scope function = purity.function(block.scope, name.getText().trim());
+                    if (function == null || !purity.isReadOnly(function)) {
+                        keepsLengths = false;
+                    }
+                }
+            }
+        }.traverse(block.node);
+    }
+
+    // ========== COUNTED INDICES ==========
+
+    // Whether "list[counter]" in block is in range by this loop's test:
+    // see the class comment
+    public boolean inBounds(String list, String counter, ControlFlowGraph.Block block)
+    {
+        if (!loop.isWhile() || !loop.body.contains(block) || !keepsLengths || !isInvariant(list)
+            || !tests(((AWhileStatementStatement) loop.header.node).getCond(), list, counter)) {
+            return false;
+        }
+        List<ControlFlowGraph.Block> increments = new ArrayList<>();
+        for (ControlFlowGraph.Block b : loop.body) {
+            String name = assignedName(b);
+            if (counter.equals(name)) {
+                if (!increment(b.node)) {
+                    return false;
+                }
+                increments.add(b);
+            }
+        }
+        return !reaches(increments, block) && entersWith(counter, LoopInvariants::intAssignment, LoopInvariants::increment);
+    }
+
+    // Whether cond is "counter < len(list)" or "len(list) > counter", or an
+    // "and" with one of them on either side
+    private static boolean tests(Node cond, String list, String counter)
+    {
+        if (cond instanceof ACompComparison) {
+            return tests(((ACompComparison) cond).getExpr(), list, counter);
+        } else if (cond instanceof AAftorAfteror) {
+            return tests(((AAftorAfteror) cond).getExpr(), list, counter);
+        } else if (cond instanceof AAftorandAfteror) {
+            return tests(((AAftorandAfteror) cond).getLeft(), list, counter)
+                   || tests(((AAftorandAfteror) cond).getRight(), list, counter);
+        } else if (cond instanceof AAftandAfterand) {
+            return tests(((AAftandAfterand) cond).getExpr(), list, counter);
+        } else if (cond instanceof ALessAfternot) {
+            return isName(((ALessAfternot) cond).getLeft(), counter) && isLength(((ALessAfternot) cond).getRight(), list);
+        } else if (cond instanceof AGreaterAfternot) {
+            return isLength(((AGreaterAfternot) cond).getLeft(), list) && isName(((AGreaterAfternot) cond).getRight(), counter);
+        }
+        return false;
+    }
+
+    private static boolean isName(Node expression, String name)
+    {
+        Node node = Purity.operation(expression);
+        return node instanceof AIdentifierValuenode && ((AIdentifierValuenode) node).getName().getText().trim().equals(name);
+    }
+
+    private static boolean isLength(Node expression, String list)
+    {
+        Node node = Purity.operation(expression);
+        return node instanceof ALengthExpessionValue && isName(((ALengthExpessionValue) node).getExpr(), list);
+    }
+
+    // Example: "i += 1" → true; "i += k", "i -= 1" → false
+    private static boolean increment(Node node)
+    {
+        if (!(node instanceof APluseqStatementStatement)) {
+            return false;
+        }
+        Node value = Purity.operation(((APluseqStatementStatement) node).getExpr());
+        return value instanceof AIntegerLiteralValuenode && Ints.signum(Ints.parse(((AIntegerLiteralValuenode) value).getVal().getText().trim())) > 0;
+    }
+
+    // Whether block can run after one of from in the same iteration
+    private boolean reaches(List<ControlFlowGraph.Block> from, ControlFlowGraph.Block block)
+    {
+        Set<ControlFlowGraph.Block> seen = new HashSet<>();
+        Deque<ControlFlowGraph.Block> pending = new ArrayDeque<>();
+        for (ControlFlowGraph.Block b : from) {
+            pending.addAll(b.successors);
+        }
+        while (!pending.isEmpty()) {
+            ControlFlowGraph.Block b = pending.pop();
+            if (b == block) {
+                return true;
+            }
+            if (b != loop.header && loop.body.contains(b) && seen.add(b)) {
+                pending.addAll(b.successors);
+            }
+        }
+        return false;
+    }
+
+    // Whether every path into the loop last assigns name in a block that
+    // starts it, possibly followed by blocks that keep it so. Example:
+    // "i = 0" then "i += 1" start a counter that is never negative.
+    private boolean entersWith(String name, Predicate<Node> starts, Predicate<Node> keeps)
+    {
+        Set<ControlFlowGraph.Block> seen = new HashSet<>();
+        Deque<ControlFlowGraph.Block> pending = new ArrayDeque<>();
+        for (ControlFlowGraph.Block b : loop.header.predecessors) {
+            if (!loop.body.contains(b)) {
+                pending.push(b);
+            }
+        }
+        while (!pending.isEmpty()) {
+            ControlFlowGraph.Block b = pending.pop();
+            if (!seen.add(b)) {
+                continue;
+            }
+            if (b.kind == ControlFlowGraph.Kind.ENTRY || b.node instanceof AImportStatementStatement) {
+                return false;           // a parameter, not assigned yet, or perhaps an alias
+            }
+            if (name.equals(assignedName(b))) {
+                if (starts.test(b.node)) {
+                    continue;
+                }
+                if (!keeps.test(b.node)) {
+                    return false;
+                }
+            }
+            for (ControlFlowGraph.Block p : b.predecessors) {
+                pending.push(p);
+            }
+        }
+        return true;
+    }
+
+    // Example: "i = 0" → true; "i = n" → false
+    private static boolean intAssignment(Node node)
+    {
+        return node instanceof AAssignStatementStatement
+               && Purity.operation(((AAssignStatementStatement) node).getExpr()) instanceof AIntegerLiteralValuenode;
+    }
+
+    // Example: "s = 0", "s = 0.5", "s = ''" → true; "s = []" → false
+    private static boolean literalAssignment(Node node)
+    {
+        if (!(node instanceof AAssignStatementStatement)) {
+            return false;
+        }
+        Node value = Purity.operation(((AAssignStatementStatement) node).getExpr());
+        return value instanceof AIntegerLiteralValuenode || value instanceof ADecimalLiteralValuenode
+               || value instanceof ADoubleQuotesValuenode || value instanceof ASingleQuotesValuenode;
+    }
+
+    private static boolean additive(Node node)
+    {
+        return node instanceof APluseqStatementStatement || node instanceof AMineqStatementStatement;
+    }
+
+    // The name a block assigns, if any. Example: "i += 1" → i
+    private static String assignedName(ControlFlowGraph.Block block)
+    {
+        Node node = block.node;
+        if (block.kind == ControlFlowGraph.Kind.BIND) {
+            return block.defines;
+        } else if (block.kind == ControlFlowGraph.Kind.DEF) {
+            return ((ADefFuncFunction) node).getName().getText().trim();
+        } else if (node instanceof AAssignStatementStatement) {
+            return ((AAssignStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof APluseqStatementStatement) {
+            return ((APluseqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMineqStatementStatement) {
+            return ((AMineqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMulteqStatementStatement) {
+            return ((AMulteqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof ADiveqStatementStatement) {
+            return ((ADiveqStatementStatement) node).getId().getText().trim();
+        }
+        return null;
+    }
+}
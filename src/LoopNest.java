@@ -0,0 +1,131 @@
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * The loops of one scope of a ControlFlowGraph, and how they nest.
+ *
+ * Every while and for statement is a loop, with its header block (where
+ * the condition is tested, or the next element taken) and a body: the
+ * blocks reached from the header's first successor without going through
+ * the header again. With no break or continue in the language, the header
+ * is the only way in and, but for a return, the only way out; every edge
+ * back to it closes an iteration. A loop's body holds the bodies of the
+ * loops inside it.
+ *
+ *     i = 0                       loop 1: header "while i < n"
+ *     while i < n:                        body: j = 0, while j < i, i += 1
+ *         j = 0                   loop 2: header "while j < i", inside loop 1
+ *         while j < i:                    body: j += 1
+ *             j += 1
+ *         i += 1
+ */
+public final class LoopNest
+{
+    public static final class Loop {
+        public final ControlFlowGraph.Block header;
+        public final Set<ControlFlowGraph.Block> body = new LinkedHashSet<>();  // its first block first
+        public Loop parent;                     // the loop around it, null for an outermost loop
+        public final List<Loop> children = new ArrayList<>();
+        public boolean returns;                 // the body can return from the function
+
+        Loop(ControlFlowGraph.Block header) {
+            this.header = header;
+        }
+
+        // Whether block runs as part of an iteration: the header or the body
+        public boolean contains(ControlFlowGraph.Block block) {
+            return block == header || body.contains(block);
+        }
+
+        public boolean isWhile() {
+            return header.node instanceof AWhileStatementStatement;
+        }
+
+        // Loops around it too. Example: loop 2 above → 2 (loop 1 is at 1)
+        public int depth() {
+            int depth = 1;
+            for (Loop loop = parent; loop != null; loop = loop.parent) {
+                depth++;
+            }
+            return depth;
+        }
+    }
+
+    private final List<Loop> loops = new ArrayList<>();
+    private final Map<ControlFlowGraph.Block, Loop> headers = new HashMap<>();
+    private final Map<ControlFlowGraph.Block, Loop> innermost = new HashMap<>();
+
+    private LoopNest()
+    {
+    }
+
+    public static LoopNest of(ControlFlowGraph.Scope scope)
+    {
+        LoopNest nest = new LoopNest();
+        for (ControlFlowGraph.Block block : scope.blocks) {
+            if (block.kind == ControlFlowGraph.Kind.STATEMENT
+                && (block.node instanceof AWhileStatementStatement || block.node instanceof AForStatementStatement)) {
+                Loop loop = new Loop(block);
+                collect(loop);
+                nest.loops.add(loop);
+                nest.headers.put(block, loop);
+            }
+        }
+        // Outer loops have the larger bodies; the last to claim a block is its innermost loop
+        List<Loop> bySize = new ArrayList<>(nest.loops);
+        bySize.sort((a, b) -> b.body.size() - a.body.size());
+        for (Loop loop : bySize) {
+            Loop parent = nest.innermost.get(loop.header);
+            if (parent != null) {
+                loop.parent = parent;
+                parent.children.add(loop);
+            }
+            nest.innermost.put(loop.header, loop);
+            for (ControlFlowGraph.Block block : loop.body) {
+                nest.innermost.put(block, loop);
+            }
+        }
+        return nest;
+    }
+
+    private static void collect(Loop loop)
+    {
+        Deque<ControlFlowGraph.Block> pending = new ArrayDeque<>();
+        pending.push(loop.header.successors.get(0));
+        while (!pending.isEmpty()) {
+            ControlFlowGraph.Block block = pending.pop();
+            if (block == loop.header) {
+                continue;
+            }
+            if (block.kind == ControlFlowGraph.Kind.EXIT) {
+                loop.returns = true;
+                continue;
+            }
+            if (loop.body.add(block)) {
+                for (ControlFlowGraph.Block next : block.successors) {
+                    pending.push(next);
+                }
+            }
+        }
+    }
+
+    // ========== QUERIES ==========
+
+    // In the order of their headers, so outer loops come before inner ones
+    public List<Loop> getLoops()
+    {
+        return loops;
+    }
+
+    // The loop whose header is block, or null
+    public Loop loopAt(ControlFlowGraph.Block header)
+    {
+        return headers.get(header);
+    }
+
+    // The innermost loop block runs in, or null outside every loop
+    public Loop innermost(ControlFlowGraph.Block block)
+    {
+        return innermost.get(block);
+    }
+}
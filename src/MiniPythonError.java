@@ -0,0 +1,42 @@
+/*
+ * An error raised while a MiniPython program runs, named after the Python
+ * exception it stands for.
+ *
+ * Example: new MiniPythonError("IndexError", "list index out of range")
+ *          prints as "IndexError: list index out of range"
+ */
+public class MiniPythonError extends RuntimeException
+{
+    private final String kind;
+    private int line;                   // of the innermost statement it passed through, 0 before that
+
+    public MiniPythonError(String kind, String message)
+    {
+        super(message);
+        this.kind = kind;
+    }
+
+    public String getKind()
+    {
+        return kind;
+    }
+
+    public int getLine()
+    {
+        return line;
+    }
+
+    // Keeps the first line set: the statement that raised it
+    public void setLine(int line)
+    {
+        if (this.line == 0) {
+            this.line = line;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind + ": " + getMessage();
+    }
+}
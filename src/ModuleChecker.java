@@ -0,0 +1,107 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Whole-program semantic check: resolves imports, builds the module
+ * dependency graph and analyzes the modules in dependency order, with
+ * independent modules running in parallel.
+ *
+ * Imported modules that check cleanly get an interface summary in
+ * __mpcache__/ (see ModuleSummary); later runs reuse it instead of
+ * rechecking the module. -nocache turns this off.
+ *
+ * With --watch <dir> every .py file below dir is checked, and re-checked
+ * incrementally whenever files change (see ModuleWatcher).
+ *
+ * Usage: java ModuleChecker [-path dir1:dir2] [-threads N] [-nocache] <main.py> [more.py ...]
+ *        java ModuleChecker [-path dir1:dir2] [-threads N] [-nocache] --watch <dir>
+ * Example: java -cp build ModuleChecker tests/modules/main.py
+ */
+public class ModuleChecker {
+    public static void main(String[] args) {
+        List<Path> files = new ArrayList<>();
+        List<Path> searchDirs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean useCache = true;
+        Path watchDir = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-path") && i + 1 < args.length) {
+                for (String dir : args[++i].split(File.pathSeparator)) {
+                    searchDirs.add(Paths.get(dir));
+                }
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-nocache")) {
+                useCache = false;
+            } else if (args[i].equals("--watch") && i + 1 < args.length) {
+                watchDir = Paths.get(args[++i]);
+            } else {
+                files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty() && watchDir == null) {
+            System.out.println("Usage: java ModuleChecker [-path dir1:dir2] [-threads N] [-nocache] <main.py> [more.py ...]");
+            System.out.println("       java ModuleChecker [-path dir1:dir2] [-threads N] [-nocache] --watch <dir>");
+            return;
+        }
+
+        // The directories of the entry files are searched first
+        List<Path> directories = new ArrayList<>();
+        for (Path file : files) {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                directories.add(parent);
+            }
+        }
+        if (watchDir != null) {
+            directories.add(watchDir);
+        }
+        directories.addAll(searchDirs);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        if (watchDir != null) {
+            try {
+                ModuleGraph graph = new ModuleGraph(new ModuleResolver(directories));
+                graph.setUseSummaries(useCache);
+                new ModuleWatcher(watchDir, graph, new ModuleScheduler(pool, useCache), pool).run();
+            } catch (IOException e) {
+                System.err.println("Error watching " + watchDir + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        }
+
+        try {
+            ModuleGraph graph = new ModuleGraph(new ModuleResolver(directories));
+            graph.setUseSummaries(useCache);
+            graph.load(files, pool);
+            List<ModuleGraph.Module> order = graph.topologicalOrder();
+            new ModuleScheduler(pool, useCache).analyzeAll(order);
+
+            System.out.println("=== MINIPYTHON WHOLE-PROGRAM ANALYSIS ===");
+            System.out.println("Modules: " + order.size() + ", threads: " + threads);
+            for (ModuleGraph.Module module : order) {
+                System.out.println("\n" + "=".repeat(50));
+                System.out.println("Module: " + module.name + " (" + module.path + ")");
+                System.out.println("=".repeat(50));
+                if (module.upToDate) {
+                    System.out.println("Up to date, interface read from " + ModuleSummary.pathFor(module.path));
+                }
+                System.out.print(module.output.toString());
+            }
+            System.out.println("\n" + "=".repeat(50));
+            System.out.println("ANALYSIS COMPLETE");
+            System.out.println("=".repeat(50));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+
+/*
+ * The import graph of a MiniPython program.
+ *
+ * Starting from the entry files, every import is resolved with a
+ * ModuleResolver and the imported file is parsed, until no new modules
+ * turn up. Each round of newly discovered files is parsed in parallel.
+ *
+ * Edges point from a module to the modules it imports. Imports that would
+ * close a cycle are dropped (and reported), so the graph is always a DAG
+ * and topologicalOrder() lists every module after all of its imports.
+ *
+ * Imported modules whose cached ModuleSummary still matches their source
+ * are not parsed here; their imports are taken from the summary instead.
+ *
+ * In watch mode the graph stays in memory and reload() updates it for the
+ * files that changed on disk.
+ */
+public class ModuleGraph
+{
+    // One source file of the program
+    public static class Module {
+        public String name;                 // "geometry.shapes", or the file name for entry files
+        public Path path;
+        public boolean entry;               // checked for itself, not only because something imports it
+        public List<String> sourceLines;
+        public Start ast;                   // null if the file could not be parsed (or was not parsed yet)
+        public long sourceDigest;
+        public List<ModuleResolver.ImportRef> imports = new ArrayList<>();
+
+        // Resolved imports. Example: "sh" → Module(geometry.shapes)
+        // Unresolved or cyclic imports are not in this map.
+        public Map<ModuleResolver.ImportRef, Module> dependencies = new LinkedHashMap<>();
+
+        // Syntax errors of the last parse, and those plus the import errors of the last link
+        public List<String> syntaxErrors = new ArrayList<>();
+        public List<String> errors = new ArrayList<>();
+
+        // What each import resolved to at the last link (null if not found)
+        List<Path> linkedTo;
+
+        // Cached summary built from the current source, if there is one
+        public ModuleSummary summary;
+
+        // Filled in by ModuleScheduler
+        public volatile ModuleInterface exports;
+        public volatile long interfaceHash = ModuleSummary.UNRESOLVED;
+        public volatile boolean upToDate;   // exports were taken from the summary
+        public volatile boolean analyzed;   // checked again by the last ModuleScheduler run
+        public volatile List<Long> analyzedWith; // interface hashes of the imports when last checked
+        public final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Module(String name, Path path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        // Forgets the parse before the file is parsed again. The exports stay
+        // until the module is checked again, so importers never see a gap.
+        void reset() {
+            ast = null;
+            sourceLines = null;
+            imports = new ArrayList<>();
+            syntaxErrors = new ArrayList<>();
+            summary = null;
+            upToDate = false;
+        }
+    }
+
+    private final ModuleResolver resolver;
+    private final Map<Path, Module> modules = new LinkedHashMap<>();
+    private boolean useSummaries = true;
+    private Path root;                      // entry files below it are named by their relative path
+
+    public ModuleGraph(ModuleResolver resolver)
+    {
+        this.resolver = resolver;
+    }
+
+    public void setUseSummaries(boolean useSummaries)
+    {
+        this.useSummaries = useSummaries;
+    }
+
+    public void setRoot(Path root)
+    {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public Collection<Module> getModules()
+    {
+        return modules.values();
+    }
+
+    // ========== DISCOVERY ==========
+
+    // Parses the entry files and everything they import (transitively)
+    public void load(List<Path> entryFiles, ExecutorService pool) throws InterruptedException
+    {
+        List<Module> frontier = new ArrayList<>();
+        for (Path file : entryFiles) {
+            Path path = file.toAbsolutePath().normalize();
+            if (!modules.containsKey(path)) {
+                Module module = new Module(entryName(path), path);
+                module.entry = true;
+                modules.put(path, module);
+                frontier.add(module);
+            }
+        }
+        discover(frontier, pool);
+        dropBrokenImports();
+    }
+
+    // Parses a round of files in parallel and links them; the files they import
+    // that were not seen before form the next round. Returns every module parsed.
+    private List<Module> discover(List<Module> frontier, ExecutorService pool) throws InterruptedException
+    {
+        List<Module> parsed = new ArrayList<>();
+        while (!frontier.isEmpty()) {
+            parseAll(frontier, pool);
+            parsed.addAll(frontier);
+            List<Module> next = new ArrayList<>();
+            for (Module module : frontier) {
+                next.addAll(link(module));
+            }
+            frontier = next;
+        }
+        return parsed;
+    }
+
+    // Entry files are always parsed, since they are what is being checked
+    private void parseAll(List<Module> round, ExecutorService pool) throws InterruptedException
+    {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Module module : round) {
+            tasks.add(() -> {
+                if (module.entry || !useSummaries || !loadSummary(module)) {
+                    parse(module);
+                }
+                return null;
+            });
+        }
+        pool.invokeAll(tasks);
+    }
+
+    // Resolves the imports of a module. Returns the modules it imports that were not known yet.
+    private List<Module> link(Module module)
+    {
+        List<Module> discovered = new ArrayList<>();
+        List<Path> targets = new ArrayList<>();
+        module.dependencies.clear();
+        module.errors = new ArrayList<>(module.syntaxErrors);
+        for (ModuleResolver.ImportRef ref : module.imports) {
+            Path target = resolver.resolve(ref.modulePath);
+            targets.add(target);
+            if (target == null) {
+                module.errors.add("Line " + ref.line + " [Imports]: Module '" + ref.modulePath +
+                                  "' not found on search path " + resolver.getSearchPath());
+                continue;
+            }
+            Module dependency = modules.get(target);
+            if (dependency == null) {
+                dependency = new Module(ref.modulePath, target);
+                modules.put(target, dependency);
+                discovered.add(dependency);
+            }
+            module.dependencies.put(ref, dependency);
+        }
+        module.linkedTo = targets;
+        return discovered;
+    }
+
+    // Importers of a module that failed to parse only get an unresolved interface
+    private void dropBrokenImports()
+    {
+        for (Module module : modules.values()) {
+            Iterator<Map.Entry<ModuleResolver.ImportRef, Module>> it = module.dependencies.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ModuleResolver.ImportRef, Module> entry = it.next();
+                if (entry.getValue().ast == null && entry.getValue().summary == null) {
+                    module.errors.add("Line " + entry.getKey().line + " [Imports]: Module '" +
+                                      entry.getKey().modulePath + "' has syntax errors");
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    // Example: with root /src, /src/geometry/shapes.py → "geometry.shapes"; otherwise "shapes"
+    private String entryName(Path path)
+    {
+        Path name = root != null && path.startsWith(root) ? root.relativize(path) : path.getFileName();
+        return name.toString().replace(File.separatorChar, '.').replaceFirst("\\.py$", "");
+    }
+
+    // ========== RELOADING ==========
+
+    // Brings the graph up to date after files changed on disk (watch mode).
+    // Returns the modules whose source or resolved imports changed; all other
+    // modules keep their parse, and ModuleScheduler can keep their results.
+    public Set<Module> reload(Collection<Path> changedFiles, ExecutorService pool) throws InterruptedException
+    {
+        Set<Module> changed = new LinkedHashSet<>();
+        List<Module> reparse = new ArrayList<>();
+        for (Path file : changedFiles) {
+            Path path = file.toAbsolutePath().normalize();
+            Module module = modules.get(path);
+            if (!Files.isRegularFile(path)) {
+                modules.remove(path);       // deleted; its importers are relinked below
+                continue;
+            }
+            if (module == null) {
+                module = new Module(entryName(path), path);
+                module.entry = true;
+                modules.put(path, module);
+            } else {
+                module.reset();
+            }
+            reparse.add(module);
+            changed.add(module);
+        }
+        parseAll(reparse, pool);
+
+        // A new or deleted file can change what any import resolves to
+        List<Module> discovered = new ArrayList<>();
+        for (Module module : new ArrayList<>(modules.values())) {
+            List<Path> before = module.linkedTo;
+            discovered.addAll(link(module));
+            if (!module.linkedTo.equals(before)) {
+                changed.add(module);
+            }
+        }
+        changed.addAll(discover(discovered, pool));
+        dropBrokenImports();
+        return changed;
+    }
+
+    // Uses the cached summary if it was built from the current source
+    private static boolean loadSummary(Module module)
+    {
+        try {
+            ModuleSummary summary = ModuleSummary.read(ModuleSummary.pathFor(module.path), module.name);
+            module.sourceDigest = ModuleSummary.sourceDigest(module.path);
+            if (summary == null || summary.sourceDigest != module.sourceDigest) {
+                return false;
+            }
+            module.summary = summary;
+            module.imports = summary.imports;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Also used by ModuleScheduler when a summary turns out to be stale
+    static void parse(Module module)
+    {
+        try {
+            module.sourceDigest = ModuleSummary.sourceDigest(module.path);
+            module.sourceLines = Files.readAllLines(module.path);
+            RecoveringParser parser = new RecoveringParser(new Lexer(new PushbackReader(
+                new FileReader(module.path.toFile()), 1024)));
+            module.ast = parser.parse();
+            for (RecoveringParser.SyntaxError error : parser.getErrors()) {
+                module.syntaxErrors.add(error.toString());
+            }
+            // A summary was built from this same source, so its imports (which
+            // the dependencies are keyed by) are already the right ones
+            if (module.summary == null) {
+                module.imports = ModuleResolver.collectImports(module.ast);
+            }
+        } catch (Exception e) {
+            module.syntaxErrors.add("Syntax error: " + e.getMessage());
+        }
+    }
+
+    // ========== ORDERING ==========
+
+    // Kahn's algorithm. Any module left over sits on or behind a cycle: the
+    // imports that close a cycle are dropped and reported, then we retry.
+    public List<Module> topologicalOrder()
+    {
+        while (true) {
+            Map<Module, Integer> pending = new HashMap<>();
+            Map<Module, List<Module>> importers = new HashMap<>();
+            for (Module module : modules.values()) {
+                pending.put(module, new HashSet<>(module.dependencies.values()).size());
+                for (Module dependency : new HashSet<>(module.dependencies.values())) {
+                    importers.computeIfAbsent(dependency, k -> new ArrayList<>()).add(module);
+                }
+            }
+
+            List<Module> order = new ArrayList<>();
+            Deque<Module> ready = new ArrayDeque<>();
+            for (Module module : modules.values()) {
+                if (pending.get(module) == 0) {
+                    ready.add(module);
+                }
+            }
+            while (!ready.isEmpty()) {
+                Module module = ready.poll();
+                order.add(module);
+                for (Module importer : importers.getOrDefault(module, Collections.emptyList())) {
+                    if (pending.merge(importer, -1, Integer::sum) == 0) {
+                        ready.add(importer);
+                    }
+                }
+            }
+
+            if (order.size() == modules.size()) {
+                return order;
+            }
+            breakCycles(pending);
+        }
+    }
+
+    // Drops every import edge m → d where d can reach m again
+    private void breakCycles(Map<Module, Integer> pending)
+    {
+        for (Module module : modules.values()) {
+            if (pending.get(module) == 0) {
+                continue;
+            }
+            Iterator<Map.Entry<ModuleResolver.ImportRef, Module>> it = module.dependencies.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ModuleResolver.ImportRef, Module> entry = it.next();
+                if (reaches(entry.getValue(), module)) {
+                    module.errors.add("Line " + entry.getKey().line + " [Imports]: Circular import of module '" +
+                                      entry.getKey().modulePath + "'");
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static boolean reaches(Module from, Module target)
+    {
+        Set<Module> seen = new HashSet<>();
+        Deque<Module> work = new ArrayDeque<>();
+        work.push(from);
+        while (!work.isEmpty()) {
+            Module module = work.pop();
+            if (module == target) {
+                return true;
+            }
+            if (seen.add(module)) {
+                work.addAll(module.dependencies.values());
+            }
+        }
+        return false;
+    }
+}
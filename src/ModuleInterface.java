@@ -0,0 +1,63 @@
+import java.util.*;
+
+/*
+ * What one MiniPython module exports to the modules that import it:
+ * its function signatures (DeclarationVisitor.FunctionInfo) and the
+ * return types inferred by TypeCheckerVisitor.
+ *
+ * Importers see it through the symbol table:
+ *   symtable "imports" → Hashtable<alias, ModuleInterface>
+ *
+ * Once published an interface is only read, so it can be shared between
+ * modules that are analyzed on different threads.
+ */
+public class ModuleInterface
+{
+    private final String name;
+    private final boolean resolved;
+    private final Hashtable<String, DeclarationVisitor.FunctionInfo> functions;
+    private final Hashtable<String, String> returnTypes;
+
+    public ModuleInterface(String name, Hashtable<String, DeclarationVisitor.FunctionInfo> functions,
+                           Hashtable<String, String> returnTypes)
+    {
+        this(name, true, functions, returnTypes);
+    }
+
+    private ModuleInterface(String name, boolean resolved,
+                            Hashtable<String, DeclarationVisitor.FunctionInfo> functions,
+                            Hashtable<String, String> returnTypes)
+    {
+        this.name = name;
+        this.resolved = resolved;
+        this.functions = functions;
+        this.returnTypes = returnTypes;
+    }
+
+    // Placeholder for an import that could not be resolved (missing file, cycle, syntax error).
+    // Calls through it are not checked, since the import itself was already reported.
+    public static ModuleInterface unresolved(String name)
+    {
+        return new ModuleInterface(name, false, new Hashtable<>(), new Hashtable<>());
+    }
+
+    // Builds the interface of a module from the symbol table its passes filled in
+    // Example: symtable "functions" = {area, perimeter}, "returnTypes" = {area → int}
+    public static ModuleInterface fromSymtable(String name, Hashtable<String, Object> symtable)
+    {
+        Hashtable<String, DeclarationVisitor.FunctionInfo> functions =
+            (Hashtable<String, DeclarationVisitor.FunctionInfo>) symtable.get("functions");
+        Hashtable<String, String> returnTypes = (Hashtable<String, String>) symtable.get("returnTypes");
+        return new ModuleInterface(name,
+            functions != null ? functions : new Hashtable<>(),
+            returnTypes != null ? returnTypes : new Hashtable<>());
+    }
+
+    public String getName() { return name; }
+
+    public boolean isResolved() { return resolved; }
+
+    public Hashtable<String, DeclarationVisitor.FunctionInfo> getFunctions() { return functions; }
+
+    public Hashtable<String, String> getReturnTypes() { return returnTypes; }
+}
@@ -0,0 +1,112 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Maps import statements to MiniPython source files.
+ *
+ * A module path "a.b.c" is looked up as a/b/c.py in each directory of the
+ * search path, in order. The search path is the directory of the file
+ * being checked, then the -path directories, then MINIPYTHONPATH.
+ *
+ * Example:
+ *   import geometry.shapes as sh   →  <dir>/geometry/shapes.py, bound to "sh"
+ *   import mathlib                 →  <dir>/mathlib.py, bound to "mathlib"
+ *   import math.div                →  <dir>/math/div.py, bound to "div"
+ */
+public class ModuleResolver
+{
+    // One "import x.y [as z]" item
+    public static class ImportRef {
+        public String modulePath; // "geometry.shapes"
+        public String alias;      // "sh", or the last path component when there is no "as"
+        public int line;
+
+        ImportRef(String modulePath, String alias, int line) {
+            this.modulePath = modulePath;
+            this.alias = alias;
+            this.line = line;
+        }
+    }
+
+    private final List<Path> searchPath = new ArrayList<>();
+
+    public ModuleResolver(List<Path> directories)
+    {
+        for (Path dir : directories) {
+            addDirectory(dir);
+        }
+        String env = System.getenv("MINIPYTHONPATH");
+        if (env != null) {
+            for (String dir : env.split(File.pathSeparator)) {
+                if (!dir.isEmpty()) {
+                    addDirectory(Paths.get(dir));
+                }
+            }
+        }
+    }
+
+    public void addDirectory(Path dir)
+    {
+        Path normalized = dir.toAbsolutePath().normalize();
+        if (!searchPath.contains(normalized)) {
+            searchPath.add(normalized);
+        }
+    }
+
+    public List<Path> getSearchPath()
+    {
+        return searchPath;
+    }
+
+    // Returns the file for a dotted module path, or null if no directory has it
+    public Path resolve(String modulePath)
+    {
+        String relative = modulePath.replace('.', File.separatorChar) + ".py";
+        for (Path dir : searchPath) {
+            Path candidate = dir.resolve(relative);
+            if (Files.isRegularFile(candidate)) {
+                return candidate.toAbsolutePath().normalize();
+            }
+        }
+        return null;
+    }
+
+    // ========== COLLECTING IMPORTS ==========
+
+    // Lists every import item in a parsed module, in source order
+    public static List<ImportRef> collectImports(Start ast)
+    {
+        final List<ImportRef> imports = new ArrayList<>();
+        ast.apply(new IterativeDepthFirstAdapter() {
+            public void inASimpleImportImportSpec(ASimpleImportImportSpec node) {
+                APathModulePath path = (APathModulePath) node.getPath();
+                List<String> parts = pathParts(path);
+                imports.add(new ImportRef(String.join(".", parts), parts.get(parts.size() - 1),
+                                          path.getFirst().getLine()));
+            }
+
+            public void inAImportAsImportSpec(AImportAsImportSpec node) {
+                APathModulePath path = (APathModulePath) node.getPath();
+                imports.add(new ImportRef(String.join(".", pathParts(path)),
+                                          node.getAlias().getText().trim(), path.getFirst().getLine()));
+            }
+        });
+        return imports;
+    }
+
+    // Example: "math.div" → ["math", "div"]
+    private static List<String> pathParts(APathModulePath path)
+    {
+        List<String> parts = new ArrayList<>();
+        parts.add(path.getFirst().getText().trim());
+        PModulePathTail tail = path.getRest();
+        while (tail instanceof AContinueModulePathTail) {
+            AContinueModulePathTail cont = (AContinueModulePathTail) tail;
+            parts.add(cont.getNext().getText().trim());
+            tail = cont.getMore();
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Runs the semantic passes over every module of a ModuleGraph.
+ *
+ * Each module becomes a task that starts as soon as all modules it imports
+ * are finished, so independent modules are analyzed concurrently and every
+ * module sees the exported signatures (ModuleInterface) of its imports.
+ *
+ * Example: main imports a and b, and a and b import util
+ *   util  →  a, b (in parallel)  →  main
+ *
+ * A module with a cached ModuleSummary is not rechecked while the interfaces
+ * of its imports still hash to what the summary recorded. Modules that check
+ * without diagnostics get their summary (re)written.
+ *
+ * The same rule keeps results in memory between runs in watch mode: only
+ * changed modules, and modules whose imports' interfaces changed, are
+ * checked again.
+ */
+public class ModuleScheduler
+{
+    private final ExecutorService pool;
+    private final boolean writeSummaries;
+
+    public ModuleScheduler(ExecutorService pool, boolean writeSummaries)
+    {
+        this.pool = pool;
+        this.writeSummaries = writeSummaries;
+    }
+
+    // Analyzes all modules; order must list each module after its imports
+    public void analyzeAll(List<ModuleGraph.Module> order)
+    {
+        analyzeAll(order, null);
+    }
+
+    // Analyzes the changed modules (all if changed is null). Any other module
+    // keeps its previous results unless the interface of one of its imports changed.
+    public void analyzeAll(List<ModuleGraph.Module> order, Set<ModuleGraph.Module> changed)
+    {
+        Map<ModuleGraph.Module, CompletableFuture<Void>> done = new HashMap<>();
+        for (ModuleGraph.Module module : order) {
+            List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+            for (ModuleGraph.Module dependency : module.dependencies.values()) {
+                dependencies.add(done.get(dependency));
+            }
+            CompletableFuture<Void> task = CompletableFuture
+                .allOf(dependencies.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> {
+                    module.analyzed = changed == null || changed.contains(module) ||
+                                      !dependencyHashes(module).equals(module.analyzedWith);
+                    if (module.analyzed) {
+                        module.output.reset();
+                        analyze(module);
+                    }
+                }, pool);
+            done.put(module, task);
+        }
+        CompletableFuture.allOf(done.values().toArray(new CompletableFuture[0])).join();
+    }
+
+    // Runs the three passes on one module, with its imports bound in the symbol table.
+    // Output goes to the module's own buffer so parallel modules do not interleave.
+    private void analyze(ModuleGraph.Module module)
+    {
+        PrintStream out = new PrintStream(module.output, true);
+        module.analyzedWith = dependencyHashes(module);
+        try {
+            if (module.summary != null) {
+                if (importsUnchanged(module)) {
+                    module.exports = module.summary.exports;
+                    module.interfaceHash = module.summary.interfaceHash;
+                    module.upToDate = true;
+                    return;
+                }
+                ModuleGraph.parse(module);
+                module.errors.addAll(module.syntaxErrors);
+            }
+            for (String error : module.errors) {
+                out.println(error);
+            }
+            if (module.ast == null) {
+                module.exports = ModuleInterface.unresolved(module.name);
+                return;
+            }
+
+            Hashtable<String, ModuleInterface> imports = new Hashtable<>();
+            for (ModuleResolver.ImportRef ref : module.imports) {
+                ModuleGraph.Module dependency = module.dependencies.get(ref);
+                imports.put(ref.alias, dependency != null && dependency.exports != null
+                    ? dependency.exports : ModuleInterface.unresolved(ref.modulePath));
+            }
+
+            Hashtable<String, Object> symtable = new Hashtable<>();
+            symtable.put("imports", imports);
+
+            DeclarationVisitor declarationVisitor = new DeclarationVisitor(symtable);
+            declarationVisitor.setOut(out);
+            module.ast.apply(declarationVisitor);
+
+            VariableDeclarationVisitor variableVisitor = new VariableDeclarationVisitor(symtable);
+            variableVisitor.setOut(out);
+            module.ast.apply(variableVisitor);
+
+            TypeCheckerVisitor typeChecker = new TypeCheckerVisitor(symtable, module.sourceLines);
+            typeChecker.setOut(out);
+            module.ast.apply(typeChecker);
+
+            module.exports = ModuleInterface.fromSymtable(module.name, symtable);
+            module.interfaceHash = ModuleSummary.interfaceHash(module.exports);
+
+            // Modules with diagnostics are not cached, so the diagnostics show up every run
+            if (writeSummaries && module.errors.isEmpty() && module.output.size() == 0) {
+                ModuleSummary.write(ModuleSummary.pathFor(module.path), module.sourceDigest,
+                                    module.imports, dependencyHashes(module), module.exports);
+            }
+        } catch (IOException e) {
+            out.println("Could not write module summary: " + e.getMessage());
+        } catch (RuntimeException e) {
+            out.println("Error during analysis: " + e);
+            module.exports = ModuleInterface.unresolved(module.name);
+        }
+    }
+
+    // Current interface hash of each import, in import order
+    private static List<Long> dependencyHashes(ModuleGraph.Module module)
+    {
+        List<Long> hashes = new ArrayList<>();
+        for (ModuleResolver.ImportRef ref : module.imports) {
+            ModuleGraph.Module dependency = module.dependencies.get(ref);
+            hashes.add(dependency != null ? dependency.interfaceHash : ModuleSummary.UNRESOLVED);
+        }
+        return hashes;
+    }
+
+    // Example: shapes.mpi recorded mathlib's hash as 0x3f..; if mathlib's
+    // signatures changed since, shapes has to be checked again
+    private static boolean importsUnchanged(ModuleGraph.Module module)
+    {
+        return dependencyHashes(module).equals(module.summary.dependencyHashes);
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/*
+ * Binary interface summary of one module, cached next to its source as
+ * __mpcache__/<name>.mpi. It lets importers learn a module's exported
+ * signatures without reparsing or rechecking it.
+ *
+ * A summary records:
+ *   - a digest of the source it was built from
+ *   - for every import, the interface hash of the imported module at the time
+ *   - the exported functions: name, paramCount, requiredParams,
+ *     paramHasDefault and the inferred return type
+ *
+ * It is reused while the source digest and all recorded import hashes still
+ * match. Dependents only look at the interface hash, so editing a function
+ * body without changing any signature does not invalidate them.
+ *
+ * File layout (DataOutputStream, big endian):
+ *   int MAGIC, short VERSION, long sourceDigest, long interfaceHash
+ *   int imports   { UTF modulePath, UTF alias, int line, long dependencyHash }
+ *   int functions { UTF name, int paramCount, int requiredParams,
+ *                   paramCount × boolean hasDefault, UTF returnType }
+ */
+public class ModuleSummary
+{
+    private static final int MAGIC = 0x4D504931; // "MPI1"
+    private static final short VERSION = 1;
+
+    public static final String CACHE_DIR = "__mpcache__";
+
+    // Import hash recorded for an import that did not resolve to a module
+    public static final long UNRESOLVED = 0L;
+
+    public final long sourceDigest;
+    public final long interfaceHash;
+    public final List<ModuleResolver.ImportRef> imports;
+    public final List<Long> dependencyHashes; // parallel to imports
+    public final ModuleInterface exports;
+
+    private ModuleSummary(long sourceDigest, long interfaceHash, List<ModuleResolver.ImportRef> imports,
+                          List<Long> dependencyHashes, ModuleInterface exports)
+    {
+        this.sourceDigest = sourceDigest;
+        this.interfaceHash = interfaceHash;
+        this.imports = imports;
+        this.dependencyHashes = dependencyHashes;
+        this.exports = exports;
+    }
+
+    // Example: /src/geometry/shapes.py → /src/geometry/__mpcache__/shapes.mpi
+    public static Path pathFor(Path source)
+    {
+        String fileName = source.getFileName().toString().replaceFirst("\\.py$", "");
+        return source.resolveSibling(CACHE_DIR).resolve(fileName + ".mpi");
+    }
+
+    // ========== HASHING ==========
+
+    public static long digest(byte[] bytes)
+    {
+        try {
+            byte[] sha = MessageDigest.getInstance("SHA-256").digest(bytes);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (sha[i] & 0xFF);
+            }
+            // Keep UNRESOLVED free for imports that did not resolve
+            return value == UNRESOLVED ? 1 : value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static long sourceDigest(Path source) throws IOException
+    {
+        return digest(Files.readAllBytes(source));
+    }
+
+    // Hash of the exported signatures only. Functions are taken in name order,
+    // so the hash does not depend on declaration order or line numbers.
+    public static long interfaceHash(ModuleInterface exports)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeFunctions(new DataOutputStream(bytes), exports);
+            return digest(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ========== WRITING ==========
+
+    // Writes the summary of an analyzed module. The file is only replaced when
+    // its content changes, and is replaced atomically so that concurrent
+    // readers never see half a summary.
+    public static void write(Path file, long sourceDigest, List<ModuleResolver.ImportRef> imports,
+                             List<Long> dependencyHashes, ModuleInterface exports) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(sourceDigest);
+        out.writeLong(interfaceHash(exports));
+        out.writeInt(imports.size());
+        for (int i = 0; i < imports.size(); i++) {
+            ModuleResolver.ImportRef ref = imports.get(i);
+            out.writeUTF(ref.modulePath);
+            out.writeUTF(ref.alias);
+            out.writeInt(ref.line);
+            out.writeLong(dependencyHashes.get(i));
+        }
+        writeFunctions(out, exports);
+        out.flush();
+
+        byte[] content = bytes.toByteArray();
+        if (Files.isRegularFile(file) && Arrays.equals(Files.readAllBytes(file), content)) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFunctions(DataOutputStream out, ModuleInterface exports) throws IOException
+    {
+        List<String> names = new ArrayList<>(exports.getFunctions().keySet());
+        Collections.sort(names);
+        out.writeInt(names.size());
+        for (String name : names) {
+            DeclarationVisitor.FunctionInfo info = exports.getFunctions().get(name);
+            out.writeUTF(name);
+            out.writeInt(info.paramCount);
+            out.writeInt(info.requiredParams);
+            for (int i = 0; i < info.paramCount; i++) {
+                out.writeBoolean(info.paramHasDefault != null && i < info.paramHasDefault.size()
+                                 && info.paramHasDefault.get(i));
+            }
+            out.writeUTF(exports.getReturnTypes().getOrDefault(name, "unknown"));
+        }
+    }
+
+    // ========== READING ==========
+
+    // Reads a summary, or returns null if it is missing, unreadable or from
+    // another format version
+    public static ModuleSummary read(Path file, String moduleName)
+    {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return null;
+            }
+            long sourceDigest = in.readLong();
+            long interfaceHash = in.readLong();
+
+            int importCount = in.readInt();
+            List<ModuleResolver.ImportRef> imports = new ArrayList<>(importCount);
+            List<Long> dependencyHashes = new ArrayList<>(importCount);
+            for (int i = 0; i < importCount; i++) {
+                String modulePath = in.readUTF();
+                String alias = in.readUTF();
+                int line = in.readInt();
+                imports.add(new ModuleResolver.ImportRef(modulePath, alias, line));
+                dependencyHashes.add(in.readLong());
+            }
+
+            Hashtable<String, DeclarationVisitor.FunctionInfo> functions = new Hashtable<>();
+            Hashtable<String, String> returnTypes = new Hashtable<>();
+            int functionCount = in.readInt();
+            for (int i = 0; i < functionCount; i++) {
+                DeclarationVisitor.FunctionInfo info = new DeclarationVisitor.FunctionInfo();
+                info.name = in.readUTF();
+                info.paramCount = in.readInt();
+                info.requiredParams = in.readInt();
+                info.paramNames = new ArrayList<>();
+                info.paramHasDefault = new ArrayList<>();
+                for (int p = 0; p < info.paramCount; p++) {
+                    info.paramHasDefault.add(in.readBoolean());
+                }
+                info.isDeclared = true;
+                functions.put(info.name, info);
+                returnTypes.put(info.name, in.readUTF());
+            }
+
+            return new ModuleSummary(sourceDigest, interfaceHash, imports, dependencyHashes,
+                                     new ModuleInterface(moduleName, functions, returnTypes));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/*
+ * Watch mode of ModuleChecker: checks every .py file under a directory, then
+ * keeps the module graph and all results in memory and re-checks whenever
+ * files change.
+ *
+ * Saves usually come in bursts (editor temp files, several files saved at
+ * once), so changes are collected until no new event arrives for
+ * DEBOUNCE_MS. Then only the changed files are parsed again, and only the
+ * changed modules plus the importers whose imports' interfaces changed are
+ * analyzed again (see ModuleGraph.reload and ModuleScheduler).
+ *
+ * Example: editing a function body in mathlib.py re-checks mathlib only;
+ * changing its parameters also re-checks every module importing it.
+ */
+public class ModuleWatcher
+{
+    private static final long DEBOUNCE_MS = 200;
+
+    private final Path root;
+    private final ModuleGraph graph;
+    private final ModuleScheduler scheduler;
+    private final ExecutorService pool;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    public ModuleWatcher(Path root, ModuleGraph graph, ModuleScheduler scheduler, ExecutorService pool) throws IOException
+    {
+        this.root = root.toAbsolutePath().normalize();
+        this.graph = graph;
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.watcher = root.getFileSystem().newWatchService();
+        graph.setRoot(this.root);
+    }
+
+    // Runs until the thread is interrupted
+    public void run() throws IOException, InterruptedException
+    {
+        register(root);
+        List<Path> files = pythonFiles(root);
+        long start = System.nanoTime();
+        graph.load(files, pool);
+        check(null, files.size(), start);
+
+        while (true) {
+            Set<Path> changed = waitForChanges();
+            if (changed.isEmpty()) {
+                continue;
+            }
+            start = System.nanoTime();
+            check(graph.reload(changed, pool), changed.size(), start);
+        }
+    }
+
+    private void check(Set<ModuleGraph.Module> changed, int fileCount, long startNanos)
+    {
+        List<ModuleGraph.Module> order = graph.topologicalOrder();
+        scheduler.analyzeAll(order, changed);
+
+        int rechecked = 0;
+        int withErrors = 0;
+        for (ModuleGraph.Module module : order) {
+            if (module.analyzed) {
+                rechecked++;
+            }
+            if (module.output.size() > 0) {
+                withErrors++;
+            }
+        }
+        System.out.printf("%n[watch] %d file(s) %s, %d module(s) checked, %d reused, %.1f ms%n",
+                          fileCount, changed == null ? "found" : "changed", rechecked,
+                          order.size() - rechecked, (System.nanoTime() - startNanos) / 1e6);
+
+        // Only the modules checked this round; the others already printed their errors
+        for (ModuleGraph.Module module : order) {
+            if (module.analyzed && module.output.size() > 0) {
+                System.out.println("=".repeat(50));
+                System.out.println("Module: " + module.name + " (" + module.path + ")");
+                System.out.println("=".repeat(50));
+                System.out.print(module.output.toString());
+            }
+        }
+        System.out.println("[watch] " + (withErrors == 0 ? "No errors" : withErrors + " module(s) with errors") +
+                           ". Watching " + root + " ...");
+    }
+
+    // ========== FILE EVENTS ==========
+
+    // Blocks for the first event, then keeps collecting until the burst is over
+    private Set<Path> waitForChanges() throws IOException, InterruptedException
+    {
+        Set<Path> changed = new LinkedHashSet<>();
+        WatchKey key = watcher.take();
+        while (key != null) {
+            Path dir = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null) {
+                    // Events were lost: look at everything
+                    changed.addAll(pythonFiles(root));
+                    for (ModuleGraph.Module module : graph.getModules()) {
+                        changed.add(module.path);
+                    }
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    register(path);
+                    changed.addAll(pythonFiles(path));
+                } else if (path.getFileName().toString().endsWith(".py")) {
+                    changed.add(path);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+            key = watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    // Watches a directory and everything below it, except summary caches
+    private void register(Path dir) throws IOException
+    {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path sub : walk.filter(Files::isDirectory).collect(Collectors.toList())) {
+                if (!sub.getFileName().toString().equals(ModuleSummary.CACHE_DIR)) {
+                    directories.put(sub.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), sub);
+                }
+            }
+        }
+    }
+
+    private static List<Path> pythonFiles(Path dir) throws IOException
+    {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(p -> p.getFileName().toString().endsWith(".py") && Files.isRegularFile(p))
+                       .sorted()
+                       .collect(Collectors.toList());
+        }
+    }
+}
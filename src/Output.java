@@ -0,0 +1,138 @@
+import java.io.*;
+
+/*
+ * What "print" writes, kept in one byte buffer and written to the
+ * underlying stream only when the buffer passes its threshold, or on
+ * flush(): at the end of a run, and before an error is reported. A script
+ * printing a million lines makes a few dozen writes rather than a million,
+ * and nothing is encoded per line: MiniPython text is ASCII, so each
+ * character is stored as one byte (Latin-1, which also passes the bytes
+ * of a file read by open() through unchanged).
+ *
+ * Ints are written as digits straight into the buffer, without a String.
+ *
+ * Example:
+ *     Output output = new Output(System.out, Output.THRESHOLD);
+ *     output.print("x = ");
+ *     output.print(42L);
+ *     output.newline();           // still buffered
+ *     output.flush();             // "x = 42\n" reaches System.out
+ */
+public final class Output
+{
+    // Bytes buffered before they are written out
+    public static final int THRESHOLD = 1 << 16;
+
+    private final OutputStream sink;
+    private final int threshold;
+    private byte[] buffer;
+    private int count;
+
+    public Output(OutputStream sink, int threshold)
+    {
+        this.sink = sink;
+        this.threshold = threshold;
+        this.buffer = new byte[Math.max(threshold, 64) + 64];
+    }
+
+    // Bytes buffered; with truncate(), takes back a line that may not be printed
+    public int size()
+    {
+        return count;
+    }
+
+    public void truncate(int size)
+    {
+        count = size;
+    }
+
+    // Values.str(value), as "print value" shows it
+    public void print(Object value)
+    {
+        if (value instanceof Long) {
+            print((long) (Long) value);
+        } else if (value instanceof CharSequence) {
+            print((CharSequence) value);
+        } else {
+            print(Values.str(value));
+        }
+    }
+
+    public void print(CharSequence text)
+    {
+        String s = text.toString();
+        int length = s.length();
+        ensure(length);
+        byte[] b = buffer;
+        int n = count;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            b[n++] = c < 256 ? (byte) c : (byte) '?';
+        }
+        count = n;
+    }
+
+    public void print(long value)
+    {
+        if (value == Long.MIN_VALUE) {
+            print(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    public void print(char c)
+    {
+        ensure(1);
+        buffer[count++] = (byte) c;
+    }
+
+    // Ends a line, and writes the buffer out if it has passed the threshold
+    public void newline()
+    {
+        print('\n');
+        if (count >= threshold) {
+            flush();
+        }
+    }
+
+    public void flush()
+    {
+        if (count > 0) {
+            try {
+                sink.write(buffer, 0, count);
+                sink.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                count = 0;
+                if (buffer.length > 2 * (threshold + 64)) {
+                    buffer = new byte[Math.max(threshold, 64) + 64];
+                }
+            }
+        }
+    }
+
+    // A line longer than the buffer grows it; the next flush shrinks it back
+    private void ensure(int more)
+    {
+        if (count + more > buffer.length) {
+            long size = Math.max((long) buffer.length * 2, (long) count + more);
+            buffer = java.util.Arrays.copyOf(buffer, (int) Math.min(size, Integer.MAX_VALUE - 8));
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Runs the iterations of a for loop that LoopDependence found independent
+ * on the ForkJoin common pool, with the same result as running them in
+ * order.
+ *
+ * The list is cut into chunks of consecutive iterations, a few per thread
+ * of the pool, which are split in halves until each task holds one chunk.
+ * A chunk runs its iterations in order, in a copy of the loop's frame of
+ * its own and with an interpreter of its own for the call depth. Nothing
+ * it does is seen outside the chunk until the loop is over:
+ *   - privates are written to its copy of the frame
+ *   - stores into targets, and updates of reductions, are logged
+ *   - updates of an int that only ever get ints are folded instead, since
+ *     int sums and products are the same in any grouping
+ * Then, in the calling thread, each chunk's log is replayed in order, its
+ * folds applied, and the privates copied back from the last chunk that
+ * assigned them. An error stops its chunk and is raised at its place in
+ * the replay, after everything the loop did before it, as it would be in
+ * order; what later chunks did is never seen, since the run is over.
+ *
+ * A loop runs in order, as usual, when its list is shorter than the
+ * interpreter's threshold, under a budget or the profiler, inside another
+ * parallel loop, or when the values break an assumption of the analysis:
+ * a target that is not a list, a target or reduction list reachable from a
+ * value the body reads (it would see the stores), a file reachable from
+ * the list or a value the body reads (a nested "for line in f" would read
+ * it from every chunk at once), or a reduction not assigned yet. Since nothing a chunk does is seen before the replay, a
+ * chunk that runs out of stack, or an int fold that gets something else,
+ * runs the whole loop again in order.
+ *
+ * Example: "for i in indices: out[i] = f(i)" over 100000 indices with 4
+ * threads → 16 chunks of 6250 iterations; out is filled after they finish.
+ */
+public final class ParallelLoop
+{
+    // Elements a list needs before its loop runs in parallel
+    public static final int THRESHOLD = 4096;
+
+    // Chunks per thread of the pool, so a slow chunk leaves the others work
+    static final int CHUNKS_PER_THREAD = 4;
+    static final int MIN_CHUNK = 64;
+
+    private final int variable;                 // the loop variable's slot
+    private final int body;                     // the first step of an iteration
+    private final int header;                   // the step an iteration ends at
+    private final int[] privates;
+    private final int[] reductions;
+    private final char[] folds;                 // '+' for "+=" and "-=", '*' for "*="
+    private final Interpreter.Expr[] targets;
+    private final Interpreter.Expr[] shared;
+
+    ParallelLoop(int variable, int body, int header, int[] privates, int[] reductions,
+                 char[] folds, Interpreter.Expr[] targets, Interpreter.Expr[] shared)
+    {
+        this.variable = variable;
+        this.body = body;
+        this.header = header;
+        this.privates = privates;
+        this.reductions = reductions;
+        this.folds = folds;
+        this.targets = targets;
+        this.shared = shared;
+    }
+
+    // THRESHOLD with more than one thread in the common pool; with one,
+    // chunks would only run one after another, so -1, never
+    public static int defaultThreshold()
+    {
+        return ForkJoinPool.getCommonPoolParallelism() > 1 ? THRESHOLD : -1;
+    }
+
+    // ========== RUN ==========
+
+    // Runs the whole loop over iterable and returns true, or returns false
+    // having changed nothing, for the caller to run it in order
+    boolean run(Interpreter.Frame frame, Object iterable)
+    {
+        Interpreter interpreter = frame.interpreter;
+        if (!(iterable instanceof ListValue) || !interpreter.runsParallel(((ListValue) iterable).size())) {
+            return false;
+        }
+        ListValue list = (ListValue) iterable;
+        boolean[] sums = new boolean[reductions.length];
+        if (!admits(frame, list, sums)) {
+            interpreter.ranSequential();
+            return false;
+        }
+
+        int n = list.size();
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int size = Math.max(MIN_CHUNK, (n + parallelism * CHUNKS_PER_THREAD - 1) / (parallelism * CHUNKS_PER_THREAD));
+        Chunk[] chunks = new Chunk[(n + size - 1) / size];
+        for (int k = 0; k < chunks.length; k++) {
+            chunks[k] = new Chunk(frame, list, sums, k * size, Math.min(n, (k + 1) * size));
+        }
+        ForkJoinPool.commonPool().invoke(new Split(chunks, 0, chunks.length));
+        for (Chunk chunk : chunks) {
+            if (chunk.again) {
+                interpreter.ranSequential();
+                return false;
+            }
+        }
+
+        interpreter.ranParallel(n, chunks.length);     // counted even if the replay raises
+
+        for (Chunk chunk : chunks) {
+            for (Effect effect : chunk.effects) {
+                effect.apply(frame);
+            }
+            for (int r = 0; r < reductions.length; r++) {
+                if (chunk.sums[r] != null) {
+                    frame.slots[reductions[r]] = Values.arithmetic(folds[r], frame.slots[reductions[r]], chunk.sums[r]);
+                }
+            }
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+        }
+        for (int slot : privates) {
+            for (int k = chunks.length - 1; k >= 0; k--) {
+                if (chunks[k].slots[slot] != Interpreter.UNSET) {
+                    frame.slots[slot] = chunks[k].slots[slot];
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Whether the values let the loop run in parallel; sums[r] is set for
+    // the reductions that start as an int. A file the body can reach, in
+    // the list or a shared value, would be read by every chunk at once.
+    private boolean admits(Interpreter.Frame frame, ListValue list, boolean[] sums)
+    {
+        Set<Object> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Interpreter.Expr target : targets) {
+            Object value = value(target, frame);
+            if (!(value instanceof ListValue)) {
+                return false;
+            }
+            written.add(value);
+        }
+        for (int r = 0; r < reductions.length; r++) {
+            Object value = frame.slots[reductions[r]];
+            if (value == Interpreter.UNSET) {
+                return false;
+            }
+            if (value instanceof ListValue) {
+                written.add(value);
+            }
+            sums[r] = Ints.isInt(value);
+        }
+        List<Object> roots = new ArrayList<>();
+        roots.add(list);
+        for (Interpreter.Expr read : shared) {
+            Object value = value(read, frame);
+            if (value == Interpreter.UNSET) {
+                return false;
+            }
+            roots.add(value);
+        }
+        return !reaches(roots, written);
+    }
+
+    // A variable's value, or UNSET when reading it raises an error: the
+    // body may never read it, so the error is left to the loop in order
+    private static Object value(Interpreter.Expr read, Interpreter.Frame frame)
+    {
+        try {
+            return read.execute(frame);
+        } catch (MiniPythonError e) {
+            return Interpreter.UNSET;
+        }
+    }
+
+    // Whether a list in written, or a file, is one of the roots or an
+    // element of one, at any depth
+    private static boolean reaches(List<Object> roots, Set<Object> written)
+    {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (value instanceof FileValue) {
+                return true;
+            }
+            if (!(value instanceof ListValue) || !seen.add(value)) {
+                continue;
+            }
+            if (written.contains(value)) {
+                return true;
+            }
+            ListValue list = (ListValue) value;
+            if (list.getKind() == ListValue.OBJECTS) {
+                for (int i = 0; i < list.size(); i++) {
+                    pending.push(list.get(i));
+                }
+            }
+        }
+        return false;
+    }
+
+    // ========== CHUNKS ==========
+
+    // Consecutive iterations, run in order by one task
+    final class Chunk {
+        final Interpreter.Frame frame;
+        final Object[] slots;
+        final ListValue list;
+        final int start;
+        final int end;
+        final List<Effect> effects = new ArrayList<>();
+        final Object[] sums;            // the folds so far; null for reductions that are logged instead
+        MiniPythonError error;
+        boolean again;                  // run the loop in order instead
+
+        Chunk(Interpreter.Frame loop, ListValue list, boolean[] summed, int start, int end) {
+            this.slots = loop.slots.clone();
+            for (int slot : privates) {
+                slots[slot] = Interpreter.UNSET;
+            }
+            this.frame = new Interpreter.Frame(loop.code, slots, loop.parent, loop.interpreter.worker());
+            this.frame.chunk = this;
+            this.list = list;
+            this.start = start;
+            this.end = end;
+            this.sums = new Object[summed.length];
+            for (int r = 0; r < summed.length; r++) {
+                sums[r] = !summed[r] ? null : folds[r] == '*' ? (Object) 1L : (Object) 0L;
+            }
+        }
+
+        void run() {
+            Interpreter.Step[] steps = frame.code.steps;
+            for (int i = start; i < end; i++) {
+                slots[variable] = list.get(i);
+                int at = body;
+                try {
+                    while (at != header) {
+                        at = steps[at].execute(frame);
+                    }
+                } catch (MiniPythonError e) {
+                    e.setLine(steps[at].line);
+                    error = e;
+                    return;
+                } catch (StackOverflowError e) {
+                    again = true;
+                    return;
+                }
+            }
+        }
+
+        // "a[i] = v" in the body
+        void store(Object target, Object index, Object value) {
+            effects.add(new Effect(target, index, value, -1, ' '));
+        }
+
+        // "x op= v" in the body: true if x is a reduction, now logged or folded
+        boolean reduce(int slot, char op, Object value) {
+            for (int r = 0; r < reductions.length; r++) {
+                if (reductions[r] == slot) {
+                    if (sums[r] == null) {
+                        effects.add(new Effect(null, null, value, slot, op));
+                    } else if (Ints.isInt(value)) {
+                        sums[r] = Values.arithmetic(op, sums[r], value);
+                    } else {
+                        again = true;       // an int fold gets something else: no grouping is safe
+                        throw new MiniPythonError("RuntimeError", "parallel loop runs again in order");
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // A store or an update, replayed after the loop
+    private static final class Effect {
+        final Object target;
+        final Object index;
+        final Object value;
+        final int slot;                 // -1 for a store
+        final char op;
+
+        Effect(Object target, Object index, Object value, int slot, char op) {
+            this.target = target;
+            this.index = index;
+            this.value = value;
+            this.slot = slot;
+            this.op = op;
+        }
+
+        void apply(Interpreter.Frame frame) {
+            if (slot < 0) {
+                Interpreter.SetItem.store(target, index, value);
+            } else {
+                frame.slots[slot] = Interpreter.OpAssign.update(frame, op, frame.slots[slot], value);
+            }
+        }
+    }
+
+    // Halves a range of chunks until it holds one
+    private static final class Split extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        Split(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].run();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Split(chunks, from, middle), new Split(chunks, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import minipython.lexer.Lexer;
+import minipython.lexer.LexerException;
+import minipython.node.*;
+import minipython.parser.Parser;
+import minipython.parser.ParserException;
+
+/*
+ * Checks DescentParser against the generated Parser. Every file is lexed
+ * once and its tokens are parsed by both:
+ *
+ *   the file itself
+ *   the file with each one of its tokens deleted
+ *   the file with each one of its tokens doubled
+ *
+ * so besides the valid programs, every kind of syntax error the files can
+ * be broken into is tried. The two must agree: the same tree (node types,
+ * token texts and positions), or a ParserException at the same token.
+ * RecoveringParser must also give the same errors and partial tree for the
+ * file with either one underneath.
+ *
+ * With -bench, each valid file is then parsed repeatedly by both parsers
+ * from its token list, lexing left out, and their throughput compared.
+ *
+ * Usage: java ParserConformance [-bench] [files.py ...]
+ *   without files, every .py under tests/
+ *
+ * Example output:
+ *   tests/example.py: 1043 inputs, 7 accepted, 1036 rejected, agree
+ */
+public class ParserConformance
+{
+    private static final int MAX_REPORTED = 20;
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean bench = false;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("-bench")) {
+                bench = true;
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            try (Stream<Path> walk = Files.walk(Paths.get("tests"))) {
+                files = walk.filter(p -> p.toString().endsWith(".py")).sorted().collect(Collectors.toList());
+            }
+        }
+
+        int differences = 0;
+        long inputs = 0;
+        Map<Path, List<Token>> valid = new LinkedHashMap<>();
+        for (Path file : files) {
+            List<Token> tokens;
+            try {
+                tokens = lex(file);
+            } catch (LexerException e) {
+                System.out.println(file + ": not lexed, skipped (" + e.getMessage() + ")");
+                continue;
+            }
+            int accepted = 0;
+            int rejected = 0;
+            int disagree = 0;
+            int variants = 2 * tokens.size() - 1;
+            for (int v = 0; v < variants; v++) {
+                List<Token> variant = variant(tokens, v);
+                String expected = outcome(variant, false);
+                String actual = outcome(variant, true);
+                if (expected.startsWith("accepted")) {
+                    accepted++;
+                } else {
+                    rejected++;
+                }
+                if (!expected.equals(actual)) {
+                    disagree++;
+                    if (differences++ < MAX_REPORTED) {
+                        System.out.println(file + " variant " + v + ":\n  Parser:        " + shorten(expected)
+                                           + "\n  DescentParser: " + shorten(actual));
+                    }
+                }
+            }
+            String recovered = recover(file, false);
+            if (!recovered.equals(recover(file, true))) {
+                disagree++;
+                if (differences++ < MAX_REPORTED) {
+                    System.out.println(file + ": RecoveringParser differs with DescentParser");
+                }
+            }
+            inputs += variants;
+            System.out.println(file + ": " + variants + " inputs, " + accepted + " accepted, " + rejected
+                               + " rejected, " + (disagree == 0 ? "agree" : disagree + " DIFFER"));
+            if (outcome(tokens, false).startsWith("accepted")) {
+                valid.put(file, tokens);
+            }
+        }
+        System.out.println(inputs + " inputs, " + differences + " differences");
+
+        if (bench && !valid.isEmpty()) {
+            benchmark(valid);
+        }
+        System.exit(differences == 0 ? 0 : 1);
+    }
+
+    private static List<Token> lex(Path file) throws IOException, LexerException
+    {
+        Lexer lexer = new Lexer(new PushbackReader(Files.newBufferedReader(file), 1024));
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.next();
+            if (!(token instanceof TWhitespace) && !(token instanceof TComment)) {
+                tokens.add(token);
+            }
+        } while (!(token instanceof EOF));
+        return tokens;
+    }
+
+    // 0: the tokens; 2i + 1: without token i; 2i + 2: with token i doubled
+    private static List<Token> variant(List<Token> tokens, int v)
+    {
+        List<Token> variant = new ArrayList<>(tokens);
+        if (v > 0) {
+            int i = (v - 1) / 2;
+            if (v % 2 == 1) {
+                variant.remove(i);
+            } else {
+                variant.add(i, tokens.get(i));
+            }
+        }
+        return variant;
+    }
+
+    // "accepted" and the tree, or "rejected at" the index of the error token.
+    // Tokens are cloned, since building a tree takes them from the last one.
+    private static String outcome(List<Token> tokens, boolean descent)
+    {
+        List<Token> copy = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            copy.add((Token) token.clone());
+        }
+        try {
+            Start ast = parse(copy, descent);
+            return "accepted " + dump(ast);
+        } catch (ParserException e) {
+            for (int i = 0; i < copy.size(); i++) {
+                if (copy.get(i) == e.getToken()) {
+                    return "rejected at token " + i + " '" + e.getToken().getText().trim() + "'";
+                }
+            }
+            return "rejected at an unknown token: " + e.getMessage();
+        } catch (LexerException | IOException | RuntimeException e) {
+            return "failed: " + e;
+        }
+    }
+
+    // Where the syntax errors are, what they skip, and the partial tree.
+    // Their messages are left out: the parsers word them differently.
+    private static String recover(Path file, boolean descent) throws IOException
+    {
+        RecoveringParser parser = new RecoveringParser(new Lexer(new PushbackReader(Files.newBufferedReader(file), 1024)));
+        parser.setDescent(descent);
+        try {
+            Start ast = parser.parse();
+            StringBuilder sb = new StringBuilder();
+            for (RecoveringParser.SyntaxError error : parser.getErrors()) {
+                sb.append(error.line).append(',').append(error.pos).append(" skips ").append(error.firstLine)
+                  .append('-').append(error.lastLine).append("; ");
+            }
+            return sb + dump(ast);
+        } catch (LexerException e) {
+            return "failed: " + e;
+        }
+    }
+
+    private static Start parse(List<Token> tokens, boolean descent) throws ParserException, LexerException, IOException
+    {
+        TokenListLexer source = new TokenListLexer(tokens);
+        return descent ? new DescentParser(source).parse() : new Parser(source).parse();
+    }
+
+    // Example: "(AProgramme (AStatCommands (APrintStatementStatement print@1:1 ..."
+    private static String dump(Start ast)
+    {
+        StringBuilder sb = new StringBuilder();
+        ast.apply(new IterativeDepthFirstAdapter() {
+            public void defaultIn(Node node) {
+                sb.append('(').append(node.getClass().getSimpleName()).append(' ');
+            }
+
+            public void defaultOut(Node node) {
+                sb.append(") ");
+            }
+
+            public void defaultCase(Node node) {
+                Token token = (Token) node;
+                sb.append(token.getText().trim()).append('@').append(token.getLine()).append(':')
+                  .append(token.getPos()).append(' ');
+            }
+        });
+        return sb.toString();
+    }
+
+    private static String shorten(String outcome)
+    {
+        return outcome.length() > 200 ? outcome.substring(0, 200) + "..." : outcome;
+    }
+
+    // ========== THROUGHPUT ==========
+
+    private static void benchmark(Map<Path, List<Token>> files)
+    {
+        long tokens = 0;
+        for (List<Token> list : files.values()) {
+            tokens += list.size();
+        }
+        System.out.println();
+        System.out.println("Throughput over " + files.size() + " valid files, " + tokens + " tokens per round:");
+        double[] rate = new double[2];
+        for (int round = 0; round < 2; round++) {           // the first round warms up
+            for (int descent = 0; descent < 2; descent++) {
+                long parsed = 0;
+                long start = System.nanoTime();
+                long end = start + 2_000_000_000L;
+                long now = start;
+                while (now < end) {
+                    for (List<Token> list : files.values()) {
+                        try {
+                            parse(list, descent == 1);
+                        } catch (ParserException | LexerException | IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        parsed += list.size();
+                    }
+                    now = System.nanoTime();
+                }
+                rate[descent] = parsed / ((now - start) / 1e9);
+            }
+        }
+        System.out.printf("  Parser:        %,.0f tokens/s%n", rate[0]);
+        System.out.printf("  DescentParser: %,.0f tokens/s (%.1fx)%n", rate[1], rate[1] / rate[0]);
+    }
+}
@@ -3,7 +3,6 @@ import java.util.*;
 import java.nio.file.*;
 import minipython.lexer.Lexer;
 import minipython.node.*;
-import minipython.parser.Parser;
 
 public class ParserTest {
     public static void main(String[] args) {
@@ -23,8 +22,9 @@ public class ParserTest {
                 return;
             }
             
-            // Setup parser with lexer
-            Parser parser = new Parser(
+            // Setup parser with lexer. Syntax errors do not stop the run: the
+            // broken commands are skipped and the rest is still analyzed.
+            RecoveringParser parser = new RecoveringParser(
                 new Lexer(
                     new PushbackReader(
                         new FileReader(args[0]), 1024)));
@@ -36,6 +36,13 @@ public class ParserTest {
             // Parse the AST
             Start ast = parser.parse();
             
+            if (!parser.getErrors().isEmpty()) {
+                System.out.println("\n--- SYNTAX ERRORS ---");
+                for (RecoveringParser.SyntaxError error : parser.getErrors()) {
+                    System.out.println(error);
+                }
+            }
+            
             // Create symbol table to share between visitors
             Hashtable<String, Object> symtable = new Hashtable<>();
             
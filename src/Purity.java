@@ -0,0 +1,341 @@
+import java.io.*;
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Finds the functions of a program whose result depends only on their
+ * arguments, so that Interpreter can memoize them.
+ *
+ * A def is pure when its body
+ *   - does not print, open a file, import, or define a function of its own
+ *   - makes no call through a dot ("sh.area(2)", "f.read()")
+ *   - reads no variable of an enclosing scope, other than the names of pure
+ *     functions: a name bound there by exactly one def and by nothing else
+ *     (no assignment, parameter, for loop or import alias), so every call
+ *     through it reaches the same code
+ *   - has defaults that are literals, so no two defs of it differ
+ * and every function it calls is pure as well. Writes into a list are
+ * allowed: a local name can only hold a list made during the call or
+ * passed in as an argument, and calls with list arguments are not
+ * memoized.
+ *
+ * The calls come from DeclarationVisitor's call sites, each placed in its
+ * function by the ControlFlowGraph. A function that is not pure by its own
+ * body makes its callers impure too; the rest, recursive ones included,
+ * are pure. This is the greatest fixpoint, found by removing impure
+ * functions until none is left to remove. A pure function is also
+ * read-only when neither it nor anything it calls stores into a list or
+ * may extend one with "+=", so it cannot change a list it is passed
+ * (LoopDependence needs this).
+ *
+ *     def fib(n):                       pure: reads n, calls fib
+ *         if n < 2:
+ *             return n
+ *         return fib(n - 1) + fib(n - 2)
+ *
+ *     def report(n):                    not pure: prints
+ *         print fib(n)
+ *
+ *     def scaled(n):                    not pure: reads factor, a variable
+ *         return n * factor             of the module
+ */
+public final class Purity
+{
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final ControlFlowGraph cfg;
+
+    // Names each scope binds, as the Interpreter gives them slots
+    private final Map<ControlFlowGraph.Scope, Set<String>> bound = new HashMap<>();
+
+    // Import aliases anywhere in the program, never the name of a pure function
+    private final Set<String> aliases = new HashSet<>();
+
+    // The pure functions a function relies on. Example: fib → {fib}
+    private final Map<ControlFlowGraph.Scope, Set<ControlFlowGraph.Scope>> callees = new HashMap<>();
+
+    private final Set<ControlFlowGraph.Scope> impure = new HashSet<>();
+
+    // Functions that store into a list or may extend one themselves
+    private final Set<ControlFlowGraph.Scope> stores = new HashSet<>();
+
+    private Set<ControlFlowGraph.Scope> pure;
+    private Set<ControlFlowGraph.Scope> readOnly;
+
+    private Purity(ControlFlowGraph cfg)
+    {
+        this.cfg = cfg;
+    }
+
+    public static Purity analyze(Start ast, ControlFlowGraph cfg)
+    {
+        Purity purity = new Purity(cfg);
+        purity.bindings(ast);
+        purity.scan(ast);
+        purity.pure = purity.solve(purity.impure);
+        Set<ControlFlowGraph.Scope> writers = new HashSet<>(purity.impure);
+        writers.addAll(purity.stores);
+        purity.readOnly = purity.solve(writers);
+        return purity;
+    }
+
+    public boolean isPure(ControlFlowGraph.Scope function)
+    {
+        return pure.contains(function);
+    }
+
+    public boolean isReadOnly(ControlFlowGraph.Scope function)
+    {
+        return readOnly.contains(function);
+    }
+
+    // ========== BINDINGS ==========
+
+    private void bindings(Start ast)
+    {
+        for (ModuleResolver.ImportRef ref : ModuleResolver.collectImports(ast)) {
+            aliases.add(ref.alias);
+        }
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            Set<String> names = new HashSet<>(scope.variables);
+            for (ControlFlowGraph.Block block : scope.blocks) {
+                if (block.kind == ControlFlowGraph.Kind.DEF) {
+                    names.add(defName(block));
+                } else if (block.node != null) {
+                    String updated = opAssigned(block.node);
+                    if (updated != null) {
+                        names.add(updated);
+                    }
+                }
+            }
+            bound.put(scope, names);
+            if (scope.function != null) {
+                callees.put(scope, new HashSet<>());
+            }
+        }
+    }
+
+    // The def that a name read in scope reaches, if it is bound by that def
+    // alone; null otherwise. Example: "fib" read in fib → the def of fib.
+    public ControlFlowGraph.Scope function(ControlFlowGraph.Scope scope, String name)
+    {
+        if (aliases.contains(name)) {
+            return null;
+        }
+        for (ControlFlowGraph.Scope s = scope; s != null; s = s.parent) {
+            if (!bound.get(s).contains(name)) {
+                continue;
+            }
+            if (s.indexOf(name) >= 0) {
+                return null;            // also a parameter, assigned, or a for variable
+            }
+            ControlFlowGraph.Scope def = null;
+            for (ControlFlowGraph.Block block : s.blocks) {
+                if (block.kind == ControlFlowGraph.Kind.DEF && defName(block).equals(name)) {
+                    if (def != null) {
+                        return null;    // defined twice
+                    }
+                    def = cfg.getScope((ADefFuncFunction) block.node);
+                } else if (block.node != null && name.equals(opAssigned(block.node))) {
+                    return null;
+                }
+            }
+            return def;
+        }
+        return null;
+    }
+
+    private static String defName(ControlFlowGraph.Block block)
+    {
+        return ((ADefFuncFunction) block.node).getName().getText().trim();
+    }
+
+    // Example: "x += 1" → x
+    private static String opAssigned(Node node)
+    {
+        if (node instanceof APluseqStatementStatement) {
+            return ((APluseqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMineqStatementStatement) {
+            return ((AMineqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof AMulteqStatementStatement) {
+            return ((AMulteqStatementStatement) node).getId().getText().trim();
+        } else if (node instanceof ADiveqStatementStatement) {
+            return ((ADiveqStatementStatement) node).getId().getText().trim();
+        }
+        return null;
+    }
+
+    // ========== BODIES ==========
+
+    private void scan(Start ast)
+    {
+        Hashtable<String, Object> symtable = new Hashtable<>();
+        DeclarationVisitor declarations = new DeclarationVisitor(symtable);
+        declarations.setOut(DISCARD);
+        ast.apply(declarations);
+        for (DeclarationVisitor.CallSite site : (List<DeclarationVisitor.CallSite>) symtable.get("calls")) {
+            if (site.module != null) {
+                effect(site.call);
+            } else {
+                read(site.call, site.name);
+            }
+        }
+        ast.apply(new IterativeDepthFirstAdapter() {
+            public void inAPrintStatementStatement(APrintStatementStatement node) {
+                effect(node);
+            }
+
+            public void inAImportStatementStatement(AImportStatementStatement node) {
+                effect(node);
+            }
+
+            public void inAOpenExpressionValue(AOpenExpressionValue node) {
+                effect(node);
+            }
+
+            // A def inside a function is an effect of that function; a def
+            // with a default that is not a literal is not pure itself
+            public void inADefFuncFunction(ADefFuncFunction node) {
+                effect(node);
+                ControlFlowGraph.Scope scope = cfg.getScope(node);
+                if (scope != null && !literalDefaults(node)) {
+                    impure.add(scope);
+                }
+            }
+
+            public void inAIdentifierValuenode(AIdentifierValuenode node) {
+                read(node, node.getName().getText().trim());
+            }
+
+            public void inAPinakasExpressionValue(APinakasExpressionValue node) {
+                read(node, node.getId().getText().trim());
+            }
+
+            public void inAArrayStatementStatement(AArrayStatementStatement node) {
+                read(node, node.getId().getText().trim());
+                ControlFlowGraph.Block block = cfg.blockOf(node);
+                if (block != null) {
+                    stores.add(block.scope);
+                }
+            }
+
+            public void inAForStatementStatement(AForStatementStatement node) {
+                read(node, node.getIter().getText().trim());
+            }
+
+            public void inAPluseqStatementStatement(APluseqStatementStatement node) {
+                ControlFlowGraph.Block block = cfg.blockOf(node);
+                if (block != null && extendsList(node)) {
+                    stores.add(block.scope);
+                }
+            }
+        });
+    }
+
+    // Whether "x += v" may extend a list in place: unless v is a number
+    // literal or an operation that only gives numbers.
+    // Example: "x += 1", "x += n % 7" → false; "x += [n]", "x += n" → true
+    public static boolean extendsList(APluseqStatementStatement node)
+    {
+        Node value = operation(node.getExpr());
+        return !(value instanceof AIntegerLiteralValuenode || value instanceof ADecimalLiteralValuenode
+                 || value instanceof ASubMultExpression || value instanceof ADivMultiplication
+                 || value instanceof AModMultiplication || value instanceof APowPow
+                 || value instanceof ALengthExpessionValue);
+    }
+
+    // The node under an expression's chain wrappers. Example: "(x)" → the identifier x
+    public static Node operation(Node expression)
+    {
+        Node node = expression;
+        while (true) {
+            if (node instanceof ABaseMultExpression) {
+                node = ((ABaseMultExpression) node).getExpr();
+            } else if (node instanceof ABasePowMultiplication) {
+                node = ((ABasePowMultiplication) node).getExpr();
+            } else if (node instanceof AValuePow) {
+                node = ((AValuePow) node).getExpr();
+            } else if (node instanceof AValueSubsetValue) {
+                node = ((AValueSubsetValue) node).getVal();
+            } else if (node instanceof AParenthesisExpressionValue) {
+                node = ((AParenthesisExpressionValue) node).getExpr();
+            } else {
+                return node;
+            }
+        }
+    }
+
+    // The function a node runs in can no longer be pure
+    private void effect(Node node)
+    {
+        ControlFlowGraph.Block block = cfg.blockOf(node);
+        if (block != null && block.scope.function != null) {
+            impure.add(block.scope);
+        }
+    }
+
+    // A name read or called: a local, a pure function, or an effect
+    private void read(Node node, String name)
+    {
+        ControlFlowGraph.Block block = cfg.blockOf(node);
+        if (block == null || block.scope.function == null || bound.get(block.scope).contains(name)) {
+            return;
+        }
+        ControlFlowGraph.Scope function = function(block.scope, name);
+        if (function != null) {
+            callees.get(block.scope).add(function);
+        } else {
+            impure.add(block.scope);
+        }
+    }
+
+    // Example: "def f(a, b=1, c='x')" → true; "def f(a, b=limit)" → false
+    private static boolean literalDefaults(ADefFuncFunction def)
+    {
+        if (!(def.getArgs() instanceof AHasArgsArgumentOpt)) {
+            return true;
+        }
+        AArgumentArgument arg = (AArgumentArgument) ((AHasArgsArgumentOpt) def.getArgs()).getArg();
+        if (!literal(arg.getDefault())) {
+            return false;
+        }
+        PArgumentTail tail = arg.getRest();
+        while (tail instanceof AContinueArgumentTail) {
+            if (!literal(((AContinueArgumentTail) tail).getNextDefault())) {
+                return false;
+            }
+            tail = ((AContinueArgumentTail) tail).getMore();
+        }
+        return true;
+    }
+
+    private static boolean literal(PAssignValueOpt value)
+    {
+        if (!(value instanceof AHasValueAssignValueOpt)) {
+            return true;
+        }
+        PValuenode node = ((AHasValueAssignValueOpt) value).getValue();
+        return !(node instanceof AIdentifierValuenode || node instanceof AIdDotFuncValuenode);
+    }
+
+    // ========== FIXPOINT ==========
+
+    // The functions not excluded, and calling none that is
+    private Set<ControlFlowGraph.Scope> solve(Set<ControlFlowGraph.Scope> excluded)
+    {
+        Set<ControlFlowGraph.Scope> pure = new LinkedHashSet<>(callees.keySet());
+        pure.removeAll(excluded);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<ControlFlowGraph.Scope> it = pure.iterator();
+            while (it.hasNext()) {
+                if (!pure.containsAll(callees.get(it.next()))) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+        }
+        return pure;
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.*;
+import java.util.*;
+import minipython.lexer.*;
+import minipython.node.*;
+import minipython.parser.*;
+
+/*
+ * Parser front end that reports every syntax error of a file instead of
+ * stopping at the first ParserException.
+ *
+ * The generated LALR parser cannot continue after an error, so recovery
+ * works on the token stream (panic mode):
+ *   1. the file is lexed once
+ *   2. the tokens are parsed; on a ParserException the command around the
+ *      error token is skipped, from the synchronizing token before the error
+ *      up to the next synchronizing token
+ *   3. the remaining tokens are parsed again, until they parse cleanly
+ *
+ * Synchronizing tokens are the first tokens of lines that start in column 1,
+ * i.e. the starts of top-level commands (def or statement). Function bodies
+ * are indented, so a broken def is skipped together with its body.
+ *
+ * Every skipped command becomes an AInvalidCommands node at its place in the
+ * programme, and the semantic passes still run over the valid commands.
+ *
+ * Example:
+ *   x = 1 +         ← error at "print": skip "x = 1 +"
+ *   print x
+ *   def f(a:        ← error at ":": skip the def and its body
+ *       return a
+ *   → programme [invalid, print x, invalid] plus two SyntaxErrors
+ *
+ * setDescent(true) parses with DescentParser instead of the generated
+ * Parser; both fail on the same tokens, so the errors and the tree are the
+ * same.
+ */
+public class RecoveringParser
+{
+    // After this many errors the rest of the file is skipped in one go
+    private static final int MAX_ERRORS = 100;
+
+    // One skipped command
+    public static class SyntaxError {
+        public int line;            // where the parser gave up
+        public int pos;
+        public String message;      // Example: "expecting: 'identifier'"
+        public int firstLine;       // lines of the skipped tokens
+        public int lastLine;
+        public AInvalidCommands node;
+        int start;                  // index of the first skipped token
+
+        public String toString() {
+            String skipped = firstLine == lastLine ? "line " + firstLine
+                                                   : "lines " + firstLine + "-" + lastLine;
+            return "Line " + line + " [Syntax]: " + message + " (skipped " + skipped + ")";
+        }
+    }
+
+    private final Lexer lexer;
+    private final List<SyntaxError> errors = new ArrayList<>();
+    private boolean descent;
+
+    public RecoveringParser(Lexer lexer)
+    {
+        this.lexer = lexer;
+    }
+
+    public void setDescent(boolean enabled)
+    {
+        descent = enabled;
+    }
+
+    public List<SyntaxError> getErrors()
+    {
+        return errors;
+    }
+
+    // Returns the programme without the skipped commands. Only lexer errors
+    // (characters no token matches) still abort the parse.
+    public Start parse() throws LexerException, IOException
+    {
+        List<Token> tokens = readTokens();
+        IdentityHashMap<Token, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            index.put(tokens.get(i), i);
+        }
+        boolean[] sync = findSyncPoints(tokens);
+        boolean[] skipped = new boolean[tokens.size()];
+        int eof = tokens.size() - 1;
+
+        while (true) {
+            List<Token> input = new ArrayList<>();
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!skipped[i]) {
+                    input.add(tokens.get(i));
+                }
+            }
+
+            TokenListLexer source = new TokenListLexer(input);
+            try {
+                Start ast = descent ? new DescentParser(source).parse() : new Parser(source).parse();
+                insertInvalidCommands(ast, index);
+                return ast;
+            } catch (ParserException e) {
+                Integer at = index.get(e.getToken());
+                int error = at != null ? at : index.get(source.last());
+
+                // Skip from the synchronizing token at or before the error to the next one.
+                // An error at EOF, or right at the start of a command, means that the
+                // command before it is incomplete.
+                int start = previousSync(sync, skipped, error);
+                int end;
+                if (error == eof) {
+                    end = eof;
+                } else if (start == error && startsCommand(tokens.get(error))) {
+                    start = previousSync(sync, skipped, error - 1);
+                    end = error;
+                } else {
+                    end = nextSync(sync, error);
+                }
+                if (start < 0) {
+                    start = error;
+                    end = error + 1;
+                }
+                if (errors.size() + 1 == MAX_ERRORS) {
+                    end = eof;
+                }
+
+                for (int i = start; i < end; i++) {
+                    skipped[i] = true;
+                }
+                errors.add(syntaxError(e, tokens, error, start, end));
+            }
+        }
+    }
+
+    private List<Token> readTokens() throws LexerException, IOException
+    {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = lexer.next();
+            if (!(token instanceof TWhitespace) && !(token instanceof TComment)) {
+                tokens.add(token);
+            }
+        } while (!(token instanceof EOF));
+        return tokens;
+    }
+
+    // ========== SYNCHRONIZING TOKENS ==========
+
+    // Example: "def", "print" or "x" as the first token of a line in column 1
+    private static boolean[] findSyncPoints(List<Token> tokens)
+    {
+        boolean[] sync = new boolean[tokens.size()];
+        int previousLine = -1;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            Token token = tokens.get(i);
+            if (token.getLine() != previousLine && token.getPos() == 1 && !(token instanceof TTab)) {
+                sync[i] = true;
+            }
+            previousLine = token.getLine();
+        }
+        if (tokens.size() > 1) {
+            sync[0] = true;
+        }
+        return sync;
+    }
+
+    private static boolean startsCommand(Token token)
+    {
+        return token instanceof TDef || token instanceof TIf || token instanceof TWhile ||
+               token instanceof TFor || token instanceof TPrint || token instanceof TReturn ||
+               token instanceof TIdentifier || token instanceof TAssert || token instanceof TImport;
+    }
+
+    private static int previousSync(boolean[] sync, boolean[] skipped, int from)
+    {
+        for (int i = from; i >= 0; i--) {
+            if (sync[i] && !skipped[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int nextSync(boolean[] sync, int from)
+    {
+        int i = from + 1;
+        while (i < sync.length - 1 && !sync[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static SyntaxError syntaxError(ParserException e, List<Token> tokens, int error, int start, int end)
+    {
+        SyntaxError syntaxError = new SyntaxError();
+        Token token = tokens.get(error);
+        syntaxError.line = token.getLine();
+        syntaxError.pos = token.getPos();
+        // Example: "[3,9] expecting: ..." → "expecting: ..."
+        String message = e.getMessage();
+        syntaxError.message = message.startsWith("[") ? message.substring(message.indexOf(']') + 1).trim() : message;
+        syntaxError.firstLine = tokens.get(start).getLine();
+        syntaxError.lastLine = tokens.get(end - 1).getLine();
+        syntaxError.start = start;
+        syntaxError.node = new AInvalidCommands();
+        return syntaxError;
+    }
+
+    // ========== PARTIAL AST ==========
+
+    // Puts an AInvalidCommands where each skipped command was
+    private void insertInvalidCommands(Start ast, IdentityHashMap<Token, Integer> index)
+    {
+        List<SyntaxError> pending = new ArrayList<>(errors);
+        pending.sort((a, b) -> Integer.compare(a.start, b.start));
+
+        AProgramme programme = (AProgramme) ast.getPProgramme();
+        List<PCommands> merged = new ArrayList<>();
+        int next = 0;
+        for (PCommands command : programme.getCommands()) {
+            int first = firstTokenIndex(command, index);
+            while (next < pending.size() && pending.get(next).start < first) {
+                merged.add(pending.get(next++).node);
+            }
+            merged.add(command);
+        }
+        while (next < pending.size()) {
+            merged.add(pending.get(next++).node);
+        }
+        // Not programme.setCommands(merged): the generated setter detaches every
+        // node from its old parent after adding it, which empties the list again
+        // when that parent is the programme itself
+        ast.setPProgramme(new AProgramme(merged));
+    }
+
+    private static int firstTokenIndex(Node node, IdentityHashMap<Token, Integer> index)
+    {
+        final int[] first = { Integer.MAX_VALUE };
+        node.apply(new IterativeDepthFirstAdapter() {
+            public void defaultCase(Node token) {
+                Integer i = index.get(token);
+                if (i != null && i < first[0]) {
+                    first[0] = i;
+                }
+            }
+        });
+        return first[0];
+    }
+}
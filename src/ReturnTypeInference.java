@@ -0,0 +1,254 @@
+import java.io.*;
+import java.util.*;
+import minipython.node.*;
+
+/*
+ * Infers the return type of every function before TypeCheckerVisitor checks
+ * the program, so calls see the callee's type no matter where it is defined.
+ *
+ * A function's return type is the join of the types of all its return
+ * statements, plus 'none' when its body can finish without returning (its
+ * ControlFlowGraph reaches the end without a return). With
+ * several defs of the same name, all of them are joined, since a call may
+ * reach any of them. The lattice is
+ *
+ *     bottom  <  int | string | none  <  unknown
+ *
+ * where bottom means "no return seen yet" and unknown is the top.
+ *
+ * Inference starts optimistic (every function at bottom) and runs a worklist
+ * over the call graph until nothing changes:
+ *   - evaluating a function types its return expressions with the current table
+ *   - when a function's type rises, its callers are evaluated again
+ *   - top-level code defines the global variables that function bodies read,
+ *     so it is an item of its own; a scope's variables at a def are what
+ *     that function reads from outside, so when they change it follows
+ * Expressions that involve a bottom call are bottom themselves and add
+ * nothing to the join, which is what lets recursion settle:
+ *
+ *     def fact(n):                  fact(n - 1) * n is bottom at first, so only the
+ *         if n > 1:                 fall-through counts: fact = none. Then the body
+ *             return fact(n-1) * n  is typed with none, and so on until nothing changes.
+ *
+ * Expressions are typed with FlowTypes (TypeCheckerVisitor's own typing,
+ * run silently), so inference and checking always agree.
+ */
+public class ReturnTypeInference
+{
+    public static final String BOTTOM = "bottom";
+
+    // Worklist item for the top-level statements
+    private static final String TOP_LEVEL = "<top level>";
+
+    private final Start ast;
+    private final ControlFlowGraph cfg;
+
+    // Defs by name, in source order. Example: "add" → [def add(a, b, c), def add(x, y)]
+    private final Map<String, List<ADefFuncFunction>> functions = new LinkedHashMap<>();
+
+    // Who calls a function. Example: "add" → {"doSth", TOP_LEVEL}
+    private final Map<String, Set<String>> callers = new HashMap<>();
+
+    // Names a function (or a function inside it) reads, which may come from outside.
+    // Example: def f(): return x + y → {x, y}
+    private final Map<ControlFlowGraph.Scope, Set<String>> reads = new HashMap<>();
+
+    // The types of those names at each def, from the last solve of the enclosing scope
+    private final Map<ControlFlowGraph.Scope, BitSet> readsAtDef = new HashMap<>();
+
+    private final Hashtable<String, String> returnTypes = new Hashtable<>();
+    private final FlowTypes flow;
+
+    private ReturnTypeInference(Start ast, Hashtable<String, Object> symtable)
+    {
+        this.ast = ast;
+        this.cfg = ControlFlowGraph.of(ast, symtable);
+        this.flow = new FlowTypes(cfg, returnTypes, symtable);
+    }
+
+    // Returns function name → return type; functions that never return normally are 'unknown'
+    public static Hashtable<String, String> infer(Start ast, Hashtable<String, Object> symtable)
+    {
+        ReturnTypeInference inference = new ReturnTypeInference(ast, symtable);
+        inference.buildCallGraph();
+        inference.solve();
+        return inference.returnTypes;
+    }
+
+    // ========== LATTICE ==========
+
+    // Example: join(int, int) = int, join(int, none) = unknown, join(bottom, string) = string
+    public static String join(String a, String b)
+    {
+        if (a == null || a.equals(BOTTOM)) {
+            return b;
+        }
+        if (b == null || b.equals(BOTTOM)) {
+            return a;
+        }
+        if (a.equals("error") || b.equals("error") || !a.equals(b)) {
+            return "unknown";
+        }
+        return a;
+    }
+
+    // ========== CALL GRAPH ==========
+
+    private void buildCallGraph()
+    {
+        for (ControlFlowGraph.Scope scope : cfg.getScopes()) {
+            if (scope.function != null) {
+                functions.computeIfAbsent(scope.getName(), k -> new ArrayList<>()).add(scope.function);
+                reads.put(scope, new LinkedHashSet<>());
+            }
+        }
+
+        ast.apply(new IterativeDepthFirstAdapter() {
+            public void outANoArgsFunctionCall(ANoArgsFunctionCall node) {
+                called(node, node.getName());
+            }
+
+            public void outAWithArgsFunctionCall(AWithArgsFunctionCall node) {
+                called(node, node.getName());
+            }
+
+            // Calls into imported modules ("sh.area()") have their types from the module
+            private void called(Node call, TIdentifier name) {
+                if (!(call.parent() instanceof AIdDotFuncValuenode)) {
+                    ControlFlowGraph.Block block = cfg.blockOf(call);
+                    String caller = block == null || block.scope.function == null ? TOP_LEVEL : block.scope.getName();
+                    callers.computeIfAbsent(name.getText().trim(), k -> new HashSet<>()).add(caller);
+                }
+            }
+
+            public void inAIdentifierValuenode(AIdentifierValuenode node) {
+                read(node, node.getName());
+            }
+
+            public void inAPluseqStatementStatement(APluseqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inAMineqStatementStatement(AMineqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inAMulteqStatementStatement(AMulteqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            public void inADiveqStatementStatement(ADiveqStatementStatement node) {
+                read(node, node.getId());
+            }
+
+            private void read(Node at, Token name) {
+                ControlFlowGraph.Block block = cfg.blockOf(at);
+                for (ControlFlowGraph.Scope scope = block == null ? null : block.scope;
+                     scope != null && scope.function != null; scope = scope.parent) {
+                    reads.get(scope).add(name.getText().trim());
+                }
+            }
+        });
+    }
+
+    // ========== FIXED POINT ==========
+
+    private void solve()
+    {
+        for (String name : functions.keySet()) {
+            returnTypes.put(name, BOTTOM);
+        }
+
+        // The top level goes first, so that no function is typed with globals
+        // that are not known yet, and enclosing functions before the ones
+        // inside them. The top level walks the whole program, so after that
+        // it only runs again once the functions have settled.
+        Deque<String> worklist = new ArrayDeque<>();
+        Set<String> queued = new HashSet<>();
+        solveScope(cfg.getTopLevel());
+        for (String name : functions.keySet()) {
+            worklist.add(name);
+            queued.add(name);
+        }
+        boolean topLevelStale = false;
+
+        // Every type can only rise twice (bottom → concrete → unknown) and each
+        // rise requeues the callers, so a monotone evaluation never reaches
+        // this bound; it is only a guard.
+        int calls = 0;
+        for (Set<String> from : callers.values()) {
+            calls += from.size();
+        }
+        int budget = 4 * (functions.size() + calls + 1);
+        while ((!worklist.isEmpty() || topLevelStale) && budget-- > 0) {
+            Collection<String> next;
+            if (worklist.isEmpty()) {
+                topLevelStale = false;
+                next = solveScope(cfg.getTopLevel());
+            } else {
+                String name = worklist.poll();
+                queued.remove(name);
+                next = evaluateFunction(name);
+            }
+            for (String item : next) {
+                if (item.equals(TOP_LEVEL)) {
+                    topLevelStale = true;
+                } else if (queued.add(item)) {
+                    worklist.add(item);
+                }
+            }
+        }
+        for (String name : worklist) {
+            returnTypes.put(name, "unknown");
+        }
+
+        for (Map.Entry<String, String> entry : returnTypes.entrySet()) {
+            if (entry.getValue().equals(BOTTOM)) {
+                entry.setValue("unknown");
+            }
+        }
+    }
+
+    // Solves the variable types of a scope. Returns the functions defined in it
+    // whose outside names changed type.
+    private List<String> solveScope(ControlFlowGraph.Scope scope)
+    {
+        flow.solve(scope);
+        List<String> changed = new ArrayList<>();
+        for (ControlFlowGraph.Scope inner : scope.children) {
+            BitSet state = flow.stateAt(inner.defBlock, reads.get(inner));
+            if (!state.equals(readsAtDef.put(inner, state))) {
+                changed.add(inner.getName());
+            }
+        }
+        return changed;
+    }
+
+    // Joins the returns of every def of a function. Returns its callers if the type
+    // rose, and the functions inside it whose outside names changed.
+    private Collection<String> evaluateFunction(String name)
+    {
+        Set<String> next = new LinkedHashSet<>();
+        String type = BOTTOM;
+        for (ADefFuncFunction def : functions.get(name)) {
+            ControlFlowGraph.Scope scope = cfg.getScope(def);
+            next.addAll(solveScope(scope));
+            for (ControlFlowGraph.Block block : scope.exit.predecessors) {
+                if (block.reachable && block.node instanceof AReturnStatementStatement) {
+                    type = join(type, flow.typeOf(((AReturnStatementStatement) block.node).getExpr()));
+                }
+            }
+            if (scope.fallsThrough) {
+                type = join(type, "none");
+            }
+        }
+
+        String previous = returnTypes.get(name);
+        String joined = join(previous, type);
+        if (!joined.equals(previous)) {
+            returnTypes.put(name, joined);
+            next.addAll(callers.getOrDefault(name, Collections.emptySet()));
+        }
+        return next;
+    }
+}
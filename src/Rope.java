@@ -0,0 +1,141 @@
+import java.util.*;
+
+/*
+ * A MiniPython string built by "+", kept as the two strings it joins
+ * until its characters are needed. Each piece is a String or another Rope,
+ * so "s = s + x" in a loop costs one small node per iteration instead of
+ * a copy of all of s, and the loop is linear rather than quadratic.
+ *
+ * A Rope is flattened once, into a single buffer, the first time it is
+ * printed, compared, indexed or iterated; the result is kept and the
+ * pieces let go. Its length is known from the start, so len() never
+ * flattens. The buffer is a StringBuilder and the result a String, which
+ * for MiniPython's ASCII text both store one byte per character.
+ *
+ * Short results are plain Strings: below MIN_LENGTH copying is cheaper
+ * than a node, and concat() returns one. At run time a string is a String
+ * or a Rope (Values.isString), and toString() gives its text.
+ *
+ * Example: concat(s, "x") where s has 1000 characters
+ *     → Rope(s, "x"), length 1001; concat(that, "y") → Rope(s, "xy")
+ */
+public final class Rope implements CharSequence
+{
+    static final int MIN_LENGTH = 256;
+
+    // Null once flattened; then flat holds the text. Chunks of a parallel
+    // loop may flatten the same rope at once: flat is set before the
+    // pieces are let go, and a reader that finds a piece gone reads flat.
+    private volatile CharSequence left;
+    private volatile CharSequence right;
+    private final int length;
+    private volatile String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length)
+    {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    // a + b for two strings, each a String or a Rope
+    static CharSequence concat(CharSequence a, CharSequence b)
+    {
+        long length = (long) a.length() + b.length();
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new MiniPythonError("MemoryError", "cannot join strings of " + a.length() + " and "
+                                      + b.length() + " characters");
+        }
+        if (a.length() == 0) {
+            return b;
+        }
+        if (b.length() == 0) {
+            return a;
+        }
+        if (length < MIN_LENGTH) {
+            return a.toString().concat(b.toString());
+        }
+        // Appending a short piece to a short last piece joins the two, so a
+        // loop adding one character at a time makes one node per MIN_LENGTH
+        if (a instanceof Rope && b instanceof String) {
+            Rope rope = (Rope) a;
+            CharSequence left = rope.left;
+            CharSequence right = rope.right;
+            if (left != null && right instanceof String && right.length() + b.length() < MIN_LENGTH) {
+                return new Rope(left, ((String) right).concat((String) b), (int) length);
+            }
+        }
+        return new Rope(a, b, (int) length);
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return toString().substring(start, end);
+    }
+
+    // Flattens without recursion: a loop of appends makes a rope as deep as
+    // the loop is long. Pieces are visited left to right off a stack.
+    @Override
+    public String toString()
+    {
+        String text = flat;
+        if (text == null) {
+            StringBuilder sb = new StringBuilder(length);
+            Deque<CharSequence> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                CharSequence piece = pending.pop();
+                if (!(piece instanceof Rope)) {
+                    sb.append(piece.toString());
+                    continue;
+                }
+                Rope rope = (Rope) piece;
+                CharSequence left = rope.left;
+                CharSequence right = rope.right;
+                if (left == null || right == null) {
+                    sb.append(rope.flat);       // flattened by now, perhaps by another thread
+                } else {
+                    pending.push(right);
+                    pending.push(left);
+                }
+            }
+            text = sb.toString();
+            flat = text;
+            left = null;
+            right = null;
+        }
+        return text;
+    }
+
+    // Equal to a String or Rope with the same text, with a String's hash
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof String || other instanceof Rope) || ((CharSequence) other).length() != length) {
+            return false;
+        }
+        return toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return toString().hashCode();
+    }
+}
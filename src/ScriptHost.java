@@ -0,0 +1,339 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import minipython.lexer.Lexer;
+import minipython.lexer.LexerException;
+import minipython.node.*;
+
+/*
+ * Runs many MiniPython programs in one JVM, for services that execute
+ * scripts their users send.
+ *
+ *   compile   parses a source, admits it only if it has no syntax errors
+ *             and passes the semantic checks of ParserTest (declarations,
+ *             variables, types), and compiles it once into a Program.
+ *             Programs are immutable and cached by the SHA-256 of their
+ *             source, so a script sent again is not compiled again.
+ *
+ *   submit    runs a Program on the host's pool. Every run has its own
+ *             Interpreter: fresh globals, its own imported modules, a
+ *             Budget from the host's supplier, and print output kept in a
+ *             buffer of its own, returned in the Result. open() is an
+ *             IOError: scripts do not read the host's files.
+ *
+ * Runs share a Program's Code, and write to it without synchronization:
+ *   - the inline caches at call sites, which swap in immutable entries:
+ *     two runs racing on a site at worst both relink it
+ *   - the specialization state of Binary, Compare and OpAssign nodes: one
+ *     run can respecialize a node another has just made GENERIC
+ *   - Code.invocations and backEdges, whose increments can be lost, and the
+ *     fast check of Code.tier before TierCompiler takes the Code's lock
+ * These races are benign only because every specialized fast path checks
+ * its operand types again before using them, and because the counters are
+ * advisory: a lost count only delays compilation. Nothing else about the
+ * Code is guaranteed between runs; whatever a run writes to it next must
+ * be safe under the same races. Memo tables are synchronized.
+ *
+ * Runs go on a fixed pool of platform threads, one per core by default.
+ * The work is CPU-bound, so more threads than cores would not add
+ * throughput; a run that stalls is stopped by its budget.
+ *
+ * Example:
+ *     try (ScriptHost host = new ScriptHost(ScriptHost.defaultThreads(), resolver, Budget::new)) {
+ *         ScriptHost.Program program = host.compile("x = 1\nprint x + 2\n");
+ *         ScriptHost.Result result = host.submit(program).get();     // result.output is "3\n"
+ *     }
+ *
+ * Usage: java ScriptHost <filename.py> [runs] [threads]
+ *   runs the file that many times (default 1000) and prints the throughput
+ */
+public class ScriptHost implements AutoCloseable
+{
+    // Programs kept; past it an arbitrary one is dropped for each one added
+    static final int MAX_CACHED = 4096;
+
+    // Deep recursion needs more stack than a default thread has; it is
+    // reserved, not committed, until used
+    private static final long STACK_SIZE = 256L << 20;
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private final ExecutorService pool;
+    private final ModuleResolver resolver;
+    private final Supplier<Budget> budgets;
+    private final Map<String, Program> programs = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    // A compiled script. errors is empty for an admitted one.
+    public static final class Program {
+        public final String hash;
+        public final List<String> errors;
+        final Interpreter.Code code;
+
+        Program(String hash, List<String> errors, Interpreter.Code code) {
+            this.hash = hash;
+            this.errors = Collections.unmodifiableList(errors);
+            this.code = code;
+        }
+    }
+
+    // How a run ended
+    public static final class Result {
+        public final String output;             // everything it printed
+        public final MiniPythonError error;     // null when it ran to the end
+        public final String exceeded;           // the Budget limit it hit, or null
+        public final long steps;
+        public final long nanos;
+
+        Result(String output, MiniPythonError error, Budget budget, long nanos) {
+            this.output = output;
+            this.error = error;
+            this.exceeded = budget != null ? budget.getExceeded() : null;
+            this.steps = budget != null ? budget.getSteps() : 0;
+            this.nanos = nanos;
+        }
+
+        // Example: "Line 3: ZeroDivisionError: integer division or modulo by zero"
+        public String describeError() {
+            if (error == null) {
+                return null;
+            }
+            return (error.getLine() > 0 ? "Line " + error.getLine() + ": " : "") + error;
+        }
+    }
+
+    // A source that failed admission: its syntax and semantic errors
+    public static class RejectedException extends Exception {
+        public final List<String> errors;
+
+        RejectedException(List<String> errors) {
+            super(errors.isEmpty() ? "rejected" : errors.get(0));
+            this.errors = errors;
+        }
+    }
+
+    // budgets: a fresh Budget for every run, or null for none
+    public ScriptHost(int threads, ModuleResolver resolver, Supplier<Budget> budgets)
+    {
+        this.resolver = resolver;
+        this.budgets = budgets;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(null, task, "minipython-host-" + count.incrementAndGet(), STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static int defaultThreads()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses()
+    {
+        return cacheMisses.get();
+    }
+
+    // ========== ADMISSION ==========
+
+    // Rejected sources are cached too, so sending one again is as cheap
+    public Program compile(String source) throws RejectedException
+    {
+        String hash = sha256(source);
+        Program program = programs.get(hash);
+        if (program != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+            program = admit(hash, source);
+            if (programs.size() >= MAX_CACHED) {
+                Iterator<String> it = programs.keySet().iterator();
+                if (it.hasNext()) {
+                    programs.remove(it.next());
+                }
+            }
+            Program raced = programs.putIfAbsent(hash, program);
+            program = raced != null ? raced : program;
+        }
+        if (!program.errors.isEmpty()) {
+            throw new RejectedException(program.errors);
+        }
+        return program;
+    }
+
+    private static Program admit(String hash, String source)
+    {
+        List<String> errors = new ArrayList<>();
+        Start ast;
+        try {
+            RecoveringParser parser = new RecoveringParser(
+                new Lexer(new PushbackReader(new StringReader(source), 1024)));
+            ast = parser.parse();
+            for (RecoveringParser.SyntaxError error : parser.getErrors()) {
+                errors.add(error.toString());
+            }
+        } catch (LexerException | IOException e) {
+            errors.add(e.getMessage());
+            return new Program(hash, errors, null);
+        }
+        if (!errors.isEmpty()) {
+            return new Program(hash, errors, null);
+        }
+
+        // The passes of ParserTest, in its order, sharing one symbol table
+        Hashtable<String, Object> symtable = new Hashtable<>();
+        DeclarationVisitor declarationVisitor = new DeclarationVisitor(symtable);
+        declarationVisitor.setOut(DISCARD);
+        ast.apply(declarationVisitor);
+        VariableDeclarationVisitor variableVisitor = new VariableDeclarationVisitor(symtable);
+        variableVisitor.setOut(DISCARD);
+        ast.apply(variableVisitor);
+        TypeCheckerVisitor typeChecker = new TypeCheckerVisitor(symtable, null);
+        typeChecker.setOut(DISCARD);
+        ast.apply(typeChecker);
+        List<Diagnostic> diagnostics = (List<Diagnostic>) symtable.get("diagnostics");
+        if (diagnostics != null) {
+            for (Diagnostic d : diagnostics) {
+                errors.add(d.toString());
+            }
+        }
+        if (!errors.isEmpty()) {
+            return new Program(hash, errors, null);
+        }
+
+        try {
+            return new Program(hash, errors, Interpreter.compile(ast));
+        } catch (MiniPythonError e) {
+            errors.add(e.toString());
+            return new Program(hash, errors, null);
+        }
+    }
+
+    private static String sha256(String source)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // every JVM has SHA-256
+        }
+    }
+
+    // ========== RUNS ==========
+
+    public Future<Result> submit(Program program)
+    {
+        if (program.code == null) {
+            throw new IllegalArgumentException("program was not admitted: " + program.errors.get(0));
+        }
+        return pool.submit(() -> run(program));
+    }
+
+    // Runs on the calling thread
+    public Result run(Program program)
+    {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(sink, false, StandardCharsets.UTF_8);
+        Interpreter interpreter = new Interpreter(out, resolver);
+        interpreter.setFileAccess(false);
+        Budget budget = budgets != null ? budgets.get() : null;
+        interpreter.setBudget(budget);
+        MiniPythonError error = null;
+        long start = System.nanoTime();
+        try {
+            interpreter.run(program.code);
+        } catch (MiniPythonError e) {
+            error = e;
+        } catch (StackOverflowError e) {
+            error = new MiniPythonError("RecursionError", "maximum recursion depth exceeded");
+        } catch (OutOfMemoryError e) {
+            error = new MiniPythonError("MemoryError", "out of memory");
+        }
+        long nanos = System.nanoTime() - start;
+        out.flush();
+        return new Result(sink.toString(StandardCharsets.UTF_8), error, budget, nanos);
+    }
+
+    // Lets submitted runs finish
+    @Override
+    public void close()
+    {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ========== MAIN ==========
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: java ScriptHost <filename.py> [runs] [threads]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : defaultThreads();
+        ModuleResolver resolver = new ModuleResolver(Collections.singletonList(file.toAbsolutePath().getParent()));
+
+        try (ScriptHost host = new ScriptHost(threads, resolver, () -> {
+                Budget budget = new Budget();
+                budget.setTimeoutMillis(10_000);
+                budget.setMaxOutput(1 << 20);
+                return budget;
+            })) {
+            List<Future<Result>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                try {
+                    results.add(host.submit(host.compile(source)));
+                } catch (RejectedException e) {
+                    for (String error : e.errors) {
+                        System.err.println(error);
+                    }
+                    System.exit(1);
+                }
+            }
+            long failed = 0;
+            Result first = null;
+            for (Future<Result> future : results) {
+                Result result = future.get();
+                first = first != null ? first : result;
+                if (result.error != null) {
+                    failed++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.print(first.output);
+            if (first.error != null) {
+                System.err.println(first.describeError());
+            }
+            System.err.printf("%d runs on %d threads in %.1f ms: %.0f runs/s, %d failed, %d compiled, %d cache hits%n",
+                              runs, threads, elapsed / 1e6, runs / (elapsed / 1e9), failed,
+                              host.getCacheMisses(), host.getCacheHits());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.io.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+
+/*
+ * The training run for the AppCDS archive (scripts/build_startup.sh): loads
+ * and initializes every class a check or a run needs, in one JVM, so the
+ * archive dumped at exit holds them all.
+ *
+ * Each file is checked as ParserTest checks it and, when it parses, compiled
+ * for the Interpreter. Output is thrown away; errors in the files are
+ * expected, since tests/ is full of them.
+ *
+ * Usage: java -XX:ArchiveClassesAtExit=minipython.jsa StartupTraining tests/*.py
+ */
+public class StartupTraining
+{
+    public static void main(String[] args)
+    {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        int files = 0;
+        System.setOut(discard);
+        System.setErr(discard);
+        try {
+            for (String file : args) {
+                ParserTest.main(new String[] {file});
+                try {
+                    RecoveringParser parser = new RecoveringParser(
+                        new Lexer(new PushbackReader(new FileReader(file), 1024)));
+                    Start ast = parser.parse();
+                    if (parser.getErrors().isEmpty()) {
+                        Interpreter.compile(ast);
+                    }
+                } catch (Exception e) {
+                    // a file the interpreter cannot take; its classes are loaded anyway
+                }
+                files++;
+            }
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        System.out.println("Trained on " + files + " files");
+    }
+}
@@ -0,0 +1,694 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The second tier of the interpreter. Every def starts out interpreted,
+ * its Code counting its calls and the back edges its loops take; a
+ * function that passes threshold calls, or backEdgeThreshold back edges,
+ * is hot and is queued here. A background thread then writes a JVM class
+ * for it, bytecode and all (Bytecode), and defines it as a hidden class:
+ * in the interpreter's package, and unloaded once the Code is gone (before
+ * JDK 15, which has no hidden classes, an ordinary class that stays).
+ * Installing it is one volatile write to Code.compiled. Calls made from
+ * then on run the class, and a call still in the interpreter moves into it
+ * at its next back edge, since both keep the function's state in the same
+ * frame and number its steps the same.
+ *
+ * In the class each step is a label and each edge a goto, so the JVM sees
+ * one function's control flow in one method rather than the megamorphic
+ * Step.execute and Expr.execute. Names, arithmetic and small powers,
+ * comparisons, calls, indexing (counted or not), len, assignment and for
+ * loops are written out, each taking its int case first and Values behind
+ * it; the other nodes (print, def, max, a loop's Invariants, ...) are
+ * called as they are. The module's code runs once and is never compiled.
+ *
+ * Compiled code charges a Budget as the interpreter does, and is not used
+ * while profiling. A threshold of 0 compiles every function on its first
+ * call, in the calling thread: the way to test the second tier on its own.
+ *
+ * Transitions are logged, if there is a log, and counted:
+ *     tier: fib (line 1) hot after 2000 calls, 0 back edges
+ *     tier: fib (line 1) compiled in 3 ms, 5 steps, 0 nodes left to the interpreter
+ *     tier: loop (line 6) entered compiled code at step 4, mid-call
+ *     tier: 2 functions compiled in 5 ms, 0 failed, 1 entered mid-call
+ */
+public final class TierCompiler
+{
+    public static final int THRESHOLD = 2000;
+    static final int BACK_EDGES_PER_CALL = 10;  // a loop's trip counts for this much less than a call
+
+    // Code.tier
+    static final int INTERPRETED = 0;
+    static final int QUEUED = 1;
+    static final int COMPILED = 2;
+    static final int FAILED = 3;                // or the module: stays interpreted
+
+    // A function whose code comes to more bytes stays interpreted: the JIT
+    // leaves a method this large to the JVM's own interpreter
+    static final int MAX_BYTES = 8000;
+
+    private static TierCompiler shared;
+
+    final int threshold;
+    final int backEdgeThreshold;
+    private final PrintStream log;
+    private final ExecutorService background;   // null: compiles in the calling thread
+    private final AtomicInteger hot = new AtomicInteger();
+    private final AtomicInteger compiled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger enteredAtLoop = new AtomicInteger();
+    private final AtomicLong compileNanos = new AtomicLong();
+
+    // log: where transitions are written, or null
+    public TierCompiler(int threshold, PrintStream log)
+    {
+        this.threshold = threshold;
+        this.backEdgeThreshold = threshold * BACK_EDGES_PER_CALL;
+        this.log = log;
+        this.background = threshold == 0 ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "minipython-tier-compiler");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // The one every Interpreter starts with: THRESHOLD, no log
+    public static synchronized TierCompiler shared()
+    {
+        if (shared == null) {
+            shared = new TierCompiler(THRESHOLD, null);
+        }
+        return shared;
+    }
+
+    // ========== TRANSITIONS ==========
+
+    // A Code passed a threshold: queues it, once. Returns its compiled code,
+    // if it has some by now.
+    Interpreter.Compiled hot(Interpreter.Code code)
+    {
+        if (code.tier != INTERPRETED) {
+            return code.compiled;
+        }
+        synchronized (code) {
+            if (code.tier != INTERPRETED) {
+                return code.compiled;
+            }
+            if (code.name.equals("<module>")) {
+                code.tier = FAILED;
+                return null;
+            }
+            code.tier = QUEUED;
+        }
+        hot.incrementAndGet();
+        log(code, "hot after " + code.invocations + " calls, " + code.backEdges + " back edges");
+        if (background == null) {
+            compile(code);
+        } else {
+            background.execute(() -> compile(code));
+        }
+        return code.compiled;
+    }
+
+    void enteredAtLoop(Interpreter.Code code, int pc)
+    {
+        if (enteredAtLoop.incrementAndGet() <= 100) {
+            log(code, "entered compiled code at step " + pc + ", mid-call");
+        }
+    }
+
+    private void compile(Interpreter.Code code)
+    {
+        long start = System.nanoTime();
+        try {
+            Generator generator = new Generator(code);
+            byte[] bytes = generator.generate();
+            Interpreter.Compiled result = define(generator.className, bytes, generator.nodes.toArray());
+            long nanos = System.nanoTime() - start;
+            compileNanos.addAndGet(nanos);
+            compiled.incrementAndGet();
+            synchronized (code) {
+                code.tier = COMPILED;
+                code.compiled = result;
+            }
+            log(code, "compiled in " + nanos / 1_000_000 + " ms, " + code.steps.length + " steps, "
+                      + generator.delegated + (generator.delegated == 1 ? " node" : " nodes") + " left to the interpreter");
+        } catch (Exception | LinkageError | StackOverflowError e) {
+            failed.incrementAndGet();
+            synchronized (code) {
+                code.tier = FAILED;
+            }
+            log(code, "stays interpreted: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+        }
+    }
+
+    private void log(Interpreter.Code code, String message)
+    {
+        if (log != null) {
+            log.println("tier: " + code.name + " (line " + code.line + ") " + message);
+        }
+    }
+
+    // ========== METRICS ==========
+
+    // Functions that passed a threshold, and of those the ones compiled and
+    // the ones that failed; the rest are still queued
+    public int getHot()
+    {
+        return hot.get();
+    }
+
+    public int getCompiled()
+    {
+        return compiled.get();
+    }
+
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    // Calls that moved from the interpreter into compiled code at a loop
+    public int getEnteredAtLoop()
+    {
+        return enteredAtLoop.get();
+    }
+
+    public long getCompileMillis()
+    {
+        return compileNanos.get() / 1_000_000;
+    }
+
+    // Example: "2 functions compiled in 650 ms, 0 failed, 1 entered mid-call"
+    public String summary()
+    {
+        return getCompiled() + (getCompiled() == 1 ? " function" : " functions") + " compiled in " + getCompileMillis()
+               + " ms, " + getFailed() + " failed, " + getEnteredAtLoop() + " entered mid-call";
+    }
+
+    public void printSummary()
+    {
+        if (log != null) {
+            log.println("tier: " + summary());
+        }
+    }
+
+    // ========== CODE GENERATION ==========
+
+    // One Code's class. Each step is a label, and its next step a goto, so
+    // the function's control flow is the method's; a call that starts in
+    // the middle (pc > entry) jumps to its step through a tableswitch.
+    //
+    //     step 2:   ran++; if (!compare(LT, local(s[0], frame, "n"), n0)) goto step4; goto step3
+    //     step 3:   ran++; frame.result = local(s[0], frame, "n"); charge; return frame.result
+    //
+    // Nodes the class uses are passed to its constructor and kept in final
+    // fields, which the JIT trusts in a hidden class, so constants and call
+    // sites fold into the code.
+    private static final class Generator {
+        static final String FRAME = "Interpreter$Frame";
+        static final String OBJECT = "Ljava/lang/Object;";
+        static final String F = "L" + FRAME + ";";
+
+        // execute's locals
+        static final int THIS = 0, FRAME_LOCAL = 1, PC = 2, BUDGET = 3, SLOTS = 4, RAN = 5;
+
+        final Interpreter.Code code;
+        final String className;
+        final Bytecode bytecode;
+        final List<Object> nodes = new ArrayList<>();
+        final List<String> nodeTypes = new ArrayList<>();
+        Bytecode.Label[] steps;
+        int delegated;
+
+        Generator(Interpreter.Code code) {
+            this.code = code;
+            this.className = "Compiled" + code.id + "_" + code.name;
+            this.bytecode = new Bytecode(className, "Interpreter$Compiled");
+        }
+
+        byte[] generate() {
+            Bytecode b = bytecode;
+            b.beginMethod(0, "execute", "(" + F + "ILBudget;)" + OBJECT,
+                          new Object[] {className, FRAME, Bytecode.INT, "Budget", "[" + OBJECT, Bytecode.INT});
+            b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            b.field(Bytecode.GETFIELD, FRAME, "slots", "[" + OBJECT);
+            b.local(Bytecode.ASTORE, SLOTS, -1);
+            b.push(0);
+            b.local(Bytecode.ISTORE, RAN, -1);
+            steps = new Bytecode.Label[code.steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                steps[i] = b.label();
+            }
+            Bytecode.Label noStep = b.label();
+            b.local(Bytecode.ILOAD, PC, 1);
+            b.tableswitch(noStep, steps);
+
+            int[] starts = new int[steps.length];
+            int[] ends = new int[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                b.place(steps[i]);
+                starts[i] = b.size();
+                b.iinc(RAN, 1);
+                step(i, code.steps[i]);
+                ends[i] = b.size();
+            }
+            b.place(noStep);
+            b.type(Bytecode.NEW, "java/lang/IllegalStateException");
+            b.op(Bytecode.DUP, 1);
+            b.invoke(Bytecode.INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V");
+            b.op(Bytecode.ATHROW, -1);
+
+            // An error sets its line, if it has none yet, to its step's
+            Map<Integer, Bytecode.Label> lines = new HashMap<>();
+            for (int i = 0; i < steps.length; i++) {
+                int line = code.steps[i].line;
+                Bytecode.Label handler = lines.get(line);
+                if (handler == null) {
+                    handler = b.label();
+                    lines.put(line, handler);
+                    b.place(handler, "MiniPythonError");
+                    b.op(Bytecode.DUP, 1);
+                    b.push(line);
+                    b.invoke(Bytecode.INVOKEVIRTUAL, "MiniPythonError", "setLine", "(I)V");
+                    b.op(Bytecode.ATHROW, -1);
+                }
+                b.handler(starts[i], ends[i], handler, "MiniPythonError");
+            }
+            if (b.size() > MAX_BYTES) {
+                throw new IllegalStateException(b.size() + " bytes of code, more than the JIT compiles");
+            }
+            b.endMethod(RAN + 1);
+
+            b.beginMethod(0, "<init>", "([" + OBJECT + ")V", new Object[] {className, "[" + OBJECT});
+            b.local(Bytecode.ALOAD, 0, 1);
+            b.invoke(Bytecode.INVOKESPECIAL, "Interpreter$Compiled", "<init>", "()V");
+            for (int i = 0; i < nodes.size(); i++) {
+                b.declareField("n" + i, nodeTypes.get(i));
+                b.local(Bytecode.ALOAD, 0, 1);
+                b.local(Bytecode.ALOAD, 1, 1);
+                b.push(i);
+                b.op(Bytecode.AALOAD, -1);
+                if (!nodeTypes.get(i).equals(OBJECT)) {
+                    b.type(Bytecode.CHECKCAST, internalName(nodes.get(i)));
+                }
+                b.field(Bytecode.PUTFIELD, className, "n" + i, nodeTypes.get(i));
+            }
+            b.op(Bytecode.RETURN, 0);
+            b.endMethod(2);
+            return b.toByteArray();
+        }
+
+        // ---- steps
+
+        private void step(int i, Interpreter.Step step) {
+            Bytecode b = bytecode;
+            if (step instanceof Interpreter.Jump) {
+                edge(i, ((Interpreter.Jump) step).next);
+            } else if (step instanceof Interpreter.Branch) {
+                Interpreter.Branch branch = (Interpreter.Branch) step;
+                Bytecode.Label otherwise = b.label();
+                branch(branch.condition, otherwise, false);
+                edge(i, branch.ifTrue);
+                b.place(otherwise);
+                edge(i, branch.ifFalse);
+            } else if (step instanceof Interpreter.Return) {
+                b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+                expr(((Interpreter.Return) step).value);
+                b.field(Bytecode.PUTFIELD, FRAME, "result", OBJECT);
+                edge(i, -1);
+            } else if (step instanceof Interpreter.Evaluate) {
+                expr(((Interpreter.Evaluate) step).expr);
+                b.op(Bytecode.POP, -1);
+                edge(i, ((Interpreter.Evaluate) step).next);
+            } else if (step instanceof Interpreter.Assign) {
+                Interpreter.Assign assign = (Interpreter.Assign) step;
+                slot(assign.slot);
+                expr(assign.value);
+                b.op(Bytecode.AASTORE, -3);
+                edge(i, assign.next);
+            } else if (step instanceof Interpreter.OpAssign) {
+                Interpreter.OpAssign assign = (Interpreter.OpAssign) step;
+                slot(assign.slot);
+                b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+                b.push(assign.op);
+                local(assign.slot, assign.name);
+                expr(assign.value);
+                b.invoke(Bytecode.INVOKESTATIC, "TierCompiler", "update", "(" + F + "C" + OBJECT + OBJECT + ")" + OBJECT);
+                b.op(Bytecode.AASTORE, -3);
+                edge(i, assign.next);
+            } else if (step instanceof Interpreter.SetItem) {
+                Interpreter.SetItem set = (Interpreter.SetItem) step;
+                expr(set.list);
+                expr(set.index);
+                expr(set.value);
+                b.invoke(Bytecode.INVOKESTATIC, "Interpreter$SetItem", "store", "(" + OBJECT + OBJECT + OBJECT + ")V");
+                edge(i, set.next);
+            } else if (step instanceof Interpreter.ForStart && ((Interpreter.ForStart) step).parallel != null) {
+                // the loop may run in parallel and go straight to its exit
+                Interpreter.ForStart start = (Interpreter.ForStart) step;
+                Bytecode.Label parallel = b.label();
+                delegate(start, "execute", "(" + F + ")I");
+                b.push(start.header);
+                b.jump(Bytecode.IF_ICMPNE, parallel);
+                edge(i, start.header);
+                b.place(parallel);
+                edge(i, start.exit);
+            } else if (step instanceof Interpreter.ForStart) {
+                Interpreter.ForStart start = (Interpreter.ForStart) step;
+                slot(start.iterator);
+                expr(start.iterable);
+                b.invoke(Bytecode.INVOKESTATIC, "Values", "iterator", "(" + OBJECT + ")Ljava/util/Iterator;");
+                b.op(Bytecode.AASTORE, -3);
+                edge(i, start.header);
+            } else if (step instanceof Interpreter.ForTest) {
+                Interpreter.ForTest test = (Interpreter.ForTest) step;
+                Bytecode.Label done = b.label();
+                iterator(test.iterator);
+                b.invoke(Bytecode.INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z");
+                b.jump(Bytecode.IFEQ, done);
+                edge(i, test.body);
+                b.place(done);
+                edge(i, test.exit);
+            } else if (step instanceof Interpreter.ForBind) {
+                Interpreter.ForBind bind = (Interpreter.ForBind) step;
+                slot(bind.variable);
+                iterator(bind.iterator);
+                b.invoke(Bytecode.INVOKEINTERFACE, "java/util/Iterator", "next", "()" + OBJECT);
+                b.op(Bytecode.AASTORE, -3);
+                edge(i, bind.next);
+            } else {
+                // print, assert, def, import and a loop's entry run as they are; each goes on to its one next step
+                int next;
+                if (step instanceof Interpreter.Print) {
+                    next = ((Interpreter.Print) step).next;
+                } else if (step instanceof Interpreter.Assert) {
+                    next = ((Interpreter.Assert) step).next;
+                } else if (step instanceof Interpreter.Def) {
+                    next = ((Interpreter.Def) step).next;
+                } else if (step instanceof Interpreter.Import) {
+                    next = ((Interpreter.Import) step).next;
+                } else if (step instanceof Interpreter.EnterLoop) {
+                    next = ((Interpreter.EnterLoop) step).next;
+                } else {
+                    throw new IllegalStateException("no code for " + step.getClass().getSimpleName());
+                }
+                delegate(step, "execute", "(" + F + ")I");
+                b.op(Bytecode.POP, -1);
+                edge(i, next);
+            }
+        }
+
+        // From step i to next: a loop's back edge or the return (next <= i)
+        // charges the budget first, as Code.executeInstrumented does
+        private void edge(int i, int next) {
+            Bytecode b = bytecode;
+            if (next <= i) {
+                Bytecode.Label free = b.label();
+                b.local(Bytecode.ALOAD, BUDGET, 1);
+                b.jump(Bytecode.IFNULL, free);
+                b.local(Bytecode.ALOAD, BUDGET, 1);
+                b.local(Bytecode.ILOAD, RAN, 1);
+                b.invoke(Bytecode.INVOKEVIRTUAL, "Budget", "charge", "(I)V");
+                b.push(0);
+                b.local(Bytecode.ISTORE, RAN, -1);
+                b.place(free);
+            }
+            if (next < 0) {
+                b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+                b.field(Bytecode.GETFIELD, FRAME, "result", OBJECT);
+                b.op(Bytecode.ARETURN, -1);
+            } else {
+                b.jump(Bytecode.GOTO, steps[next]);
+            }
+        }
+
+        // Pushes the slots and the index, for an aastore
+        private void slot(int slot) {
+            bytecode.local(Bytecode.ALOAD, SLOTS, 1);
+            bytecode.push(slot);
+        }
+
+        private void iterator(int slot) {
+            slot(slot);
+            bytecode.op(Bytecode.AALOAD, -1);
+            bytecode.type(Bytecode.CHECKCAST, "java/util/Iterator");
+        }
+
+        // ---- expressions, each pushing its value
+
+        private void expr(Interpreter.Expr expr) {
+            Bytecode b = bytecode;
+            if (expr instanceof Interpreter.Constant) {
+                node(((Interpreter.Constant) expr).value);
+            } else if (expr instanceof Interpreter.Local) {
+                local(((Interpreter.Local) expr).slot, ((Interpreter.Local) expr).name);
+            } else if (expr instanceof Interpreter.Outer) {
+                Interpreter.Outer outer = (Interpreter.Outer) expr;
+                frame(outer.depth);
+                b.field(Bytecode.GETFIELD, FRAME, "slots", "[" + OBJECT);
+                b.push(outer.slot);
+                b.op(Bytecode.AALOAD, -1);
+                frame(outer.depth);
+                b.push(outer.name);
+                b.invoke(Bytecode.INVOKESTATIC, "TierCompiler", "local", "(" + OBJECT + F + "Ljava/lang/String;)" + OBJECT);
+            } else if (expr instanceof Interpreter.Binary) {
+                Interpreter.Binary binary = (Interpreter.Binary) expr;
+                b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+                b.push(binary.op);
+                expr(binary.left);
+                expr(binary.right);
+                b.invoke(Bytecode.INVOKESTATIC, "TierCompiler", "arithmetic", "(" + F + "C" + OBJECT + OBJECT + ")" + OBJECT);
+            } else if (expr instanceof Interpreter.Power) {
+                b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+                expr(((Interpreter.Power) expr).base);
+                b.push(((Interpreter.Power) expr).exponent);
+                b.invoke(Bytecode.INVOKESTATIC, "Interpreter$Power", "power", "(" + F + OBJECT + "I)" + OBJECT);
+            } else if (expr instanceof Interpreter.Call) {
+                call((Interpreter.Call) expr);
+            } else if (expr instanceof Interpreter.Index) {
+                expr(((Interpreter.Index) expr).list);
+                expr(((Interpreter.Index) expr).index);
+                b.invoke(Bytecode.INVOKESTATIC, "Values", "index", "(" + OBJECT + OBJECT + ")" + OBJECT);
+            } else if (expr instanceof Interpreter.CountedIndex) {
+                expr(((Interpreter.CountedIndex) expr).list);
+                expr(((Interpreter.CountedIndex) expr).index);
+                b.invoke(Bytecode.INVOKESTATIC, "Interpreter$CountedIndex", "get", "(" + OBJECT + OBJECT + ")" + OBJECT);
+            } else if (expr instanceof Interpreter.Builtin && ((Interpreter.Builtin) expr).name.equals("len")) {
+                expr(((Interpreter.Builtin) expr).argument);
+                b.invoke(Bytecode.INVOKESTATIC, "Values", "len", "(" + OBJECT + ")J");
+                b.invoke(Bytecode.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+            } else {
+                delegate(expr, "execute", "(" + F + ")" + OBJECT);
+            }
+        }
+
+        // callable(callee), its frame from the call site's cache, the
+        // arguments stored one by one, and invoke, all on the stack.
+        // Example: "fib(n - 1)"
+        private void call(Interpreter.Call call) {
+            Bytecode b = bytecode;
+            expr(call.callee);
+            b.invoke(Bytecode.INVOKESTATIC, "Interpreter", "callable", "(" + OBJECT + ")LInterpreter$FunctionObject;");
+            b.op(Bytecode.DUP, 1);                                  // f f
+            node(call);
+            b.op(Bytecode.SWAP, 0);                                 // f site f
+            b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            b.field(Bytecode.GETFIELD, FRAME, "interpreter", "LInterpreter;");
+            b.invoke(Bytecode.INVOKEVIRTUAL, "Interpreter$Call", "slots",
+                     "(LInterpreter$FunctionObject;LInterpreter;)[" + OBJECT);   // f a
+            for (int i = 0; i < call.arguments.length; i++) {
+                b.op(Bytecode.DUP, 1);
+                b.push(i);
+                expr(call.arguments[i]);
+                b.op(Bytecode.AASTORE, -3);
+            }
+            b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            b.field(Bytecode.GETFIELD, FRAME, "interpreter", "LInterpreter;");
+            b.invoke(Bytecode.INVOKESTATIC, "Interpreter", "invoke",
+                     "(LInterpreter$FunctionObject;[" + OBJECT + "LInterpreter;)" + OBJECT);
+        }
+
+        // local(s[slot], frame, name), which raises UnboundLocalError for UNSET
+        private void local(int slot, String name) {
+            Bytecode b = bytecode;
+            slot(slot);
+            b.op(Bytecode.AALOAD, -1);
+            b.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            b.push(name);
+            b.invoke(Bytecode.INVOKESTATIC, "TierCompiler", "local", "(" + OBJECT + F + "Ljava/lang/String;)" + OBJECT);
+        }
+
+        // frame.parent, depth times
+        private void frame(int depth) {
+            bytecode.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            for (int i = 0; i < depth; i++) {
+                bytecode.field(Bytecode.GETFIELD, FRAME, "parent", F);
+            }
+        }
+
+        // ---- conditions, each jumping to target when it comes out as when
+
+        private void branch(Interpreter.Cond cond, Bytecode.Label target, boolean when) {
+            Bytecode b = bytecode;
+            if (cond instanceof Interpreter.Compare) {
+                Interpreter.Compare compare = (Interpreter.Compare) cond;
+                b.push(compare.op);
+                expr(compare.left);
+                expr(compare.right);
+                b.invoke(Bytecode.INVOKESTATIC, "TierCompiler", "compare", "(I" + OBJECT + OBJECT + ")Z");
+                b.jump(when ? Bytecode.IFNE : Bytecode.IFEQ, target);
+            } else if (cond instanceof Interpreter.Logical) {
+                Interpreter.Logical logical = (Interpreter.Logical) cond;
+                if (logical.and != when) {
+                    // and, jumping when false; or, jumping when true: either side decides
+                    branch(logical.left, target, when);
+                    branch(logical.right, target, when);
+                } else {
+                    Bytecode.Label decided = b.label();
+                    branch(logical.left, decided, !when);
+                    branch(logical.right, target, when);
+                    b.place(decided);
+                }
+            } else if (cond instanceof Interpreter.Not) {
+                branch(((Interpreter.Not) cond).operand, target, !when);
+            } else if (cond instanceof Interpreter.Literal) {
+                if (((Interpreter.Literal) cond).value == when) {
+                    b.jump(Bytecode.GOTO, target);
+                }
+            } else {
+                delegate(cond, "test", "(" + F + ")Z");
+                b.jump(when ? Bytecode.IFNE : Bytecode.IFEQ, target);
+            }
+        }
+
+        // ---- nodes
+
+        // node.method(frame), for a node compiled code leaves as it is
+        private void delegate(Object node, String method, String descriptor) {
+            delegated++;
+            node(node);
+            bytecode.local(Bytecode.ALOAD, FRAME_LOCAL, 1);
+            bytecode.invoke(Bytecode.INVOKEVIRTUAL, internalName(node), method, descriptor);
+        }
+
+        // Pushes the field holding the node, typed as exactly as it can be
+        private void node(Object node) {
+            String type = node != null && node.getClass().getEnclosingClass() == Interpreter.class
+                          ? "L" + internalName(node) + ";"
+                          : OBJECT;                     // a constant
+            nodes.add(node);
+            nodeTypes.add(type);
+            bytecode.local(Bytecode.ALOAD, THIS, 1);
+            bytecode.field(Bytecode.GETFIELD, className, "n" + (nodes.size() - 1), type);
+        }
+
+        private static String internalName(Object node) {
+            return node.getClass().getName().replace('.', '/');
+        }
+    }
+
+    // ========== LOADING ==========
+
+    // Lookup.defineHiddenClass(bytes, true) and its empty options, on a JDK
+    // that has them (15 and later); null before that. Found by reflection,
+    // so the sources still build on JDK 11.
+    private static final java.lang.reflect.Method DEFINE_HIDDEN;
+    private static final Object NO_OPTIONS;
+
+    static {
+        java.lang.reflect.Method method = null;
+        Object options = null;
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = java.lang.reflect.Array.newInstance(option, 0);
+            method = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+        } catch (ReflectiveOperationException e) {
+            options = null;                     // JDK 11 to 14
+        }
+        DEFINE_HIDDEN = method;
+        NO_OPTIONS = options;
+    }
+
+    // In this package, which reaches the interpreter's package-private
+    // nodes: as a hidden class, unloaded with the last reference to it, or
+    // before JDK 15 as an ordinary class of the interpreter's loader, which
+    // stays loaded (class names are unique by Code.id)
+    private static Interpreter.Compiled define(String className, byte[] bytes, Object[] nodes) throws Exception
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Class<?> type;
+        if (DEFINE_HIDDEN != null) {
+            try {
+                lookup = (MethodHandles.Lookup) DEFINE_HIDDEN.invoke(lookup, bytes, true, NO_OPTIONS);
+            } catch (java.lang.reflect.InvocationTargetException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw (Error) e.getCause();
+            }
+            type = lookup.lookupClass();
+        } else {
+            type = lookup.defineClass(bytes);
+        }
+        try {
+            return (Interpreter.Compiled) lookup.findConstructor(type, MethodType.methodType(void.class, Object[].class))
+                                                .invoke(nodes);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(className + ": " + e, e);
+        }
+    }
+
+    // ========== RUNTIME ==========
+    // Called by compiled code. Each takes its int case first, as the
+    // interpreter's specialized nodes do, and otherwise does what they do.
+
+    static Object local(Object value, Interpreter.Frame frame, String name)
+    {
+        if (value == Interpreter.UNSET) {
+            throw Interpreter.unbound(frame, name);
+        }
+        return value;
+    }
+
+    static Object arithmetic(Interpreter.Frame frame, char op, Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long && op != '^') {
+            Object result = Interpreter.longArithmetic(op, (Long) a, (Long) b);
+            if (result != null) {
+                return result;
+            }
+        }
+        return Interpreter.genericArithmetic(frame, op, a, b);
+    }
+
+    static Object update(Interpreter.Frame frame, char op, Object current, Object right)
+    {
+        if (current instanceof Long && right instanceof Long && op != '^') {
+            Object result = Interpreter.longArithmetic(op, (Long) current, (Long) right);
+            if (result != null) {
+                return result;
+            }
+        }
+        return Interpreter.OpAssign.update(frame, op, current, right);
+    }
+
+    static boolean compare(int op, Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            return Interpreter.Compare.holds(op, Long.compare((Long) a, (Long) b));
+        }
+        if (op == Interpreter.Compare.EQ || op == Interpreter.Compare.NE) {
+            return Values.equal(a, b) == (op == Interpreter.Compare.EQ);
+        }
+        return Interpreter.Compare.holds(op, a, b);
+    }
+}
@@ -0,0 +1,34 @@
+import java.io.*;
+import java.util.*;
+import minipython.lexer.Lexer;
+import minipython.node.*;
+
+/*
+ * Feeds an already lexed token list to the generated Parser, so the same
+ * tokens can be parsed again without lexing the source again.
+ * The list must end with an EOF token.
+ *
+ * Example: new Parser(new TokenListLexer(tokens)).parse()
+ */
+public class TokenListLexer extends Lexer
+{
+    private final List<Token> tokens;
+    private int next = 0;
+
+    public TokenListLexer(List<Token> tokens)
+    {
+        super(new PushbackReader(new StringReader(""), 1));
+        this.tokens = tokens;
+    }
+
+    protected Token getToken()
+    {
+        return tokens.get(Math.min(next++, tokens.size() - 1));
+    }
+
+    // The token the parser read last, i.e. the one it failed on
+    public Token last()
+    {
+        return tokens.get(Math.min(next, tokens.size()) - 1);
+    }
+}
@@ -1,39 +1,105 @@
+import java.io.*;
 import java.util.*;
 import minipython.analysis.*;
 import minipython.node.*;
 
-public class TypeCheckerVisitor extends DepthFirstAdapter {
+public class TypeCheckerVisitor extends IterativeDepthFirstAdapter {
     
     private Hashtable<String, Object> symtable;
     private List<String> sourceLines; 
     private Hashtable<Node, String> nodeTypes = new Hashtable<>();
-    private Hashtable<String, Hashtable<String, String>> variableTypes = new Hashtable<>();
-    private Hashtable<String, String> functionReturnTypes = new Hashtable<>();
+    // Filled by ReturnTypeInference before the walk, so later defs are known too
+    private Hashtable<String, String> functionReturnTypes = null;
+    // Variable types where each statement starts, following control flow
+    private FlowTypes flowTypes = null;
     
     //Track which nodes are function calls
     private Hashtable<Node, Boolean> isFunctionCallNode = new Hashtable<>();
     // Store function names for nodes
     private Hashtable<Node, String> nodeFunctionNames = new Hashtable<>();
     
-    private Stack<String> currentScope = new Stack<>();
-    private String currentFunction = null;
+    private PrintStream out = System.out;
 
    
     public TypeCheckerVisitor(Hashtable<String, Object> symtable, List<String> sourceLines) {
         this.symtable = symtable;
         this.sourceLines = sourceLines;
-        this.currentScope.push("global");
-        this.variableTypes.put("global", new Hashtable<>());
     }
     
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+    
+    // Uses these return types instead of inferring them in inStart
+    void setReturnTypes(Hashtable<String, String> returnTypes) {
+        this.functionReturnTypes = returnTypes;
+    }
+    
+    // Uses these variable types instead of solving them in inStart
+    void setFlowTypes(FlowTypes flowTypes) {
+        this.flowTypes = flowTypes;
+    }
+    
+    // Types a single expression. Example: typeOf(<"a" + 1>) → "error"
+    String typeOf(Node expr) {
+        nodeTypes.clear();
+        isFunctionCallNode.clear();
+        nodeFunctionNames.clear();
+        expr.apply(this);
+        return getNodeType(expr);
+    }
+    
+    // Like typeOf, with the types of the nodes inside the expression too
+    Hashtable<Node, String> typesOf(Node expr) {
+        typeOf(expr);
+        return new Hashtable<>(nodeTypes);
+    }
+    
+    // message starts with the rule. Example: "[Rule 4] Type mismatch in ..."
     private void printError(int line, String message) {
-        System.out.println("Line " + line + ": " + message);
+        out.println("Line " + line + ": " + message);
+        int close = message.indexOf(']');
+        if (message.startsWith("[") && close > 0) {
+            Diagnostic.report(symtable, line, message.substring(1, close), message.substring(close + 1).trim());
+        }
         
         if (sourceLines != null && line > 0 && line <= sourceLines.size()) {
             String code = sourceLines.get(line - 1).trim();
-            System.out.println("    > " + code);
+            out.println("    > " + code);
         }
-        System.out.println(); 
+        out.println(); 
+    }
+    
+    // Every call must see its callee's return type, wherever the callee is defined,
+    // and every variable the types it can have at that point of the program
+    @Override
+    public void inStart(Start node) {
+        if (functionReturnTypes == null) {
+            functionReturnTypes = ReturnTypeInference.infer(node, symtable);
+        }
+        if (flowTypes == null) {
+            flowTypes = new FlowTypes(ControlFlowGraph.of(node, symtable), functionReturnTypes, symtable);
+            flowTypes.solveAll();
+        }
+    }
+    
+    // Publishes the inferred return types so other passes and importing modules can use them
+    @Override
+    public void outStart(Start node) {
+        symtable.put("returnTypes", functionReturnTypes);
+    }
+    
+    // Returns the module bound to an import alias when the call is "alias.func(...)", else null
+    private ModuleInterface getImportedModule(Node callNode) {
+        if (!(callNode.parent() instanceof AIdDotFuncValuenode)) {
+            return null;
+        }
+        Hashtable<String, ModuleInterface> imports = 
+            (Hashtable<String, ModuleInterface>) symtable.get("imports");
+        if (imports == null) {
+            return null;
+        }
+        return imports.get(((AIdDotFuncValuenode) callNode.parent()).getObj().getText().trim());
     }
 
     private void setNodeType(Node node, String type) {
@@ -45,44 +111,15 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         return type;
     }
 
-    private void setVarType(String varName, String type) {
-        String scope = currentScope.peek();
-        if (!variableTypes.containsKey(scope)) {
-            variableTypes.put(scope, new Hashtable<>());
-        }
-        variableTypes.get(scope).put(varName, type);
-    }
-
-    private String getVarType(String varName) {
-        String scope = currentScope.peek();
-        if (variableTypes.containsKey(scope) && variableTypes.get(scope).containsKey(varName)) {
-            return variableTypes.get(scope).get(varName);
-        }
-        if (variableTypes.containsKey("global") && variableTypes.get("global").containsKey(varName)) {
-            return variableTypes.get("global").get(varName);
-        }
-        return "unknown"; 
-    }
-    
-    @Override
-    public void inADefFuncFunction(ADefFuncFunction node) {
-        currentFunction = node.getName().getText().trim();
-        currentScope.push(currentFunction);
-        variableTypes.put(currentFunction, new Hashtable<>());
-    }
-
-    @Override
-    public void outADefFuncFunction(ADefFuncFunction node) {
-        if (currentFunction != null && !functionReturnTypes.containsKey(currentFunction)) {
-            functionReturnTypes.put(currentFunction, "none");
-        }
-        
-        currentScope.pop();
-        currentFunction = currentScope.isEmpty() || currentScope.peek().equals("global") ? null : currentScope.peek();
+    // Example: for "print x" after "x = 5" → "int"
+    private String getVarType(Node at, String varName) {
+        return flowTypes == null ? "unknown" : flowTypes.typeAt(at, varName);
     }
 
     // ================= LEAF NODES =================
     
+    // Ints are unbounded (see Ints), so any literal is an "int" and so is
+    // the result of arithmetic on ints: there is no overflow to report
     @Override
     public void outAIntegerLiteralValuenode(AIntegerLiteralValuenode node) {
         setNodeType(node, "int");
@@ -111,7 +148,7 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
     @Override
     public void outAIdentifierValuenode(AIdentifierValuenode node) {
         String name = node.getName().getText().trim();
-        String type = getVarType(name);
+        String type = getVarType(node, name);
         setNodeType(node, type);
     }
     
@@ -169,6 +206,18 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         }
     }
     
+    // Calls into imported modules carry the callee's exported return type
+    // Example: "sh.label() + 1" where label returns string
+    @Override
+    public void outAIdDotFuncValuenode(AIdDotFuncValuenode node) {
+        if (getImportedModule(node.getCall()) == null) {
+            return;
+        }
+        setNodeType(node, getNodeType(node.getCall()));
+        isFunctionCallNode.put(node, true);
+        nodeFunctionNames.put(node, node.getObj().getText().trim() + "." + nodeFunctionNames.get(node.getCall()));
+    }
+    
     @Override
     public void outAFuncCallExpressionValue(AFuncCallExpressionValue node) {
         String type = getNodeType(node.getCall());
@@ -197,13 +246,6 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
 
     // ================= ASSIGNMENTS =================
 
-    @Override
-    public void outAAssignStatementStatement(AAssignStatementStatement node) {
-        String varName = node.getId().getText().trim();
-        String exprType = getNodeType(node.getExpr());
-        setVarType(varName, exprType);
-    }
-    
     @Override
     public void outAMineqStatementStatement(AMineqStatementStatement node) { 
         checkOpAssign(node.getId(), node.getExpr(), "-="); 
@@ -226,10 +268,14 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
 
     private void checkOpAssign(Token id, PExpression expr, String op) {
         String varName = id.getText().trim();
-        String currentType = getVarType(varName);
+        String currentType = getVarType(id, varName);
         String exprType = getNodeType(expr);
         int line = id.getLine();
         
+        // Depends on a return type not inferred yet (see ReturnTypeInference)
+        if (currentType.equals(ReturnTypeInference.BOTTOM) || exprType.equals(ReturnTypeInference.BOTTOM)) {
+            return;
+        }
         if (currentType.equals("none") || exprType.equals("none")) {
              printError(line, "[Rule 5] Operation '" + op + "' cannot use 'None'.");
         } 
@@ -246,8 +292,12 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         String op = opToken.getText();
         int line = opToken.getLine();
           
+        // Depends on a return type not inferred yet (see ReturnTypeInference)
+        if (lType.equals(ReturnTypeInference.BOTTOM) || rType.equals(ReturnTypeInference.BOTTOM)) {
+            setNodeType(node, ReturnTypeInference.BOTTOM);
+        }
         // Rule 5: None check
-        if (lType.equals("none") || rType.equals("none")) {
+        else if (lType.equals("none") || rType.equals("none")) {
             printError(line, "[Rule 5] Operation '" + op + "' cannot be performed with 'None'.");
             setNodeType(node, "error");
         } 
@@ -351,16 +401,6 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         checkArithmetic(node, node.getLeft(), node.getRight(), node.getOp());
     }
     
-    // ================= RETURN STATEMENTS =================
-    
-    @Override
-    public void outAReturnStatementStatement(AReturnStatementStatement node) {
-        if (currentFunction != null) {
-            String returnType = getNodeType(node.getExpr());
-            functionReturnTypes.put(currentFunction, returnType);
-        }
-    }
-
     // ================= FUNCTION CALLS =================
 
     @Override
@@ -384,6 +424,10 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         }
         
         String returnType = functionReturnTypes.getOrDefault(funcName, "unknown");
+        ModuleInterface module = getImportedModule(callNode);
+        if (module != null) {
+            returnType = module.getReturnTypes().getOrDefault(funcName, "unknown");
+        }
         if (funcName.equals("len") || funcName.equals("ascii")) returnType = "int";
         if (funcName.equals("type")) returnType = "string";
         
@@ -414,6 +458,12 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
         // Rule 3: Argument count check
         Hashtable<String, DeclarationVisitor.FunctionInfo> functions = 
             (Hashtable<String, DeclarationVisitor.FunctionInfo>) symtable.get("functions");
+        
+        // Calls into an imported module are checked against that module's signatures
+        ModuleInterface module = getImportedModule(callNode);
+        if (module != null) {
+            functions = module.getFunctions();
+        }
             
         if (functions != null && functions.containsKey(funcName)) {
             DeclarationVisitor.FunctionInfo info = functions.get(funcName);
@@ -437,10 +487,11 @@ public class TypeCheckerVisitor extends DepthFirstAdapter {
     }
 
     private int countArgsTail(PCallArgsTail tail) {
-        if (tail instanceof AContinueCallArgsTail) {
-            AContinueCallArgsTail c = (AContinueCallArgsTail) tail;
-            return 1 + countArgsTail(c.getMore());
+        int count = 0;
+        while (tail instanceof AContinueCallArgsTail) {
+            count++;
+            tail = ((AContinueCallArgsTail) tail).getMore();
         }
-        return 0;
+        return count;
     }
 }
\ No newline at end of file
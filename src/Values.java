@@ -0,0 +1,453 @@
+import java.math.BigInteger;
+import java.util.*;
+
+/*
+ * Helpers for MiniPython runtime values. A value is one of:
+ *
+ *   Long        int
+ *   BigInteger  int too large for a Long (see Ints)
+ *   Double      a decimal literal such as 2.5
+ *   String      string
+ *   Rope        string built by "+", not yet flattened (see Rope)
+ *   ListValue   list
+ *   FileValue   file, from open()
+ *   null        None
+ *
+ * Printing follows Python 2: "print [4, 'val']" shows the repr of each
+ * element, "print 'val'" shows the string itself. "print 1.0/3" shows
+ * 0.333333333333, Python 2's str of a float (12 significant digits),
+ * while "print [1.0/3]" shows its repr, 0.3333333333333333.
+ */
+public final class Values
+{
+    private Values()
+    {
+    }
+
+    // Example: typeName(2L) → "int", typeName(null) → "NoneType"
+    public static String typeName(Object value)
+    {
+        if (value == null) {
+            return "NoneType";
+        }
+        if (Ints.isInt(value)) {
+            return "int";
+        }
+        if (value instanceof Double) {
+            return "float";
+        }
+        if (isString(value)) {
+            return "str";
+        }
+        if (value instanceof ListValue) {
+            return "list";
+        }
+        if (value instanceof FileValue) {
+            return "file";
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    public static boolean isString(Object value)
+    {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // What "print value" shows
+    public static String str(Object value)
+    {
+        if (value instanceof Double) {
+            return strDouble((Double) value);
+        }
+        return isString(value) ? value.toString() : repr(value);
+    }
+
+    // Example: repr("it's") → "\"it's\"", repr(0.5) → "0.5", repr(1e20) → "1e+20"
+    public static String repr(Object value)
+    {
+        if (value == null) {
+            return "None";
+        }
+        if (value instanceof Double) {
+            return reprDouble((Double) value);
+        }
+        if (isString(value)) {
+            String s = value.toString();
+            char quote = s.indexOf('\'') >= 0 && s.indexOf('"') < 0 ? '"' : '\'';
+            StringBuilder sb = new StringBuilder().append(quote);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == quote || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else if (c == '\t') {
+                    sb.append("\\t");
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.append(quote).toString();
+        }
+        return value.toString();
+    }
+
+    private static String reprDouble(double d)
+    {
+        if (Double.isNaN(d)) {
+            return "nan";
+        }
+        if (Double.isInfinite(d)) {
+            return d > 0 ? "inf" : "-inf";
+        }
+        String s = Double.toString(d);
+        int e = s.indexOf('E');
+        if (e < 0) {
+            return s;
+        }
+        // Java: "1.0E20", "1.5E-7"; Python: "1e+20", "1.5e-07"
+        String mantissa = s.substring(0, e);
+        if (mantissa.endsWith(".0")) {
+            mantissa = mantissa.substring(0, mantissa.length() - 2);
+        }
+        int exponent = Integer.parseInt(s.substring(e + 1));
+        if (exponent < 16 && exponent >= -4) {
+            String plain = new java.math.BigDecimal(mantissa + "E" + exponent).toPlainString();
+            return plain.indexOf('.') < 0 ? plain + ".0" : plain;
+        }
+        String digits = Integer.toString(Math.abs(exponent));
+        return mantissa + "e" + (exponent < 0 ? "-" : "+") + (digits.length() < 2 ? "0" : "") + digits;
+    }
+
+    // Python 2's str(float): "%.12g", with ".0" added when that looks like an int.
+    // Example: 1.0/3 → "0.333333333333", 1e12 → "1e+12", 2.5e-5 → "2.5e-05"
+    private static String strDouble(double d)
+    {
+        if (Double.isNaN(d) || Double.isInfinite(d) || d == 0) {
+            return reprDouble(d);
+        }
+        java.math.BigDecimal rounded = new java.math.BigDecimal(d)
+            .round(new java.math.MathContext(12, java.math.RoundingMode.HALF_EVEN))
+            .stripTrailingZeros();
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent < -4 || exponent >= 12) {
+            String digits = rounded.unscaledValue().abs().toString();
+            String mantissa = digits.length() > 1 ? digits.charAt(0) + "." + digits.substring(1) : digits;
+            String power = Integer.toString(Math.abs(exponent));
+            return (d < 0 ? "-" : "") + mantissa + "e" + (exponent < 0 ? "-" : "+")
+                   + (power.length() < 2 ? "0" : "") + power;
+        }
+        String plain = rounded.toPlainString();
+        return plain.indexOf('.') < 0 ? plain + ".0" : plain;
+    }
+
+    public static boolean isNumber(Object value)
+    {
+        return value instanceof Long || value instanceof Double || value instanceof BigInteger;
+    }
+
+    // An int or float as a float; an int too large for one is an OverflowError
+    public static double toDouble(Object value)
+    {
+        double d = ((Number) value).doubleValue();
+        if (Double.isInfinite(d) && value instanceof BigInteger) {
+            throw new MiniPythonError("OverflowError", "int too large to convert to float");
+        }
+        return d;
+    }
+
+    // Python's "a == b": 1 == 1.0, and lists compare element by element.
+    // A NaN is not equal to anything, itself included.
+    public static boolean equal(Object a, Object b)
+    {
+        if (a == b) {
+            return !isNaN(a);
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            return ((Long) a).longValue() == ((Long) b).longValue();
+        }
+        if (isNumber(a) && isNumber(b)) {
+            if (a instanceof Double && b instanceof Double) {
+                return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+            }
+            return !isNaN(a) && !isNaN(b) && Ints.compare(a, b) == 0;
+        }
+        if (isString(a) && isString(b)) {
+            return ((CharSequence) a).length() == ((CharSequence) b).length() && a.toString().equals(b.toString());
+        }
+        return a.equals(b);
+    }
+
+    // Orders two numbers, two strings or two lists, as "<" does. Raises a
+    // TypeError for anything else. A NaN gives 0, which is not what Python
+    // says: orderings check unordered() first (see Interpreter.Compare).
+    // Example: compare(1L, 2.5) < 0, compare("b", "a") > 0
+    public static int compare(Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare((Long) a, (Long) b);
+        }
+        if (isNumber(a) && isNumber(b) && (Ints.isInt(a) || Ints.isInt(b))) {
+            return Ints.compare(a, b);
+        }
+        if (isNumber(a) && isNumber(b)) {
+            double x = ((Number) a).doubleValue();
+            double y = ((Number) b).doubleValue();
+            return x < y ? -1 : x > y ? 1 : 0;
+        }
+        if (isString(a) && isString(b)) {
+            return a.toString().compareTo(b.toString());
+        }
+        if (a instanceof ListValue && b instanceof ListValue) {
+            return ((ListValue) a).compareTo((ListValue) b);
+        }
+        throw new MiniPythonError("TypeError", "'<' not supported between instances of '"
+                                  + typeName(a) + "' and '" + typeName(b) + "'");
+    }
+
+    // Whether a and b are numbers and one is a NaN, so that "<", "<=", ">"
+    // and ">=" are all False. Example: 1.0 <= nan is False, as is nan >= 1.0
+    public static boolean unordered(Object a, Object b)
+    {
+        return isNumber(a) && isNumber(b) && (isNaN(a) || isNaN(b));
+    }
+
+    // Python's truth: None, 0, 0.0, "" and [] are false
+    public static boolean isTrue(Object value)
+    {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Long) {
+            return (Long) value != 0;
+        }
+        if (value instanceof Double) {
+            return (Double) value != 0.0;
+        }
+        if (isString(value)) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof ListValue) {
+            return ((ListValue) value).size() > 0;
+        }
+        return true;
+    }
+
+    // ========== OPERATORS ==========
+
+    // op is one of + - * / % and ^ for **. Ints never overflow: a result too
+    // large for a Long is a BigInteger.
+    // Example: arithmetic('/', 7L, 2L) → 3L, arithmetic('*', "ab", 2L) → "abab"
+    public static Object arithmetic(char op, Object a, Object b)
+    {
+        if (a instanceof Long && b instanceof Long) {
+            long y = (Long) b;
+            switch (op) {
+                case '+':
+                    return Ints.add(a, b);
+                case '-':
+                    return Ints.subtract(a, b);
+                case '*':
+                    return Ints.multiply(a, b);
+                case '/':
+                    nonZero(y);
+                    return Ints.floorDiv(a, b);
+                case '%':
+                    nonZero(y);
+                    return Ints.floorMod(a, b);
+                default:
+                    return power(a, b);
+            }
+        }
+        if (Ints.isInt(a) && Ints.isInt(b)) {
+            if ((op == '/' || op == '%') && Ints.signum(b) == 0) {
+                nonZero(0);
+            }
+            return op == '^' ? power(a, b) : Ints.arithmetic(op, a, b);
+        }
+        if (isNumber(a) && isNumber(b)) {
+            double x = toDouble(a);
+            double y = toDouble(b);
+            switch (op) {
+                case '+':
+                    return x + y;
+                case '-':
+                    return x - y;
+                case '*':
+                    return x * y;
+                case '/':
+                    if (y == 0) {
+                        throw new MiniPythonError("ZeroDivisionError", "float division by zero");
+                    }
+                    return x / y;
+                case '%':
+                    if (y == 0) {
+                        throw new MiniPythonError("ZeroDivisionError", "float modulo");
+                    }
+                    double r = x % y;
+                    return r != 0 && (r < 0) != (y < 0) ? r + y : r;
+                default:
+                    if (x == 0 && y < 0) {
+                        throw new MiniPythonError("ZeroDivisionError", "0.0 cannot be raised to a negative power");
+                    }
+                    return Math.pow(x, y);
+            }
+        }
+        if (op == '+' && isString(a) && isString(b)) {
+            return Rope.concat((CharSequence) a, (CharSequence) b);
+        }
+        if (op == '+' && a instanceof ListValue && b instanceof ListValue) {
+            return ((ListValue) a).concat((ListValue) b);
+        }
+        if (op == '*' && Ints.isInt(b) && (isString(a) || a instanceof ListValue)) {
+            return repeat(a, repeatCount(b));
+        }
+        if (op == '*' && Ints.isInt(a) && (isString(b) || b instanceof ListValue)) {
+            return repeat(b, repeatCount(a));
+        }
+        throw new MiniPythonError("TypeError", "unsupported operand type(s) for " + (op == '^' ? "**" : String.valueOf(op))
+                                  + ": '" + typeName(a) + "' and '" + typeName(b) + "'");
+    }
+
+    private static long nonZero(long divisor)
+    {
+        if (divisor == 0) {
+            throw new MiniPythonError("ZeroDivisionError", "integer division or modulo by zero");
+        }
+        return divisor;
+    }
+
+    // By squaring; a negative exponent gives a float, as in Python
+    private static Object power(Object base, Object exponent)
+    {
+        if (Ints.signum(exponent) < 0) {
+            if (Ints.signum(base) == 0) {
+                throw new MiniPythonError("ZeroDivisionError", "0 cannot be raised to a negative power");
+            }
+            return Math.pow(toDouble(base), toDouble(exponent));
+        }
+        if (Ints.bitLengthBound('^', base, exponent) > Ints.MAX_BITS) {
+            throw new MiniPythonError("MemoryError", "the result of " + base + " ** " + exponent + " would be too large");
+        }
+        return Ints.power(base, exponent);
+    }
+
+    // A BigInteger count repeats nothing if negative and is too many otherwise
+    private static long repeatCount(Object count)
+    {
+        return count instanceof Long ? (Long) count : Ints.signum(count) < 0 ? 0 : Long.MAX_VALUE;
+    }
+
+    private static boolean isNaN(Object number)
+    {
+        return number instanceof Double && Double.isNaN((Double) number);
+    }
+
+    private static Object repeat(Object sequence, long count)
+    {
+        if (sequence instanceof ListValue) {
+            return ((ListValue) sequence).repeat(count);
+        }
+        String s = sequence.toString();
+        if (count <= 0 || s.isEmpty()) {
+            return "";
+        }
+        if (count > (Integer.MAX_VALUE - 8) / s.length()) {
+            throw new MiniPythonError("MemoryError", "cannot repeat a string of " + s.length() + " characters " + count + " times");
+        }
+        return s.repeat((int) count);
+    }
+
+    // ========== SEQUENCES ==========
+
+    // "a[i]" of a list or string
+    public static Object index(Object sequence, Object index)
+    {
+        if (sequence instanceof ListValue) {
+            return ((ListValue) sequence).get(toIndex(index));
+        }
+        if (isString(sequence)) {
+            CharSequence s = (CharSequence) sequence;
+            long i = toIndex(index);
+            if (i < 0) {
+                i += s.length();
+            }
+            if (i < 0 || i >= s.length()) {
+                throw new MiniPythonError("IndexError", "string index out of range");
+            }
+            return character(s.charAt((int) i));
+        }
+        throw new MiniPythonError("TypeError", "'" + typeName(sequence) + "' object is not subscriptable");
+    }
+
+    public static long toIndex(Object index)
+    {
+        if (index instanceof BigInteger) {
+            throw new MiniPythonError("IndexError", "cannot fit 'int' into an index-sized integer");
+        }
+        if (!(index instanceof Long)) {
+            throw new MiniPythonError("TypeError", "indices must be integers, not " + typeName(index));
+        }
+        return (Long) index;
+    }
+
+    public static long len(Object value)
+    {
+        if (value instanceof ListValue) {
+            return ((ListValue) value).size();
+        }
+        if (isString(value)) {
+            return ((CharSequence) value).length();
+        }
+        throw new MiniPythonError("TypeError", "object of type '" + typeName(value) + "' has no len()");
+    }
+
+    // What "for x in value" walks: a list's elements, a string's characters
+    // or a file's lines
+    public static Iterator<Object> iterator(Object value)
+    {
+        if (value instanceof ListValue) {
+            return ((ListValue) value).iterator();
+        }
+        if (value instanceof FileValue) {
+            return ((FileValue) value).iterator();
+        }
+        if (isString(value)) {
+            String s = value.toString();
+            return new Iterator<Object>() {
+                private int next;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return next < s.length();
+                }
+
+                @Override
+                public Object next()
+                {
+                    return character(s.charAt(next++));
+                }
+            };
+        }
+        throw new MiniPythonError("TypeError", "'" + typeName(value) + "' object is not iterable");
+    }
+
+    // One-character strings for ASCII are made once, so indexing and
+    // walking a string allocate nothing
+    private static final String[] CHARACTERS = new String[128];
+
+    static {
+        for (int c = 0; c < CHARACTERS.length; c++) {
+            CHARACTERS[c] = String.valueOf((char) c);
+        }
+    }
+
+    private static String character(char c)
+    {
+        return c < CHARACTERS.length ? CHARACTERS[c] : String.valueOf(c);
+    }
+}
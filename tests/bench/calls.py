@@ -0,0 +1,28 @@
+# Call-heavy benchmark for the interpreter's inline caches:
+#   java -cp build Interpreter tests/bench/calls.py [-nocache]
+
+def fib(n):
+    if n < 2:
+        return n
+    return fib(n - 1) + fib(n - 2)
+
+def scale(x, factor=3, offset=1):
+    return x * factor + offset
+
+def ackermann(m, n):
+    if m == 0:
+        return n + 1
+    if n == 0:
+        return ackermann(m - 1, 1)
+    return ackermann(m - 1, ackermann(m, n - 1))
+
+print fib(27)
+
+total = 0
+i = 0
+while i < 300000:
+    total += scale(i)
+    i += 1
+print total
+
+print ackermann(2, 2000)
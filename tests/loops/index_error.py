@@ -0,0 +1,15 @@
+# An index past the end still raises IndexError in a loop on "i < len(a)"
+# when the counter changes between the test and the access (see
+# LoopInvariants): the second a[i] reads a[4] in the second iteration, at
+# line 14. The output must not change with -noloopopt:
+#   java -cp build Interpreter tests/loops/index_error.py
+#   java -cp build Interpreter tests/loops/index_error.py -noloopopt
+
+a = [1, 2, 3]
+i = 0
+s = 0
+while i < len(a):
+	s += a[i]
+	i += 2
+	s += a[i]
+	print s
@@ -0,0 +1,84 @@
+# Loop optimizations (see LoopInvariants): invariants, small powers and
+# counted indices, in the cases that must not be optimized as well as the
+# ones that are. The output must not change with -noloopopt:
+#   java -cp build Interpreter tests/loops/optimizations.py
+#   java -cp build Interpreter tests/loops/optimizations.py -noloopopt
+
+# len(a) of a list the loop extends is read again in every iteration
+a = [1, 2, 3]
+i = 0
+while i < len(a):
+	if a[i] < 20:
+		a += [a[i] * 3]
+	i += 1
+print len(a), a
+
+# and so is len(b) of a name the loop assigns a shorter list
+b = [5, 6, 7, 8, 9]
+i = 0
+s = 0
+while i < len(b):
+	s += b[i]
+	if i == 1:
+		b = [1, 2, 3]
+	i += 1
+print s, i
+
+# k ** 2 is computed once; m ** 2, with m assigned in the loop, each time
+k = 7
+m = 1
+t = 0
+i = 0
+while i < 5:
+	t += k ** 2 + m ** 2
+	m += i
+	i += 1
+print t, m
+
+# a nested loop reuses n * n for the outer loop, not p * p
+n = 3
+p = 0
+r = 0
+while p < 3:
+	q = 0
+	while q < 4:
+		r += n * n + p * p + q
+		q += 1
+	p += 1
+print r
+
+# ** 2, ** 3 and ** 4 of floats, large ints and a negative int
+xs = [1.1, 2.5, 0.1, 3.0, 1.0000001]
+f2 = 0.0
+f3 = 0.0
+f4 = 0.0
+for x in xs:
+	f2 += x ** 2
+	f3 += x ** 3
+	f4 += x ** 4
+print f2, f3, f4
+print [1.1 ** 2, 1.1 ** 3, 1.1 ** 4, 0.1 ** 3]
+big = [3037000499, 3037000500, 2097151, 2097152, 4294967296, 99999999999999999999]
+for y in big:
+	print y ** 2, y ** 3, y ** 4
+neg = 0 - 3037000500
+print neg ** 2, neg ** 3, (0 - 2) ** 3
+
+# a counted index whose counter also changes after the access
+c = [10, 20, 30, 40, 50, 60, 70]
+i = 0
+u = 0
+while i < len(c):
+	u += c[i]
+	i += 1
+	if i == 3:
+		i += 2
+print u, i
+
+# the counter is assigned, not only incremented: the index keeps its check
+i = 0
+v = 0
+while i < len(c):
+	v += c[i]
+	i = i + 2
+print v, i
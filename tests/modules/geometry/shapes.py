@@ -0,0 +1,7 @@
+import mathlib
+
+def area(side):
+    return mathlib.square(side)
+
+def label():
+    return "shape"
@@ -0,0 +1,10 @@
+# Imports resolved relative to this directory (see ModuleChecker)
+import mathlib
+import geometry.shapes as sh
+import missing.module
+
+x = mathlib.square(4)
+y = mathlib.add(1, 2, 3)
+z = sh.perimeter(2)
+t = sh.label() + 1
+print x, y, z, t
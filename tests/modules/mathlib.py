@@ -0,0 +1,5 @@
+def square(x):
+    return x * x
+
+def add(a, b=0):
+    return a + b
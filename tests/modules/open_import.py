@@ -0,0 +1,7 @@
+# A file opened before an import stays open after it
+f = open("mathlib.py")
+print f.readline()
+import mathlib
+print f.readline()
+print mathlib.square(3)
+print f
@@ -0,0 +1,22 @@
+# An error in a middle chunk of a parallel loop (see ParallelLoop) is raised
+# at its place, as in order: ZeroDivisionError at x = 5000, line 21. The
+# output must not change with -noparallel:
+#   java -cp build Interpreter tests/parallel/error.py -parallel-threshold 4096
+#   java -cp build Interpreter tests/parallel/error.py -noparallel
+
+def upto(n):
+	r = []
+	i = 0
+	while i < n:
+		r += [i]
+		i += 1
+	return r
+
+xs = upto(10000)
+out = [0] * 10000
+total = 0
+print len(xs)
+for x in xs:
+	total += x
+	out[x] = 100 / (x - 5000)
+print total
@@ -0,0 +1,93 @@
+# Parallel for loops (see ParallelLoop), over lists longer than its threshold.
+# Each result is printed next to the same computation done by a while loop,
+# which always runs in order. The output must not change with -noparallel:
+#   java -cp build Interpreter tests/parallel/loops.py -parallel-threshold 4096 -parallel-log
+#   java -cp build Interpreter tests/parallel/loops.py -noparallel
+
+def f(x):
+	return x * x % 1000 + 1
+
+def same(a, b):
+	if a == b:
+		return "same"
+	return "DIFFERENT"
+
+def upto(n):
+	r = []
+	i = 0
+	while i < n:
+		r += [i]
+		i += 1
+	return r
+
+n = 10000
+xs = upto(n)
+
+# stores into a target
+out = [0] * n
+for x in xs:
+	out[x] = f(x)
+ref = [0] * n
+i = 0
+while i < n:
+	ref[i] = f(i)
+	i += 1
+print out[0], out[4095], out[4096], out[9999], same(out, ref)
+
+# int reductions, folded per chunk: "+=" with "-=", and "*="
+total = 0
+prod = 1
+for x in xs:
+	total += f(x)
+	total -= x % 7
+	prod *= x % 3 + 1
+t = 0
+p = 1
+i = 0
+while i < n:
+	t += f(i)
+	t -= i % 7
+	p *= i % 3 + 1
+	i += 1
+print total, same(total, t), prod % 1000003, same(prod, p)
+
+# non-int reductions, replayed in order: a float, a string and a list "+="
+fl = 0.5
+s = ""
+acc = []
+for x in xs:
+	fl += 1.0 / (x + 1)
+	s += "ab"
+	acc += [x * 2]
+g = 0.5
+u = ""
+b = []
+i = 0
+while i < n:
+	g += 1.0 / (i + 1)
+	u += "ab"
+	b += [i * 2]
+	i += 1
+print fl, same(fl, g), len(s), same(s, u), len(acc), acc[9999], same(acc, b)
+
+# an int reduction that meets a float runs the loop again in order
+m = 0
+mixed = upto(n)
+mixed[6000] = 0.25
+for v in mixed:
+	m += v
+print m
+
+# a shared list holding the target: the body sees the stores, so in order
+chain = [0] * (n + 1)
+holder = [chain]
+for x in xs:
+	prev = holder[0]
+	chain[x + 1] = prev[x] + 1
+print chain[n], chain[5000]
+
+# the target is the list being iterated
+ys = upto(n)
+for y in ys:
+	ys[y] = y + 1
+print ys[0], ys[9999]
@@ -0,0 +1,69 @@
+# =======================================================
+# CONTROL FLOW TEST
+# Blocks come from indentation; variables are checked
+# along the paths a program can take
+# =======================================================
+
+# -------------------------------------------------------
+# 1. Multi-line function bodies
+# -------------------------------------------------------
+# b and total are locals of sum3, no errors
+def sum3(a, b, c):
+    total = a + b
+    total += c
+    return total
+
+# -------------------------------------------------------
+# 2. Assigned on one path only
+# -------------------------------------------------------
+def pick(flag):
+    if flag > 0:
+        chosen = "yes"
+    # Error: not declared on every path [Rule 1]
+    print chosen
+
+# -------------------------------------------------------
+# 3. Used in a loop before its assignment at the bottom
+# -------------------------------------------------------
+def countdown(n):
+    while n > 0:
+        # Error: the first iteration gets here unassigned [Rule 1]
+        print last
+        last = n
+        n -= 1
+
+# -------------------------------------------------------
+# 4. Loop variables are assigned by the loop
+# -------------------------------------------------------
+def show(items):
+    for item in items:
+        print item
+
+# -------------------------------------------------------
+# 5. Types follow control flow
+# -------------------------------------------------------
+x = 1
+if x > 0:
+    x = "one"
+# x is int or string here: no error
+print x + 1
+
+y = "text"
+y = 2
+# y is int here, the earlier string does not matter: no error
+print y * 3
+
+z = 4
+z = "four"
+# z is string here -> Error [Rule 4]
+print z - 1
+
+# -------------------------------------------------------
+# 6. Return types from multi-line bodies
+# -------------------------------------------------------
+def name_of(n):
+    prefix = "item "
+    return prefix
+
+# Error: name_of returns string [Rule 6]
+print name_of(1) - 1
@@ -0,0 +1,84 @@
+# =======================================================
+# RETURN TYPE INFERENCE TEST
+# Return types are inferred for the whole program before
+# checking, so order of definition does not matter
+# =======================================================
+
+# -------------------------------------------------------
+# 1. Forward call: label is defined after describe
+# -------------------------------------------------------
+# label returns string -> Error: string - int [Rule 6]
+def describe(n):
+    return label() - 1
+
+def label():
+    return "item"
+
+# -------------------------------------------------------
+# 2. Call chain defined backwards
+# -------------------------------------------------------
+# outer -> middle -> inner, all int
+def outer():
+    return middle() + 1
+
+def middle():
+    return inner() * 2
+
+def inner():
+    return 21
+
+print outer() + "!"
+
+# -------------------------------------------------------
+# 3. All returns are joined
+# -------------------------------------------------------
+# sign returns int on one path and falls through (None) on the
+# other, so its type is unknown and no error is reported
+def sign(x):
+    if x > 0:
+        return 1
+
+print sign(5) + "?"
+
+# greeting returns string from both of its defs -> Error [Rule 6]
+def greeting():
+    return "hello"
+
+def greeting(name):
+    return "hello there"
+
+print greeting() + 1
+
+# -------------------------------------------------------
+# 4. Recursion
+# -------------------------------------------------------
+# countdown only returns its own result: it never returns normally
+def countdown(n):
+    return countdown(n - 1)
+
+print countdown(3) + "x"
+
+# fact is None on the fall-through path, so it settles at unknown
+def fact(n):
+    if n > 1:
+        return fact(n - 1) * n
+
+print fact(5) + "y"
+
+# even and odd only call each other: both never return normally
+def even(n):
+    return odd(n - 1) + 0
+
+def odd(n):
+    return even(n - 1) * 1
+
+print even(10) + "z"
+
+# -------------------------------------------------------
+# 5. Function without return
+# -------------------------------------------------------
+def shout(s):
+    print s
+
+# Operation with None [Rule 5]
+print shout("a") + 1
@@ -0,0 +1,12 @@
+# Several syntax errors: all of them are reported and the valid commands are still checked
+x = 1 +
+print x
+def f(a:
+    return a
+def g(b):
+    return b + 1
+y = g(2)
+z = (3
+print y, z
+w = ) 4
+print undefinedvar